@@ -0,0 +1,103 @@
+package org.yellowcat.backend.money;
+
+import org.openjdk.jmh.annotations.*;
+import org.yellowcat.backend.common.money.Money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh Money với cách tính hiện tại trên các đường nóng về giá
+ * Chạy: ./gradlew jmh (profiler gc báo thêm số byte cấp phát mỗi phép tính)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private static final int ITEMS = 20;
+
+    private BigDecimal price;
+    private BigDecimal percent;
+    private BigDecimal cap;
+    private BigDecimal[] unitPrices;
+    private int[] quantities;
+
+    private Money priceMoney;
+    private long rate;
+    private Money capMoney;
+    private Money[] unitPricesMoney;
+
+    @Setup
+    public void setUp() {
+        price = new BigDecimal("349000.00");
+        percent = new BigDecimal("12.50");
+        cap = new BigDecimal("40000.00");
+        unitPrices = new BigDecimal[ITEMS];
+        quantities = new int[ITEMS];
+        unitPricesMoney = new Money[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            unitPrices[i] = new BigDecimal(150_000 + i * 12_345).setScale(2, RoundingMode.HALF_UP);
+            quantities[i] = 1 + i % 3;
+            unitPricesMoney[i] = Money.of(unitPrices[i]);
+        }
+        priceMoney = Money.of(price);
+        rate = Money.rateOf(percent);
+        capMoney = Money.of(cap);
+    }
+
+    // ProductVariantAutoPromotionService.calculateDiscountedPrice trước đây: BigDecimal → double → BigDecimal
+    @Benchmark
+    public BigDecimal promotionPriceLegacy() {
+        double discount = percent.doubleValue() / 100.0;
+        return BigDecimal.valueOf(price.doubleValue() * (1.0 - discount));
+    }
+
+    // Gồm cả chuyển đổi ở biên (BigDecimal vào, BigDecimal ra)
+    @Benchmark
+    public BigDecimal promotionPriceMoney() {
+        return Money.of(price).lessPercent(Money.rateOf(percent)).toBigDecimal();
+    }
+
+    @Benchmark
+    public long promotionPriceMoneyKernel() {
+        return priceMoney.lessPercent(rate).minor();
+    }
+
+    // VoucherService1.calculateDiscountAmount + applyDiscountCap trước đây
+    @Benchmark
+    public BigDecimal voucherDiscountLegacy() {
+        BigDecimal orderTotal = price.multiply(BigDecimal.valueOf(3));
+        BigDecimal pct = percent.divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
+        return orderTotal.multiply(pct).min(cap).min(orderTotal);
+    }
+
+    @Benchmark
+    public long voucherDiscountMoney() {
+        Money orderTotal = priceMoney.times(3);
+        return orderTotal.percentOf(rate).min(capMoney).min(orderTotal).minor();
+    }
+
+    // Tổng đơn hàng: thành tiền từng dòng, tạm tính, phí ship, giảm giá
+    @Benchmark
+    public BigDecimal orderTotalLegacy() {
+        BigDecimal subTotal = BigDecimal.ZERO;
+        for (int i = 0; i < ITEMS; i++) {
+            subTotal = subTotal.add(unitPrices[i].multiply(BigDecimal.valueOf(quantities[i])));
+        }
+        return subTotal.add(cap).subtract(cap);
+    }
+
+    @Benchmark
+    public long orderTotalMoney() {
+        Money subTotal = Money.ZERO;
+        for (int i = 0; i < ITEMS; i++) {
+            subTotal = subTotal.plus(unitPricesMoney[i].times(quantities[i]));
+        }
+        return subTotal.plus(capMoney).minus(capMoney).minor();
+    }
+}
@@ -0,0 +1,113 @@
+package org.yellowcat.backend.common.config_api.response;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Supplier;
+
+/**
+ * Tiện ích GET có điều kiện cho các endpoint công khai
+ * - So khớp If-None-Match với ETag (ưu tiên), nếu không có thì so If-Modified-Since với Last-Modified (độ chính xác giây)
+ * - Khớp: trả 304 không body, bỏ qua hoàn toàn việc dựng dữ liệu
+ * - Không khớp: gắn ETag, Last-Modified, Cache-Control vào response 200
+ */
+public final class ConditionalGet {
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * @param etag         giá trị ETag chưa có dấu nháy (sẽ được bọc thành ETag mạnh)
+     * @param lastModified thời điểm thay đổi gần nhất, có thể null
+     * @param cacheControl chính sách cache của endpoint
+     * @param body         chỉ được gọi khi client chưa có bản mới nhất
+     */
+    public static ResponseEntity<?> respond(WebRequest request, String etag, Instant lastModified,
+                                            CacheControl cacheControl, Supplier<ResponseEntity<?>> body) {
+        String quotedEtag = quote(etag);
+        if (isNotModified(request, quotedEtag, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .headers(validatorHeaders(quotedEtag, lastModified, cacheControl))
+                    .build();
+        }
+        return decorate(body.get(), quotedEtag, lastModified, cacheControl);
+    }
+
+    /**
+     * Dùng khi ETag chỉ tính được sau khi đã có dữ liệu (vd: sản phẩm nổi bật chọn ngẫu nhiên)
+     * Vẫn tiết kiệm được serialize và băng thông khi client đã có bản giống hệt
+     */
+    public static ResponseEntity<?> respond(WebRequest request, String etag, Instant lastModified,
+                                            CacheControl cacheControl, ResponseEntity<?> response) {
+        return respond(request, etag, lastModified, cacheControl, () -> response);
+    }
+
+    static boolean isNotModified(WebRequest request, String quotedEtag, Instant lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // Có If-None-Match thì bỏ qua If-Modified-Since (RFC 9110 13.2.2)
+            return matches(ifNoneMatch, quotedEtag);
+        }
+        String ifModifiedSince = request.getHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null || lastModified == null) {
+            return false;
+        }
+        try {
+            Instant since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return !lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // So khớp yếu theo RFC: bỏ tiền tố W/ ở cả hai phía
+    private static boolean matches(String ifNoneMatch, String quotedEtag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(quotedEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ResponseEntity<?> decorate(ResponseEntity<?> response, String quotedEtag, Instant lastModified,
+                                              CacheControl cacheControl) {
+        // Chỉ gắn validator cho response thành công, lỗi (404, 500...) giữ nguyên
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.putAll(validatorHeaders(quotedEtag, lastModified, cacheControl));
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    private static HttpHeaders validatorHeaders(String quotedEtag, Instant lastModified, CacheControl cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(quotedEtag);
+        if (lastModified != null) {
+            headers.setLastModified(lastModified.truncatedTo(ChronoUnit.SECONDS));
+        }
+        headers.setCacheControl(cacheControl);
+        return headers;
+    }
+
+    private static String quote(String etag) {
+        return "\"" + etag + "\"";
+    }
+}
@@ -0,0 +1,43 @@
+package org.yellowcat.backend.common.config_api.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cấu trúc phản hồi cho phân trang theo cursor (keyset).
+ * Client gửi lại nextCursor để lấy trang tiếp theo, không cần OFFSET.
+ */
+@Getter
+@AllArgsConstructor
+public class CursorPageResponse<T> {
+    private List<T> content;
+    private int size;
+    private String nextCursor;
+    private boolean hasNext;
+    // null khi không đếm (count=none) hoặc không ước lượng được
+    private Long totalItems;
+    private boolean totalEstimated;
+
+    /**
+     * Cách tính tổng số bản ghi đi kèm trang
+     */
+    public enum CountMode {
+        NONE,       // Không đếm
+        ESTIMATE,   // Ước lượng từ thống kê của planner (pg_class.reltuples)
+        EXACT;      // COUNT(*) chính xác
+
+        public static CountMode from(String value) {
+            if (value == null || value.isBlank()) {
+                return ESTIMATE;
+            }
+            try {
+                return CountMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return ESTIMATE;
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.yellowcat.backend.common.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Số tiền bất biến lưu bằng long theo đơn vị nhỏ nhất của cột NUMERIC(.., 2) (1/100 đồng)
+ * - Cộng/trừ/nhân/giảm theo % hoặc số tiền cố định chỉ dùng phép toán long, không tạo BigDecimal trung gian
+ *   Đo bằng MoneyBenchmark: Money tạm trong một biểu thức được JIT khử cấp phát (~0 B/op), cộng dồn qua vòng lặp
+ *   thì mỗi bước vẫn cấp phát một Money (16 B); chuyển đổi BigDecimal ở biên chiếm phần lớn cấp phát còn lại
+ * - Làm tròn HALF_UP về 2 chữ số như ROUND(.., 2) của PostgreSQL và BigDecimal.setScale(2, HALF_UP)
+ * - Tràn số ném ArithmeticException thay vì sai lặng lẽ
+ * Chỉ chuyển sang BigDecimal ở biên JPA/JSON (of / toBigDecimal)
+ */
+public final class Money implements Comparable<Money> {
+
+    public static final Money ZERO = new Money(0);
+
+    private static final int SCALE = 2;
+    // Tỷ lệ phần trăm lưu theo 1/100 % (12.5% = 1250), 100% = 10000
+    private static final long FULL_RATE = 10_000;
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    /**
+     * @param amount null được coi là 0
+     */
+    public static Money of(BigDecimal amount) {
+        if (amount == null || amount.signum() == 0) {
+            return ZERO;
+        }
+        return ofMinor(amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    /**
+     * Tỷ lệ phần trăm (vd: discount_value 12.50) → 1/100 % dùng cho percentOf / lessPercent
+     */
+    public static long rateOf(BigDecimal percent) {
+        return percent == null ? 0 : percent.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public long minor() {
+        return minor;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    /**
+     * Cho các DTO thống kê đang dùng double
+     */
+    public double toDouble() {
+        return minor / 100.0;
+    }
+
+    public Money plus(Money other) {
+        return other.minor == 0 ? this : ofMinor(Math.addExact(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return other.minor == 0 ? this : ofMinor(Math.subtractExact(minor, other.minor));
+    }
+
+    public Money times(long quantity) {
+        return quantity == 1 ? this : ofMinor(Math.multiplyExact(minor, quantity));
+    }
+
+    /**
+     * Số tiền ứng với rate (1/100 %) của số tiền này, vd: tiền giảm của voucher theo %
+     */
+    public Money percentOf(long rate) {
+        return ofMinor(divideHalfUp(Math.multiplyExact(minor, rate), FULL_RATE));
+    }
+
+    /**
+     * Giá sau khi giảm rate (1/100 %), làm tròn trên phần còn lại như ROUND(price * (1 - v / 100), 2)
+     * rate ngoài [0, 100%] được giới hạn lại
+     */
+    public Money lessPercent(long rate) {
+        long kept = FULL_RATE - Math.max(0, Math.min(FULL_RATE, rate));
+        return ofMinor(divideHalfUp(Math.multiplyExact(minor, kept), FULL_RATE));
+    }
+
+    /**
+     * Giá sau khi trừ số tiền cố định, không âm
+     */
+    public Money lessAmount(Money amount) {
+        return minus(amount).atLeastZero();
+    }
+
+    public Money min(Money other) {
+        return minor <= other.minor ? this : other;
+    }
+
+    public Money max(Money other) {
+        return minor >= other.minor ? this : other;
+    }
+
+    public Money atLeastZero() {
+        return minor < 0 ? ZERO : this;
+    }
+
+    public boolean isZero() {
+        return minor == 0;
+    }
+
+    public boolean isPositive() {
+        return minor > 0;
+    }
+
+    public boolean isNegative() {
+        return minor < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minor < other.minor;
+    }
+
+    public boolean isGreaterThan(Money other) {
+        return minor > other.minor;
+    }
+
+    /**
+     * Tỷ lệ phần trăm của số tiền này so với base, làm tròn 2 chữ số (0 khi base = 0)
+     */
+    public double percentageOf(Money base) {
+        if (base.minor == 0) {
+            return 0;
+        }
+        return divideHalfUp(Math.multiplyExact(minor, FULL_RATE), base.minor) / 100.0;
+    }
+
+    // Chia làm tròn HALF_UP (xa 0 khi đúng nửa) như BigDecimal
+    private static long divideHalfUp(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder != 0 && Math.abs(remainder) >= Math.abs(divisor) - Math.abs(remainder)) {
+            quotient += (dividend < 0) == (divisor < 0) ? 1 : -1;
+        }
+        return quotient;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money other && other.minor == minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
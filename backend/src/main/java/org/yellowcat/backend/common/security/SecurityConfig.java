@@ -178,6 +178,11 @@ public class SecurityConfig {
                                 "/api/admin/vouchers/**")
                         .hasAnyAuthority("Admin_Web", "Staff_Web")
 
+                        // Giữ chỗ voucher: khách hàng đã đăng nhập, user lấy từ JWT
+                        .requestMatchers(
+                                "/api/voucher-reservations/**")
+                        .authenticated()
+
                         // Vouchers private API (tương tự promotions)
                         .requestMatchers(
                                 "/api/vouchers/**")
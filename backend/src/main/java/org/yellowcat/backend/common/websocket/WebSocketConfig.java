@@ -1,19 +1,26 @@
 package org.yellowcat.backend.common.websocket;
 
+import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.yellowcat.backend.product.referencedata.ReferenceDataChangeInterceptor;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final ReferenceDataChangeInterceptor referenceDataChangeInterceptor;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic");
         config.setApplicationDestinationPrefixes("/app");
+        // Thay đổi dữ liệu tham chiếu gửi lên broker cũng làm mới near-cache phía server
+        config.configureBrokerChannel().interceptors(referenceDataChangeInterceptor);
     }
 
     @Override
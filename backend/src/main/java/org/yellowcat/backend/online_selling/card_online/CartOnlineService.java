@@ -3,6 +3,7 @@
     import jakarta.transaction.Transactional;
     import lombok.RequiredArgsConstructor;
     import org.springframework.stereotype.Service;
+    import org.yellowcat.backend.common.money.Money;
     import org.yellowcat.backend.online_selling.cardItem_online.dto.CartItemSummaryDTO;
     import org.yellowcat.backend.online_selling.card_online.dto.CartConfirmResponseDTO;
     import org.yellowcat.backend.online_selling.card_online.dto.CartResponseDTO;
@@ -14,7 +15,6 @@
     import org.yellowcat.backend.user.AppUser;
     import org.yellowcat.backend.user.AppUserRepository;
 
-    import java.math.BigDecimal;
     import java.util.*;
     import java.util.concurrent.ConcurrentHashMap;
 
@@ -54,7 +54,7 @@
         public CartConfirmResponseDTO confirmCartItems(UUID keycloakId, List<ProductConfirmDTO> selectedProducts, boolean allowWaitingOrder) {
             Map<Integer, Integer> deductedMap = new HashMap<>();
             List<CartItemSummaryDTO> itemSummaries = new ArrayList<>();
-            BigDecimal subTotal = BigDecimal.ZERO;
+            Money subTotal = Money.ZERO;
             boolean hasOutOfStock = false;
             Map<Integer, String> outOfStockItems = new HashMap<>();
 
@@ -67,16 +67,16 @@
                             .orElseThrow(() -> new RuntimeException("Không tìm thấy sản phẩm ID: " + variantId));
 
                     int availableQty = variant.getQuantityInStock();
-                    BigDecimal unitPrice = Optional.ofNullable(variant.getSalePrice()).orElse(variant.getPrice());
-                    BigDecimal totalPrice = unitPrice.multiply(BigDecimal.valueOf(requestedQty));
-                    subTotal = subTotal.add(totalPrice);
+                    Money unitPrice = Money.of(Optional.ofNullable(variant.getSalePrice()).orElse(variant.getPrice()));
+                    Money totalPrice = unitPrice.times(requestedQty);
+                    subTotal = subTotal.plus(totalPrice);
 
                     itemSummaries.add(CartItemSummaryDTO.builder()
                             .variantId(variantId)
                             .productName(variant.getProduct().getProductName())
                             .quantity(requestedQty)
-                            .unitPrice(unitPrice)
-                            .totalPrice(totalPrice)
+                            .unitPrice(unitPrice.toBigDecimal())
+                            .totalPrice(totalPrice.toBigDecimal())
                             .build());
 
                     if (availableQty < requestedQty) {
@@ -112,7 +112,7 @@
 
                 return CartConfirmResponseDTO.builder()
                         .items(itemSummaries)
-                        .subTotal(subTotal)
+                        .subTotal(subTotal.toBigDecimal())
                         .waitingForStock(hasOutOfStock)
                         .outOfStockMessages(outOfStockItems)
                         .canProceed(canProceed)
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.yellowcat.backend.address.AddressRepository;
 import org.yellowcat.backend.address.Addresses;
+import org.yellowcat.backend.common.money.Money;
 import org.yellowcat.backend.online_selling.PaymentStatus;
 import org.yellowcat.backend.online_selling.cardItem_online.CartItemOnlineRepository;
 import org.yellowcat.backend.online_selling.card_online.CartOnlineRepository;
@@ -88,48 +89,45 @@ public class OrderOnlineService {
     @Transactional
     public Order createOrderFromOnlineRequest(OrderOnlineRequestDTO request) {
         List<OrderItem> orderItems = new ArrayList<>();
-        BigDecimal subTotal = BigDecimal.ZERO;
-        BigDecimal discountAfterAmount = BigDecimal.ZERO;
+        Money subTotalMoney = Money.ZERO;
 
         // Xử lý sản phẩm
         for (ProductOnlineDTO p : request.getProducts()) {
             ProductVariant variant = productVariantRepository.findById(p.getId())
                     .orElseThrow(() -> new RuntimeException("Không tìm thấy sản phẩm với ID: " + p.getId()));
 
-            BigDecimal unitPrice = variant.getSalePrice() != null ? variant.getSalePrice() : variant.getPrice();
-            BigDecimal totalPrice = unitPrice.multiply(BigDecimal.valueOf(p.getQuantity()));
+            Money unitPrice = Money.of(variant.getSalePrice() != null ? variant.getSalePrice() : variant.getPrice());
+            Money totalPrice = unitPrice.times(p.getQuantity());
 
             OrderItem item = OrderItem.builder()
                     .variant(variant)
                     .quantity(p.getQuantity())
-                    .priceAtPurchase(unitPrice)
-                    .totalPrice(totalPrice)
+                    .priceAtPurchase(unitPrice.toBigDecimal())
+                    .totalPrice(totalPrice.toBigDecimal())
                     .build();
 
             orderItems.add(item);
-            subTotal = subTotal.add(totalPrice);
+            subTotalMoney = subTotalMoney.plus(totalPrice);
         }
 
-        BigDecimal shippingFee = request.getShippingFee() != null ? request.getShippingFee() : BigDecimal.ZERO;
+        BigDecimal subTotal = subTotalMoney.toBigDecimal();
+        Money shippingFee = Money.of(request.getShippingFee());
 
         // Logic tính toán tổng tiền rõ ràng
-        BigDecimal finalAmount;
-        BigDecimal subTotal_use_voucher;
+        Money discount;
         boolean hasVoucher = request.getCodeVoucher() != null && !request.getCodeVoucher().trim().isEmpty();
 
         if (hasVoucher) {
             // CÓ VOUCHER: Tính theo logic voucher
-            discountAfterAmount = voucherService1.calculateDiscountedAmount(
-                    request.getCodeVoucher(), subTotal, shippingFee
-            );
-            subTotal_use_voucher = subTotal.subtract(discountAfterAmount);
-            finalAmount = subTotal_use_voucher.add(shippingFee);
+            discount = Money.of(voucherService1.calculateDiscountedAmount(
+                    request.getCodeVoucher(), subTotal, shippingFee.toBigDecimal()
+            ));
         } else {
             // KHÔNG CÓ VOUCHER: Tổng tiền sản phẩm + phí ship
-            discountAfterAmount = BigDecimal.ZERO;
-            subTotal_use_voucher = subTotal;
-            finalAmount = subTotal.add(shippingFee);
+            discount = Money.ZERO;
         }
+        BigDecimal discountAfterAmount = discount.toBigDecimal();
+        BigDecimal finalAmount = subTotalMoney.minus(discount).plus(shippingFee).toBigDecimal();
 
         // Tìm hoặc tạo AppUser
         AppUser user = null;
@@ -207,7 +205,7 @@ public class OrderOnlineService {
                 .phoneNumber(request.getShippingAddress().getPhoneNumber())
                 .customerName(request.getShippingAddress().getRecipientName())
                 .subTotalAmount(subTotal)
-                .shippingFee(shippingFee)
+                .shippingFee(shippingFee.toBigDecimal())
                 .discountAmount(discountAfterAmount)
                 .finalAmount(finalAmount)
                 .customerNotes(request.getNote())
@@ -231,7 +229,8 @@ public class OrderOnlineService {
 
         // gắn voucher cho đơn hàng
         if(request.getCodeVoucher() != null) {
-            voucherService1.applyVoucher(request.getCodeVoucher(), savedOrder, user != null ? user.getAppUserId() : null);
+            voucherService1.applyVoucher(request.getCodeVoucher(), savedOrder, user != null ? user.getAppUserId() : null,
+                    request.getVoucherReservationToken());
         }
 
         // Tạo timeline
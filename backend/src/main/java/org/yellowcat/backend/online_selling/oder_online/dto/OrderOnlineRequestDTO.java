@@ -10,6 +10,7 @@ import org.yellowcat.backend.user.AppUser;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.UUID;
 
 @Getter
 @Setter
@@ -27,5 +28,7 @@ public class OrderOnlineRequestDTO {
     private Integer shippingMethodId;
     private String orderStatus;
     private String codeVoucher;
+    // Giữ chỗ voucher lấy từ /api/admin/vouchers/reserve, có thể null
+    private UUID voucherReservationToken;
     private String email;
 }
@@ -0,0 +1,137 @@
+package org.yellowcat.backend.online_selling.voucher;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Thống kê hiệu quả voucher từ một câu truy vấn gom nhóm (voucher_redemption JOIN orders, lợi nhuận gom theo đơn)
+ * - Tổng tiền giảm / doanh số / lợi nhuận chỉ tính đơn Completed (giữ nguyên cách tính cũ)
+ * - Số lượt và doanh số theo ngày tính mọi lượt dùng, lợi nhuận theo ngày chỉ tính đơn Completed
+ * - Cache theo voucher, xóa sau khi transaction đổi voucher commit; TTL giới hạn độ trễ khi trạng thái đơn thay đổi
+ * - Metrics hit/miss/eviction qua Micrometer (cache=voucherAnalytics)
+ */
+@Component
+public class VoucherAnalytics {
+
+    /**
+     * Số liệu một ngày trên biểu đồ
+     */
+    public record Day(int usageCount, BigDecimal sales, BigDecimal profit) {
+    }
+
+    /**
+     * Số liệu của một voucher, days sắp xếp theo ngày tăng dần
+     */
+    public record Summary(BigDecimal totalDiscount, BigDecimal totalSales, BigDecimal totalProfit,
+                          int completed, int cancelled, NavigableMap<LocalDate, Day> days) {
+
+        public Day day(LocalDate date) {
+            return days.get(date);
+        }
+    }
+
+    // Ngày áp dụng: applied_at, fallback ngày đặt đơn; lợi nhuận = (giá bán - giá nhập) * số lượng của từng item
+    private static final String AGGREGATE_SQL = """
+            SELECT CAST(COALESCE(vr.applied_at, o.order_date, CURRENT_TIMESTAMP) AS DATE) AS usage_date,
+                   LOWER(o.order_status)                                                  AS status,
+                   COUNT(*)                                                               AS usage_count,
+                   SUM(COALESCE(o.final_amount, 0) + COALESCE(vr.discount_amount, 0))     AS sales,
+                   SUM(COALESCE(vr.discount_amount, 0))                                   AS discount,
+                   SUM(COALESCE(p.profit, 0))                                             AS profit
+            FROM voucher_redemption vr
+                     LEFT JOIN orders o ON o.order_id = vr.order_id
+                     LEFT JOIN (SELECT oi.order_id, SUM((oi.price_at_purchase - pv.cost_price) * oi.quantity) AS profit
+                                FROM order_items oi
+                                         JOIN product_variants pv ON pv.variant_id = oi.variant_id
+                                WHERE oi.order_id IN (SELECT order_id FROM voucher_redemption WHERE voucher_id = ?)
+                                GROUP BY oi.order_id) p ON p.order_id = vr.order_id
+            WHERE vr.voucher_id = ?
+            GROUP BY 1, 2
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<Integer, Summary> cache;
+
+    public VoucherAnalytics(JdbcTemplate jdbcTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${voucher.analytics-cache.max-size:500}") long maxSize,
+                            @Value("${voucher.analytics-cache.ttl:PT5M}") Duration ttl) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "voucherAnalytics");
+    }
+
+    public Summary get(Integer voucherId) {
+        return cache.get(voucherId, this::load);
+    }
+
+    /**
+     * Xóa số liệu của voucher khi có lượt dùng mới, trong transaction thì chờ commit
+     * (xóa sớm thì request khác có thể load lại dữ liệu chưa commit vào cache)
+     */
+    public void invalidate(Integer voucherId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(voucherId);
+                }
+            });
+        } else {
+            cache.invalidate(voucherId);
+        }
+    }
+
+    private Summary load(Integer voucherId) {
+        BigDecimal totalDiscount = BigDecimal.ZERO;
+        BigDecimal totalSales = BigDecimal.ZERO;
+        BigDecimal totalProfit = BigDecimal.ZERO;
+        int completed = 0;
+        int cancelled = 0;
+        TreeMap<LocalDate, Day> days = new TreeMap<>();
+
+        for (var row : jdbcTemplate.queryForList(AGGREGATE_SQL, voucherId, voucherId)) {
+            LocalDate date = ((java.sql.Date) row.get("usage_date")).toLocalDate();
+            String status = (String) row.get("status");
+            int usage = ((Number) row.get("usage_count")).intValue();
+            BigDecimal sales = decimal(row.get("sales"));
+            boolean isCompleted = "completed".equals(status);
+            BigDecimal profit = isCompleted ? decimal(row.get("profit")) : BigDecimal.ZERO;
+
+            if (isCompleted) {
+                completed += usage;
+                totalDiscount = totalDiscount.add(decimal(row.get("discount")));
+                totalSales = totalSales.add(sales);
+                totalProfit = totalProfit.add(profit);
+            } else if ("cancelled".equals(status) || "refunded".equals(status)) {
+                cancelled += usage;
+            }
+            days.merge(date, new Day(usage, sales, profit),
+                    (a, b) -> new Day(a.usageCount() + b.usageCount(), a.sales().add(b.sales()), a.profit().add(b.profit())));
+        }
+        return new Summary(totalDiscount, totalSales, totalProfit, completed, cancelled,
+                Collections.unmodifiableNavigableMap(days));
+    }
+
+    private static BigDecimal decimal(Object value) {
+        return value == null ? BigDecimal.ZERO : (BigDecimal) value;
+    }
+}
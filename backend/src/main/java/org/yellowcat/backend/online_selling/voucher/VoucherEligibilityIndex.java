@@ -0,0 +1,335 @@
+package org.yellowcat.backend.online_selling.voucher;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.yellowcat.backend.common.money.Money;
+import org.yellowcat.backend.online_selling.voucher.dto.VoucherEligibilityResult;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index điều kiện áp dụng của các voucher đang hoạt động, dùng cho "voucher dùng được cho tôi"
+ * - Mỗi voucher được biên dịch thành VoucherRule: phạm vi sản phẩm / danh mục / user là mảng id đã sắp xếp
+ * - Giỏ hàng được tra một lần (variant → sản phẩm, danh mục + các voucher user đã dùng) thành Cart
+ * - Kiểm tra mọi voucher với Cart chạy hoàn toàn trong bộ nhớ (tìm nhị phân), không query theo từng voucher
+ * - Load lại khi admin thay đổi voucher (sau commit) và định kỳ; lượt dùng tăng ngay sau khi đơn dùng voucher commit
+ * - Lượt đã chiếm = usage_count + reserved_count (giống điều kiện UPDATE của VoucherRedeemer), giữ chỗ / trả giữ chỗ
+ *   và đơn dùng giữ chỗ đánh dấu load lại vì không biết trước tổng có đổi hay không
+ */
+@Component
+@Slf4j
+public class VoucherEligibilityIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // null cho tới lần load đầu tiên
+    private volatile Map<Integer, VoucherRule> rules;
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+
+    public VoucherEligibilityIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Giỏ hàng đã tra cứu
+     *
+     * @param productIds      sản phẩm (không trùng) của các variant trong giỏ
+     * @param categoryIds     danh mục (không trùng) của các sản phẩm trong giỏ
+     * @param missingCategory có sản phẩm không thuộc danh mục nào
+     * @param missingVariants variant không tồn tại
+     * @param usedVoucherIds  voucher user đã dùng
+     */
+    public record Cart(Integer userId, int[] productIds, int[] categoryIds, boolean missingCategory,
+                       List<Integer> missingVariants, Set<Integer> usedVoucherIds) {
+    }
+
+    /**
+     * Các voucher đang hoạt động (is_active), sắp xếp theo id
+     */
+    public Collection<VoucherRule> activeRules() {
+        return current().values();
+    }
+
+    /**
+     * Tra giỏ hàng: 1 query variant → sản phẩm / danh mục, 1 query voucher user đã dùng
+     */
+    public Cart resolveCart(Integer userId, Collection<Integer> variantIds) {
+        Set<Integer> requested = new LinkedHashSet<>();
+        if (variantIds != null) {
+            variantIds.stream().filter(Objects::nonNull).forEach(requested::add);
+        }
+        Set<Integer> found = new HashSet<>();
+        Set<Integer> productIds = new HashSet<>();
+        Set<Integer> categoryIds = new HashSet<>();
+        boolean[] missingCategory = {false};
+        if (!requested.isEmpty()) {
+            jdbcTemplate.query("""
+                            SELECT v.variant_id, v.product_id, p.category_id
+                            FROM product_variants v
+                                     JOIN products p ON p.product_id = v.product_id
+                            WHERE v.variant_id = ANY(?)
+                            """,
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", requested.toArray())),
+                    rs -> {
+                        found.add(rs.getInt("variant_id"));
+                        productIds.add(rs.getInt("product_id"));
+                        int categoryId = rs.getInt("category_id");
+                        if (rs.wasNull()) {
+                            missingCategory[0] = true;
+                        } else {
+                            categoryIds.add(categoryId);
+                        }
+                    });
+        }
+        List<Integer> missingVariants = requested.stream().filter(id -> !found.contains(id)).toList();
+
+        Set<Integer> usedVoucherIds = userId == null ? Set.of() : new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT voucher_id FROM voucher_user WHERE user_id = ? AND usage_count > 0", Integer.class, userId));
+
+        return new Cart(userId, sortedArray(productIds), sortedArray(categoryIds), missingCategory[0],
+                missingVariants, usedVoucherIds);
+    }
+
+    /**
+     * Ghi nhận một lượt dùng voucher không qua giữ chỗ sau khi transaction hiện tại commit
+     */
+    public void recordRedemption(Integer voucherId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    incrementUsage(voucherId);
+                }
+            });
+        } else {
+            incrementUsage(voucherId);
+        }
+    }
+
+    /**
+     * Đánh dấu dữ liệu cũ; nếu đang trong transaction thì chỉ đánh dấu sau khi commit
+     * để lần load lại không đọc phải dữ liệu chưa commit
+     */
+    public void markStale() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stale.set(true);
+                }
+            });
+        } else {
+            stale.set(true);
+        }
+    }
+
+    // Đồng bộ lượt dùng / thay đổi voucher từ instance backend khác
+    @Scheduled(fixedDelayString = "${voucher.eligibility.refresh-ms:60000}",
+            initialDelayString = "${voucher.eligibility.refresh-ms:60000}")
+    public void refresh() {
+        stale.set(true);
+    }
+
+    private void incrementUsage(Integer voucherId) {
+        Map<Integer, VoucherRule> current = rules;
+        VoucherRule rule = current == null ? null : current.get(voucherId);
+        if (rule != null) {
+            rule.takenCount.incrementAndGet();
+        }
+    }
+
+    private Map<Integer, VoucherRule> current() {
+        Map<Integer, VoucherRule> current = rules;
+        if (current == null || stale.get()) {
+            return reload();
+        }
+        return current;
+    }
+
+    private synchronized Map<Integer, VoucherRule> reload() {
+        boolean wasStale = stale.getAndSet(false);
+        if (rules != null && !wasStale) {
+            return rules;
+        }
+        try {
+            rules = load();
+            log.debug("Load index điều kiện voucher: {} voucher đang hoạt động", rules.size());
+            return rules;
+        } catch (RuntimeException e) {
+            stale.set(true);
+            throw e;
+        }
+    }
+
+    private Map<Integer, VoucherRule> load() {
+        Map<Integer, Map<ScopeType, Set<Integer>>> scopes = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT s.voucher_id, s.scope_type, s.target_id
+                FROM voucher_scope s
+                         JOIN voucher1 v ON v.id = s.voucher_id
+                WHERE v.is_active = TRUE
+                """, rs -> {
+            ScopeType type = ScopeType.valueOf(rs.getString("scope_type"));
+            Set<Integer> targets = scopes.computeIfAbsent(rs.getInt("voucher_id"), id -> new EnumMap<>(ScopeType.class))
+                    .computeIfAbsent(type, t -> new HashSet<>());
+            int targetId = rs.getInt("target_id");
+            // target_id NULL: phạm vi vẫn tồn tại nhưng không khớp với id nào
+            if (!rs.wasNull()) {
+                targets.add(targetId);
+            }
+        });
+
+        Map<Integer, VoucherRule> loaded = new TreeMap<>();
+        jdbcTemplate.query("""
+                SELECT id, code, name, description, start_date, end_date, max_usage,
+                       usage_count + reserved_count AS taken_count, min_order_value
+                FROM voucher1
+                WHERE is_active = TRUE
+                """, rs -> {
+            int id = rs.getInt("id");
+            int maxUsage = rs.getInt("max_usage");
+            Integer max = rs.wasNull() ? null : maxUsage;
+            Timestamp start = rs.getTimestamp("start_date");
+            Timestamp end = rs.getTimestamp("end_date");
+            Map<ScopeType, Set<Integer>> voucherScopes = scopes.getOrDefault(id, Map.of());
+            loaded.put(id, new VoucherRule(
+                    id,
+                    rs.getString("code"),
+                    rs.getString("name"),
+                    rs.getString("description"),
+                    start == null ? null : start.toLocalDateTime(),
+                    end == null ? null : end.toLocalDateTime(),
+                    max,
+                    new AtomicInteger(rs.getInt("taken_count")),
+                    Money.of(rs.getBigDecimal("min_order_value")).minor(),
+                    scopeArray(voucherScopes, ScopeType.SPECIFIC_PRODUCTS),
+                    scopeArray(voucherScopes, ScopeType.PRODUCT_CATEGORY),
+                    scopeArray(voucherScopes, ScopeType.SPECIFIC_USERS)));
+        });
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    // null nếu voucher không có phạm vi loại này (không giới hạn)
+    private static int[] scopeArray(Map<ScopeType, Set<Integer>> scopes, ScopeType type) {
+        Set<Integer> targets = scopes.get(type);
+        return targets == null ? null : sortedArray(targets);
+    }
+
+    private static int[] sortedArray(Set<Integer> ids) {
+        int[] array = ids.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    /**
+     * Điều kiện áp dụng đã biên dịch của một voucher
+     */
+    public static final class VoucherRule {
+
+        private final Integer id;
+        private final String code;
+        private final String name;
+        private final String description;
+        private final LocalDateTime startDate;
+        private final LocalDateTime endDate;
+        private final Integer maxUsage;
+        // Lượt đã dùng + lượt đang được giữ chỗ
+        private final AtomicInteger takenCount;
+        private final long minOrderValue;
+        // Mảng id đã sắp xếp, null = không giới hạn theo loại phạm vi này
+        private final int[] productScope;
+        private final int[] categoryScope;
+        private final int[] userScope;
+
+        VoucherRule(Integer id, String code, String name, String description, LocalDateTime startDate,
+                    LocalDateTime endDate, Integer maxUsage, AtomicInteger takenCount, long minOrderValue,
+                    int[] productScope, int[] categoryScope, int[] userScope) {
+            this.id = id;
+            this.code = code;
+            this.name = name;
+            this.description = description;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.maxUsage = maxUsage;
+            this.takenCount = takenCount;
+            this.minOrderValue = minOrderValue;
+            this.productScope = productScope;
+            this.categoryScope = categoryScope;
+            this.userScope = userScope;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public LocalDateTime getStartDate() {
+            return startDate;
+        }
+
+        public LocalDateTime getEndDate() {
+            return endDate;
+        }
+
+        /**
+         * Cùng điều kiện và thông báo như VoucherService1.checkVoucherEligibility,
+         * riêng lượt còn lại tính cả các lượt đang được giữ chỗ
+         */
+        public VoucherEligibilityResult evaluate(Cart cart, BigDecimal orderTotal, LocalDateTime now) {
+            VoucherEligibilityResult result = new VoucherEligibilityResult();
+
+            if (startDate == null || endDate == null || !now.isAfter(startDate) || !now.isBefore(endDate)) {
+                result.addFailureReason("Voucher không hoạt động hoặc đã hết hạn.");
+            }
+            if (maxUsage != null && takenCount.get() >= maxUsage) {
+                result.addFailureReason("Voucher đã hết lượt sử dụng.");
+            }
+            if (Money.of(orderTotal).minor() < minOrderValue) {
+                result.addFailureReason("Đơn hàng chưa đạt giá trị tối thiểu.");
+            }
+            if (userScope != null && (cart.userId() == null || Arrays.binarySearch(userScope, cart.userId()) < 0)) {
+                result.addFailureReason("Người dùng không nằm trong phạm vi áp dụng.");
+            }
+            if (productScope != null && !containsAll(productScope, cart.productIds())) {
+                result.addFailureReason("Có sản phẩm không nằm trong phạm vi sản phẩm giảm giá.");
+            }
+            if (categoryScope != null && (cart.missingCategory() || !containsAll(categoryScope, cart.categoryIds()))) {
+                result.addFailureReason("Có sản phẩm không nằm trong phạm vi danh mục giảm giá.");
+            }
+
+            if (result.isEligible()) {
+                result.markEligible();
+            }
+            return result;
+        }
+
+        private static boolean containsAll(int[] scope, int[] ids) {
+            for (int id : ids) {
+                if (Arrays.binarySearch(scope, id) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
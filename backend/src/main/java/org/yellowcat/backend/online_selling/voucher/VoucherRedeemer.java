@@ -0,0 +1,215 @@
+package org.yellowcat.backend.online_selling.voucher;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Trừ lượt voucher không cần khóa trong Java
+ * - Lượt toàn cục: một câu UPDATE có điều kiện (usage_count + reserved_count < max_usage), giao dịch đồng thời
+ *   trên cùng dòng voucher chờ nhau và kiểm tra lại điều kiện sau khi dòng được commit → không bao giờ vượt max_usage
+ * - Lượt theo user: UNIQUE (voucher_id, user_id) của voucher_user + CHECK usage_count <= 1
+ * - Giữ chỗ (tùy chọn): checkout đang diễn ra giữ một lượt trong thời gian ngắn (reserved_count),
+ *   đổi giữ chỗ thành lượt dùng khi tạo đơn, hết hạn thì tự trả lại
+ *   Mỗi user giữ tối đa một lượt trên một voucher (unique index, V16), giữ chỗ chỉ dùng / trả được bởi chính user đó
+ */
+@Component
+@Slf4j
+public class VoucherRedeemer {
+
+    public enum Outcome {
+        REDEEMED,
+        // Hết lượt hoặc voucher đã ngưng hoạt động
+        EXHAUSTED,
+        // User đã dùng voucher này
+        ALREADY_USED
+    }
+
+    /**
+     * Một lượt đang được giữ cho checkout
+     */
+    public record Reservation(UUID token, Integer voucherId, LocalDateTime expiresAt) {
+    }
+
+    /**
+     * Kết quả giữ chỗ: reservation chỉ có khi outcome = REDEEMED (đã giữ được một lượt)
+     */
+    public record ReservationResult(Outcome outcome, Reservation reservation) {
+    }
+
+    // Hết lượt thì tự ngưng hoạt động (giữ nguyên hành vi cũ)
+    private static final String DEACTIVATE_WHEN_FULL =
+            "is_active = CASE WHEN max_usage IS NOT NULL AND usage_count + 1 >= max_usage THEN FALSE ELSE is_active END";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration reservationTtl;
+
+    public VoucherRedeemer(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${voucher.reservation.ttl:PT10M}") Duration reservationTtl) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.reservationTtl = reservationTtl;
+    }
+
+    /**
+     * Dùng một lượt voucher trong transaction hiện tại, transaction rollback thì lượt được trả lại
+     * Khi outcome khác REDEEMED, caller phải rollback (lượt theo user có thể đã được đánh dấu)
+     *
+     * @param userId           null với đơn không gắn user (bỏ qua giới hạn theo user)
+     * @param reservationToken giữ chỗ từ reserve(), null hoặc đã hết hạn thì tranh lượt như bình thường
+     */
+    public Outcome redeem(Integer voucherId, Integer userId, UUID reservationToken) {
+        // Kiểm tra theo user trước: từ chối user dùng lại mà không đụng tới dòng voucher đang bị tranh chấp
+        if (userId != null && !claimUserUsage(voucherId, userId)) {
+            return Outcome.ALREADY_USED;
+        }
+        if (reservationToken != null && consumeReservation(voucherId, userId, reservationToken)) {
+            jdbcTemplate.update("UPDATE voucher1 SET usage_count = usage_count + 1, reserved_count = reserved_count - 1, "
+                    + DEACTIVATE_WHEN_FULL + " WHERE id = ?", voucherId);
+            return Outcome.REDEEMED;
+        }
+        int updated = jdbcTemplate.update("UPDATE voucher1 SET usage_count = usage_count + 1, " + DEACTIVATE_WHEN_FULL
+                + " WHERE id = ? AND is_active = TRUE"
+                + " AND (max_usage IS NULL OR usage_count + reserved_count < max_usage)", voucherId);
+        return updated == 1 ? Outcome.REDEEMED : Outcome.EXHAUSTED;
+    }
+
+    /**
+     * Giữ một lượt cho checkout của user trong voucher.reservation.ttl
+     * User đang giữ chỗ còn hạn thì nhận lại giữ chỗ đó (gửi lại checkout không giữ thêm lượt)
+     *
+     * @return EXHAUSTED nếu voucher đã hết lượt (tính cả các lượt đang được giữ) hoặc ngưng hoạt động,
+     *         ALREADY_USED nếu user đã dùng voucher
+     */
+    public ReservationResult reserve(Integer voucherId, Integer userId) {
+        try {
+            return transactionTemplate.execute(status -> reserveInTransaction(voucherId, userId));
+        } catch (DataIntegrityViolationException e) {
+            // Checkout song song của cùng user vừa giữ chỗ trước (unique (voucher_id, user_id)), dùng chung giữ chỗ đó
+            Reservation existing = transactionTemplate.execute(status -> findReservation(voucherId, userId));
+            if (existing == null) {
+                throw e;
+            }
+            return new ReservationResult(Outcome.REDEEMED, existing);
+        }
+    }
+
+    private ReservationResult reserveInTransaction(Integer voucherId, Integer userId) {
+        Integer used = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM voucher_user WHERE voucher_id = ? AND user_id = ? AND usage_count >= 1",
+                Integer.class, voucherId, userId);
+        if (used != null && used > 0) {
+            return new ReservationResult(Outcome.ALREADY_USED, null);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Reservation existing = findReservation(voucherId, userId);
+        if (existing != null) {
+            if (existing.expiresAt().isAfter(now)) {
+                return new ReservationResult(Outcome.REDEEMED, existing);
+            }
+            // Giữ chỗ cũ đã hết hạn mà chưa được dọn: trả lượt trước khi giữ lại
+            returnHold(existing.token(), null);
+        }
+
+        int updated = jdbcTemplate.update("""
+                UPDATE voucher1 SET reserved_count = reserved_count + 1
+                WHERE id = ? AND is_active = TRUE
+                  AND (max_usage IS NULL OR usage_count + reserved_count < max_usage)
+                """, voucherId);
+        if (updated == 0) {
+            return new ReservationResult(Outcome.EXHAUSTED, null);
+        }
+        Reservation reservation = new Reservation(UUID.randomUUID(), voucherId, now.plus(reservationTtl));
+        jdbcTemplate.update("INSERT INTO voucher_reservation (token, voucher_id, user_id, expires_at) VALUES (?, ?, ?, ?)",
+                reservation.token(), voucherId, userId, Timestamp.valueOf(reservation.expiresAt()));
+        return new ReservationResult(Outcome.REDEEMED, reservation);
+    }
+
+    /**
+     * Trả lại lượt đang giữ của user (checkout bị hủy)
+     *
+     * @return false nếu giữ chỗ không tồn tại, không thuộc user (đã dùng, đã trả hoặc đã hết hạn và được dọn)
+     */
+    public boolean release(UUID token, Integer userId) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> returnHold(token, userId)));
+    }
+
+    /**
+     * Trả lại các lượt giữ chỗ đã hết hạn
+     *
+     * @return số giữ chỗ đã trả
+     */
+    @Scheduled(fixedDelayString = "${voucher.reservation.sweep-ms:30000}")
+    public int releaseExpiredReservations() {
+        List<UUID> expired = jdbcTemplate.queryForList(
+                "SELECT token FROM voucher_reservation WHERE expires_at <= ?", UUID.class,
+                Timestamp.valueOf(LocalDateTime.now()));
+        int released = 0;
+        for (UUID token : expired) {
+            if (Boolean.TRUE.equals(transactionTemplate.execute(status -> returnHold(token, null)))) {
+                released++;
+            }
+        }
+        if (released > 0) {
+            log.info("Trả lại {} lượt voucher giữ chỗ đã hết hạn", released);
+        }
+        return released;
+    }
+
+    // Xóa giữ chỗ và trả lượt; userId null = không kiểm tra chủ giữ chỗ (dọn dẹp)
+    private boolean returnHold(UUID token, Integer userId) {
+        List<Integer> voucherIds = jdbcTemplate.queryForList(
+                "SELECT voucher_id FROM voucher_reservation WHERE token = ?" + (userId == null ? "" : " AND user_id = ?"),
+                Integer.class, userId == null ? new Object[]{token} : new Object[]{token, userId});
+        // Chỉ giao dịch xóa được dòng giữ chỗ mới trả lượt, tránh trả hai lần khi release / dọn dẹp chạy song song
+        if (voucherIds.isEmpty()
+                || jdbcTemplate.update("DELETE FROM voucher_reservation WHERE token = ?", token) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("UPDATE voucher1 SET reserved_count = reserved_count - 1 WHERE id = ?", voucherIds.get(0));
+        return true;
+    }
+
+    private Reservation findReservation(Integer voucherId, Integer userId) {
+        List<Reservation> reservations = jdbcTemplate.query(
+                "SELECT token, voucher_id, expires_at FROM voucher_reservation WHERE voucher_id = ? AND user_id = ?",
+                (rs, i) -> new Reservation(rs.getObject("token", UUID.class), rs.getInt("voucher_id"),
+                        rs.getTimestamp("expires_at").toLocalDateTime()),
+                voucherId, userId);
+        return reservations.isEmpty() ? null : reservations.get(0);
+    }
+
+    // Đánh dấu user đã dùng voucher; false nếu đã dùng (kể cả khi giao dịch khác vừa đánh dấu song song)
+    private boolean claimUserUsage(Integer voucherId, Integer userId) {
+        // Dòng voucher_user có sẵn với usage_count = 0
+        if (jdbcTemplate.update("UPDATE voucher_user SET usage_count = usage_count + 1"
+                + " WHERE voucher_id = ? AND user_id = ? AND usage_count < 1", voucherId, userId) == 1) {
+            return true;
+        }
+        // Giao dịch chèn song song cùng (voucher_id, user_id) chờ giao dịch đầu commit rồi không chèn gì (0 dòng)
+        // ON CONFLICT thay cho bắt lỗi unique: PostgreSQL hủy cả transaction khi một câu lệnh vi phạm unique
+        return jdbcTemplate.update("INSERT INTO voucher_user (voucher_id, user_id, usage_count) VALUES (?, ?, 1)"
+                + " ON CONFLICT DO NOTHING", voucherId, userId) == 1;
+    }
+
+    // Xóa giữ chỗ còn hạn của chính user; xóa được thì lượt đã giữ chuyển thành lượt dùng
+    private boolean consumeReservation(Integer voucherId, Integer userId, UUID token) {
+        return jdbcTemplate.update("DELETE FROM voucher_reservation WHERE token = ? AND voucher_id = ?"
+                        + " AND user_id IS NOT DISTINCT FROM ? AND expires_at > ?",
+                token, voucherId, userId, Timestamp.valueOf(LocalDateTime.now())) == 1;
+    }
+}
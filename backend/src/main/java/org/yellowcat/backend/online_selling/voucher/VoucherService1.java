@@ -2,12 +2,14 @@ package org.yellowcat.backend.online_selling.voucher;
 
 import jakarta.persistence.EntityNotFoundException;
 import org.apache.commons.lang3.RandomStringUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
+import org.yellowcat.backend.common.money.Money;
 import org.yellowcat.backend.online_selling.gmail_sending.EmailService;
 import org.yellowcat.backend.online_selling.oder_online.OderOnlineRepository;
 import org.yellowcat.backend.online_selling.voucher.dto.*;
@@ -16,16 +18,16 @@ import org.yellowcat.backend.online_selling.voucher.repository.*;
 import org.yellowcat.backend.product.Product;
 import org.yellowcat.backend.product.ProductRepository;
 import org.yellowcat.backend.product.category.Category;
-import org.yellowcat.backend.product.category.CategoryRepository;
 import org.yellowcat.backend.product.order.Order;
 import org.yellowcat.backend.product.order.OrderRepository;
 import org.yellowcat.backend.product.orderItem.OrderItem;
 import org.yellowcat.backend.product.productvariant.ProductVariantRepository;
+import org.yellowcat.backend.product.referencedata.ReferenceDataRegistry;
+import org.yellowcat.backend.product.referencedata.ReferenceType;
 import org.yellowcat.backend.user.AppUser;
 import org.yellowcat.backend.user.AppUserRepository;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.text.Normalizer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -35,6 +37,7 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
+@Slf4j
 public class VoucherService1 {
     // ===== HẰNG SỐ THÔNG BÁO LỖI =====
     private static final String ERR_VOUCHER_NOT_FOUND = "Không tìm thấy voucher";
@@ -53,9 +56,12 @@ public class VoucherService1 {
     @Autowired private VoucherScopeRepository scopeRepository;
     @Autowired private VoucherUserRepository voucherUserRepository;
     @Autowired private VoucherRedemptionRepository voucherRedemptionRepository;
+    @Autowired private VoucherRedeemer voucherRedeemer;
+    @Autowired private VoucherEligibilityIndex voucherEligibilityIndex;
+    @Autowired private VoucherAnalytics voucherAnalytics;
     @Autowired private ProductRepository productRepository;
     @Autowired private AppUserRepository userRepository;
-    @Autowired private CategoryRepository categoryRepository;
+    @Autowired private ReferenceDataRegistry referenceDataRegistry;
     @Autowired private OderOnlineRepository orderOnlineRepository;
     @Autowired private ProductVariantRepository productVariantRepository;
     @Autowired private OrderRepository orderRepository;
@@ -71,6 +77,9 @@ public class VoucherService1 {
             v.setIsActive(false);
         }
         voucherRepository.saveAll(expiredVouchers);
+        if (!expiredVouchers.isEmpty()) {
+            voucherEligibilityIndex.markStale();
+        }
     }
 
 
@@ -114,6 +123,7 @@ public class VoucherService1 {
 
         // Gán scope
         associateScopesWithVoucher(scopes, savedVoucher);
+        voucherEligibilityIndex.markStale();
 
         // ✅ Gửi email thông báo - chỉ gọi service email
         try {
@@ -189,12 +199,14 @@ public class VoucherService1 {
     public VoucherPerformanceDTO getVoucherPerformanceStats(Integer id, int page, int pageSize) {
         Voucher voucher = voucherRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Voucher not found"));
+        // Toàn bộ số liệu từ một câu truy vấn gom nhóm, cache tới lượt dùng tiếp theo
+        VoucherAnalytics.Summary summary = voucherAnalytics.get(voucher.getId());
 
         VoucherPerformanceDTO stats = new VoucherPerformanceDTO();
         stats.setRedemptionCount(voucher.getUsageCount());
-        stats.setTotalDiscount(calculateTotalDiscount(voucher));
-        stats.setTotalSales(calculateTotalSales(voucher));
-        stats.setTotalProfit(calculateTotalProfit(voucher));
+        stats.setTotalDiscount(summary.totalDiscount());
+        stats.setTotalSales(summary.totalSales());
+        stats.setTotalProfit(summary.totalProfit());
 
         if (voucher.getMaxUsage() != null) {
             stats.setRemainingUsage(voucher.getMaxUsage() - voucher.getUsageCount());
@@ -205,7 +217,7 @@ public class VoucherService1 {
         }
 
         // Build paged chart window
-        ChartData chart = buildPagedChartData(voucher, page, pageSize);
+        ChartData chart = buildPagedChartData(voucher, summary, page, pageSize);
         stats.setDailyUsageChart(chart);
 
         // NEW: Evaluate effectiveness based on real outcomes (Completed/Cancelled) and ROI
@@ -222,16 +234,8 @@ public class VoucherService1 {
          *   TRUNG BÌNH:    completionRate ≥ 0.20 || netROI ≥ 0.20
          *   THẤP:          các trường hợp còn lại (hoặc không có đơn Completed)
          */
-        int completed = 0;
-        int cancelled = 0;
-        List<VoucherRedemption> reds = voucherRedemptionRepository.findAllByVoucher_Id(voucher.getId());
-        for (VoucherRedemption r : reds) {
-            Order o = orderOnlineRepository.findById(r.getOrderId()).orElse(null);
-            if (o == null || o.getOrderStatus() == null) continue;
-            String st = o.getOrderStatus();
-            if ("Completed".equalsIgnoreCase(st)) completed++;
-            else if ("Cancelled".equalsIgnoreCase(st) || "Refunded".equalsIgnoreCase(st)) cancelled++;
-        }
+        int completed = summary.completed();
+        int cancelled = summary.cancelled();
         int totalConsidered = completed + cancelled;
         double completionRate = totalConsidered > 0 ? (double) completed / totalConsidered : 0.0;
         double cancelRatio = totalConsidered > 0 ? (double) cancelled / totalConsidered : 0.0;
@@ -272,7 +276,7 @@ public class VoucherService1 {
         return "THẤP";
     }
 
-    private ChartData buildPagedChartData(Voucher voucher, int page, int pageSize) {
+    private ChartData buildPagedChartData(Voucher voucher, VoucherAnalytics.Summary summary, int page, int pageSize) {
         LocalDate start = voucher.getStartDate().toLocalDate();
         LocalDate end = voucher.getEndDate().toLocalDate();
         if (end.isBefore(start)) {
@@ -290,16 +294,6 @@ public class VoucherService1 {
         LocalDate windowStart = start.plusDays(windowStartIndex);
         LocalDate windowEnd = start.plusDays(windowEndIndex);
 
-        // Preload raw usage+sales from repo
-        List<Object[]> rawData = voucherRedemptionRepository.findDailyUsageWithSalesByVoucherId(voucher.getId());
-        Map<LocalDate, Object[]> dataByDate = new HashMap<>();
-        for (Object[] row : rawData) {
-            if (row[0] != null) {
-                LocalDate d = ((java.sql.Date) row[0]).toLocalDate();
-                dataByDate.put(d, row);
-            }
-        }
-
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM");
         ChartData chart = new ChartData();
         chart.setLabels(new ArrayList<>());
@@ -309,14 +303,10 @@ public class VoucherService1 {
         chart.setDisplayLabels(new ArrayList<>());
 
         for (LocalDate d = windowStart; !d.isAfter(windowEnd); d = d.plusDays(1)) {
-            Object[] row = dataByDate.get(d);
-            int usage = 0;
-            BigDecimal sales = BigDecimal.ZERO;
-            if (row != null) {
-                usage = row[1] != null ? ((Number) row[1]).intValue() : 0;
-                sales = row[2] != null ? (BigDecimal) row[2] : BigDecimal.ZERO;
-            }
-            BigDecimal profit = calculateDailyProfit(voucher, d);
+            VoucherAnalytics.Day day = summary.day(d);
+            int usage = day != null ? day.usageCount() : 0;
+            BigDecimal sales = day != null ? day.sales() : BigDecimal.ZERO;
+            BigDecimal profit = day != null ? day.profit() : BigDecimal.ZERO;
 
             chart.getLabels().add(d.toString());
             chart.getUsageCounts().add(usage);
@@ -334,223 +324,6 @@ public class VoucherService1 {
         return chart;
     }
 
-    private Map<String, DailyUsageStats> calculateDailyUsage(Voucher voucher) {
-        List<Object[]> dailyUsageData = voucherRedemptionRepository.findDailyUsageWithSalesByVoucherId(voucher.getId());
-
-        return dailyUsageData.stream()
-                .filter(data -> data[0] != null) // Lọc bỏ bản ghi có ngày null
-                .collect(Collectors.toMap(
-                        data -> {
-                            // Xử lý cả Date và LocalDate
-                            if (data[0] instanceof java.sql.Date) {
-                                return ((java.sql.Date) data[0]).toLocalDate().toString();
-                            } else if (data[0] instanceof java.time.LocalDate) {
-                                return ((java.time.LocalDate) data[0]).toString();
-                            } else {
-                                return LocalDate.now().toString(); // Fallback
-                            }
-                        },
-                        data -> {
-                            int usageCount = data[1] != null ? ((Number) data[1]).intValue() : 0;
-                            BigDecimal sales = data[2] != null ? (BigDecimal) data[2] : BigDecimal.ZERO;
-                            return new DailyUsageStats(usageCount, sales);
-                        }
-                ));
-    }
-
-    private String determineEffectiveness(Double redemptionRate) {
-        if (redemptionRate == null) return "KHÔNG XÁC ĐỊNH";
-
-        if (redemptionRate >= 70) {
-            return "HIỆU QUẢ CAO";
-        } else if (redemptionRate >= 40) {
-            return "HIỆU QUẢ";
-        } else if (redemptionRate >= 20) {
-            return "TRUNG BÌNH";
-        } else {
-            return "THẤP";
-        }
-    }
-
-    private VoucherPerformanceDTO calculatePerformanceStats(Voucher voucher) {
-        VoucherPerformanceDTO stats = new VoucherPerformanceDTO();
-
-        stats.setRedemptionCount(voucher.getUsageCount());
-        stats.setTotalDiscount(calculateTotalDiscount(voucher));
-        stats.setTotalSales(calculateTotalSales(voucher));
-
-        if (voucher.getMaxUsage() != null) {
-            stats.setRemainingUsage(voucher.getMaxUsage() - voucher.getUsageCount());
-        }
-
-        if (voucher.getMaxUsage() != null && voucher.getMaxUsage() > 0) {
-            double rate = (double) voucher.getUsageCount() / voucher.getMaxUsage() * 100;
-            stats.setRedemptionRate(Math.round(rate * 100.0) / 100.0);
-        } else {
-            stats.setRedemptionRate(null);
-        }
-
-        return stats;
-    }
-
-
-    private BigDecimal calculateTotalDiscount(Voucher voucher) {
-        // Chỉ tính các đơn ở trạng thái Completed
-        List<VoucherRedemption> reds = voucherRedemptionRepository.findAllByVoucher_Id(voucher.getId());
-        BigDecimal sum = BigDecimal.ZERO;
-        for (VoucherRedemption r : reds) {
-            Order o = orderOnlineRepository.findById(r.getOrderId()).orElse(null);
-            if (o != null && "Completed".equalsIgnoreCase(o.getOrderStatus())) {
-                sum = sum.add(r.getDiscountAmount() == null ? BigDecimal.ZERO : r.getDiscountAmount());
-            }
-        }
-        return sum;
-    }
-
-    private BigDecimal calculateTotalSales(Voucher voucher) {
-        // Chỉ tính các đơn ở trạng thái Completed
-        List<VoucherRedemption> reds = voucherRedemptionRepository.findAllByVoucher_Id(voucher.getId());
-        BigDecimal sum = BigDecimal.ZERO;
-        for (VoucherRedemption r : reds) {
-            Order o = orderOnlineRepository.findById(r.getOrderId()).orElse(null);
-            if (o != null && "Completed".equalsIgnoreCase(o.getOrderStatus())) {
-                // Doanh thu trước giảm = final + discount
-                BigDecimal finalAmt = o.getFinalAmount() == null ? BigDecimal.ZERO : o.getFinalAmount();
-                BigDecimal disc = r.getDiscountAmount() == null ? BigDecimal.ZERO : r.getDiscountAmount();
-                sum = sum.add(finalAmt.add(disc));
-            }
-        }
-        return sum;
-    }
-
-    private BigDecimal calculateTotalProfit(Voucher voucher) {
-        // Lấy danh sách đơn hàng đã sử dụng voucher này
-        List<VoucherRedemption> redemptions = voucherRedemptionRepository.findAllByVoucher_Id(voucher.getId());
-        
-        BigDecimal totalProfit = BigDecimal.ZERO;
-        
-        for (VoucherRedemption redemption : redemptions) {
-            // Lấy đơn hàng
-            Order order = orderOnlineRepository.findById(redemption.getOrderId()).orElse(null);
-            if (order != null && "Completed".equalsIgnoreCase(order.getOrderStatus())) {
-                // Tính lợi nhuận cho từng order item
-                for (OrderItem item : order.getOrderItems()) {
-                    // Giá bán = giá tại thời điểm mua
-                    BigDecimal sellingPrice = item.getPriceAtPurchase();
-                    // Giá nhập = giá nhập của product variant
-                    BigDecimal costPrice = item.getVariant().getCostPrice();
-                    
-                    if (sellingPrice != null && costPrice != null) {
-                        // Lợi nhuận = (giá bán - giá nhập) * số lượng
-                        BigDecimal itemProfit = sellingPrice.subtract(costPrice).multiply(BigDecimal.valueOf(item.getQuantity()));
-                        totalProfit = totalProfit.add(itemProfit);
-                    }
-                }
-            }
-        }
-        
-        return totalProfit;
-    }
-
-    private ChartData prepareChartData(Voucher voucher) {
-        // Lấy dữ liệu thô từ database
-        List<Object[]> rawData = voucherRedemptionRepository.findDailyUsageWithSalesByVoucherId(voucher.getId());
-
-        // Tạo đối tượng ChartData
-        ChartData chartData = new ChartData();
-        chartData.setLabels(new ArrayList<>());
-        chartData.setUsageCounts(new ArrayList<>());
-        chartData.setSalesData(new ArrayList<>());
-        chartData.setProfitData(new ArrayList<>());
-        chartData.setDisplayLabels(new ArrayList<>());
-
-        // Sắp xếp dữ liệu theo ngày tăng dần
-        rawData.sort(Comparator.comparing(
-                data -> ((java.sql.Date) data[0]).toLocalDate()
-        ));
-
-        // Định dạng ngày tháng
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM");
-
-        for (Object[] data : rawData) {
-            if (data[0] == null) continue; // Bỏ qua nếu không có ngày
-
-            LocalDate date = ((java.sql.Date) data[0]).toLocalDate();
-            int usageCount = data[1] != null ? ((Number) data[1]).intValue() : 0;
-            BigDecimal sales = data[2] != null ? (BigDecimal) data[2] : BigDecimal.ZERO;
-
-            // Lọc doanh thu theo đơn Completed
-            sales = filterSalesByCompletedOnDate(voucher, date, sales);
-            // Lợi nhuận chỉ tính đơn Completed trong ngày này
-            BigDecimal dailyProfit = calculateDailyProfit(voucher, date);
-
-            // Định dạng hiển thị
-            String formattedDate = date.format(formatter);
-            String displayLabel = String.format("%s: %d lượt", formattedDate, usageCount);
-
-            // Thêm dữ liệu vào biểu đồ
-            chartData.getLabels().add(date.toString());
-            chartData.getUsageCounts().add(usageCount);
-            chartData.getSalesData().add(sales);
-            chartData.getProfitData().add(dailyProfit);
-            chartData.getDisplayLabels().add(displayLabel);
-        }
-
-        return chartData;
-    }
-
-    private BigDecimal calculateDailyProfit(Voucher voucher, LocalDate date) {
-        // Lấy danh sách đơn hàng đã sử dụng voucher này trong ngày cụ thể
-        List<VoucherRedemption> redemptions = voucherRedemptionRepository.findAllByVoucher_Id(voucher.getId());
-        
-        BigDecimal dailyProfit = BigDecimal.ZERO;
-        
-        for (VoucherRedemption redemption : redemptions) {
-            // Lấy đơn hàng tương ứng
-            Order order = orderOnlineRepository.findById(redemption.getOrderId()).orElse(null);
-            if (order == null) {
-                continue;
-            }
-            // Xác định ngày áp dụng: ưu tiên appliedAt, fallback orderDate
-            LocalDate appliedDate = redemption.getAppliedAt() != null
-                    ? redemption.getAppliedAt().toLocalDate()
-                    : (order.getOrderDate() != null ? order.getOrderDate().toLocalDate() : null);
-            if (appliedDate == null || !appliedDate.equals(date) || !"Completed".equalsIgnoreCase(order.getOrderStatus())) {
-                continue;
-            }
-            // Tính lợi nhuận cho từng order item
-            for (OrderItem item : order.getOrderItems()) {
-                BigDecimal sellingPrice = item.getPriceAtPurchase();
-                BigDecimal costPrice = item.getVariant().getCostPrice();
-                
-                if (sellingPrice != null && costPrice != null) {
-                    BigDecimal itemProfit = sellingPrice.subtract(costPrice).multiply(BigDecimal.valueOf(item.getQuantity()));
-                    dailyProfit = dailyProfit.add(itemProfit);
-                }
-            }
-        }
-        
-        return dailyProfit;
-    }
-
-    private BigDecimal filterSalesByCompletedOnDate(Voucher voucher, LocalDate date, BigDecimal rawSales) {
-        // Tính lại sales cho ngày này: chỉ cộng đơn Completed
-        List<VoucherRedemption> redemptions = voucherRedemptionRepository.findAllByVoucher_Id(voucher.getId());
-        BigDecimal sales = BigDecimal.ZERO;
-        for (VoucherRedemption r : redemptions) {
-            Order o = orderOnlineRepository.findById(r.getOrderId()).orElse(null);
-            if (o == null) continue;
-            LocalDate applied = r.getAppliedAt() != null ? r.getAppliedAt().toLocalDate() : (o.getOrderDate() != null ? o.getOrderDate().toLocalDate() : null);
-            if (applied == null) continue;
-            if (applied.equals(date) && "Completed".equalsIgnoreCase(o.getOrderStatus())) {
-                BigDecimal finalAmt = o.getFinalAmount() == null ? BigDecimal.ZERO : o.getFinalAmount();
-                BigDecimal disc = r.getDiscountAmount() == null ? BigDecimal.ZERO : r.getDiscountAmount();
-                sales = sales.add(finalAmt.add(disc));
-            }
-        }
-        return sales;
-    }
-
     public String getProductName(Integer id) {
         String productName = productRepository.findById(id).get().getProductName();
         return productName;
@@ -560,7 +333,7 @@ public class VoucherService1 {
         return userName;
     }
     public String getCategooryrName(Integer id) {
-        String categoryName = categoryRepository.findById(id).get().getName();
+        String categoryName = referenceDataRegistry.require(ReferenceType.CATEGORY, id).name();
         return categoryName;
     }
 
@@ -803,6 +576,7 @@ public class VoucherService1 {
         }
 
         voucherRepository.save(existingVoucher);
+        voucherEligibilityIndex.markStale();
     }
 
     @Transactional
@@ -817,6 +591,7 @@ public class VoucherService1 {
         voucher.setIsActive(false);
         voucher.setUpdatedAt(LocalDateTime.now());
         voucherRepository.save(voucher);
+        voucherEligibilityIndex.markStale();
     }
 
 
@@ -857,6 +632,16 @@ public class VoucherService1 {
      */
     @Transactional
     public Map<String, Object> applyVoucher(String code, Order order, Integer userId) {
+        return applyVoucher(code, order, userId, null);
+    }
+
+    /**
+     * Áp dụng voucher vào đơn hàng, dùng lượt đã giữ chỗ nếu có (xem reserveVoucher)
+     *
+     * @param reservationToken null hoặc đã hết hạn thì tranh lượt như bình thường
+     */
+    @Transactional
+    public Map<String, Object> applyVoucher(String code, Order order, Integer userId, UUID reservationToken) {
         try {
             System.out.println("🔍 Bắt đầu áp dụng voucher với mã: " + code);
 
@@ -868,20 +653,13 @@ public class VoucherService1 {
             System.out.println("✅ Đã qua kiểm tr a điều kiện");
 
             System.out.println("🔍 Tính toán số tiền giảm giá");
-            BigDecimal discountAmount = calculateDiscountAmount(
-                    order.getSubTotalAmount(),
-                    voucher,
-                    order.getShippingFee()
-            );
-            System.out.println("✅ Số tiền giảm ban đầu: " + discountAmount);
-
-            discountAmount = applyDiscountCap(discountAmount, voucher, order.getSubTotalAmount(), order.getShippingFee());
+            BigDecimal discountAmount = cappedDiscount(voucher, order.getSubTotalAmount(), order.getShippingFee());
             System.out.println("✅ Số tiền giảm sau khi giới hạn: " + discountAmount);
 
 
-                System.out.println("🔍 Cập nhật lượt sử dụng cho userId: " + userId);
-                updateVoucherUsage(voucher, userId);
-                System.out.println("✅ Đã cập nhật lượt sử dụng");
+            System.out.println("🔍 Cập nhật lượt sử dụng cho userId: " + userId);
+            updateVoucherUsage(voucher, userId, reservationToken);
+            System.out.println("✅ Đã cập nhật lượt sử dụng");
 
             System.out.println("🔍 Lưu lịch sử áp dụng voucher");
             saveRedemptionRecord(voucher, order, userId, discountAmount);
@@ -923,10 +701,7 @@ public class VoucherService1 {
         System.out.println("Discount value: " + voucher.getDiscountValue());
         System.out.println("Max discount amount: " + voucher.getMaxDiscountAmount());
         
-        BigDecimal discountAmount = calculateDiscountAmount(subtotal, voucher, shippingFee);
-        System.out.println("Initial discount amount: " + discountAmount);
-        
-        discountAmount = applyDiscountCap(discountAmount, voucher, subtotal, shippingFee);
+        BigDecimal discountAmount = cappedDiscount(voucher, subtotal, shippingFee);
         System.out.println("Final discount amount: " + discountAmount);
         System.out.println("=== End calculateDiscountedAmount ===");
         
@@ -941,8 +716,7 @@ public class VoucherService1 {
         System.out.println("ShippingFee: " + shippingFee);
 
         Voucher voucher = getVoucherByCode(code);
-        BigDecimal discountAmount = calculateDiscountAmount(subtotal, voucher, shippingFee);
-        discountAmount = applyDiscountCap(discountAmount, voucher, subtotal, shippingFee);
+        BigDecimal discountAmount = cappedDiscount(voucher, subtotal, shippingFee);
 
         System.out.println("Final discount amount: " + discountAmount);
         System.out.println("=== End calculateAmountAfterDiscout ===");
@@ -976,31 +750,27 @@ public class VoucherService1 {
             throw new IllegalArgumentException("Cần đăng nhập để sử dung voucher");
         }
 
-        try {
-            List<Voucher> activeVouchers = voucherRepository.findAllByIsActive(true);
-            System.out.println("Found " + activeVouchers.size() + " active vouchers");
-
-            List<VoucherSummaryDTO> result = activeVouchers.stream()
-                    .map(voucher -> {
-                        try {
-                            return buildVoucherSummary(voucher, userId, productIds, orderTotal);
-                        } catch (Exception e) {
-                            System.out.println("Error building voucher summary for voucher " + voucher.getId() + ": " + e.getMessage());
-                            e.printStackTrace();
-                            return null;
-                        }
-                    })
-                    .filter(dto -> dto != null)
-                    .collect(Collectors.toList());
+        // Tra giỏ hàng một lần, kiểm tra từng voucher trong bộ nhớ (xem VoucherEligibilityIndex)
+        VoucherEligibilityIndex.Cart cart = voucherEligibilityIndex.resolveCart(userId, productIds);
+        boolean missingVariants = !cart.missingVariants().isEmpty();
+        if (missingVariants) {
+            log.warn("Không tìm thấy biến thể sản phẩm ID = {}", cart.missingVariants());
+        }
 
-            System.out.println("Returning " + result.size() + " voucher summaries");
-            System.out.println("=== End getAvailableVoucherSummariesForUser ===");
-            return result;
-        } catch (Exception e) {
-            System.out.println("Error in getAvailableVoucherSummariesForUser: " + e.getMessage());
-            e.printStackTrace();
-            throw e;
+        LocalDateTime now = LocalDateTime.now();
+        List<VoucherSummaryDTO> result = new ArrayList<>();
+        for (VoucherEligibilityIndex.VoucherRule rule : voucherEligibilityIndex.activeRules()) {
+            // Biến thể không tồn tại: voucher chưa dùng không kiểm tra được nên bị bỏ khỏi danh sách,
+            // voucher user đã dùng vẫn hiện "Đã sử dụng" (như khi kiểm tra từng voucher trước đây)
+            if (missingVariants && !cart.usedVoucherIds().contains(rule.getId())) {
+                continue;
+            }
+            result.add(buildVoucherSummary(rule, cart, orderTotal, now));
         }
+
+        System.out.println("Returning " + result.size() + " voucher summaries");
+        System.out.println("=== End getAvailableVoucherSummariesForUser ===");
+        return result;
     }
 
     /**
@@ -1028,56 +798,41 @@ public class VoucherService1 {
     /**
      * Xây dựng DTO tóm tắt cho danh sách voucher
      *
-     * @param voucher Đối tượng voucher
-     * @param userId ID người dùng
-     * @param productIds Danh sách ID sản phẩm
+     * @param rule Điều kiện đã biên dịch của voucher
+     * @param cart Giỏ hàng đã tra cứu
      * @param orderTotal Tổng giá trị đơn hàng
+     * @param now Thời điểm kiểm tra
      * @return DTO tóm tắt thông tin voucher
      */
-    private VoucherSummaryDTO buildVoucherSummary(Voucher voucher, Integer userId,
-                                                  List<Integer> productIds, BigDecimal orderTotal) {
+    private VoucherSummaryDTO buildVoucherSummary(VoucherEligibilityIndex.VoucherRule rule,
+                                                  VoucherEligibilityIndex.Cart cart,
+                                                  BigDecimal orderTotal, LocalDateTime now) {
+        VoucherSummaryDTO dto = new VoucherSummaryDTO();
+        dto.setId(rule.getId());
+        dto.setCode(rule.getCode());
+        // Sử dụng name thực sự của voucher
+        dto.setName(rule.getName() != null ? rule.getName() : rule.getDescription());
+        dto.setStartDate(rule.getStartDate());
+        dto.setEndDate(rule.getEndDate());
 
-        System.out.println("Building voucher summary for voucher ID: " + voucher.getId());
+        boolean isUsed = cart.usedVoucherIds().contains(rule.getId());
+        dto.setUsedStatus(isUsed ? "Đã sử dụng" : "Chưa sử dụng");
 
-        try {
-            VoucherSummaryDTO dto = new VoucherSummaryDTO();
-            dto.setId(voucher.getId());
-            dto.setCode(voucher.getCode());
-            // Sử dụng name thực sự của voucher
-            dto.setName(voucher.getName() != null ? voucher.getName() : voucher.getDescription());
-            dto.setStartDate(voucher.getStartDate());
-            dto.setEndDate(voucher.getEndDate());
-
-            System.out.println("Checking if voucher is used by user...");
-            boolean isUsed = isVoucherUsedByUser(voucher, userId);
-            dto.setUsedStatus(isUsed ? "Đã sử dụng" : "Chưa sử dụng");
-            System.out.println("Voucher used by user: " + isUsed);
-
-            if (isUsed) {
-                dto.setEligible(false);
-                dto.setStatus("Đã sử dụng");
+        if (isUsed) {
+            dto.setEligible(false);
+            dto.setStatus("Đã sử dụng");
+        } else {
+            VoucherEligibilityResult result = rule.evaluate(cart, orderTotal, now);
+            dto.setEligible(result.isEligible());
 
+            if (result.isEligible()) {
+                dto.setStatus("Áp dụng được");
             } else {
-                System.out.println("Checking voucher eligibility...");
-                VoucherEligibilityResult result = checkVoucherEligibility(voucher, userId, productIds, orderTotal);
-                dto.setEligible(result.isEligible());
-
-                if (result.isEligible()) {
-                    dto.setStatus("Áp dụng được");
-                } else {
-                    String reason = String.join("; ", result.getFailureReasons());
-                    dto.setStatus("Không áp dụng: " + reason);
-                }
-                System.out.println("Voucher eligible: " + result.isEligible());
+                String reason = String.join("; ", result.getFailureReasons());
+                dto.setStatus("Không áp dụng: " + reason);
             }
-
-            System.out.println("Built voucher summary successfully");
-            return dto;
-        } catch (Exception e) {
-            System.out.println("Error building voucher summary: " + e.getMessage());
-            e.printStackTrace();
-            throw e;
         }
+        return dto;
     }
 
     /**
@@ -1342,21 +1097,20 @@ public class VoucherService1 {
      * @return Số tiền được giảm
      * @throws IllegalArgumentException nếu loại giảm giá không hợp lệ
      */
-    private BigDecimal calculateDiscountAmount(BigDecimal orderTotal, Voucher voucher, BigDecimal shippingFee) {
+    private Money calculateDiscountAmount(Money orderTotal, Voucher voucher, Money shippingFee) {
         System.out.println("=== calculateDiscountAmount ===");
         System.out.println("Order total: " + orderTotal);
         System.out.println("Discount type: " + voucher.getDiscountType());
         System.out.println("Discount value: " + voucher.getDiscountValue());
         
-        BigDecimal result;
+        Money result;
         switch (voucher.getDiscountType()) {
             case PERCENT:
-                BigDecimal percent = voucher.getDiscountValue().divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                result = orderTotal.multiply(percent);
+                result = orderTotal.percentOf(Money.rateOf(voucher.getDiscountValue()));
                 System.out.println("Percent calculation: " + voucher.getDiscountValue() + "% of " + orderTotal + " = " + result);
                 return result;
             case FIXED_AMOUNT:
-                result = voucher.getDiscountValue();
+                result = Money.of(voucher.getDiscountValue());
                 System.out.println("Fixed amount: " + result);
                 return result;
             case FREE_SHIPPING:
@@ -1376,28 +1130,28 @@ public class VoucherService1 {
      * @param orderTotal Tổng giá trị đơn hàng
      * @return Số tiền giảm giá sau khi áp giới hạn
      */
-    private BigDecimal applyDiscountCap(BigDecimal discount, Voucher voucher, BigDecimal orderTotal, BigDecimal shippingFee) {
+    private Money applyDiscountCap(Money discount, Voucher voucher, Money orderTotal, Money shippingFee) {
         System.out.println("=== applyDiscountCap ===");
         System.out.println("Initial discount: " + discount);
         System.out.println("Max discount amount: " + voucher.getMaxDiscountAmount());
         System.out.println("Order total: " + orderTotal);
         
         if (voucher.getDiscountType() == DiscountType.PERCENT && voucher.getMaxDiscountAmount() != null) {
-            BigDecimal oldDiscount = discount;
-            discount = discount.min(voucher.getMaxDiscountAmount());
+            Money oldDiscount = discount;
+            discount = discount.min(Money.of(voucher.getMaxDiscountAmount()));
             System.out.println("PERCENT cap applied: " + oldDiscount + " -> " + discount);
         }
         if (voucher.getDiscountType() == DiscountType.FREE_SHIPPING) {
 
-            BigDecimal maxShippingDiscount = voucher.getMaxDiscountAmount() != null
-                    ? voucher.getMaxDiscountAmount()
+            Money maxShippingDiscount = voucher.getMaxDiscountAmount() != null
+                    ? Money.of(voucher.getMaxDiscountAmount())
                     : shippingFee;
 
             discount = shippingFee.min(maxShippingDiscount);
             System.out.println("FREE_SHIPPING cap applied: " + discount);
         }
         
-        BigDecimal finalDiscount = discount.min(orderTotal);
+        Money finalDiscount = discount.min(orderTotal);
         System.out.println("Final cap (min with order total): " + discount + " -> " + finalDiscount);
         System.out.println("=== End applyDiscountCap ===");
         
@@ -1405,51 +1159,83 @@ public class VoucherService1 {
     }
 
     /**
-     * Cập nhật lượt sử dụng voucher
+     * Số tiền giảm của voucher sau giới hạn, tính bằng Money và chỉ đổi sang BigDecimal khi trả ra
+     */
+    private BigDecimal cappedDiscount(Voucher voucher, BigDecimal subtotal, BigDecimal shippingFee) {
+        Money orderTotal = Money.of(subtotal);
+        Money shipping = Money.of(shippingFee);
+        Money discount = calculateDiscountAmount(orderTotal, voucher, shipping);
+        log.debug("Initial discount amount: {}", discount);
+        return applyDiscountCap(discount, voucher, orderTotal, shipping).toBigDecimal();
+    }
+
+    /**
+     * Cập nhật lượt sử dụng voucher bằng UPDATE có điều kiện (xem VoucherRedeemer)
+     * Các kiểm tra trước đó chỉ để báo lỗi sớm, hai đơn đồng thời vẫn không thể cùng dùng lượt cuối
      *
      * @param voucher Voucher được sử dụng
      * @param userId ID người dùng
+     * @param reservationToken giữ chỗ của checkout, có thể null
+     * @throws RuntimeException nếu voucher vừa hết lượt hoặc user vừa dùng voucher ở đơn khác
      */
-    private void updateVoucherUsage(Voucher voucher, Integer userId) {
-        incrementVoucherUsageCount(voucher);
-        updateUserVoucherUsage(voucher, userId);
+    private void updateVoucherUsage(Voucher voucher, Integer userId, UUID reservationToken) {
+        switch (voucherRedeemer.redeem(voucher.getId(), userId, reservationToken)) {
+            case EXHAUSTED -> throw new RuntimeException(ERR_MAX_USAGE_REACHED + voucher.getMaxUsage());
+            case ALREADY_USED -> throw new RuntimeException(ERR_USER_USAGE_LIMIT);
+            case REDEEMED -> {
+                if (reservationToken == null) {
+                    voucherEligibilityIndex.recordRedemption(voucher.getId());
+                } else {
+                    // Dùng giữ chỗ thì tổng lượt đã chiếm không đổi, giữ chỗ hết hạn thì tăng như bình thường
+                    voucherEligibilityIndex.markStale();
+                }
+                voucherAnalytics.invalidate(voucher.getId());
+            }
+        }
     }
 
     /**
-     * Tăng số lượt sử dụng của voucher
+     * Giữ một lượt voucher cho checkout đang diễn ra (hết hạn sau voucher.reservation.ttl)
      *
-     * @param voucher Voucher được sử dụng
+     * @param code Mã voucher
+     * @param keycloakId user đang đăng nhập (subject của JWT)
+     * @return giữ chỗ, truyền token vào applyVoucher khi tạo đơn
+     * @throws RuntimeException nếu voucher không hợp lệ, user đã dùng voucher hoặc voucher đã hết lượt
+     *                          (tính cả lượt đang được giữ)
      */
-    private void incrementVoucherUsageCount(Voucher voucher) {
-        int newCount = voucher.getUsageCount() + 1;
-        voucher.setUsageCount(newCount);
-        // Tự động vô hiệu hóa nếu hết lượt sử dụng
-        Integer maxUsage = voucher.getMaxUsage();
-        if (maxUsage != null && newCount >= maxUsage) {
-            voucher.setIsActive(false);
-        }
-        voucherRepository.save(voucher);
+    public VoucherRedeemer.Reservation reserveVoucher(String code, UUID keycloakId) {
+        Integer userId = resolveUserId(keycloakId);
+        Voucher voucher = getVoucherByCode(code);
+        validateBasicConditions(voucher);
+        VoucherRedeemer.ReservationResult result = voucherRedeemer.reserve(voucher.getId(), userId);
+        return switch (result.outcome()) {
+            case EXHAUSTED -> throw new RuntimeException(ERR_MAX_USAGE_REACHED + voucher.getMaxUsage());
+            case ALREADY_USED -> throw new RuntimeException(ERR_USER_USAGE_LIMIT);
+            case REDEEMED -> {
+                voucherEligibilityIndex.markStale();
+                yield result.reservation();
+            }
+        };
     }
 
     /**
-     * Cập nhật lượt sử dụng của người dùng
+     * Trả lại lượt đang giữ khi checkout bị hủy
      *
-     * @param voucher Voucher được sử dụng
-     * @param userId ID người dùng
+     * @param keycloakId user đang đăng nhập, chỉ trả được giữ chỗ của chính mình
+     * @return false nếu giữ chỗ không thuộc user, đã được dùng hoặc đã hết hạn
      */
-    private void updateUserVoucherUsage(Voucher voucher, Integer userId) {
-        // Kiểm tra nếu userId là null -> không xử lý, thoát hàm
-        if (userId == null) {
-            return;
+    public boolean releaseVoucherReservation(UUID token, UUID keycloakId) {
+        boolean released = voucherRedeemer.release(token, resolveUserId(keycloakId));
+        if (released) {
+            voucherEligibilityIndex.markStale();
         }
+        return released;
+    }
 
-        VoucherUser userUsage = voucherUserRepository.findByVoucherIdAndUserId(voucher.getId(), userId);
-        if (userUsage == null) {
-            userUsage = new VoucherUser(null, userId, voucher, 1);
-        } else {
-            userUsage.setUsageCount(userUsage.getUsageCount() + 1);
-        }
-        voucherUserRepository.save(userUsage);
+    private Integer resolveUserId(UUID keycloakId) {
+        return userRepository.findByKeycloakId(keycloakId)
+                .map(AppUser::getAppUserId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
     /**
@@ -0,0 +1,54 @@
+package org.yellowcat.backend.online_selling.voucher.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.*;
+import org.yellowcat.backend.online_selling.voucher.VoucherRedeemer;
+import org.yellowcat.backend.online_selling.voucher.VoucherService1;
+import org.yellowcat.backend.online_selling.voucher.dto.VoucherReservationRequest;
+
+import java.util.UUID;
+
+/**
+ * Giữ chỗ voucher cho checkout của khách hàng đã đăng nhập, user luôn lấy từ JWT
+ */
+@RestController
+@RequestMapping("/api/voucher-reservations")
+@RequiredArgsConstructor
+public class VoucherReservationController {
+
+    private final VoucherService1 voucherService;
+
+    /**
+     * API giữ một lượt voucher cho checkout đang diễn ra
+     * POST /api/voucher-reservations
+     * Token trả về được gửi kèm đơn hàng (voucherReservationToken), hết hạn thì lượt tự được trả lại
+     */
+    @PostMapping
+    public ResponseEntity<?> reserveVoucher(@RequestBody VoucherReservationRequest request,
+                                            @AuthenticationPrincipal Jwt jwt) {
+        try {
+            VoucherRedeemer.Reservation reservation =
+                    voucherService.reserveVoucher(request.getVoucherCode(), UUID.fromString(jwt.getSubject()));
+            return ResponseEntity.ok(reservation);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Không thể giữ voucher: " + e.getMessage());
+        }
+    }
+
+    /**
+     * API trả lại lượt voucher đang giữ khi checkout bị hủy
+     * DELETE /api/voucher-reservations/{token}
+     */
+    @DeleteMapping("/{token}")
+    public ResponseEntity<?> releaseVoucherReservation(@PathVariable UUID token,
+                                                       @AuthenticationPrincipal Jwt jwt) {
+        if (!voucherService.releaseVoucherReservation(token, UUID.fromString(jwt.getSubject()))) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Giữ chỗ không tồn tại hoặc đã hết hạn");
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,8 @@
+package org.yellowcat.backend.online_selling.voucher.dto;
+
+import lombok.Data;
+
+@Data
+public class VoucherReservationRequest {
+    private String voucherCode;
+}
@@ -49,7 +49,8 @@ public class Voucher {
         @Column(name = "max_usage", nullable = false)
         private Integer maxUsage;
 
-        @Column(name = "usage_count", nullable = false)
+        // Chỉ VoucherRedeemer tăng bằng UPDATE có điều kiện, save() entity không ghi đè số lượt đã dùng
+        @Column(name = "usage_count", nullable = false, updatable = false)
         private Integer usageCount = 0;
 
         @Column(name = "min_order_value")
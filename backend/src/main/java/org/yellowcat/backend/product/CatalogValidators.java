@@ -0,0 +1,94 @@
+package org.yellowcat.backend.product;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.yellowcat.backend.product.promotionproduct.ActivePromotionIndex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Tính ETag / Last-Modified cho các endpoint catalog công khai mà không cần dựng response
+ * - Dữ liệu sản phẩm: version + changed_at của product_listing (trigger tăng version mỗi khi dòng được tính lại)
+ * - Giá khuyến mãi: priceVersion của ActivePromotionIndex (đổi khi qua mốc bắt đầu/kết thúc promotion)
+ * Cả hai đều suy ra từ database nên giống nhau giữa các instance backend
+ */
+@Component
+@RequiredArgsConstructor
+public class CatalogValidators {
+
+    private final ProductRepository productRepository;
+    private final ActivePromotionIndex promotionIndex;
+
+    /**
+     * ETag và thời điểm thay đổi gần nhất của một response
+     */
+    public record Validator(String etag, Instant lastModified) {
+    }
+
+    /**
+     * @return null nếu sản phẩm không tồn tại
+     */
+    public Validator forProduct(Integer productId) {
+        List<Object[]> rows = productRepository.findListingValidator(productId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] row = rows.get(0);
+        LocalDateTime now = LocalDateTime.now();
+        return new Validator(
+                "p" + productId + "-" + ((Number) row[0]).longValue() + "-" + promotionIndex.priceVersion(now),
+                latest((Timestamp) row[1], now));
+    }
+
+    /**
+     * Validator cho các danh sách đọc từ toàn bộ catalog (sản phẩm mới nhất, danh sách variant...)
+     * Đổi khi có sản phẩm được thêm, xóa hoặc tính lại
+     *
+     * @param scope phân biệt endpoint / tham số phân trang để ETag không trùng giữa các response khác nhau
+     */
+    public Validator forCatalog(String scope) {
+        Object[] row = productRepository.findCatalogValidator().get(0);
+        LocalDateTime now = LocalDateTime.now();
+        return new Validator(
+                scope + "-" + ((Number) row[0]).longValue() + "-" + row[1] + "-" + promotionIndex.priceVersion(now),
+                latest((Timestamp) row[2], now));
+    }
+
+    /**
+     * Validator tính sau khi đã có dữ liệu (response không xác định trước, vd: sản phẩm nổi bật)
+     * Không có Last-Modified vì nội dung phụ thuộc cả dữ liệu ngoài product_listing (đánh giá...)
+     */
+    public Validator forContent(String scope, Object... parts) {
+        return new Validator(
+                scope + "-" + digest(Arrays.deepToString(parts)) + "-"
+                        + promotionIndex.priceVersion(LocalDateTime.now()),
+                null);
+    }
+
+    // SHA-256 cắt còn 128 bit: đủ để dùng làm ETag mạnh, hash 32 bit dễ trùng giữa hai nội dung khác nhau
+    private static String digest(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Instant latest(Timestamp changedAt, LocalDateTime now) {
+        Instant priceChange = promotionIndex.lastPriceChange(now);
+        if (changedAt == null) {
+            return priceChange;
+        }
+        Instant dataChange = changedAt.toInstant();
+        return dataChange.isAfter(priceChange) ? dataChange : priceChange;
+    }
+}
@@ -0,0 +1,35 @@
+package org.yellowcat.backend.product;
+
+import org.yellowcat.backend.common.config_api.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Vị trí cuối của một trang lịch sử khi phân trang keyset theo (changed_at DESC, history_id DESC)
+ * Dùng chung cho products_history và product_variants_history
+ */
+public record HistoryCursor(LocalDateTime changedAt, Integer historyId) {
+
+    public String encode() {
+        String raw = changedAt + "|" + historyId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HistoryCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new BadRequestException("Cursor không hợp lệ");
+            }
+            return new HistoryCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    Integer.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BadRequestException("Cursor không hợp lệ", e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.yellowcat.backend.product;
+
+/**
+ * Phát ra khi dữ liệu hiển thị của một sản phẩm thay đổi (sản phẩm, biến thể, tồn kho, đánh giá)
+ * Các cache theo sản phẩm lắng nghe sau khi transaction commit để xóa entry tương ứng
+ */
+public record ProductChangedEvent(Integer productId) {
+}
@@ -3,15 +3,22 @@ package org.yellowcat.backend.product;
 import io.swagger.v3.oas.annotations.Operation;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.data.domain.Pageable;
+import org.yellowcat.backend.common.config_api.exception.BadRequestException;
+import org.yellowcat.backend.common.config_api.response.ConditionalGet;
+import org.yellowcat.backend.common.config_api.response.CursorPageResponse.CountMode;
 import org.yellowcat.backend.common.config_api.response.ResponseEntityBuilder;
 import org.yellowcat.backend.product.dto.*;
+import org.yellowcat.backend.product.rollback.ProductRollbackService;
+import org.yellowcat.backend.product.rollback.dto.ProductRollbackPreviewDTO;
 import org.yellowcat.backend.product.dto.LatestProductDTO;
 import org.yellowcat.backend.user.AppUser;
 import org.yellowcat.backend.user.AppUserService;
@@ -20,7 +27,10 @@ import org.yellowcat.backend.product.category.Category;
 import org.yellowcat.backend.product.category.CategoryRepository;
 import org.yellowcat.backend.product.brand.Brand;
 import org.yellowcat.backend.product.brand.BrandRepository;
+import org.yellowcat.backend.product.search.dto.FacetedSearchResult;
 
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -33,18 +43,35 @@ public class ProductController {
     private final AppUserService appUserService;
     private final CategoryRepository categoryRepository;
     private final BrandRepository brandRepository;
+    private final CatalogValidators catalogValidators;
+    private final ProductRollbackService rollbackService;
+
+    // Chính sách cache cho các endpoint công khai (client/CDN phải xác thực lại bằng ETag khi hết hạn)
+    private static final CacheControl DETAIL_CACHE = CacheControl.maxAge(Duration.ofSeconds(30)).cachePublic().mustRevalidate();
+    private static final CacheControl LATEST_CACHE = CacheControl.maxAge(Duration.ofSeconds(60)).cachePublic().mustRevalidate();
+    private static final CacheControl FEATURED_CACHE = CacheControl.noCache().cachePublic();
 
     public ProductController(ProductService productService, AppUserService appUserService, 
-                           CategoryRepository categoryRepository, BrandRepository brandRepository) {
+                           CategoryRepository categoryRepository, BrandRepository brandRepository,
+                           CatalogValidators catalogValidators, ProductRollbackService rollbackService) {
         this.productService = productService;
         this.appUserService = appUserService;
         this.categoryRepository = categoryRepository;
         this.brandRepository = brandRepository;
+        this.catalogValidators = catalogValidators;
+        this.rollbackService = rollbackService;
     }
     @GetMapping("/ai-overview")
-    @Operation(summary = "Get products overview for AI", description = "Returns optimized product data for AI to provide customer recommendations")
-    public ResponseEntity<?> getProductsOverviewForAI() {
+    @Operation(summary = "Get products overview for AI", description = "Returns optimized product data for AI to provide customer recommendations. With ?since=version (and the epoch of that response) only products changed after that version are returned, plus removed product ids")
+    public ResponseEntity<?> getProductsOverviewForAI(
+            @RequestParam(required = false) Long since,
+            @RequestParam(required = false) String epoch
+    ) {
         try {
+            // Có since: phản hồi theo phiên bản (delta); không có: danh sách đầy đủ như trước
+            if (since != null) {
+                return ResponseEntityBuilder.success(productService.getProductsOverviewForAISince(since, epoch));
+            }
             List<ProductOverviewForAIDTO> productsOverview = productService.getProductsOverviewForAI();
             return ResponseEntityBuilder.success(productsOverview);
         } catch (Exception e) {
@@ -81,10 +108,11 @@ public class ProductController {
 
     @GetMapping("/latest")
     @Operation(summary = "Get 3 latest products", description = "Returns the 3 most recently created products with full details including images for landing page slider")
-    public ResponseEntity<?> getLatest3Products() {
+    public ResponseEntity<?> getLatest3Products(WebRequest request) {
         try {
-            List<LatestProductDTO> latestProducts = productService.getLatest3Products();
-            return ResponseEntityBuilder.success(latestProducts);
+            CatalogValidators.Validator validator = catalogValidators.forCatalog("latest");
+            return ConditionalGet.respond(request, validator.etag(), validator.lastModified(), LATEST_CACHE,
+                    () -> ResponseEntityBuilder.success(productService.getLatest3Products()));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntityBuilder.error(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving latest products", e.getMessage());
@@ -93,13 +121,19 @@ public class ProductController {
 
     @GetMapping("/featured")
     @Operation(summary = "Get featured product", description = "Returns the best rated product or a random product for customer recommendations")
-    public ResponseEntity<?> getFeaturedProduct() {
+    public ResponseEntity<?> getFeaturedProduct(WebRequest request) {
         try {
             FeaturedProductDTO featuredProduct = productService.getTopRatedOrRandomProduct();
             if (featuredProduct == null) {
                 return ResponseEntityBuilder.notFound("No products available", "No active products found");
             }
-            return ResponseEntityBuilder.success(featuredProduct);
+            // Sản phẩm nổi bật phụ thuộc đánh giá và có thể chọn ngẫu nhiên: ETag tính từ nội dung sau khi truy vấn
+            CatalogValidators.Validator validator = catalogValidators.forContent("featured",
+                    featuredProduct.getProductId(), featuredProduct.getUpdatedAt(),
+                    featuredProduct.getAverageRating(), featuredProduct.getTotalReviews(),
+                    featuredProduct.getMinSalePrice(), featuredProduct.getTotalStock());
+            return ConditionalGet.respond(request, validator.etag(), validator.lastModified(), FEATURED_CACHE,
+                    ResponseEntityBuilder.success(featuredProduct));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntityBuilder.error(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving featured product", e.getMessage());
@@ -110,18 +144,69 @@ public class ProductController {
     @Operation(summary = "Get all products", description = "Returns a paginated list of products with detailed information")
     public ResponseEntity<?> getAllProducts(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean keyset,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "estimate") String count
     ) {
         try {
+            // Chế độ keyset: dùng cho infinite scroll, không OFFSET và không bắt buộc đếm tổng
+            if (keyset || cursor != null) {
+                return ResponseEntityBuilder.success(
+                        productService.getProductsByCursor(cursor, size, CountMode.from(count)));
+            }
             Pageable pageable = PageRequest.of(page, size);
             Page<ProductListItemDTO> productPage = productService.getProductsPaginated(pageable);
             return ResponseEntityBuilder.success(productPage);
+        } catch (BadRequestException e) {
+            return ResponseEntityBuilder.badRequest(e.getMessage(), "Invalid cursor");
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntityBuilder.error(HttpStatus.NOT_FOUND, "Error retrieving products", "Error retrieving products");
         }
     }
 
+    @GetMapping("/search")
+    @Operation(summary = "Search products", description = "Full-text product search, accent-insensitive with typo-tolerant fallback, ranked by relevance")
+    public ResponseEntity<?> searchProducts(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "10") int size
+    ) {
+        try {
+            Page<ProductListItemDTO> productPage = productService.searchProducts(q, page, size);
+            return ResponseEntityBuilder.success(productPage);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntityBuilder.error(HttpStatus.INTERNAL_SERVER_ERROR, "Error searching products", e.getMessage());
+        }
+    }
+
+    @GetMapping("/faceted-search")
+    @Operation(summary = "Faceted product search", description = "Returns a page of products plus per-facet counts (brand, category, color, size, price bucket); each facet is counted against the other active filters")
+    public ResponseEntity<?> facetedSearch(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer categoryId,
+            @RequestParam(required = false) Integer brandId,
+            @RequestParam(required = false) Integer materialId,
+            @RequestParam(required = false) Integer targetAudienceId,
+            @RequestParam(required = false) Integer colorId,
+            @RequestParam(required = false) Integer sizeId,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "12") int size
+    ) {
+        try {
+            FacetedSearchResult result = productService.searchFaceted(q, categoryId, brandId, materialId,
+                    targetAudienceId, colorId, sizeId, minPrice, maxPrice, page, size);
+            return ResponseEntityBuilder.success(result);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntityBuilder.error(HttpStatus.INTERNAL_SERVER_ERROR, "Error searching products", e.getMessage());
+        }
+    }
+
     @GetMapping("/management")
     @PreAuthorize("hasAnyAuthority('Admin_Web')")
     @Operation(summary = "Get all products", description = "Returns a paginated list of products with detailed information")
@@ -130,11 +215,20 @@ public class ProductController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(required = false) String search,
             @RequestParam(required = false) Integer categoryId,
-            @RequestParam(required = false) Integer brandId
+            @RequestParam(required = false) Integer brandId,
+            @RequestParam(defaultValue = "false") boolean keyset,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "estimate") String count
     ) {
         try {
+            if (keyset || cursor != null) {
+                return ResponseEntityBuilder.success(productService.getProductManagementByCursor(
+                        cursor, size, search, categoryId, brandId, CountMode.from(count)));
+            }
             Page<ProductListItemManagementDTO> productPage = productService.getProductManagement(page, size, search, categoryId, brandId);
             return ResponseEntityBuilder.success(productPage);
+        } catch (BadRequestException e) {
+            return ResponseEntityBuilder.badRequest(e.getMessage(), "Invalid cursor");
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntityBuilder.error(HttpStatus.NOT_FOUND, "Error retrieving products", "Error retrieving products");
@@ -142,14 +236,19 @@ public class ProductController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> getProductDetails(@PathVariable("id") Integer productId) {
-        ProductDetailDTO productDetail = productService.getProductDetailById(productId);
-
-        if (productDetail == null) {
+    public ResponseEntity<?> getProductDetails(@PathVariable("id") Integer productId, WebRequest request) {
+        CatalogValidators.Validator validator = catalogValidators.forProduct(productId);
+        if (validator == null) {
             return ResponseEntityBuilder.notFound("Product not found", "Product with id " + productId + " not found");
         }
 
-        return ResponseEntityBuilder.success(productDetail);
+        return ConditionalGet.respond(request, validator.etag(), validator.lastModified(), DETAIL_CACHE, () -> {
+            ProductDetailDTO productDetail = productService.getProductDetailById(productId);
+            if (productDetail == null) {
+                return ResponseEntityBuilder.notFound("Product not found", "Product with id " + productId + " not found");
+            }
+            return ResponseEntityBuilder.success(productDetail);
+        });
     }
 
     @DeleteMapping("/{id}")
@@ -207,20 +306,38 @@ public class ProductController {
             @PathVariable("historyId") Integer historyId
     ) {
         // Thực hiện rollback
-        productService.rollback(historyId);
+        ProductRollbackPreviewDTO result = rollbackService.apply(historyId);
 
-        return ResponseEntityBuilder.success("Rollback Product successfully!");
+        return ResponseEntityBuilder.success("Rollback Product successfully!", result);
+    }
+
+    @PreAuthorize("hasAnyAuthority('Admin_Web')")
+    @GetMapping("/rollback/{historyId}/preview")
+    @Operation(summary = "Preview product rollback", description = "Dry-run: field-level diff between a history group and the current product, nothing is written")
+    public ResponseEntity<?> previewRollbackProduct(
+            @PathVariable("historyId") Integer historyId
+    ) {
+        return ResponseEntityBuilder.success(rollbackService.preview(historyId));
     }
 
     @GetMapping("/product-history")
     @PreAuthorize("hasAnyAuthority('Admin_Web')")
     public ResponseEntity<?> getAllProductHistory(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean keyset,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "estimate") String count
     ) {
         try {
+            if (keyset || cursor != null) {
+                return ResponseEntityBuilder.success(
+                        productService.findProductHistoryByCursor(cursor, size, CountMode.from(count)));
+            }
             Page<ProductHistoryDto> productHistoryPage = productService.findAllProductHistory(size, page);
             return ResponseEntityBuilder.success(productHistoryPage);
+        } catch (BadRequestException e) {
+            return ResponseEntityBuilder.badRequest(e.getMessage(), "Invalid cursor");
         } catch (Exception e) {
             return ResponseEntityBuilder.error(HttpStatus.NOT_FOUND, "Error retrieving product history", "Error retrieving product history");
         }
@@ -231,11 +348,20 @@ public class ProductController {
     public ResponseEntity<?> getAllProductVariantHistoryByHistoryGroupId(
             @RequestParam("historyGroupId") UUID historyGroupId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean keyset,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "estimate") String count
     ) {
         try {
+            if (keyset || cursor != null) {
+                return ResponseEntityBuilder.success(productService.findVariantHistoryByCursor(
+                        historyGroupId, cursor, size, CountMode.from(count)));
+            }
             Page<ProductVariantHistoryDTO> productHistoryPage = productService.findAllByHistoryGroupId(historyGroupId, size, page);
             return ResponseEntityBuilder.success(productHistoryPage);
+        } catch (BadRequestException e) {
+            return ResponseEntityBuilder.badRequest(e.getMessage(), "Invalid cursor");
         } catch (Exception e) {
             return ResponseEntityBuilder.error(HttpStatus.NOT_FOUND, "Error retrieving product history", "Error retrieving product history");
         }
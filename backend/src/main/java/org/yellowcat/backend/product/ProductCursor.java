@@ -0,0 +1,40 @@
+package org.yellowcat.backend.product;
+
+import org.yellowcat.backend.common.config_api.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Vị trí cuối của một trang khi phân trang keyset theo (updated_at DESC, product_id DESC)
+ * Được mã hóa thành token opaque để client chỉ cần gửi lại nguyên văn
+ */
+public record ProductCursor(LocalDateTime updatedAt, Integer productId) {
+
+    public static ProductCursor of(Timestamp updatedAt, Integer productId) {
+        return new ProductCursor(updatedAt.toLocalDateTime(), productId);
+    }
+
+    public String encode() {
+        String raw = updatedAt + "|" + productId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ProductCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new BadRequestException("Cursor không hợp lệ");
+            }
+            return new ProductCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    Integer.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BadRequestException("Cursor không hợp lệ", e);
+        }
+    }
+}
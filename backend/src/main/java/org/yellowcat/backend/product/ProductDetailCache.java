@@ -0,0 +1,133 @@
+package org.yellowcat.backend.product;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.yellowcat.backend.product.dto.ProductDetailDTO;
+import org.yellowcat.backend.product.dto.ProductVariantDTO;
+import org.yellowcat.backend.product.promotion.PromotionChangedEvent;
+import org.yellowcat.backend.product.promotionproduct.ActivePromotionIndex;
+import org.yellowcat.backend.product.referencedata.ReferenceDataChangedEvent;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Cache ProductDetailDTO đã lắp ráp (giới hạn số lượng + TTL)
+ * - Xóa entry sau khi transaction commit: sửa/xóa/rollback sản phẩm, thay đổi biến thể/tồn kho, thay đổi promotion
+ * - Xóa toàn bộ khi brand, category, material, target audience thay đổi (ReferenceDataChangedEvent)
+ * - Entry tự hết hạn tại mốc promotion bắt đầu/kết thúc gần nhất, kể cả khi không có thao tác ghi nào
+ * - Metrics hit/miss/eviction qua Micrometer (cache.gets, cache.evictions, cache.size với cache=productDetail)
+ */
+@Component
+@Slf4j
+public class ProductDetailCache {
+
+    private final ActivePromotionIndex promotionIndex;
+    private final Cache<Integer, ProductDetailDTO> cache;
+
+    public ProductDetailCache(ActivePromotionIndex promotionIndex,
+                              MeterRegistry meterRegistry,
+                              @Value("${product.detail-cache.max-size:1000}") long maxSize,
+                              @Value("${product.detail-cache.ttl:PT10M}") Duration ttl) {
+        this.promotionIndex = promotionIndex;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new PromotionAwareExpiry(ttl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "productDetail");
+    }
+
+    public ProductDetailDTO get(Integer productId, Function<Integer, ProductDetailDTO> loader) {
+        // loader trả về null (không tìm thấy) thì không lưu vào cache
+        return cache.get(productId, loader);
+    }
+
+    public void invalidate(Integer productId) {
+        cache.invalidate(productId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        invalidate(event.productId());
+    }
+
+    // Chạy sau ActivePromotionIndex để lần load lại dùng index đã cập nhật
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPromotionChanged(PromotionChangedEvent event) {
+        // Không biết trước promotion ảnh hưởng sản phẩm nào, promotion thay đổi không thường xuyên
+        invalidateAll();
+        log.debug("Xóa cache chi tiết sản phẩm do promotion {} thay đổi", event.promotionId());
+    }
+
+    // Registry phát sự kiện sau khi commit (hoặc khi phát hiện thay đổi từ instance khác) nên nghe trực tiếp
+    @EventListener
+    public void onReferenceDataChanged(ReferenceDataChangedEvent event) {
+        switch (event.type()) {
+            // Entry chứa tên/logo brand, tên category và id material/target audience của sản phẩm
+            case BRAND, CATEGORY, MATERIAL, TARGET_AUDIENCE -> {
+                invalidateAll();
+                log.debug("Xóa cache chi tiết sản phẩm do dữ liệu tham chiếu {} thay đổi", event.type());
+            }
+            // Màu/size chỉ lưu id trong variant
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Thời gian sống = min(TTL, thời gian đến mốc promotion gần nhất của các variant)
+     */
+    private class PromotionAwareExpiry implements Expiry<Integer, ProductDetailDTO> {
+
+        private final long ttlNanos;
+
+        PromotionAwareExpiry(Duration ttl) {
+            this.ttlNanos = ttl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(Integer productId, ProductDetailDTO detail, long currentTime) {
+            List<ProductVariantDTO> variants = detail.getVariants();
+            if (variants == null || variants.isEmpty()) {
+                return ttlNanos;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime boundary = promotionIndex.nextBoundaryAfter(
+                    variants.stream().map(ProductVariantDTO::getVariantId).toList(), now);
+            if (boundary == null) {
+                return ttlNanos;
+            }
+            return Math.max(0, Math.min(ttlNanos, Duration.between(now, boundary).toNanos()));
+        }
+
+        @Override
+        public long expireAfterUpdate(Integer productId, ProductDetailDTO detail, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(productId, detail, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Integer productId, ProductDetailDTO detail, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
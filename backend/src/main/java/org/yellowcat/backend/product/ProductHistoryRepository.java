@@ -1,8 +1,43 @@
 package org.yellowcat.backend.product;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Repository
 public interface ProductHistoryRepository extends JpaRepository<ProductsHistory, Integer> {
+
+    // ==================== PHÂN TRANG KEYSET (changed_at DESC, history_id DESC) ====================
+    // Chỉ dùng Pageable để giới hạn số dòng (trang 0), không OFFSET
+
+    @EntityGraph(attributePaths = "changedBy")
+    @Query("SELECT h FROM ProductsHistory h ORDER BY h.changedAt DESC, h.historyId DESC")
+    List<ProductsHistory> findHistoryFirstPage(Pageable limit);
+
+    // changedAt <= cursor giúp planner giới hạn khoảng quét trên index và bỏ qua partition mới hơn
+    @EntityGraph(attributePaths = "changedBy")
+    @Query("""
+            SELECT h FROM ProductsHistory h
+            WHERE h.changedAt <= :changedAt
+              AND (h.changedAt < :changedAt OR h.historyId < :historyId)
+            ORDER BY h.changedAt DESC, h.historyId DESC
+            """)
+    List<ProductsHistory> findHistoryAfter(@Param("changedAt") LocalDateTime changedAt,
+                                           @Param("historyId") Integer historyId,
+                                           Pageable limit);
+
+    // Bảng partition không có thống kê ở bảng cha: cộng ước lượng của các partition, -1 nếu chưa ANALYZE
+    @Query(nativeQuery = true, value = """
+            SELECT CAST(COALESCE(SUM(c.reltuples) FILTER (WHERE c.reltuples >= 0), -1) AS BIGINT)
+            FROM pg_inherits i
+                     JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = CAST('products_history' AS regclass)
+            """)
+    long estimateRowCount();
 }
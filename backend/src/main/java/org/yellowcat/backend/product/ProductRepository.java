@@ -10,6 +10,8 @@ import org.yellowcat.backend.product.dto.ProductListItemDTO;
 import org.yellowcat.backend.product.dto.ProductListItemManagementDTO;
 import org.yellowcat.backend.product.dto.LatestProductDTO;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -19,34 +21,25 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
     List<Product> findByBrandId(Integer brandId);
     List<Product> findByCategoryId(Integer categoryId);
 
+    // Đọc từ read model product_listing (được trigger cập nhật khi variant/tồn kho/promotion thay đổi)
     @Query(nativeQuery = true, value = """
             SELECT
-                p.product_id,
-                p.product_name,
-                COALESCE(p.purchases, 0) AS purchases,
-                c.category_name,
-                b.brand_name,
-                b.logo_public_id,
-                COALESCE(CAST((SELECT MIN(pv.price) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS NUMERIC), 0.00) AS min_price,
-                COALESCE(CAST((SELECT MIN(pv.sale_price) FROM Product_Variants pv WHERE pv.product_id = p.product_id AND pv.sale_price > 0.00 AND pv.sale_price IS NOT NULL) AS NUMERIC), 0.00) AS min_sale_price,
-                COALESCE(CAST((SELECT SUM(pv.quantity_in_stock) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS BIGINT), 0) AS total_stock,
-                p.thumbnail,
-                STRING_AGG(DISTINCT s.size_name, ',') AS sizes_str,
-                STRING_AGG(DISTINCT co.color_name, ',') AS colors_str
-            FROM Products p
-            LEFT JOIN Categories c ON p.category_id = c.category_id
-            LEFT JOIN Brands b ON p.brand_id = b.brand_id
-            JOIN (
-                SELECT pv.product_id, COALESCE(SUM(pv.quantity_in_stock), 0) AS calculated_total_stock
-                FROM Product_Variants pv
-                GROUP BY pv.product_id
-            ) pv_sum ON p.product_id = pv_sum.product_id
-            LEFT JOIN Product_Variants pv ON p.product_id = pv.product_id
-            LEFT JOIN sizes s ON pv.size_id = s.size_id
-            LEFT JOIN colors co ON pv.color_id = co.color_id
-            WHERE p.is_active = true AND pv_sum.calculated_total_stock <= :threshold
-            GROUP BY p.product_id, c.category_id, b.brand_id, pv_sum.calculated_total_stock
-            ORDER BY pv_sum.calculated_total_stock ASC
+                pl.product_id,
+                pl.product_name,
+                COALESCE(pl.purchases, 0) AS purchases,
+                pl.category_name,
+                pl.brand_name,
+                pl.logo_public_id,
+                COALESCE(pl.min_price, 0.00) AS min_price,
+                COALESCE(pl.min_sale_price, 0.00) AS min_sale_price,
+                COALESCE(pl.total_stock, 0) AS total_stock,
+                pl.thumbnail,
+                pl.sizes_str,
+                pl.colors_str,
+                pl.updated_at
+            FROM product_listing pl
+            WHERE pl.is_active = true AND pl.variant_count > 0 AND COALESCE(pl.total_stock, 0) <= :threshold
+            ORDER BY COALESCE(pl.total_stock, 0) ASC
             LIMIT 10
             """)
     List<ProductListItemDTO> findLowStockProducts(@Param("threshold") int threshold);
@@ -54,27 +47,22 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
 
     @Query(nativeQuery = true, value = """
             SELECT
-                p.product_id,
-                p.product_name,
-                p.purchases,
-                c.category_name,
-                b.brand_name,
-                b.logo_public_id,
-                (SELECT MIN(pv.price) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS min_price,
-                (SELECT MIN(pv.sale_price) FROM Product_Variants pv WHERE pv.product_id = p.product_id AND pv.sale_price > 0.00 AND pv.sale_price IS NOT NULL) AS min_sale_price,
-                (SELECT SUM(pv.quantity_in_stock) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS total_stock,
-                p.thumbnail,
-                STRING_AGG(DISTINCT s.size_name, ',') AS sizes_str,
-                STRING_AGG(DISTINCT co.color_name, ',') AS colors_str
-            FROM Products p
-            LEFT JOIN Categories c ON p.category_id = c.category_id
-            LEFT JOIN Brands b ON p.brand_id = b.brand_id
-            LEFT JOIN Product_Variants pv ON p.product_id = pv.product_id
-            LEFT JOIN sizes s ON pv.size_id = s.size_id
-            LEFT JOIN colors co ON pv.color_id = co.color_id
-            WHERE p.is_active = true AND p.purchases > 0
-            GROUP BY p.product_id, c.category_id, b.brand_id
-            ORDER BY p.purchases DESC
+                pl.product_id,
+                pl.product_name,
+                pl.purchases,
+                pl.category_name,
+                pl.brand_name,
+                pl.logo_public_id,
+                pl.min_price,
+                pl.min_sale_price,
+                pl.total_stock,
+                pl.thumbnail,
+                pl.sizes_str,
+                pl.colors_str,
+                pl.updated_at
+            FROM product_listing pl
+            WHERE pl.is_active = true AND pl.purchases > 0
+            ORDER BY pl.purchases DESC
             LIMIT 5
             """)
     List<ProductListItemDTO> findTop5BestSellingProducts();
@@ -133,29 +121,24 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
 
     @Query(nativeQuery = true, value =
             "SELECT " +
-                    "    p.product_id, " +
-                    "    p.product_name, " +
-                    "    p.purchases, " +
-                    "    c.category_name, " +
-                    "    b.brand_name, " +
-                    "    b.logo_public_id, " +
-                    "    (SELECT MIN(pv.price) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS min_price, " +
-                    "    (SELECT MIN(pv.sale_price) FROM Product_Variants pv WHERE pv.product_id = p.product_id AND pv.sale_price > 0.00 AND pv.sale_price IS NOT NULL) AS min_sale_price, " +
-                    "    (SELECT SUM(pv.quantity_in_stock) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS total_stock, " +
-                    "    p.thumbnail, " +
-                    "    STRING_AGG(DISTINCT s.size_name, ',') AS sizes_str, " +
-                    "    STRING_AGG(DISTINCT co.color_name, ',') AS colors_str " +
-                    "FROM Products p " +
-                    "LEFT JOIN Categories c ON p.category_id = c.category_id " +
-                    "LEFT JOIN Brands b ON p.brand_id = b.brand_id " +
-                    "LEFT JOIN Product_Variants pv ON p.product_id = pv.product_id " +
-                    "LEFT JOIN sizes s ON pv.size_id = s.size_id " +
-                    "LEFT JOIN colors co ON pv.color_id = co.color_id " +
-                    "WHERE p.is_active = true " +
-                    "GROUP BY p.product_id, c.category_id, b.brand_id " +
-                    "ORDER BY p.product_id " +
+                    "    pl.product_id, " +
+                    "    pl.product_name, " +
+                    "    pl.purchases, " +
+                    "    pl.category_name, " +
+                    "    pl.brand_name, " +
+                    "    pl.logo_public_id, " +
+                    "    pl.min_price, " +
+                    "    pl.min_sale_price, " +
+                    "    pl.total_stock, " +
+                    "    pl.thumbnail, " +
+                    "    pl.sizes_str, " +
+                    "    pl.colors_str, " +
+                    "    pl.updated_at " +
+                    "FROM product_listing pl " +
+                    "WHERE pl.is_active = true " +
+                    "ORDER BY pl.product_id " +
                     "LIMIT :pageSize OFFSET :offset",
-            countQuery = "SELECT COUNT(*) FROM Products")
+            countQuery = "SELECT COUNT(*) FROM product_listing")
     List<ProductListItemDTO> findAllProduct(@Param("pageSize") int pageSize, @Param("offset") int offset);
 
     @Query(nativeQuery = true, value =
@@ -229,6 +212,175 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
             @Param("categoryId") Integer categoryId,
             @Param("brandId") Integer brandId);
 
+    // ==================== PHÂN TRANG KEYSET (updated_at DESC, product_id DESC) ====================
+
+    @Query(nativeQuery = true, value = """
+            SELECT
+                pl.product_id,
+                pl.product_name,
+                pl.purchases,
+                pl.category_name,
+                pl.brand_name,
+                pl.logo_public_id,
+                pl.min_price,
+                pl.min_sale_price,
+                pl.total_stock,
+                pl.thumbnail,
+                pl.sizes_str,
+                pl.colors_str,
+                pl.updated_at
+            FROM product_listing pl
+            WHERE pl.is_active = true
+            ORDER BY pl.updated_at DESC, pl.product_id DESC
+            LIMIT :limit
+            """)
+    List<ProductListItemDTO> findProductListingFirstPage(@Param("limit") int limit);
+
+    @Query(nativeQuery = true, value = """
+            SELECT
+                pl.product_id,
+                pl.product_name,
+                pl.purchases,
+                pl.category_name,
+                pl.brand_name,
+                pl.logo_public_id,
+                pl.min_price,
+                pl.min_sale_price,
+                pl.total_stock,
+                pl.thumbnail,
+                pl.sizes_str,
+                pl.colors_str,
+                pl.updated_at
+            FROM product_listing pl
+            WHERE pl.is_active = true
+              AND (pl.updated_at, pl.product_id) < (:cursorUpdatedAt, :cursorProductId)
+            ORDER BY pl.updated_at DESC, pl.product_id DESC
+            LIMIT :limit
+            """)
+    List<ProductListItemDTO> findProductListingAfter(
+            @Param("cursorUpdatedAt") LocalDateTime cursorUpdatedAt,
+            @Param("cursorProductId") Integer cursorProductId,
+            @Param("limit") int limit);
+
+    @Query(nativeQuery = true, value = """
+            SELECT
+                pl.product_id,
+                pl.product_name,
+                pl.purchases,
+                pl.category_name,
+                pl.brand_name,
+                pl.logo_public_id,
+                pl.min_price,
+                pl.min_sale_price,
+                pl.total_stock,
+                pl.thumbnail,
+                pl.sizes_str,
+                pl.colors_str,
+                pl.updated_at
+            FROM product_listing pl
+            WHERE pl.product_id IN (:productIds)
+            """)
+    List<ProductListItemDTO> findProductListingByIds(@Param("productIds") Collection<Integer> productIds);
+
+    @Query(nativeQuery = true, value = "SELECT COUNT(*) FROM product_listing WHERE is_active = true")
+    long countActiveProductListing();
+
+    @Query(nativeQuery = true, value = """
+            SELECT
+                p.product_id,
+                p.product_name,
+                p.description,
+                p.purchases,
+                p.created_at AS product_created_at,
+                p.updated_at AS product_updated_at,
+                p.is_active,
+                c.category_id,
+                c.category_name,
+                b.brand_id,
+                b.brand_name,
+                b.brand_info,
+                b.logo_public_id,
+                (SELECT MIN(pv.price) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS min_price,
+                (SELECT MIN(pv.cost_price) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS min_cost_price,
+                (SELECT SUM(pv.quantity_in_stock) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS total_stock,
+                (SELECT pv.image_url
+                 FROM Product_Variants pv
+                 WHERE pv.product_id = p.product_id AND pv.image_url IS NOT NULL
+                 ORDER BY pv.variant_id LIMIT 1) AS thumbnail
+            FROM Products p
+            LEFT JOIN Categories c ON p.category_id = c.category_id
+            LEFT JOIN Brands b ON p.brand_id = b.brand_id
+            WHERE
+                (:search IS NULL OR LOWER(p.product_name) LIKE LOWER(CONCAT('%', :search, '%')))
+                AND (:categoryId IS NULL OR p.category_id = :categoryId)
+                AND (:brandId IS NULL OR p.brand_id = :brandId)
+            ORDER BY p.updated_at DESC, p.product_id DESC
+            LIMIT :limit
+            """)
+    List<ProductListItemManagementDTO> findProductManagementFirstPage(
+            @Param("limit") int limit,
+            @Param("search") String search,
+            @Param("categoryId") Integer categoryId,
+            @Param("brandId") Integer brandId);
+
+    @Query(nativeQuery = true, value = """
+            SELECT
+                p.product_id,
+                p.product_name,
+                p.description,
+                p.purchases,
+                p.created_at AS product_created_at,
+                p.updated_at AS product_updated_at,
+                p.is_active,
+                c.category_id,
+                c.category_name,
+                b.brand_id,
+                b.brand_name,
+                b.brand_info,
+                b.logo_public_id,
+                (SELECT MIN(pv.price) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS min_price,
+                (SELECT MIN(pv.cost_price) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS min_cost_price,
+                (SELECT SUM(pv.quantity_in_stock) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS total_stock,
+                (SELECT pv.image_url
+                 FROM Product_Variants pv
+                 WHERE pv.product_id = p.product_id AND pv.image_url IS NOT NULL
+                 ORDER BY pv.variant_id LIMIT 1) AS thumbnail
+            FROM Products p
+            LEFT JOIN Categories c ON p.category_id = c.category_id
+            LEFT JOIN Brands b ON p.brand_id = b.brand_id
+            WHERE
+                (:search IS NULL OR LOWER(p.product_name) LIKE LOWER(CONCAT('%', :search, '%')))
+                AND (:categoryId IS NULL OR p.category_id = :categoryId)
+                AND (:brandId IS NULL OR p.brand_id = :brandId)
+                AND (p.updated_at, p.product_id) < (:cursorUpdatedAt, :cursorProductId)
+            ORDER BY p.updated_at DESC, p.product_id DESC
+            LIMIT :limit
+            """)
+    List<ProductListItemManagementDTO> findProductManagementAfter(
+            @Param("cursorUpdatedAt") LocalDateTime cursorUpdatedAt,
+            @Param("cursorProductId") Integer cursorProductId,
+            @Param("limit") int limit,
+            @Param("search") String search,
+            @Param("categoryId") Integer categoryId,
+            @Param("brandId") Integer brandId);
+
+    // ==================== VALIDATOR CHO CONDITIONAL GET ====================
+
+    // [version, changed_at] của một sản phẩm
+    @Query(nativeQuery = true, value = "SELECT version, changed_at FROM product_listing WHERE product_id = :productId")
+    List<Object[]> findListingValidator(@Param("productId") Integer productId);
+
+    // [count, sum(version), max(changed_at)]: đổi khi bất kỳ dòng nào được tính lại, thêm hoặc xóa
+    @Query(nativeQuery = true, value = """
+            SELECT COUNT(*), CAST(COALESCE(SUM(version), 0) AS TEXT), MAX(changed_at)
+            FROM product_listing
+            """)
+    List<Object[]> findCatalogValidator();
+
+    // Ước lượng số dòng từ thống kê của planner, -1 nếu bảng chưa được ANALYZE
+    @Query(nativeQuery = true, value = "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = CAST(:tableName AS regclass)")
+    long estimateRowCount(@Param("tableName") String tableName);
+
     @Transactional
     @Modifying
     @Query(nativeQuery = true, value =
@@ -297,7 +449,8 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
     List<Object[]> findVariantPromotions(@Param("variantId") Integer variantId);
 
     // Query tối ưu cho AI - lấy tổng quan sản phẩm
-    @Query(nativeQuery = true, value = """
+    // Phần SELECT/FROM dùng chung cho toàn catalog và cho một nhóm sản phẩm (cập nhật snapshot tăng dần)
+    String AI_OVERVIEW_SELECT = """
             SELECT 
                 p.product_id,
                 p.product_name,
@@ -322,8 +475,8 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
                 STRING_AGG(DISTINCT s.size_name, ', ' ORDER BY s.size_name) as available_sizes,
                 
                 -- Đánh giá trung bình
-                COALESCE(ROUND(AVG(r.rating), 1), 0.0) as average_rating,
-                COALESCE(COUNT(r.review_id), 0) as total_reviews,
+                COALESCE(ROUND(MAX(rs.average_rating), 1), 0.0) as average_rating,
+                COALESCE(MAX(rs.review_count), 0) as total_reviews,
                 
                 -- Trạng thái
                 p.is_active,
@@ -349,14 +502,28 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
             LEFT JOIN product_variants pv ON p.product_id = pv.product_id
             LEFT JOIN colors co ON pv.color_id = co.color_id
             LEFT JOIN sizes s ON pv.size_id = s.size_id
-            LEFT JOIN reviews r ON p.product_id = r.product_id
-            WHERE p.is_active = TRUE
+            LEFT JOIN product_rating_summary rs ON p.product_id = rs.product_id
+            """;
+
+    String AI_OVERVIEW_GROUP_BY = """
             GROUP BY p.product_id, p.product_name, p.description, b.brand_name, c.category_name, 
                      ta.audience_name, m.material_name, p.purchases, p.is_active, p.is_featured
+            """;
+
+    @Query(nativeQuery = true, value = AI_OVERVIEW_SELECT + """
+            WHERE p.is_active = TRUE
+            """ + AI_OVERVIEW_GROUP_BY + """
             ORDER BY p.is_featured DESC, p.purchases DESC, p.product_id
             """)
     List<Object[]> findProductsOverviewForAI();
 
+    // Sản phẩm không còn active không có trong kết quả
+    @Query(nativeQuery = true, value = AI_OVERVIEW_SELECT + """
+            WHERE p.is_active = TRUE
+              AND p.product_id IN (:productIds)
+            """ + AI_OVERVIEW_GROUP_BY)
+    List<Object[]> findProductsOverviewForAIByIds(@Param("productIds") Collection<Integer> productIds);
+
     // Query lấy 3 sản phẩm mới nhất với đầy đủ thông tin
     @Query(nativeQuery = true, value = """
             SELECT
@@ -406,8 +573,20 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
             """)
     List<Object[]> findLatest3Products();
 
-    // Query lấy sản phẩm được đánh giá tốt nhất hoặc sản phẩm ngẫu nhiên
+    // Query lấy sản phẩm được đánh giá tốt nhất (đọc từ product_rating_summary), cùng điểm thì ưu tiên nhiều lượt mua
+    // Chọn sản phẩm trước rồi mới join variant để không phải gom nhóm toàn bộ bảng reviews
     @Query(nativeQuery = true, value = """
+            WITH pick AS (
+                SELECT p.product_id
+                FROM Products p
+                LEFT JOIN product_rating_summary rs ON rs.product_id = p.product_id
+                WHERE p.is_active = true
+                ORDER BY COALESCE(rs.average_rating, 0) DESC,
+                         COALESCE(rs.review_count, 0) DESC,
+                         p.purchases DESC,
+                         p.product_id
+                LIMIT 1
+            )
             SELECT
                 p.product_id,
                 p.product_name,
@@ -430,8 +609,8 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
                 COALESCE(CAST((SELECT MIN(pv.price) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS NUMERIC), 0.00) AS min_price,
                 COALESCE(CAST((SELECT MIN(pv.sale_price) FROM Product_Variants pv WHERE pv.product_id = p.product_id AND pv.sale_price > 0.00 AND pv.sale_price IS NOT NULL) AS NUMERIC), 0.00) AS min_sale_price,
                 COALESCE(CAST((SELECT SUM(pv.quantity_in_stock) FROM Product_Variants pv WHERE pv.product_id = p.product_id) AS BIGINT), 0) AS total_stock,
-                COALESCE(ROUND(AVG(r.rating), 1), 0.0) as average_rating,
-                COALESCE(COUNT(r.review_id), 0) as total_reviews,
+                COALESCE(ROUND(rs.average_rating, 1), 0.0) as average_rating,
+                COALESCE(rs.review_count, 0) as total_reviews,
                 pv.variant_id,
                 pv.sku,
                 co.color_name,
@@ -443,7 +622,9 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
                 pv.image_url,
                 pv.weight,
                 pv.cost_price
-            FROM Products p
+            FROM pick
+            JOIN Products p ON p.product_id = pick.product_id
+            LEFT JOIN product_rating_summary rs ON rs.product_id = p.product_id
             LEFT JOIN Categories c ON p.category_id = c.category_id
             LEFT JOIN Brands b ON p.brand_id = b.brand_id
             LEFT JOIN Materials m ON p.material_id = m.material_id
@@ -451,21 +632,7 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
             LEFT JOIN Product_Variants pv ON p.product_id = pv.product_id
             LEFT JOIN Colors co ON pv.color_id = co.color_id
             LEFT JOIN Sizes s ON pv.size_id = s.size_id
-            LEFT JOIN Reviews r ON p.product_id = r.product_id
-            WHERE p.is_active = true
-            GROUP BY p.product_id, p.product_name, p.description, p.purchases, p.is_active, p.created_at, p.updated_at,
-                     p.category_id, c.category_name, p.brand_id, b.brand_name, b.brand_info, b.logo_public_id,
-                     p.material_id, m.material_name, p.target_audience_id, ta.audience_name, p.thumbnail,
-                     pv.variant_id, pv.sku, co.color_name, s.size_name, pv.price, pv.sale_price,
-                     pv.quantity_in_stock, pv.sold, pv.image_url, pv.weight, pv.cost_price
-            ORDER BY 
-                CASE 
-                    WHEN COUNT(r.review_id) > 0 THEN AVG(r.rating) 
-                    ELSE 0 
-                END DESC,
-                p.purchases DESC,
-                RANDOM()
-            LIMIT 1
+            ORDER BY pv.variant_id
             """)
     List<Object[]> findTopRatedOrRandomProduct();
 
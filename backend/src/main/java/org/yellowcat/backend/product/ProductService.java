@@ -1,11 +1,14 @@
 package org.yellowcat.backend.product;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.*;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.yellowcat.backend.common.config_api.response.CursorPageResponse;
+import org.yellowcat.backend.common.config_api.response.CursorPageResponse.CountMode;
 import org.yellowcat.backend.product.brand.Brand;
 import org.yellowcat.backend.product.brand.BrandRepository;
 import org.yellowcat.backend.product.category.Category;
@@ -19,6 +22,17 @@ import org.yellowcat.backend.product.material.MaterialRepository;
 import org.yellowcat.backend.product.productvariant.ProductVariant;
 import org.yellowcat.backend.product.productvariant.ProductVariantRepository;
 import org.yellowcat.backend.product.productvariant.ProductVariantAutoPromotionService;
+import org.yellowcat.backend.product.productvariant.ProductVariantPricingService;
+import org.yellowcat.backend.product.aioverview.ProductOverviewDeltaDTO;
+import org.yellowcat.backend.product.aioverview.ProductOverviewSnapshot;
+import org.yellowcat.backend.product.history.ProductHistoryWriter;
+import org.yellowcat.backend.product.productvariant.SkuAllocator;
+import org.yellowcat.backend.product.referencedata.ReferenceDataRegistry;
+import org.yellowcat.backend.product.referencedata.ReferenceType;
+import org.yellowcat.backend.product.search.ProductFacetService;
+import org.yellowcat.backend.product.search.ProductSearchService;
+import org.yellowcat.backend.product.search.ProductSearchService.SearchHits;
+import org.yellowcat.backend.product.search.dto.FacetedSearchResult;
 import org.yellowcat.backend.product.size.Size;
 import org.yellowcat.backend.product.size.SizeRepository;
 import org.yellowcat.backend.product.targetaudience.TargetAudience;
@@ -30,12 +44,17 @@ import org.yellowcat.backend.product.dto.VariantPromosDTO;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ProductService {
 
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    // history_id phá hòa khi nhiều dòng cùng changed_at (cùng một lần ghi)
+    private static final Sort HISTORY_ORDER = Sort.by("changedAt").descending().and(Sort.by("historyId").descending());
+
     private final ProductRepository productRepository;
     private final BrandRepository brandRepository;
     private final CategoryRepository categoryRepository;
@@ -49,6 +68,15 @@ public class ProductService {
     private final ProductVariantHistoryRepository productVariantHistoryRepository;
     private final AppUserRepository appUserRepository;
     private final ProductVariantAutoPromotionService autoPromotionService;
+    private final ProductVariantPricingService pricingService;
+    private final ProductSearchService productSearchService;
+    private final ProductFacetService productFacetService;
+    private final ProductDetailCache productDetailCache;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final SkuAllocator skuAllocator;
+    private final ProductHistoryWriter historyWriter;
+    private final ProductOverviewSnapshot productOverviewSnapshot;
 
     public List<ProductListItemDTO> getLowStockProducts(int threshold) {
         return productRepository.findLowStockProducts(threshold);
@@ -59,9 +87,7 @@ public class ProductService {
         List<ProductListItemDTO> topProducts = productRepository.findTop5BestSellingProducts();
 
         // 🔥 ÁP DỤNG PROMOTION REAL-TIME CHO TOP SELLING PRODUCTS
-        return topProducts.stream()
-                .map(this::refreshPromotionForProductListItem)
-                .collect(Collectors.toList());
+        return refreshPromotionForProductListItems(topProducts);
     }
 
     /**
@@ -69,42 +95,11 @@ public class ProductService {
      * Trả về thông tin ngắn gọn nhưng đầy đủ để AI có thể đưa ra lời khuyên tốt nhất
      */
     public List<ProductOverviewForAIDTO> getProductsOverviewForAI() {
-        List<Object[]> results = productRepository.findProductsOverviewForAI();
-
-        return results.stream().map(row -> {
-            return new ProductOverviewForAIDTO(
-                    (Integer) row[0],  // productId
-                    (String) row[1],   // productName
-                    (String) row[2],   // description
-                    (String) row[3],   // brandName
-                    (String) row[4],   // categoryName
-                    (String) row[5],   // targetAudience
-                    (String) row[6],   // materialName
-
-                    // Thông tin giá cả
-                    (BigDecimal) row[7],  // minPrice
-                    (BigDecimal) row[8],  // maxPrice
-                    (BigDecimal) row[9],  // minSalePrice
-
-                    // Thông tin tồn kho và bán hàng
-                    ((Number) row[10]).intValue(),   // totalStock
-                    ((Number) row[11]).intValue(),  // totalSold
-                    (Integer) row[12], // purchases
-
-                    // Thông tin màu sắc và kích thước
-                    (String) row[13],  // availableColors
-                    (String) row[14],  // availableSizes
-
-                    // Thông tin đánh giá
-                    ((Number) row[15]).doubleValue(), // averageRating
-                    ((Number) row[16]).intValue(),    // totalReviews
-
-                    // Trạng thái
-                    (Boolean) row[17], // isActive
-                    (Boolean) row[18], // isFeatured
-                    (Boolean) row[19]  // hasPromotion
-            );
-        }).collect(Collectors.toList());
+        return productOverviewSnapshot.all();
+    }
+
+    public ProductOverviewDeltaDTO getProductsOverviewForAISince(Long since, String epoch) {
+        return productOverviewSnapshot.since(since, epoch);
     }
 
     /**
@@ -252,9 +247,7 @@ public class ProductService {
         List<ProductListItemDTO> productDTOs = productRepository.findAllProduct(pageSize, offset);
 
         // 🔥 ÁP DỤNG PROMOTION REAL-TIME CHO DANH SÁCH SẢN PHẨM
-        productDTOs = productDTOs.stream()
-                .map(this::refreshPromotionForProductListItem)
-                .collect(Collectors.toList());
+        productDTOs = refreshPromotionForProductListItems(productDTOs);
 
         long totalProducts = productRepository.countTotalProducts();
 
@@ -285,12 +278,159 @@ public class ProductService {
         return new PageImpl<>(productDTOs, pageable, totalProducts);
     }
 
+    // ==================== PHÂN TRANG KEYSET ====================
+
+    /**
+     * Danh sách sản phẩm theo cursor (updated_at DESC, product_id DESC), không dùng OFFSET
+     *
+     * @param cursor    token nextCursor của trang trước, null cho trang đầu
+     * @param countMode cách tính tổng số sản phẩm (không đếm / ước lượng / chính xác)
+     */
+    public CursorPageResponse<ProductListItemDTO> getProductsByCursor(String cursor, int size, CountMode countMode) {
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        ProductCursor after = cursor == null || cursor.isBlank() ? null : ProductCursor.decode(cursor);
+
+        // Lấy dư 1 dòng để biết còn trang sau hay không
+        List<ProductListItemDTO> productDTOs = after == null
+                ? productRepository.findProductListingFirstPage(pageSize + 1)
+                : productRepository.findProductListingAfter(after.updatedAt(), after.productId(), pageSize + 1);
+
+        boolean hasNext = productDTOs.size() > pageSize;
+        if (hasNext) {
+            productDTOs = new ArrayList<>(productDTOs.subList(0, pageSize));
+        }
+        String nextCursor = null;
+        if (hasNext) {
+            ProductListItemDTO last = productDTOs.get(productDTOs.size() - 1);
+            nextCursor = ProductCursor.of(last.getUpdatedAt(), last.getProductId()).encode();
+        }
+
+        // 🔥 ÁP DỤNG PROMOTION REAL-TIME CHO DANH SÁCH SẢN PHẨM
+        productDTOs = refreshPromotionForProductListItems(productDTOs);
+
+        Long total = null;
+        boolean estimated = false;
+        if (countMode == CountMode.EXACT) {
+            total = productRepository.countActiveProductListing();
+        } else if (countMode == CountMode.ESTIMATE) {
+            total = estimateOrCount("product_listing", productRepository::countActiveProductListing);
+            estimated = true;
+        }
+
+        return new CursorPageResponse<>(productDTOs, pageSize, nextCursor, hasNext, total, estimated);
+    }
+
+    /**
+     * Danh sách sản phẩm cho trang quản lý theo cursor (updated_at DESC, product_id DESC)
+     * Khi có filter, chế độ ước lượng không áp dụng được nên không trả tổng số
+     */
+    public CursorPageResponse<ProductListItemManagementDTO> getProductManagementByCursor(
+            String cursor, int size, String search, Integer categoryId, Integer brandId, CountMode countMode) {
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        ProductCursor after = cursor == null || cursor.isBlank() ? null : ProductCursor.decode(cursor);
+
+        List<ProductListItemManagementDTO> productDTOs = after == null
+                ? productRepository.findProductManagementFirstPage(pageSize + 1, search, categoryId, brandId)
+                : productRepository.findProductManagementAfter(after.updatedAt(), after.productId(), pageSize + 1,
+                search, categoryId, brandId);
+
+        boolean hasNext = productDTOs.size() > pageSize;
+        if (hasNext) {
+            productDTOs = new ArrayList<>(productDTOs.subList(0, pageSize));
+        }
+        String nextCursor = null;
+        if (hasNext) {
+            ProductListItemManagementDTO last = productDTOs.get(productDTOs.size() - 1);
+            nextCursor = ProductCursor.of(last.getUpdatedAt(), last.getProductId()).encode();
+        }
+
+        boolean filtered = search != null || categoryId != null || brandId != null;
+        Long total = null;
+        boolean estimated = false;
+        if (countMode == CountMode.EXACT) {
+            total = filtered
+                    ? productRepository.countFilteredProducts(search, categoryId, brandId)
+                    : productRepository.countTotalProducts();
+        } else if (countMode == CountMode.ESTIMATE && !filtered) {
+            total = estimateOrCount("products", productRepository::countTotalProducts);
+            estimated = true;
+        }
+
+        return new CursorPageResponse<>(productDTOs, pageSize, nextCursor, hasNext, total, estimated);
+    }
+
+    /**
+     * Tìm kiếm sản phẩm theo từ khóa, kết quả sắp theo độ liên quan
+     * Không phân biệt dấu, tự chuyển sang so khớp gần đúng khi gõ sai chính tả
+     */
+    public Page<ProductListItemDTO> searchProducts(String keyword, int page, int size) {
+        // Endpoint công khai: giới hạn kích thước trang, OFFSET không âm và không tràn int
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        Pageable pageable = PageRequest.of(Math.max(0, Math.min(page, Integer.MAX_VALUE / pageSize)), pageSize);
+        SearchHits hits = productSearchService.search(keyword, pageable.getPageSize(), (int) pageable.getOffset());
+        if (hits.productIds().isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageable, hits.total());
+        }
+
+        // Giữ đúng thứ tự xếp hạng
+        Map<Integer, ProductListItemDTO> byId = productRepository.findProductListingByIds(hits.productIds()).stream()
+                .collect(Collectors.toMap(ProductListItemDTO::getProductId, dto -> dto));
+        List<ProductListItemDTO> productDTOs = hits.productIds().stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        // 🔥 ÁP DỤNG PROMOTION REAL-TIME CHO DANH SÁCH SẢN PHẨM
+        productDTOs = refreshPromotionForProductListItems(productDTOs);
+
+        return new PageImpl<>(productDTOs, pageable, hits.total());
+    }
+
+    /**
+     * Tìm kiếm có facet: trang sản phẩm + số lượng theo từng facet trong một lần truy vấn
+     */
+    public FacetedSearchResult searchFaceted(String keyword, Integer categoryId, Integer brandId, Integer materialId,
+                                             Integer targetAudienceId, Integer colorId, Integer sizeId,
+                                             BigDecimal minPrice, BigDecimal maxPrice, int page, int size) {
+        FacetedSearchResult result = productFacetService.search(keyword, categoryId, brandId, materialId,
+                targetAudienceId, colorId, sizeId, minPrice, maxPrice, page, Math.max(1, size));
+
+        // 🔥 ÁP DỤNG PROMOTION REAL-TIME CHO DANH SÁCH SẢN PHẨM
+        refreshPromotionForProductListItems(result.content());
+        return result;
+    }
+
+    // Thống kê của planner chưa có (bảng chưa ANALYZE) thì đếm chính xác
+    private long estimateOrCount(String tableName, LongSupplier exactCount) {
+        long estimate = productRepository.estimateRowCount(tableName);
+        return estimate >= 0 ? estimate : exactCount.getAsLong();
+    }
+
     public ProductDetailDTO getProductDetailById(Integer productId) {
+        return productDetailCache.get(productId, this::loadProductDetail);
+    }
+
+    private ProductDetailDTO loadProductDetail(Integer productId) {
         List<Object[]> results = productRepository.findProductDetailRawByProductId(productId);
         if (results == null || results.isEmpty()) {
             return null; // Or throw NotFoundException
         }
 
+        // 🔥 KIỂM TRA PROMOTION REAL-TIME CHO TẤT CẢ VARIANT TRONG MỘT LẦN
+        Map<Integer, BigDecimal> priceByVariantId = new HashMap<>();
+        for (Object[] row : results) {
+            if (row[14] != null) {
+                priceByVariantId.put((Integer) row[14], (BigDecimal) row[18]);
+            }
+        }
+        Map<Integer, BigDecimal> salePrices;
+        try {
+            salePrices = pricingService.getEffectiveSalePrices(priceByVariantId);
+        } catch (Exception e) {
+            // Trong trường hợp lỗi, salePrice = null để đảm bảo an toàn
+            salePrices = Collections.emptyMap();
+        }
+
         ProductDetailDTO productDetailDTO = null;
         List<ProductVariantDTO> variants = new ArrayList<>();
 
@@ -314,24 +454,14 @@ public class ProductService {
             }
 
             if (row[14] != null) {
-                // Tạo ProductVariant entity để kiểm tra promotion
-                ProductVariant variantEntity = new ProductVariant();
-                variantEntity.setVariantId((Integer) row[14]);
-                variantEntity.setSku((String) row[15]);
-                variantEntity.setPrice((BigDecimal) row[18]);
-                variantEntity.setSalePrice((BigDecimal) row[19]); // Giá từ database
-
-                // 🔥 KIỂM TRA VÀ CẬP NHẬT PROMOTION REAL-TIME
-                autoPromotionService.refreshPromotionForDisplay(variantEntity);
-
-                // Tạo DTO với salePrice đã được cập nhật
+                // Tạo DTO với salePrice đã được tính theo promotion đang active
                 ProductVariantDTO variantDTO = new ProductVariantDTO();
                 variantDTO.setVariantId((Integer) row[14]);
                 variantDTO.setSku((String) row[15]);
                 variantDTO.setColorId((Integer) row[16]);
                 variantDTO.setSizeId((Integer) row[17]);
                 variantDTO.setPrice((BigDecimal) row[18]);
-                variantDTO.setSalePrice(variantEntity.getSalePrice()); // Sử dụng salePrice đã được refresh
+                variantDTO.setSalePrice(salePrices.get((Integer) row[14]));
                 variantDTO.setStockLevel((Integer) row[20]);
                 variantDTO.setSold((Integer) row[21]);
                 variantDTO.setImageUrl((String) row[22]);
@@ -350,15 +480,11 @@ public class ProductService {
 
     @Transactional
     public void createProduct(ProductWithVariantsRequestDTO productDto, AppUser appUser) {
-        // Tìm Brand & Category (có thể throw nếu không tồn tại)
-        Brand brand = brandRepository.findById(productDto.getBrandId())
-                .orElseThrow(() -> new RuntimeException("Brand not found"));
-        Category category = categoryRepository.findById(productDto.getCategoryId())
-                .orElseThrow(() -> new RuntimeException("Category not found"));
-        Material material = materialRepository.findById(productDto.getMaterialId())
-                .orElseThrow(() -> new RuntimeException("Material not found"));
-        TargetAudience targetAudience = targetAudienceRepository.findById(productDto.getTargetAudienceId())
-                .orElseThrow(() -> new RuntimeException("Target Audience not found"));
+        // Tìm Brand & Category (có thể throw nếu không tồn tại), kiểm tra qua registry thay vì query
+        Brand brand = referenceBrand(productDto.getBrandId());
+        Category category = referenceCategory(productDto.getCategoryId());
+        Material material = referenceMaterial(productDto.getMaterialId());
+        TargetAudience targetAudience = referenceTargetAudience(productDto.getTargetAudienceId());
 
         // Tạo sản phẩm
         Product product = new Product();
@@ -372,19 +498,23 @@ public class ProductService {
         product.setCreatedBy(appUser);
         product = productRepository.save(product);
 
+        // Cấp SKU cho tất cả biến thể một lần
+        List<String> baseSkus = new ArrayList<>();
+        for (ProductWithVariantsRequestDTO.ProductVariantDTO variantDto : productDto.getVariants()) {
+            baseSkus.add(SkuAllocator.baseSku(product.getProductId(), variantDto.getColorId(), variantDto.getSizeId()));
+        }
+        Iterator<String> skus = skuAllocator.allocate(baseSkus).iterator();
+
         // Xử lý các biến thể
         for (ProductWithVariantsRequestDTO.ProductVariantDTO variantDto : productDto.getVariants()) {
-            Color color = colorRepository.findById(variantDto.getColorId())
-                    .orElseThrow(() -> new RuntimeException("Color not found"));
-            Size size = sizeRepository.findById(variantDto.getSizeId())
-                    .orElseThrow(() -> new RuntimeException("Size not found"));
+            Color color = referenceColor(variantDto.getColorId());
+            Size size = referenceSize(variantDto.getSizeId());
 
             ProductVariant variant = new ProductVariant();
             variant.setProduct(product);
 
-            // Tự động sinh SKU dựa trên tên sản phẩm, màu sắc và size
-            String sku = generateProfessionalSku(product.getProductId(), color.getId(), size.getId());
-            variant.setSku(sku);
+            // SKU sinh từ id sản phẩm, màu sắc và size
+            variant.setSku(skus.next());
 
             variant.setColor(color);
             variant.setSize(size);
@@ -415,18 +545,13 @@ public class ProductService {
                 .orElseThrow(() -> new RuntimeException("Product not found #" + dto.getProductId()));
 
         // 2. Write product history
-        ProductsHistory ph = createProductHistory(product, user, 'U');
-        UUID groupId = ph.getHistoryGroupId();
+        UUID groupId = historyWriter.recordProduct(product, user, 'U');
 
         // 3. Load associations
-        Brand brand = brandRepository.findById(dto.getBrandId())
-                .orElseThrow(() -> new RuntimeException("Brand not found"));
-        Category category = categoryRepository.findById(dto.getCategoryId())
-                .orElseThrow(() -> new RuntimeException("Category not found"));
-        Material material = materialRepository.findById(dto.getMaterialId())
-                .orElseThrow(() -> new RuntimeException("Material not found"));
-        TargetAudience audience = targetAudienceRepository.findById(dto.getTargetAudienceId())
-                .orElseThrow(() -> new RuntimeException("Target Audience not found"));
+        Brand brand = referenceBrand(dto.getBrandId());
+        Category category = referenceCategory(dto.getCategoryId());
+        Material material = referenceMaterial(dto.getMaterialId());
+        TargetAudience audience = referenceTargetAudience(dto.getTargetAudienceId());
 
         // 4. Update product fields
         product.setProductName(dto.getProductName());
@@ -443,14 +568,16 @@ public class ProductService {
         List<Integer> colorIds = dto.getVariants().stream()
                 .map(ProductWithVariantsUpdateRequestDTO.ProductVariantDTO::getColorId)
                 .distinct().toList();
-        Map<Integer, Color> colors = colorRepository.findAllById(colorIds)
-                .stream().collect(Collectors.toMap(Color::getId, c -> c));
+        Map<Integer, Color> colors = colorIds.stream()
+                .filter(id -> referenceDataRegistry.exists(ReferenceType.COLOR, id))
+                .collect(Collectors.toMap(id -> id, colorRepository::getReferenceById));
 
         List<Integer> sizeIds = dto.getVariants().stream()
                 .map(ProductWithVariantsUpdateRequestDTO.ProductVariantDTO::getSizeId)
                 .distinct().toList();
-        Map<Integer, Size> sizes = sizeRepository.findAllById(sizeIds)
-                .stream().collect(Collectors.toMap(Size::getId, s -> s));
+        Map<Integer, Size> sizes = sizeIds.stream()
+                .filter(id -> referenceDataRegistry.exists(ReferenceType.SIZE, id))
+                .collect(Collectors.toMap(id -> id, sizeRepository::getReferenceById));
 
         // 6. Load existing variants
         List<ProductVariant> existing = productVariantRepository.findByProductId(product.getProductId());
@@ -458,10 +585,20 @@ public class ProductService {
                 .filter(v -> v.getVariantId() != null)
                 .collect(Collectors.toMap(ProductVariant::getVariantId, v -> v));
 
+        // 7. Cấp SKU một lần cho variant mới và variant đổi màu/size (giữ nguyên SKU các variant còn lại)
+        List<String> baseSkus = new ArrayList<>();
+        for (var vDto : dto.getVariants()) {
+            ProductVariant current = vDto.getVariantId() == null ? null : existingMap.get(vDto.getVariantId());
+            if (current == null || needsNewSku(current, vDto)) {
+                baseSkus.add(SkuAllocator.baseSku(product.getProductId(), vDto.getColorId(), vDto.getSizeId()));
+            }
+        }
+        Iterator<String> skus = skuAllocator.allocate(baseSkus).iterator();
+
         Set<Integer> processedVariantIds = new HashSet<>();
         List<ProductVariant> toSave = new ArrayList<>();
 
-        // 7. Process new & updated variants
+        // 8. Process new & updated variants
         for (var vDto : dto.getVariants()) {
             ProductVariant v;
             boolean isNewVariant = (vDto.getVariantId() == null);
@@ -472,11 +609,8 @@ public class ProductService {
                 v.setProduct(product);
                 v.setCreatedBy(user);
 
-                // Tự động sinh SKU cho variant mới
-                Color variantColor = colors.get(vDto.getColorId());
-                Size variantSize = sizes.get(vDto.getSizeId());
-                String autoSku = generateProfessionalSku(product.getProductId(), variantColor.getId(), variantSize.getId());
-                v.setSku(autoSku);
+                // SKU đã cấp ở bước 7
+                v.setSku(skus.next());
             } else {
                 // Cập nhật variant hiện có
                 v = existingMap.get(vDto.getVariantId());
@@ -486,17 +620,11 @@ public class ProductService {
                 processedVariantIds.add(vDto.getVariantId());
 
                 // History before update
-                createVariantHistory(v, user, 'U', groupId);
+                historyWriter.recordVariant(v, user, 'U', groupId);
 
-                // Giữ nguyên SKU hiện tại hoặc generate lại nếu color/size thay đổi
-                boolean colorChanged = !v.getColor().getId().equals(vDto.getColorId());
-                boolean sizeChanged = !v.getSize().getId().equals(vDto.getSizeId());
-
-                if (colorChanged || sizeChanged) {
-                    Color variantColor = colors.get(vDto.getColorId());
-                    Size variantSize = sizes.get(vDto.getSizeId());
-                    String newSku = generateProfessionalSku(product.getProductId(), variantColor.getId(), variantSize.getId());
-                    v.setSku(newSku);
+                // Giữ nguyên SKU hiện tại, dùng SKU mới đã cấp nếu color/size thay đổi
+                if (needsNewSku(v, vDto)) {
+                    v.setSku(skus.next());
                 }
             }
 
@@ -518,14 +646,15 @@ public class ProductService {
         }
         productVariantRepository.saveAll(toSave);
 
-        // 8. Delete removed variants (những variant không có trong request)
+        // 9. Delete removed variants (những variant không có trong request)
         for (ProductVariant old : existing) {
             if (!processedVariantIds.contains(old.getVariantId())) {
-                createVariantHistory(old, user, 'D', groupId);
+                historyWriter.recordVariant(old, user, 'D', groupId);
                 productVariantRepository.delete(old);
             }
         }
         productVariantRepository.flush();
+        eventPublisher.publishEvent(new ProductChangedEvent(dto.getProductId()));
     }
 
     @Transactional
@@ -541,133 +670,87 @@ public class ProductService {
 
         if (product.getPurchases() > 0) {
             // soft-delete
-            createProductHistory(product, user, 'U');
+            historyWriter.recordProduct(product, user, 'U');
             product.setIsActive(false);
             productRepository.save(product);
         } else {
             // hard-delete
-            ProductsHistory ph = createProductHistory(product, user, 'D');
-            UUID groupId = ph.getHistoryGroupId();
+            UUID groupId = historyWriter.recordProduct(product, user, 'D');
 
             List<ProductVariant> existing = productVariantRepository.findByProductId(productId);
-            existing.forEach(v -> createVariantHistory(v, user, 'D', groupId));
+            existing.forEach(v -> historyWriter.recordVariant(v, user, 'D', groupId));
 
             productRepository.delete(product);
         }
+        eventPublisher.publishEvent(new ProductChangedEvent(productId));
     }
 
     @Transactional
-    public void rollback(Integer historyId) {
-        ProductsHistory ph = productHistoryRepository.findById(historyId)
-                .orElseThrow(() -> new RuntimeException("History not found #" + historyId));
-        UUID groupId = ph.getHistoryGroupId();
-
-        // resolve associations
-        Category cat = categoryRepository.findById(ph.getCategoryId())
-                .orElseThrow(() -> new RuntimeException("Category not found"));
-        Brand br = brandRepository.findById(ph.getBrandId())
-                .orElseThrow(() -> new RuntimeException("Brand not found"));
-        Material mat = materialRepository.findById(ph.getMaterialId())
-                .orElseThrow(() -> new RuntimeException("Material not found"));
-        TargetAudience ta = targetAudienceRepository.findById(ph.getTargetAudienceId())
-                .orElseThrow(() -> new RuntimeException("TargetAudience not found"));
-
-        if (ph.getOperation() == 'D') {
-            // recreate product
-            Product restored = productMapper.productHistoryToProduct(ph);
-            restored.setCategory(cat);
-            restored.setBrand(br);
-            restored.setMaterial(mat);
-            restored.setTargetAudience(ta);
-            productRepository.save(restored);
-
-            // recreate all variants from this group
-            productVariantHistoryRepository.findByHistoryGroupId(groupId).forEach(vh -> {
-                ProductVariant variant = productMapper.productVariantHistoryToProductVariant(vh);
-                variant.setColor(colorRepository.findById(vh.getColorId())
-                        .orElseThrow(() -> new RuntimeException("Color not found")));
-                variant.setSize(sizeRepository.findById(vh.getSizeId())
-                        .orElseThrow(() -> new RuntimeException("Size not found")));
-                variant.setProduct(restored);
-
-                productVariantRepository.save(variant);
-            });
+    public Page<ProductHistoryDto> findAllProductHistory(int size, int page) {
+        Pageable pageable = PageRequest.of(page, size, HISTORY_ORDER);
+        Page<ProductsHistory> historyPage = productHistoryRepository.findAll(pageable);
+        return new PageImpl<>(toProductHistoryDtos(historyPage.getContent()), pageable, historyPage.getTotalElements());
+    }
 
-        } else if (ph.getOperation() == 'U') {
-            // revert product fields
-            Product existing = productRepository.findById(ph.getProductId())
-                    .orElseThrow(() -> new RuntimeException("Active product not found"));
-            existing.setCategory(cat);
-            existing.setBrand(br);
-            existing.setMaterial(mat);
-            existing.setTargetAudience(ta);
-
-            productMapper.updateProductHistoryToProduct(existing, ph);
-            productRepository.save(existing);
-
-            // delete any current variants not in this history group
-            Set<Integer> revertVariantIds = productVariantHistoryRepository
-                    .findByHistoryGroupId(groupId).stream()
-                    .map(ProductVariantsHistory::getVariantId).collect(Collectors.toSet());
-            productVariantRepository.findByProductId(existing.getProductId()).stream()
-                    .filter(v -> !revertVariantIds.contains(v.getVariantId()))
-                    .forEach(productVariantRepository::delete);
-
-            productVariantHistoryRepository.findByHistoryGroupId(groupId).forEach(vh -> {
-                ProductVariant variant = productVariantRepository
-                        .findById(vh.getVariantId())
-                        .orElse(new ProductVariant());
-                productMapper.updateProductVariantHistoryToProductVariant(variant, vh);
-                variant.setProduct(existing);
-                variant.setColor(colorRepository.findById(vh.getColorId())
-                        .orElseThrow(() -> new RuntimeException("Color not found")));
-                variant.setSize(sizeRepository.findById(vh.getSizeId())
-                        .orElseThrow(() -> new RuntimeException("Size not found")));
-
-                productVariantRepository.save(variant);
-            });
-        } else {
-            throw new IllegalArgumentException("Unsupported operation: " + ph.getOperation());
+    /**
+     * Lịch sử sản phẩm theo cursor (changed_at DESC, history_id DESC)
+     * Chỉ đọc các partition tháng gần nhất cho đến khi đủ trang, không phụ thuộc tổng số dòng lịch sử
+     */
+    @Transactional(readOnly = true)
+    public CursorPageResponse<ProductHistoryDto> findProductHistoryByCursor(String cursor, int size,
+                                                                            CountMode countMode) {
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        HistoryCursor after = cursor == null || cursor.isBlank() ? null : HistoryCursor.decode(cursor);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        List<ProductsHistory> histories = after == null
+                ? productHistoryRepository.findHistoryFirstPage(limit)
+                : productHistoryRepository.findHistoryAfter(after.changedAt(), after.historyId(), limit);
+
+        boolean hasNext = histories.size() > pageSize;
+        if (hasNext) {
+            histories = histories.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasNext) {
+            ProductsHistory last = histories.get(histories.size() - 1);
+            nextCursor = new HistoryCursor(last.getChangedAt(), last.getHistoryId()).encode();
+        }
+
+        Long total = null;
+        boolean estimated = false;
+        if (countMode == CountMode.EXACT) {
+            total = productHistoryRepository.count();
+        } else if (countMode == CountMode.ESTIMATE) {
+            long estimate = productHistoryRepository.estimateRowCount();
+            total = estimate >= 0 ? estimate : productHistoryRepository.count();
+            estimated = true;
         }
+
+        return new CursorPageResponse<>(toProductHistoryDtos(histories), pageSize, nextCursor, hasNext, total,
+                estimated);
     }
 
-    @Transactional
-    public Page<ProductHistoryDto> findAllProductHistory(int size, int page) {
-        Pageable pageable = PageRequest.of(page, size, Sort.by("changedAt").descending());
-        Page<ProductsHistory> historyPage = productHistoryRepository.findAll(pageable);
-        List<ProductsHistory> histories = historyPage.getContent();
+    private List<ProductHistoryDto> toProductHistoryDtos(List<ProductsHistory> histories) {
         if (histories.isEmpty()) {
-            return new PageImpl<>(List.of(), pageable, historyPage.getTotalElements());
+            return List.of();
         }
 
         // build maps
-        Map<Integer, String> categoryMap = categoryRepository.findAllById(
-                histories.stream().map(ProductsHistory::getCategoryId)
-                        .filter(Objects::nonNull).collect(Collectors.toSet())
-        ).stream().collect(Collectors.toMap(Category::getId, Category::getName));
-
-        Map<Integer, String> brandMap = brandRepository.findAllById(
-                histories.stream().map(ProductsHistory::getBrandId)
-                        .filter(Objects::nonNull).collect(Collectors.toSet())
-        ).stream().collect(Collectors.toMap(Brand::getId, Brand::getBrandName));
-
-        Map<Integer, String> materialMap = materialRepository.findAllById(
-                histories.stream().map(ProductsHistory::getMaterialId)
-                        .filter(Objects::nonNull).collect(Collectors.toSet())
-        ).stream().collect(Collectors.toMap(Material::getId, Material::getName));
-
-        Map<Integer, String> targetAudienceMap = targetAudienceRepository.findAllById(
-                histories.stream().map(ProductsHistory::getTargetAudienceId)
-                        .filter(Objects::nonNull).collect(Collectors.toSet())
-        ).stream().collect(Collectors.toMap(TargetAudience::getId, TargetAudience::getName));
+        Map<Integer, String> categoryMap = referenceDataRegistry.names(ReferenceType.CATEGORY,
+                histories.stream().map(ProductsHistory::getCategoryId).collect(Collectors.toSet()));
+        Map<Integer, String> brandMap = referenceDataRegistry.names(ReferenceType.BRAND,
+                histories.stream().map(ProductsHistory::getBrandId).collect(Collectors.toSet()));
+        Map<Integer, String> materialMap = referenceDataRegistry.names(ReferenceType.MATERIAL,
+                histories.stream().map(ProductsHistory::getMaterialId).collect(Collectors.toSet()));
+        Map<Integer, String> targetAudienceMap = referenceDataRegistry.names(ReferenceType.TARGET_AUDIENCE,
+                histories.stream().map(ProductsHistory::getTargetAudienceId).collect(Collectors.toSet()));
 
         NameMaps maps = new NameMaps(categoryMap, brandMap, materialMap, targetAudienceMap);
 
-        List<ProductHistoryDto> dtos = histories.stream()
+        return histories.stream()
                 .map(h -> productMapper.toProductHistoryDto(h, maps))
                 .collect(Collectors.toList());
-
-        return new PageImpl<>(dtos, pageable, historyPage.getTotalElements());
     }
 
     public Page<ProductVariantHistoryDTO> findAllByHistoryGroupId(
@@ -675,21 +758,52 @@ public class ProductService {
             int size,
             int page
     ) {
-        // 1. Tạo pageable với sort by changedAt desc
-        Pageable pageable = PageRequest.of(page, size, Sort.by("changedAt").descending());
-
-        // 2. Lấy page của history
+        Pageable pageable = PageRequest.of(page, size, HISTORY_ORDER);
         Page<ProductVariantsHistory> historyPage =
                 productVariantHistoryRepository.findAllByHistoryGroupId(historyGroupId, pageable);
-        List<ProductVariantsHistory> histories = historyPage.getContent();
+        return new PageImpl<>(toVariantHistoryDtos(historyPage.getContent()), pageable,
+                historyPage.getTotalElements());
+    }
 
+    /**
+     * Lịch sử variant của một nhóm thay đổi theo cursor (changed_at DESC, history_id DESC)
+     * Nhóm thay đổi nhỏ nên ESTIMATE cũng đếm chính xác (qua index history_group_id)
+     */
+    @Transactional(readOnly = true)
+    public CursorPageResponse<ProductVariantHistoryDTO> findVariantHistoryByCursor(
+            UUID historyGroupId, String cursor, int size, CountMode countMode) {
+        int pageSize = Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+        HistoryCursor after = cursor == null || cursor.isBlank() ? null : HistoryCursor.decode(cursor);
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+
+        List<ProductVariantsHistory> histories = after == null
+                ? productVariantHistoryRepository.findGroupFirstPage(historyGroupId, limit)
+                : productVariantHistoryRepository.findGroupAfter(historyGroupId, after.changedAt(),
+                after.historyId(), limit);
+
+        boolean hasNext = histories.size() > pageSize;
+        if (hasNext) {
+            histories = histories.subList(0, pageSize);
+        }
+        String nextCursor = null;
+        if (hasNext) {
+            ProductVariantsHistory last = histories.get(histories.size() - 1);
+            nextCursor = new HistoryCursor(last.getChangedAt(), last.getHistoryId()).encode();
+        }
+
+        Long total = countMode == CountMode.NONE ? null
+                : productVariantHistoryRepository.countByHistoryGroupId(historyGroupId);
+
+        return new CursorPageResponse<>(toVariantHistoryDtos(histories), pageSize, nextCursor, hasNext, total,
+                false);
+    }
+
+    private List<ProductVariantHistoryDTO> toVariantHistoryDtos(List<ProductVariantsHistory> histories) {
         if (histories.isEmpty()) {
-            return new PageImpl<>(Collections.emptyList(),
-                    pageable,
-                    historyPage.getTotalElements());
+            return Collections.emptyList();
         }
 
-        // 3. Thu thập tất cả colorId và sizeId
+        // Thu thập tất cả colorId và sizeId
         Set<Integer> colorIds = histories.stream()
                 .map(ProductVariantsHistory::getColorId)
                 .filter(Objects::nonNull)
@@ -699,14 +813,12 @@ public class ProductService {
                 .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
 
-        // 4. Load tên color & size 1 lần và build map
-        Map<Integer, String> colorMap = colorRepository.findAllById(colorIds).stream()
-                .collect(Collectors.toMap(Color::getId, Color::getName));
-        Map<Integer, String> sizeMap = sizeRepository.findAllById(sizeIds).stream()
-                .collect(Collectors.toMap(Size::getId, Size::getName));
+        // Lấy tên color & size từ registry dữ liệu tham chiếu
+        Map<Integer, String> colorMap = referenceDataRegistry.names(ReferenceType.COLOR, colorIds);
+        Map<Integer, String> sizeMap = referenceDataRegistry.names(ReferenceType.SIZE, sizeIds);
 
-        // 5. Map vào DTO
-        List<ProductVariantHistoryDTO> dtos = histories.stream()
+        // Map vào DTO
+        return histories.stream()
                 .map(h -> {
                     ProductVariantHistoryDTO dto = new ProductVariantHistoryDTO();
                     dto.setHistoryId(h.getHistoryId());
@@ -725,17 +837,11 @@ public class ProductService {
                     return dto;
                 })
                 .collect(Collectors.toList());
-
-        // 6. Trả về PageImpl
-        return new PageImpl<>(
-                dtos,
-                pageable,
-                historyPage.getTotalElements()
-        );
     }
 
     public void activeornotactive(Integer productId) {
         productRepository.activeornotactive(productId);
+        eventPublisher.publishEvent(new ProductChangedEvent(productId));
     }
 
     // ----------------------- Khuyến mãi cho variant -----------------------
@@ -783,86 +889,69 @@ public class ProductService {
         return result;
     }
 
-    private ProductsHistory createProductHistory(Product product, AppUser user, char op) {
-        ProductsHistory hist = productMapper.toHistory(product);
-        hist.setChangedBy(user);
-        hist.setOperation(op);
-        return productHistoryRepository.save(hist);
+    // ----------------------- Dữ liệu tham chiếu -----------------------
+    // Kiểm tra tồn tại qua ReferenceDataRegistry, gán quan hệ bằng reference (không SELECT entity)
+
+    private Brand referenceBrand(Integer id) {
+        referenceDataRegistry.require(ReferenceType.BRAND, id);
+        return brandRepository.getReferenceById(id);
     }
 
-    private void createVariantHistory(ProductVariant var, AppUser user, char op, UUID groupId) {
-        ProductVariantsHistory vh = productMapper.toVariantsHistory(var);
-        vh.setChangedBy(user);
-        vh.setOperation(op);
-        vh.setHistoryGroupId(groupId);
-        productVariantHistoryRepository.save(vh);
+    private Category referenceCategory(Integer id) {
+        referenceDataRegistry.require(ReferenceType.CATEGORY, id);
+        return categoryRepository.getReferenceById(id);
     }
 
-    /**
-     * Tạo SKU chuyên nghiệp dựa trên ID thay vì tên tiếng Việt
-     * Format: P{ProductID}-C{ColorID}-S{SizeID}
-     * Ví dụ: P123-C5-S2, P123-C5-S2-01 (nếu trùng)
-     */
-    private String generateProfessionalSku(Integer productId, Integer colorId, Integer sizeId) {
-        String baseSku = String.format("P%d-C%d-S%d", productId, colorId, sizeId);
+    private Material referenceMaterial(Integer id) {
+        referenceDataRegistry.require(ReferenceType.MATERIAL, id);
+        return materialRepository.getReferenceById(id);
+    }
 
-        // Kiểm tra unique và thêm suffix nếu cần
-        String finalSku = baseSku;
-        int counter = 1;
-        while (productVariantRepository.existsBySku(finalSku)) {
-            finalSku = baseSku + "-" + String.format("%02d", counter);
-            counter++;
-        }
+    private TargetAudience referenceTargetAudience(Integer id) {
+        referenceDataRegistry.require(ReferenceType.TARGET_AUDIENCE, id);
+        return targetAudienceRepository.getReferenceById(id);
+    }
+
+    private Color referenceColor(Integer id) {
+        referenceDataRegistry.require(ReferenceType.COLOR, id);
+        return colorRepository.getReferenceById(id);
+    }
 
-        return finalSku;
+    private Size referenceSize(Integer id) {
+        referenceDataRegistry.require(ReferenceType.SIZE, id);
+        return sizeRepository.getReferenceById(id);
+    }
+
+    // Variant hiện có cần SKU mới khi đổi màu hoặc size
+    private static boolean needsNewSku(ProductVariant variant, ProductWithVariantsUpdateRequestDTO.ProductVariantDTO dto) {
+        return !variant.getColor().getId().equals(dto.getColorId())
+                || !variant.getSize().getId().equals(dto.getSizeId());
     }
 
     /**
-     * Refresh promotion cho ProductListItemDTO để hiển thị giá chính xác trong danh sách
+     * Refresh promotion cho danh sách ProductListItemDTO để hiển thị giá chính xác
+     * Tính theo lô cho cả trang, số query không phụ thuộc số sản phẩm hay số variant
      *
-     * @param productListItem DTO cần refresh promotion
-     * @return DTO đã được cập nhật minSalePrice
+     * @param productListItems các DTO cần refresh promotion
+     * @return các DTO đã được cập nhật minSalePrice
      */
-    private ProductListItemDTO refreshPromotionForProductListItem(ProductListItemDTO productListItem) {
-        try {
-            // Lấy tất cả variants của product này
-            List<ProductVariant> variants = productVariantRepository.findByProductId(productListItem.getProductId());
-
-            if (variants.isEmpty()) {
-                return productListItem; // Không có variant thì không làm gì
-            }
-
-            BigDecimal minSalePrice = null;
-
-            // Kiểm tra promotion cho từng variant và tìm giá sale thấp nhất
-            for (ProductVariant variant : variants) {
-                // Tạo bản copy để không ảnh hưởng đến database
-                ProductVariant tempVariant = new ProductVariant();
-                tempVariant.setVariantId(variant.getVariantId());
-                tempVariant.setSku(variant.getSku());
-                tempVariant.setPrice(variant.getPrice());
-                tempVariant.setSalePrice(variant.getSalePrice());
-
-                // Refresh promotion cho variant này
-                autoPromotionService.refreshPromotionForDisplay(tempVariant);
-
-                // Nếu có salePrice sau khi refresh, so sánh để tìm min
-                if (tempVariant.getSalePrice() != null) {
-                    if (minSalePrice == null || tempVariant.getSalePrice().compareTo(minSalePrice) < 0) {
-                        minSalePrice = tempVariant.getSalePrice();
-                    }
-                }
-            }
-
-            // Cập nhật minSalePrice trong DTO
-            productListItem.setMinSalePrice(minSalePrice);
+    private List<ProductListItemDTO> refreshPromotionForProductListItems(List<ProductListItemDTO> productListItems) {
+        if (productListItems.isEmpty()) {
+            return productListItems;
+        }
 
-            return productListItem;
+        try {
+            Set<Integer> productIds = productListItems.stream()
+                    .map(ProductListItemDTO::getProductId)
+                    .collect(Collectors.toSet());
+            Map<Integer, BigDecimal> minSalePrices = pricingService.getMinSalePricesByProductIds(productIds);
 
+            // Cập nhật minSalePrice trong DTO (null nếu không có variant nào đang có promotion)
+            productListItems.forEach(item -> item.setMinSalePrice(minSalePrices.get(item.getProductId())));
         } catch (Exception e) {
             // Trong trường hợp lỗi, set minSalePrice = null để đảm bảo an toàn
-            productListItem.setMinSalePrice(null);
-            return productListItem;
+            productListItems.forEach(item -> item.setMinSalePrice(null));
         }
+        return productListItems;
     }
-}
\ No newline at end of file
+}
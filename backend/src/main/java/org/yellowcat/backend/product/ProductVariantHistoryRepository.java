@@ -4,8 +4,11 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -15,4 +18,29 @@ public interface ProductVariantHistoryRepository extends JpaRepository<ProductVa
 
     @EntityGraph(attributePaths = "changedBy")
     Page<ProductVariantsHistory> findAllByHistoryGroupId(UUID historyGroupId, Pageable pageable);
+
+    long countByHistoryGroupId(UUID historyGroupId);
+
+    // ==================== PHÂN TRANG KEYSET (changed_at DESC, history_id DESC) ====================
+
+    @EntityGraph(attributePaths = "changedBy")
+    @Query("""
+            SELECT h FROM ProductVariantsHistory h
+            WHERE h.historyGroupId = :groupId
+            ORDER BY h.changedAt DESC, h.historyId DESC
+            """)
+    List<ProductVariantsHistory> findGroupFirstPage(@Param("groupId") UUID groupId, Pageable limit);
+
+    @EntityGraph(attributePaths = "changedBy")
+    @Query("""
+            SELECT h FROM ProductVariantsHistory h
+            WHERE h.historyGroupId = :groupId
+              AND h.changedAt <= :changedAt
+              AND (h.changedAt < :changedAt OR h.historyId < :historyId)
+            ORDER BY h.changedAt DESC, h.historyId DESC
+            """)
+    List<ProductVariantsHistory> findGroupAfter(@Param("groupId") UUID groupId,
+                                                @Param("changedAt") LocalDateTime changedAt,
+                                                @Param("historyId") Integer historyId,
+                                                Pageable limit);
 }
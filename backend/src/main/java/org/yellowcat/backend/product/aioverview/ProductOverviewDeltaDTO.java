@@ -0,0 +1,23 @@
+package org.yellowcat.backend.product.aioverview;
+
+import org.yellowcat.backend.product.dto.ProductOverviewForAIDTO;
+
+import java.util.List;
+
+/**
+ * Phản hồi tổng quan sản phẩm cho AI theo phiên bản
+ *
+ * @param epoch             định danh snapshot của instance; khác với lần trước (khởi động lại, instance khác)
+ *                          thì version cũ không còn ý nghĩa và phản hồi là bản đầy đủ
+ * @param version           gửi lại qua ?since= ở lần gọi sau
+ * @param full              true: products là toàn bộ catalog, client thay thế dữ liệu đang có;
+ *                          false: chỉ các sản phẩm thay đổi sau since, cộng với removedProductIds
+ * @param removedProductIds sản phẩm bị xóa / ngừng bán sau since (luôn rỗng khi full)
+ */
+public record ProductOverviewDeltaDTO(
+        String epoch,
+        long version,
+        boolean full,
+        List<ProductOverviewForAIDTO> products,
+        List<Integer> removedProductIds) {
+}
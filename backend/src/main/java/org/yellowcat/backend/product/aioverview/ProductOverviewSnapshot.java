@@ -0,0 +1,262 @@
+package org.yellowcat.backend.product.aioverview;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.yellowcat.backend.product.ProductChangedEvent;
+import org.yellowcat.backend.product.ProductRepository;
+import org.yellowcat.backend.product.dto.ProductOverviewForAIDTO;
+import org.yellowcat.backend.product.promotion.PromotionChangedEvent;
+import org.yellowcat.backend.product.promotionproduct.ActivePromotionIndex;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snapshot ProductOverviewForAIDTO trong bộ nhớ, có phiên bản, cập nhật tăng dần
+ * - ProductChangedEvent (sản phẩm, variant, tồn kho, đánh giá): chỉ tính lại các sản phẩm đó
+ * - PromotionChangedEvent, qua mốc bắt đầu/kết thúc promotion, đối soát định kỳ: tính lại toàn bộ nhưng
+ *   chỉ những sản phẩm có nội dung khác mới được tăng version
+ * - Mỗi lần áp dụng thay đổi tăng version một bậc; sản phẩm bị xóa để lại tombstone để trả về trong delta
+ * Đọc không truy vấn database trừ khi đang có thay đổi chờ áp dụng
+ */
+@Component
+@Slf4j
+public class ProductOverviewSnapshot {
+
+    private static final Comparator<ProductOverviewForAIDTO> ORDER = Comparator
+            .comparing(ProductOverviewForAIDTO::isFeatured, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(ProductOverviewForAIDTO::purchases, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(ProductOverviewForAIDTO::productId);
+
+    private record Entry(ProductOverviewForAIDTO product, long version) {
+    }
+
+    private record SortedView(long version, List<ProductOverviewForAIDTO> products) {
+    }
+
+    private final ProductRepository productRepository;
+    private final ActivePromotionIndex promotionIndex;
+    private final int maxTombstones;
+
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong version = new AtomicLong();
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> tombstones = new ConcurrentHashMap<>();
+    // since nhỏ hơn mốc này có thể đã mất tombstone: trả bản đầy đủ
+    private volatile long tombstoneFloor;
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean fullRefreshNeeded = new AtomicBoolean(true);
+    private volatile String builtPriceVersion;
+    private volatile SortedView sortedView = new SortedView(-1, List.of());
+
+    public ProductOverviewSnapshot(ProductRepository productRepository,
+                                   ActivePromotionIndex promotionIndex,
+                                   @Value("${product.ai-overview.max-tombstones:10000}") int maxTombstones) {
+        this.productRepository = productRepository;
+        this.promotionIndex = promotionIndex;
+        this.maxTombstones = maxTombstones;
+    }
+
+    /**
+     * Toàn bộ tổng quan, cùng thứ tự với truy vấn cũ (nổi bật, lượt mua, id)
+     */
+    public List<ProductOverviewForAIDTO> all() {
+        applyPending();
+        return sorted();
+    }
+
+    /**
+     * @param since phiên bản client đang có, null để lấy bản đầy đủ
+     * @param clientEpoch epoch client nhận lần trước, null nếu không kiểm tra
+     */
+    public ProductOverviewDeltaDTO since(Long since, String clientEpoch) {
+        applyPending();
+        // Đọc version trước: mọi entry có version <= current đã nằm trong map
+        long current = version.get();
+        if (since == null || since < tombstoneFloor || since > current
+                || (clientEpoch != null && !clientEpoch.equals(epoch))) {
+            return new ProductOverviewDeltaDTO(epoch, current, true, sorted(), List.of());
+        }
+        List<ProductOverviewForAIDTO> changed = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.version() > since) {
+                changed.add(entry.product());
+            }
+        }
+        changed.sort(ORDER);
+        List<Integer> removed = new ArrayList<>();
+        tombstones.forEach((productId, removedAt) -> {
+            if (removedAt > since) {
+                removed.add(productId);
+            }
+        });
+        Collections.sort(removed);
+        return new ProductOverviewDeltaDTO(epoch, current, false, changed, removed);
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductChangedEvent event) {
+        if (event.productId() != null) {
+            dirty.add(event.productId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPromotionChanged(PromotionChangedEvent event) {
+        fullRefreshNeeded.set(true);
+    }
+
+    @Scheduled(fixedDelayString = "${product.ai-overview.refresh-ms:2000}")
+    public void refreshPending() {
+        try {
+            applyPending();
+        } catch (Exception e) {
+            log.warn("Không cập nhật được snapshot tổng quan sản phẩm: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Đối soát với database: bắt các thay đổi không phát event (import hàng loạt, đổi tên brand/category...)
+     */
+    @Scheduled(fixedDelayString = "${product.ai-overview.reconcile-ms:300000}",
+            initialDelayString = "${product.ai-overview.reconcile-ms:300000}")
+    public void reconcile() {
+        fullRefreshNeeded.set(true);
+        refreshPending();
+    }
+
+    private synchronized void applyPending() {
+        String priceVersion = promotionIndex.priceVersion(LocalDateTime.now());
+        if (!priceVersion.equals(builtPriceVersion)) {
+            // has_promotion phụ thuộc thời điểm hiện tại
+            fullRefreshNeeded.set(true);
+        }
+        if (fullRefreshNeeded.getAndSet(false)) {
+            dirty.clear();
+            try {
+                apply(productRepository.findProductsOverviewForAI(), null);
+                builtPriceVersion = priceVersion;
+            } catch (RuntimeException e) {
+                fullRefreshNeeded.set(true);
+                throw e;
+            }
+            return;
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Set<Integer> ids = new HashSet<>(dirty);
+        dirty.removeAll(ids);
+        try {
+            apply(productRepository.findProductsOverviewForAIByIds(ids), ids);
+        } catch (RuntimeException e) {
+            dirty.addAll(ids);
+            throw e;
+        }
+    }
+
+    /**
+     * @param scope id đã được tính lại; null = toàn bộ catalog. Id trong phạm vi nhưng không có trong rows là đã bị xóa
+     */
+    private void apply(List<Object[]> rows, Set<Integer> scope) {
+        long next = version.get() + 1;
+        boolean changed = false;
+        Set<Integer> present = new HashSet<>();
+        for (Object[] row : rows) {
+            ProductOverviewForAIDTO product = toDto(row);
+            present.add(product.productId());
+            Entry existing = entries.get(product.productId());
+            if (existing == null || !existing.product().equals(product)) {
+                entries.put(product.productId(), new Entry(product, next));
+                tombstones.remove(product.productId());
+                changed = true;
+            }
+        }
+        Collection<Integer> candidates = scope != null ? scope : new ArrayList<>(entries.keySet());
+        for (Integer productId : candidates) {
+            if (!present.contains(productId) && entries.remove(productId) != null) {
+                tombstones.put(productId, next);
+                changed = true;
+            }
+        }
+        if (changed) {
+            version.set(next);
+            trimTombstones();
+            log.debug("Snapshot tổng quan sản phẩm lên version {}", next);
+        }
+    }
+
+    private void trimTombstones() {
+        if (tombstones.size() <= maxTombstones) {
+            return;
+        }
+        List<Map.Entry<Integer, Long>> oldest = new ArrayList<>(tombstones.entrySet());
+        oldest.sort(Map.Entry.comparingByValue());
+        long floor = tombstoneFloor;
+        for (Map.Entry<Integer, Long> e : oldest.subList(0, tombstones.size() - maxTombstones)) {
+            tombstones.remove(e.getKey());
+            floor = Math.max(floor, e.getValue());
+        }
+        tombstoneFloor = floor;
+    }
+
+    private List<ProductOverviewForAIDTO> sorted() {
+        SortedView view = sortedView;
+        long current = version.get();
+        if (view.version() == current) {
+            return view.products();
+        }
+        List<ProductOverviewForAIDTO> products = new ArrayList<>(entries.size());
+        entries.values().forEach(e -> products.add(e.product()));
+        products.sort(ORDER);
+        List<ProductOverviewForAIDTO> result = Collections.unmodifiableList(products);
+        sortedView = new SortedView(current, result);
+        return result;
+    }
+
+    private static ProductOverviewForAIDTO toDto(Object[] row) {
+        return new ProductOverviewForAIDTO(
+                (Integer) row[0],  // productId
+                (String) row[1],   // productName
+                (String) row[2],   // description
+                (String) row[3],   // brandName
+                (String) row[4],   // categoryName
+                (String) row[5],   // targetAudience
+                (String) row[6],   // materialName
+
+                // Thông tin giá cả
+                (BigDecimal) row[7],  // minPrice
+                (BigDecimal) row[8],  // maxPrice
+                (BigDecimal) row[9],  // minSalePrice
+
+                // Thông tin tồn kho và bán hàng
+                ((Number) row[10]).intValue(),   // totalStock
+                ((Number) row[11]).intValue(),  // totalSold
+                (Integer) row[12], // purchases
+
+                // Thông tin màu sắc và kích thước
+                (String) row[13],  // availableColors
+                (String) row[14],  // availableSizes
+
+                // Thông tin đánh giá
+                ((Number) row[15]).doubleValue(), // averageRating
+                ((Number) row[16]).intValue(),    // totalReviews
+
+                // Trạng thái
+                (Boolean) row[17], // isActive
+                (Boolean) row[18], // isFeatured
+                (Boolean) row[19]  // hasPromotion
+        );
+    }
+}
@@ -0,0 +1,197 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import org.yellowcat.backend.product.dto.ProductWithVariantsRequestDTO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Đọc file CSV (có dòng tiêu đề), mỗi dòng là một biến thể
+ * Các dòng liên tiếp cùng productKey (hoặc cùng productName nếu không có cột productKey) thuộc một sản phẩm,
+ * thông tin sản phẩm lấy từ dòng đầu tiên của nhóm
+ * Hỗ trợ giá trị trong dấu nháy kép ("a, b" và "" để thoát), không hỗ trợ xuống dòng trong một ô
+ */
+class CsvProductImportReader implements ProductImportReader {
+
+    static final List<String> REQUIRED_COLUMNS = List.of(
+            "productName", "brandId", "categoryId", "materialId", "targetAudienceId", "thumbnail",
+            "colorId", "sizeId", "price", "imageUrl");
+
+    private final BufferedReader reader;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private int lineNumber = 1;
+    // Dòng đã đọc nhưng thuộc sản phẩm kế tiếp
+    private String[] pending;
+    private int pendingLine;
+
+    CsvProductImportReader(Path file) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("File CSV rỗng");
+        }
+        // Bỏ BOM nếu file lưu từ Excel
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        String[] names = parseLine(header);
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].trim(), i);
+        }
+        List<String> missing = REQUIRED_COLUMNS.stream().filter(c -> !columns.containsKey(c)).toList();
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("Thiếu cột bắt buộc: " + String.join(", ", missing));
+        }
+    }
+
+    @Override
+    public ImportItem next() throws IOException {
+        String[] first = pending != null ? pending : readRecord();
+        int firstLine = pending != null ? pendingLine : lineNumber;
+        pending = null;
+        if (first == null) {
+            return null;
+        }
+
+        ProductWithVariantsRequestDTO product = new ProductWithVariantsRequestDTO();
+        product.setVariants(new ArrayList<>());
+        ImportItem item = new ImportItem(firstLine, product);
+        readProduct(first, item);
+        readVariant(first, firstLine, item);
+
+        String key = groupKey(first);
+        String[] record;
+        while ((record = readRecord()) != null) {
+            if (!Objects.equals(key, groupKey(record))) {
+                pending = record;
+                pendingLine = lineNumber;
+                break;
+            }
+            readVariant(record, lineNumber, item);
+        }
+        return item;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String[] readRecord() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.isBlank());
+        return parseLine(line);
+    }
+
+    private String groupKey(String[] record) {
+        String key = value(record, "productKey");
+        return key != null ? key : value(record, "productName");
+    }
+
+    private void readProduct(String[] record, ImportItem item) {
+        ProductWithVariantsRequestDTO product = item.product();
+        product.setProductName(value(record, "productName"));
+        product.setDescription(value(record, "description"));
+        product.setThumbnail(value(record, "thumbnail"));
+        product.setBrandId(intValue(record, "brandId", item, item.row()));
+        product.setCategoryId(intValue(record, "categoryId", item, item.row()));
+        product.setMaterialId(intValue(record, "materialId", item, item.row()));
+        product.setTargetAudienceId(intValue(record, "targetAudienceId", item, item.row()));
+    }
+
+    private void readVariant(String[] record, int line, ImportItem item) {
+        ProductWithVariantsRequestDTO.ProductVariantDTO variant = new ProductWithVariantsRequestDTO.ProductVariantDTO();
+        variant.setColorId(intValue(record, "colorId", item, line));
+        variant.setSizeId(intValue(record, "sizeId", item, line));
+        variant.setPrice(decimalValue(record, "price", item, line));
+        variant.setCostPrice(decimalValue(record, "costPrice", item, line));
+        variant.setStockLevel(intValue(record, "stockLevel", item, line));
+        variant.setSold(intValue(record, "sold", item, line));
+        variant.setImageUrl(value(record, "imageUrl"));
+        String weight = value(record, "weight");
+        if (weight != null) {
+            try {
+                variant.setWeight(Double.valueOf(weight));
+            } catch (NumberFormatException e) {
+                item.errors().add("Dòng " + line + ": weight không hợp lệ '" + weight + "'");
+            }
+        }
+        item.product().getVariants().add(variant);
+    }
+
+    private String value(String[] record, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= record.length) {
+            return null;
+        }
+        String value = record[index].trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private Integer intValue(String[] record, String column, ImportItem item, int line) {
+        String value = value(record, column);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            item.errors().add("Dòng " + line + ": " + column + " không hợp lệ '" + value + "'");
+            return null;
+        }
+    }
+
+    private BigDecimal decimalValue(String[] record, String column, ImportItem item, int line) {
+        String value = value(record, column);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            item.errors().add("Dòng " + line + ": " + column + " không hợp lệ '" + value + "'");
+            return null;
+        }
+    }
+
+    static String[] parseLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString());
+        return values.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,23 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import org.yellowcat.backend.product.dto.ProductWithVariantsRequestDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Một sản phẩm (kèm các biến thể) đọc được từ file import
+ *
+ * @param row    dòng đầu tiên của sản phẩm trong file CSV, hoặc thứ tự phần tử (từ 1) trong mảng JSON
+ * @param errors lỗi phát hiện khi đọc/kiểm tra, sản phẩm có lỗi sẽ không được import
+ */
+record ImportItem(int row, ProductWithVariantsRequestDTO product, List<String> errors) {
+
+    ImportItem(int row, ProductWithVariantsRequestDTO product) {
+        this(row, product, new ArrayList<>());
+    }
+
+    boolean valid() {
+        return errors.isEmpty();
+    }
+}
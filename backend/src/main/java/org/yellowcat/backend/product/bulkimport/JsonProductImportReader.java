@@ -0,0 +1,60 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.yellowcat.backend.product.dto.ProductWithVariantsRequestDTO;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+/**
+ * Đọc file JSON dạng mảng ProductWithVariantsRequestDTO (cùng định dạng với API tạo sản phẩm)
+ * Dùng streaming parser: mỗi lần chỉ giữ một phần tử trong bộ nhớ
+ */
+class JsonProductImportReader implements ProductImportReader {
+
+    private final ObjectMapper objectMapper;
+    private final JsonParser parser;
+    private int index = 0;
+
+    JsonProductImportReader(Path file, ObjectMapper objectMapper) throws IOException {
+        this.objectMapper = objectMapper;
+        this.parser = objectMapper.getFactory().createParser(file.toFile());
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IllegalArgumentException("File JSON phải là một mảng sản phẩm");
+        }
+    }
+
+    @Override
+    public ImportItem next() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        index++;
+        JsonNode node = objectMapper.readTree(parser);
+        try {
+            ProductWithVariantsRequestDTO product = objectMapper.treeToValue(node, ProductWithVariantsRequestDTO.class);
+            if (product.getVariants() == null) {
+                product.setVariants(new ArrayList<>());
+            }
+            return new ImportItem(index, product);
+        } catch (JsonProcessingException e) {
+            // Phần tử sai kiểu dữ liệu: ghi lỗi cho phần tử này, tiếp tục đọc phần tử sau
+            ProductWithVariantsRequestDTO empty = new ProductWithVariantsRequestDTO();
+            empty.setVariants(new ArrayList<>());
+            ImportItem item = new ImportItem(index, empty);
+            item.errors().add("Phần tử " + index + ": " + e.getOriginalMessage());
+            return item;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
@@ -0,0 +1,67 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.*;
+import org.yellowcat.backend.common.config_api.exception.BadRequestException;
+import org.yellowcat.backend.common.config_api.response.ResponseEntityBuilder;
+import org.yellowcat.backend.product.bulkimport.dto.ProductImportStatusDTO;
+import org.yellowcat.backend.user.AppUser;
+import org.yellowcat.backend.user.AppUserService;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/products/import")
+@RequiredArgsConstructor
+public class ProductImportController {
+
+    private final ProductImportService productImportService;
+    private final AppUserService appUserService;
+
+    /**
+     * Body là nội dung file (không dùng multipart để không bị giới hạn kích thước upload và không đệm toàn bộ file)
+     * CSV: mỗi dòng một biến thể, các dòng liên tiếp cùng productKey/productName là một sản phẩm
+     * JSON: mảng ProductWithVariantsRequestDTO
+     */
+    @PostMapping
+    @PreAuthorize("hasAnyAuthority('Admin_Web')")
+    @Operation(summary = "Bulk import products", description = "Streams a CSV or JSON catalog into a background import job and returns its id")
+    public ResponseEntity<?> importProducts(@RequestParam(required = false) String format,
+                                            HttpServletRequest request,
+                                            @AuthenticationPrincipal Jwt jwt) {
+        Optional<AppUser> appUser = appUserService.findByKeycloakId(UUID.fromString(jwt.getSubject()));
+        if (appUser.isEmpty()) {
+            return ResponseEntityBuilder.error(HttpStatus.BAD_REQUEST, "User not found", "User not found");
+        }
+        try {
+            ProductImportFormat importFormat = ProductImportFormat.from(format, request.getContentType());
+            ProductImportStatusDTO status = productImportService.submit(
+                    request.getInputStream(), importFormat, appUser.get().getAppUserId());
+            return ResponseEntityBuilder.status(HttpStatus.ACCEPTED, "Import job queued", status);
+        } catch (BadRequestException e) {
+            return ResponseEntityBuilder.badRequest(e.getMessage(), e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntityBuilder.error(HttpStatus.INTERNAL_SERVER_ERROR, "Error starting product import", e.getMessage());
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    @PreAuthorize("hasAnyAuthority('Admin_Web')")
+    @Operation(summary = "Get bulk import status", description = "Returns progress counters and the per-row error report of an import job")
+    public ResponseEntity<?> getImportStatus(@PathVariable UUID jobId) {
+        ProductImportStatusDTO status = productImportService.getStatus(jobId);
+        if (status == null) {
+            return ResponseEntityBuilder.notFound("Import job not found", "Import job " + jobId + " not found or expired");
+        }
+        return ResponseEntityBuilder.success(status);
+    }
+}
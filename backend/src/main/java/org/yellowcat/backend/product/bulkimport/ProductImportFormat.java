@@ -0,0 +1,31 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import org.yellowcat.backend.common.config_api.exception.BadRequestException;
+
+public enum ProductImportFormat {
+    CSV,
+    JSON;
+
+    /**
+     * Xác định định dạng từ tham số format, nếu không có thì theo Content-Type
+     */
+    public static ProductImportFormat from(String format, String contentType) {
+        if (format != null && !format.isBlank()) {
+            try {
+                return valueOf(format.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Unsupported import format: " + format);
+            }
+        }
+        if (contentType != null) {
+            String type = contentType.toLowerCase();
+            if (type.contains("json")) {
+                return JSON;
+            }
+            if (type.contains("csv") || type.startsWith("text/plain")) {
+                return CSV;
+            }
+        }
+        throw new BadRequestException("Cannot detect import format, use format=csv|json or Content-Type text/csv / application/json");
+    }
+}
@@ -0,0 +1,94 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import lombok.Getter;
+import org.yellowcat.backend.product.bulkimport.dto.ImportRowError;
+import org.yellowcat.backend.product.bulkimport.dto.ProductImportStatusDTO;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tiến độ một lần import, được cập nhật bởi luồng xử lý và đọc bởi endpoint trạng thái
+ */
+@Getter
+class ProductImportJob {
+
+    // Giữ báo cáo lỗi gọn khi file có rất nhiều dòng sai
+    static final int MAX_REPORTED_ERRORS = 1000;
+
+    enum Status {QUEUED, RUNNING, COMPLETED, FAILED}
+
+    private final UUID id = UUID.randomUUID();
+    private final ProductImportFormat format;
+    private final Path file;
+    private final Integer userId;
+    private final Instant createdAt = Instant.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String failureReason;
+
+    private final AtomicInteger processedProducts = new AtomicInteger();
+    private final AtomicInteger importedProducts = new AtomicInteger();
+    private final AtomicInteger importedVariants = new AtomicInteger();
+    private final AtomicInteger failedProducts = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final List<ImportRowError> errors = new ArrayList<>();
+
+    ProductImportJob(ProductImportFormat format, Path file, Integer userId) {
+        this.format = format;
+        this.file = file;
+        this.userId = userId;
+    }
+
+    void start() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void complete() {
+        finishedAt = Instant.now();
+        status = Status.COMPLETED;
+    }
+
+    void fail(String reason) {
+        failureReason = reason;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    void recordImported(int products, int variants) {
+        processedProducts.addAndGet(products);
+        importedProducts.addAndGet(products);
+        importedVariants.addAndGet(variants);
+    }
+
+    void recordFailed(ImportItem item, String message) {
+        processedProducts.incrementAndGet();
+        failedProducts.incrementAndGet();
+        errorCount.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ImportRowError(item.row(), item.product().getProductName(), message));
+            }
+        }
+    }
+
+    ProductImportStatusDTO toStatus() {
+        List<ImportRowError> reported;
+        synchronized (errors) {
+            reported = List.copyOf(errors);
+        }
+        return new ProductImportStatusDTO(id, format.name(), status.name(), createdAt, startedAt, finishedAt,
+                processedProducts.get(), importedProducts.get(), importedVariants.get(), failedProducts.get(),
+                errorCount.get(), reported, failureReason);
+    }
+}
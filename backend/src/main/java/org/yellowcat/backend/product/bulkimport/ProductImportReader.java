@@ -0,0 +1,15 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Đọc tuần tự từng sản phẩm từ file import, không nạp toàn bộ file vào bộ nhớ
+ */
+interface ProductImportReader extends Closeable {
+
+    /**
+     * @return sản phẩm kế tiếp, null khi hết file
+     */
+    ImportItem next() throws IOException;
+}
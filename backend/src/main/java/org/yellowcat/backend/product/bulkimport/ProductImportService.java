@@ -0,0 +1,241 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.yellowcat.backend.common.config_api.exception.BadRequestException;
+import org.yellowcat.backend.product.bulkimport.dto.ProductImportStatusDTO;
+import org.yellowcat.backend.product.dto.ProductWithVariantsRequestDTO;
+import org.yellowcat.backend.product.referencedata.ReferenceDataRegistry;
+import org.yellowcat.backend.product.referencedata.ReferenceType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Import hàng loạt sản phẩm từ file CSV/JSON
+ * - Request chỉ lưu file tải lên vào file tạm (stream, không giữ trong bộ nhớ) rồi trả về jobId
+ * - Job chạy nền: đọc tuần tự, kiểm tra theo lô (dữ liệu tham chiếu lấy từ ReferenceDataRegistry, không query),
+ *   ghi mỗi lô trong một transaction bằng JDBC batch
+ * - Lô ghi lỗi thì ghi lại từng sản phẩm riêng để xác định đúng dòng lỗi, các sản phẩm hợp lệ vẫn được import
+ * - Trạng thái job giữ trong bộ nhớ của instance nhận request, tự xóa sau thời gian lưu
+ */
+@Service
+@Slf4j
+public class ProductImportService {
+
+    private final ProductImportWriter writer;
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final Duration retention;
+    private final ExecutorService executor;
+    private final Map<UUID, ProductImportJob> jobs = new ConcurrentHashMap<>();
+
+    public ProductImportService(ProductImportWriter writer,
+                                ReferenceDataRegistry referenceDataRegistry,
+                                TransactionTemplate transactionTemplate,
+                                ObjectMapper objectMapper,
+                                @Value("${product.import.batch-size:500}") int batchSize,
+                                @Value("${product.import.retention:PT6H}") Duration retention,
+                                @Value("${product.import.max-queued-jobs:4}") int maxQueuedJobs) {
+        this.writer = writer;
+        this.referenceDataRegistry = referenceDataRegistry;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        // Một luồng: các job import chạy lần lượt, không tranh connection với request thường
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs), new CustomizableThreadFactory("product-import-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Lưu nội dung tải lên và xếp job vào hàng đợi
+     */
+    public ProductImportStatusDTO submit(InputStream content, ProductImportFormat format, Integer userId) throws IOException {
+        evictExpiredJobs();
+        Path file = Files.createTempFile("product-import-", "." + format.name().toLowerCase());
+        try {
+            Files.copy(content, file, StandardCopyOption.REPLACE_EXISTING);
+            if (Files.size(file) == 0) {
+                throw new BadRequestException("Import file is empty");
+            }
+            ProductImportJob job = new ProductImportJob(format, file, userId);
+            jobs.put(job.getId(), job);
+            try {
+                executor.execute(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                jobs.remove(job.getId());
+                throw new BadRequestException("Too many import jobs in progress, please retry later");
+            }
+            return job.toStatus();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    public ProductImportStatusDTO getStatus(UUID jobId) {
+        ProductImportJob job = jobs.get(jobId);
+        return job == null ? null : job.toStatus();
+    }
+
+    private void run(ProductImportJob job) {
+        job.start();
+        log.info("Bắt đầu import sản phẩm, job {} ({})", job.getId(), job.getFormat());
+        try (ProductImportReader reader = openReader(job)) {
+            List<ImportItem> batch = new ArrayList<>(batchSize);
+            ImportItem item;
+            while ((item = reader.next()) != null) {
+                batch.add(item);
+                if (batch.size() >= batchSize) {
+                    processBatch(job, batch);
+                    batch.clear();
+                }
+            }
+            processBatch(job, batch);
+            job.complete();
+            log.info("Hoàn tất import job {}: {} sản phẩm, {} biến thể, {} lỗi", job.getId(),
+                    job.getImportedProducts().get(), job.getImportedVariants().get(), job.getFailedProducts().get());
+        } catch (IllegalArgumentException e) {
+            job.fail(e.getMessage());
+        } catch (Exception e) {
+            log.error("Import job {} thất bại: {}", job.getId(), e.getMessage(), e);
+            job.fail(e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(job.getFile());
+            } catch (IOException e) {
+                log.warn("Không xóa được file tạm {}: {}", job.getFile(), e.getMessage());
+            }
+        }
+    }
+
+    private ProductImportReader openReader(ProductImportJob job) throws IOException {
+        return switch (job.getFormat()) {
+            case CSV -> new CsvProductImportReader(job.getFile());
+            case JSON -> new JsonProductImportReader(job.getFile(), objectMapper);
+        };
+    }
+
+    private void processBatch(ProductImportJob job, List<ImportItem> batch) {
+        List<ImportItem> valid = new ArrayList<>(batch.size());
+        for (ImportItem item : batch) {
+            validate(item);
+            if (item.valid()) {
+                valid.add(item);
+            } else {
+                job.recordFailed(item, String.join("; ", item.errors()));
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        try {
+            int variants = transactionTemplate.execute(status -> writer.insert(valid, job.getUserId()));
+            job.recordImported(valid.size(), variants);
+        } catch (RuntimeException e) {
+            // Lỗi ở mức database (ràng buộc, dữ liệu quá dài...): ghi lại từng sản phẩm để tìm đúng dòng lỗi
+            log.warn("Import job {}: ghi lô {} sản phẩm lỗi ({}), ghi lại từng sản phẩm",
+                    job.getId(), valid.size(), e.getMessage());
+            for (ImportItem item : valid) {
+                try {
+                    int variants = transactionTemplate.execute(status -> writer.insert(List.of(item), job.getUserId()));
+                    job.recordImported(1, variants);
+                } catch (RuntimeException itemError) {
+                    job.recordFailed(item, rootMessage(itemError));
+                }
+            }
+        }
+    }
+
+    private void validate(ImportItem item) {
+        ProductWithVariantsRequestDTO product = item.product();
+        List<String> errors = item.errors();
+        if (isBlank(product.getProductName())) {
+            errors.add("productName là bắt buộc");
+        } else if (product.getProductName().length() > 255) {
+            errors.add("productName dài quá 255 ký tự");
+        }
+        if (isBlank(product.getThumbnail())) {
+            errors.add("thumbnail là bắt buộc");
+        }
+        requireReference(errors, ReferenceType.BRAND, "brandId", product.getBrandId());
+        requireReference(errors, ReferenceType.CATEGORY, "categoryId", product.getCategoryId());
+        requireReference(errors, ReferenceType.MATERIAL, "materialId", product.getMaterialId());
+        requireReference(errors, ReferenceType.TARGET_AUDIENCE, "targetAudienceId", product.getTargetAudienceId());
+
+        if (product.getVariants().isEmpty()) {
+            errors.add("Sản phẩm phải có ít nhất một biến thể");
+        }
+        Set<String> combinations = new HashSet<>();
+        int index = 0;
+        for (ProductWithVariantsRequestDTO.ProductVariantDTO variant : product.getVariants()) {
+            index++;
+            String prefix = "Biến thể " + index + ": ";
+            requireReference(errors, ReferenceType.COLOR, prefix + "colorId", variant.getColorId());
+            requireReference(errors, ReferenceType.SIZE, prefix + "sizeId", variant.getSizeId());
+            if (!combinations.add(variant.getColorId() + "/" + variant.getSizeId())) {
+                errors.add(prefix + "trùng màu/size với biến thể khác của sản phẩm");
+            }
+            if (variant.getPrice() == null || variant.getPrice().compareTo(BigDecimal.ZERO) <= 0) {
+                errors.add(prefix + "price phải lớn hơn 0");
+            }
+            if (variant.getCostPrice() != null && variant.getCostPrice().compareTo(BigDecimal.ZERO) < 0) {
+                errors.add(prefix + "costPrice không được âm");
+            }
+            if (variant.getStockLevel() != null && variant.getStockLevel() < 0) {
+                errors.add(prefix + "stockLevel không được âm");
+            }
+            if (isBlank(variant.getImageUrl())) {
+                errors.add(prefix + "imageUrl là bắt buộc");
+            }
+        }
+    }
+
+    private void requireReference(List<String> errors, ReferenceType type, String field, Integer id) {
+        if (id == null) {
+            errors.add(field + " là bắt buộc");
+        } else if (!referenceDataRegistry.exists(type, id)) {
+            errors.add(field + " không tồn tại (#" + id + ")");
+        }
+    }
+
+    private void evictExpiredJobs() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+}
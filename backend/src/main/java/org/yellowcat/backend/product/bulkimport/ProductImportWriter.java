@@ -0,0 +1,94 @@
+package org.yellowcat.backend.product.bulkimport;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.yellowcat.backend.product.dto.ProductWithVariantsRequestDTO;
+import org.yellowcat.backend.product.productvariant.ProductVariantAutoPromotionService;
+import org.yellowcat.backend.product.productvariant.SkuAllocator;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ghi một lô sản phẩm đã kiểm tra hợp lệ bằng JDBC batch
+ * - Cấp trước id cho cả lô bằng một truy vấn nextval, nên ghi được product và variant bằng hai batch insert
+ * - Trigger của product_listing / product_search vẫn chạy như khi tạo qua JPA
+ */
+@Component
+@RequiredArgsConstructor
+class ProductImportWriter {
+
+    private static final String INSERT_PRODUCT = """
+            INSERT INTO products (product_id, product_name, description, category_id, brand_id, material_id,
+                                  target_audience_id, thumbnail, created_by)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_VARIANT = """
+            INSERT INTO product_variants (variant_id, product_id, sku, color_id, size_id, price, sale_price, cost_price,
+                                          quantity_in_stock, sold, image_url, weight, created_by)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductVariantAutoPromotionService autoPromotionService;
+    private final SkuAllocator skuAllocator;
+
+    /**
+     * Phải gọi trong transaction
+     *
+     * @return số variant đã ghi
+     */
+    int insert(List<ImportItem> items, Integer userId) {
+        List<Long> productIds = allocateIds("products", "product_id", items.size());
+        int variantCount = items.stream().mapToInt(item -> item.product().getVariants().size()).sum();
+        List<Long> variantIds = allocateIds("product_variants", "variant_id", variantCount);
+
+        List<Object[]> productRows = new ArrayList<>(items.size());
+        List<Object[]> variantRows = new ArrayList<>(variantCount);
+        LocalDateTime now = LocalDateTime.now();
+        int variantIndex = 0;
+
+        for (int i = 0; i < items.size(); i++) {
+            ProductWithVariantsRequestDTO product = items.get(i).product();
+            Long productId = productIds.get(i);
+            productRows.add(new Object[]{productId, product.getProductName(), product.getDescription(),
+                    product.getCategoryId(), product.getBrandId(), product.getMaterialId(),
+                    product.getTargetAudienceId(), product.getThumbnail(), userId});
+
+            for (ProductWithVariantsRequestDTO.ProductVariantDTO variant : product.getVariants()) {
+                Long variantId = variantIds.get(variantIndex++);
+                String baseSku = SkuAllocator.baseSku(productId.intValue(), variant.getColorId(), variant.getSizeId());
+                // Tra cứu trong ActivePromotionIndex (không query), variant mới thường chưa thuộc promotion nào
+                BigDecimal salePrice = autoPromotionService.calculateSalePrice(variantId.intValue(), variant.getPrice(), now);
+                variantRows.add(new Object[]{variantId, productId, baseSku, variant.getColorId(), variant.getSizeId(),
+                        variant.getPrice(), salePrice,
+                        variant.getCostPrice() != null ? variant.getCostPrice() : BigDecimal.ZERO,
+                        variant.getStockLevel() != null ? variant.getStockLevel() : 0,
+                        variant.getSold() != null ? variant.getSold() : 0,
+                        variant.getImageUrl(), variant.getWeight(), userId});
+            }
+        }
+
+        // Đổi SKU gốc thành SKU đã cấp (một lần cho cả lô)
+        List<String> skus = skuAllocator.allocate(variantRows.stream().map(row -> (String) row[2]).toList());
+        for (int i = 0; i < variantRows.size(); i++) {
+            variantRows.get(i)[2] = skus.get(i);
+        }
+        jdbcTemplate.batchUpdate(INSERT_PRODUCT, productRows);
+        jdbcTemplate.batchUpdate(INSERT_VARIANT, variantRows);
+        return variantRows.size();
+    }
+
+    private List<Long> allocateIds(String table, String column, int count) {
+        if (count == 0) {
+            return List.of();
+        }
+        return jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence(?, ?)) FROM generate_series(1, ?)",
+                Long.class, table, column, count);
+    }
+}
@@ -0,0 +1,7 @@
+package org.yellowcat.backend.product.bulkimport.dto;
+
+/**
+ * @param row dòng CSV (hoặc thứ tự phần tử JSON) của sản phẩm bị lỗi
+ */
+public record ImportRowError(int row, String productName, String message) {
+}
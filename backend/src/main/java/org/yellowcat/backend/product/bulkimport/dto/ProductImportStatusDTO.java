@@ -0,0 +1,25 @@
+package org.yellowcat.backend.product.bulkimport.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Trạng thái job import tại thời điểm truy vấn
+ *
+ * @param errors     tối đa ProductImportJob.MAX_REPORTED_ERRORS lỗi đầu tiên, errorCount là tổng số lỗi
+ */
+public record ProductImportStatusDTO(UUID jobId,
+                                     String format,
+                                     String status,
+                                     Instant createdAt,
+                                     Instant startedAt,
+                                     Instant finishedAt,
+                                     int processedProducts,
+                                     int importedProducts,
+                                     int importedVariants,
+                                     int failedProducts,
+                                     int errorCount,
+                                     List<ImportRowError> errors,
+                                     String failureReason) {
+}
@@ -6,6 +6,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 
 @Getter
 @Setter
@@ -25,4 +26,5 @@ public class ProductListItemDTO {
 
     private String sizesStr;
     private String colorsStr;
+    private Timestamp updatedAt;
 }
\ No newline at end of file
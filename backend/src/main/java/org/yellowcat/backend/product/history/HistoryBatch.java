@@ -0,0 +1,22 @@
+package org.yellowcat.backend.product.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Các dòng lịch sử của một transaction, được ghi cùng nhau
+ */
+public record HistoryBatch(List<ProductHistoryEntry> products, List<VariantHistoryEntry> variants) {
+
+    static HistoryBatch empty() {
+        return new HistoryBatch(new ArrayList<>(), new ArrayList<>());
+    }
+
+    boolean isEmpty() {
+        return products.isEmpty() && variants.isEmpty();
+    }
+
+    int size() {
+        return products.size() + variants.size();
+    }
+}
@@ -0,0 +1,27 @@
+package org.yellowcat.backend.product.history;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Một dòng products_history chờ ghi (ảnh chụp sản phẩm tại thời điểm ghi nhận)
+ */
+public record ProductHistoryEntry(
+        UUID historyGroupId,
+        Integer productId,
+        String productName,
+        String description,
+        Integer categoryId,
+        Integer brandId,
+        Integer materialId,
+        Integer targetAudienceId,
+        Boolean isFeatured,
+        Integer purchases,
+        Boolean isActive,
+        String thumbnail,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt,
+        Character operation,
+        LocalDateTime changedAt,
+        Integer changedBy) {
+}
@@ -0,0 +1,90 @@
+package org.yellowcat.backend.product.history;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+
+/**
+ * Ghi lịch sử sản phẩm / variant bằng JDBC batch: một lần gửi cho mỗi bảng thay vì một INSERT mỗi dòng
+ */
+@Component
+@RequiredArgsConstructor
+class ProductHistoryJdbcWriter {
+
+    private static final String INSERT_PRODUCT = """
+            INSERT INTO products_history (history_group_id, product_id, product_name, description, category_id,
+                                          brand_id, material_id, target_audience_id, is_featured, purchases,
+                                          is_active, thumbnail, created_at, updated_at, operation, changed_at,
+                                          changed_by)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_VARIANT = """
+            INSERT INTO product_variants_history (history_group_id, variant_id, product_id, sku, color_id, size_id,
+                                                  price, sale_price, quantity_in_stock, sold, image_url, weight,
+                                                  created_at, updated_at, operation, changed_at, changed_by)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Dùng connection của transaction hiện tại (nếu có)
+     */
+    void insert(HistoryBatch batch) {
+        if (!batch.products().isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_PRODUCT, batch.products(), batch.products().size(), (ps, e) -> {
+                ps.setObject(1, e.historyGroupId());
+                ps.setObject(2, e.productId(), Types.INTEGER);
+                ps.setString(3, e.productName());
+                ps.setString(4, e.description());
+                ps.setObject(5, e.categoryId(), Types.INTEGER);
+                ps.setObject(6, e.brandId(), Types.INTEGER);
+                ps.setObject(7, e.materialId(), Types.INTEGER);
+                ps.setObject(8, e.targetAudienceId(), Types.INTEGER);
+                ps.setObject(9, e.isFeatured(), Types.BOOLEAN);
+                ps.setObject(10, e.purchases(), Types.INTEGER);
+                ps.setObject(11, e.isActive(), Types.BOOLEAN);
+                ps.setString(12, e.thumbnail());
+                ps.setTimestamp(13, timestamp(e.createdAt()));
+                ps.setTimestamp(14, timestamp(e.updatedAt()));
+                ps.setString(15, operation(e.operation()));
+                ps.setTimestamp(16, timestamp(e.changedAt()));
+                ps.setObject(17, e.changedBy(), Types.INTEGER);
+            });
+        }
+        if (!batch.variants().isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_VARIANT, batch.variants(), batch.variants().size(), (ps, e) -> {
+                ps.setObject(1, e.historyGroupId());
+                ps.setObject(2, e.variantId(), Types.INTEGER);
+                ps.setObject(3, e.productId(), Types.INTEGER);
+                ps.setString(4, e.sku());
+                ps.setObject(5, e.colorId(), Types.INTEGER);
+                ps.setObject(6, e.sizeId(), Types.INTEGER);
+                ps.setBigDecimal(7, e.price());
+                ps.setBigDecimal(8, e.salePrice());
+                ps.setObject(9, e.quantityInStock(), Types.INTEGER);
+                ps.setObject(10, e.sold(), Types.INTEGER);
+                ps.setString(11, e.imageUrl());
+                ps.setObject(12, e.weight(), Types.DOUBLE);
+                ps.setTimestamp(13, timestamp(e.createdAt()));
+                ps.setTimestamp(14, timestamp(e.updatedAt()));
+                ps.setString(15, operation(e.operation()));
+                ps.setTimestamp(16, timestamp(e.changedAt()));
+                ps.setObject(17, e.changedBy(), Types.INTEGER);
+            });
+        }
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value == null ? null : Timestamp.valueOf(value);
+    }
+
+    private static String operation(Character op) {
+        return op == null ? null : op.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package org.yellowcat.backend.product.history;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Hàng đợi ghi sau (write-behind) cho lịch sử sản phẩm, lưu trên đĩa nên không mất khi khởi động lại
+ * - Mỗi transaction đã commit là một file JSON, tên theo thời điểm nên đọc lại đúng thứ tự
+ * - Ghi file tạm + fsync rồi đổi tên: file trong thư mục luôn đầy đủ
+ * - Định kỳ chuyển các file vào database bằng JDBC batch (mỗi file một transaction), thành công thì xóa file
+ * Lịch sử xuất hiện trong database chậm tối đa một chu kỳ drain
+ * Drain chạy ở mọi chế độ để file còn lại sau khi chuyển từ async về batch vẫn được ghi
+ * Thư mục (product.history.journal-dir) phải nằm trên đĩa bền vững, không dùng thư mục tạm (bị xóa khi khởi động lại máy);
+ * chạy trong container thì mount volume vào thư mục này
+ */
+@Component
+@Slf4j
+class ProductHistoryJournal {
+
+    private static final String SUFFIX = ".json";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final ObjectMapper objectMapper;
+    private final ProductHistoryJdbcWriter jdbcWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final Path directory;
+    // Giữ thứ tự các file tạo trong cùng một millisecond
+    private final AtomicLong sequence = new AtomicLong();
+
+    ProductHistoryJournal(ObjectMapper objectMapper,
+                          ProductHistoryJdbcWriter jdbcWriter,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${product.history.journal-dir:${user.home}/.yellowcat/product-history}")
+                          String directory) {
+        this.objectMapper = objectMapper;
+        this.jdbcWriter = jdbcWriter;
+        this.transactionTemplate = transactionTemplate;
+        this.directory = Path.of(directory);
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        Files.createDirectories(directory);
+        // File tạm còn sót lại là lần ghi bị ngắt giữa chừng (transaction đó chưa được xác nhận vào hàng đợi)
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path tmp : files.filter(p -> p.toString().endsWith(TMP_SUFFIX)).toList()) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * Đưa lô lịch sử vào hàng đợi, trả về khi đã nằm trên đĩa
+     */
+    void append(HistoryBatch batch) throws IOException {
+        String name = String.format("%013d-%09d-%s", System.currentTimeMillis(), sequence.incrementAndGet(),
+                UUID.randomUUID());
+        Path tmp = directory.resolve(name + TMP_SUFFIX);
+        try (OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW)) {
+            objectMapper.writeValue(out, batch);
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(name + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Scheduled(fixedDelayString = "${product.history.drain-ms:1000}")
+    public synchronized void drain() {
+        List<Path> pending;
+        try (Stream<Path> files = Files.list(directory)) {
+            pending = files.filter(p -> p.toString().endsWith(SUFFIX)).sorted().toList();
+        } catch (IOException e) {
+            log.error("Không đọc được hàng đợi lịch sử sản phẩm {}: {}", directory, e.getMessage());
+            return;
+        }
+        for (Path file : pending) {
+            HistoryBatch batch;
+            try {
+                batch = objectMapper.readValue(file.toFile(), HistoryBatch.class);
+            } catch (IOException e) {
+                // File hỏng không được chặn các file phía sau, đổi tên để xử lý tay
+                log.error("File lịch sử sản phẩm {} không đọc được, bỏ qua: {}", file, e.getMessage());
+                moveAside(file);
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> jdbcWriter.insert(batch));
+                Files.deleteIfExists(file);
+            } catch (Exception e) {
+                // Database lỗi: dừng, giữ thứ tự, thử lại ở chu kỳ sau
+                log.warn("Chưa ghi được lịch sử sản phẩm từ {}: {}", file, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void moveAside(Path file) {
+        try {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".failed"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Không đổi tên được {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.yellowcat.backend.product.history;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+/**
+ * Bảo trì partition tháng của products_history / product_variants_history (xem V8)
+ * - Luôn tạo sẵn partition cho các tháng sắp tới để INSERT không bao giờ thiếu partition
+ * - Lưu giữ theo số tháng: partition cũ hơn được chuyển sang schema product_history_archive
+ *   (hoặc xóa hẳn khi archive-mode=drop); lịch sử đã lưu trữ không còn rollback được
+ */
+@Component
+@Slf4j
+public class ProductHistoryPartitionMaintenance {
+
+    private final JdbcTemplate jdbcTemplate;
+    // Connection pool tắt auto-commit: DDL của partition phải chạy trong transaction tường minh
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final boolean dropExpired;
+
+    public ProductHistoryPartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                              TransactionTemplate transactionTemplate,
+                                              @Value("${product.history.partitions-ahead:3}") int monthsAhead,
+                                              // 0 = giữ vĩnh viễn
+                                              @Value("${product.history.retention-months:24}") int retentionMonths,
+                                              @Value("${product.history.archive-mode:archive}") String archiveMode) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.dropExpired = "drop".equalsIgnoreCase(archiveMode.trim());
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            ensurePartitions();
+        } catch (Exception e) {
+            // Migration đã tạo sẵn vài tháng, không chặn khởi động
+            log.error("Không tạo được partition lịch sử sản phẩm khi khởi động: {}", e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(cron = "${product.history.maintenance-cron:0 30 2 * * *}", zone = "Asia/Ho_Chi_Minh")
+    public void maintain() {
+        ensurePartitions();
+        archiveExpired();
+    }
+
+    int ensurePartitions() {
+        LocalDate today = LocalDate.now();
+        Integer created = transactionTemplate.execute(status -> jdbcTemplate.queryForObject(
+                "SELECT ensure_product_history_partitions(?, ?)", Integer.class,
+                Date.valueOf(today.withDayOfMonth(1)), Date.valueOf(today.plusMonths(monthsAhead))));
+        if (created != null && created > 0) {
+            log.info("Đã tạo {} partition lịch sử sản phẩm", created);
+        }
+        return created == null ? 0 : created;
+    }
+
+    int archiveExpired() {
+        if (retentionMonths <= 0) {
+            return 0;
+        }
+        LocalDate cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths);
+        Integer archived = transactionTemplate.execute(status -> jdbcTemplate.queryForObject(
+                "SELECT archive_product_history_partitions(?, ?)", Integer.class, Date.valueOf(cutoff), dropExpired));
+        if (archived != null && archived > 0) {
+            log.info("Đã {} {} partition lịch sử sản phẩm trước {}", dropExpired ? "xóa" : "lưu trữ", archived, cutoff);
+        }
+        return archived == null ? 0 : archived;
+    }
+}
@@ -0,0 +1,173 @@
+package org.yellowcat.backend.product.history;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.yellowcat.backend.product.Product;
+import org.yellowcat.backend.product.productvariant.ProductVariant;
+import org.yellowcat.backend.user.AppUser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Ghi lịch sử sản phẩm / variant theo transaction
+ * - record*: chụp trạng thái hiện tại vào bộ đệm của transaction, không truy vấn database
+ * - mode=batch (mặc định): trước khi commit ghi cả bộ đệm bằng một JDBC batch, cùng transaction với thay đổi
+ * - mode=async: sau khi commit đưa bộ đệm vào hàng đợi trên đĩa (ProductHistoryJournal), ghi database ở nền;
+ *   transaction rollback thì bộ đệm bị bỏ
+ * Gọi ngoài transaction thì ghi ngay
+ */
+@Component
+@Slf4j
+public class ProductHistoryWriter {
+
+    public enum Mode {BATCH, ASYNC}
+
+    private final ProductHistoryJdbcWriter jdbcWriter;
+    private final ProductHistoryJournal journal;
+    private final TransactionTemplate transactionTemplate;
+    private final Mode mode;
+
+    public ProductHistoryWriter(ProductHistoryJdbcWriter jdbcWriter,
+                                ProductHistoryJournal journal,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${product.history.mode:batch}") String mode) {
+        this.jdbcWriter = jdbcWriter;
+        this.journal = journal;
+        // Sau commit vẫn còn gắn transaction cũ: ghi bù phải mở transaction mới
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+    }
+
+    /**
+     * @return history_group_id dùng chung cho lịch sử variant của cùng thao tác
+     */
+    public UUID recordProduct(Product product, AppUser user, char operation) {
+        UUID groupId = UUID.randomUUID();
+        // Giống toHistory + @PrePersist trước đây: created_at/changed_at = thời điểm ghi nhận, updated_at để trống
+        LocalDateTime now = LocalDateTime.now();
+        HistoryBatch batch = currentBatch();
+        batch.products().add(new ProductHistoryEntry(
+                groupId,
+                product.getProductId(),
+                product.getProductName(),
+                product.getDescription(),
+                product.getCategory() != null ? product.getCategory().getId() : null,
+                product.getBrand() != null ? product.getBrand().getId() : null,
+                product.getMaterial() != null ? product.getMaterial().getId() : null,
+                product.getTargetAudience() != null ? product.getTargetAudience().getId() : null,
+                product.getIsFeatured(),
+                product.getPurchases(),
+                product.getIsActive(),
+                product.getThumbnail(),
+                now,
+                null,
+                operation,
+                now,
+                user != null ? user.getAppUserId() : null));
+        flushIfNoTransaction(batch);
+        return groupId;
+    }
+
+    public void recordVariant(ProductVariant variant, AppUser user, char operation, UUID groupId) {
+        LocalDateTime now = LocalDateTime.now();
+        HistoryBatch batch = currentBatch();
+        batch.variants().add(new VariantHistoryEntry(
+                groupId,
+                variant.getVariantId(),
+                variant.getProduct() != null ? variant.getProduct().getProductId() : null,
+                variant.getSku(),
+                variant.getColor() != null ? variant.getColor().getId() : null,
+                variant.getSize() != null ? variant.getSize().getId() : null,
+                variant.getPrice(),
+                variant.getSalePrice(),
+                variant.getQuantityInStock(),
+                variant.getSold(),
+                variant.getImageUrl(),
+                variant.getWeight(),
+                now,
+                null,
+                operation,
+                now,
+                user != null ? user.getAppUserId() : null));
+        flushIfNoTransaction(batch);
+    }
+
+    private HistoryBatch currentBatch() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return HistoryBatch.empty();
+        }
+        HistoryBatch batch = (HistoryBatch) TransactionSynchronizationManager.getResource(this);
+        if (batch == null) {
+            HistoryBatch created = HistoryBatch.empty();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new BatchSynchronization(created));
+            batch = created;
+        }
+        return batch;
+    }
+
+    private void flushIfNoTransaction(HistoryBatch batch) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Connection pool tắt auto-commit nên vẫn cần transaction riêng
+            transactionTemplate.executeWithoutResult(status -> write(batch, false));
+        }
+    }
+
+    private void write(HistoryBatch batch, boolean committed) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (mode == Mode.ASYNC) {
+            try {
+                journal.append(batch);
+                return;
+            } catch (IOException e) {
+                if (!committed) {
+                    throw new UncheckedIOException(e);
+                }
+                // Thay đổi đã commit, ghi thẳng để không mất lịch sử
+                log.error("Không ghi được hàng đợi lịch sử sản phẩm, ghi trực tiếp: {}", e.getMessage());
+                transactionTemplate.executeWithoutResult(status -> jdbcWriter.insert(batch));
+                return;
+            }
+        }
+        jdbcWriter.insert(batch);
+    }
+
+    private class BatchSynchronization implements TransactionSynchronization {
+
+        private final HistoryBatch batch;
+
+        BatchSynchronization(HistoryBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (mode == Mode.BATCH) {
+                write(batch, false);
+            }
+        }
+
+        @Override
+        public void afterCommit() {
+            if (mode == Mode.ASYNC) {
+                write(batch, true);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ProductHistoryWriter.this);
+        }
+    }
+}
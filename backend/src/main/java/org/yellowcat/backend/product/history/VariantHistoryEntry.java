@@ -0,0 +1,28 @@
+package org.yellowcat.backend.product.history;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Một dòng product_variants_history chờ ghi
+ */
+public record VariantHistoryEntry(
+        UUID historyGroupId,
+        Integer variantId,
+        Integer productId,
+        String sku,
+        Integer colorId,
+        Integer sizeId,
+        BigDecimal price,
+        BigDecimal salePrice,
+        Integer quantityInStock,
+        Integer sold,
+        String imageUrl,
+        Double weight,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt,
+        Character operation,
+        LocalDateTime changedAt,
+        Integer changedBy) {
+}
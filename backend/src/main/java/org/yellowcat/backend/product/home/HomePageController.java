@@ -0,0 +1,29 @@
+package org.yellowcat.backend.product.home;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.yellowcat.backend.common.config_api.response.ResponseEntityBuilder;
+
+@RestController
+@RequestMapping("/api/public/home")
+@RequiredArgsConstructor
+public class HomePageController {
+
+    private final HomePageService homePageService;
+
+    @GetMapping
+    @Operation(summary = "Get homepage data", description = "Returns latest, featured and top-selling products with category and brand lists in one payload; slow sections are omitted and listed in unavailableSections")
+    public ResponseEntity<?> getHomePage() {
+        try {
+            return ResponseEntityBuilder.success(homePageService.getHomePage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntityBuilder.error(HttpStatus.INTERNAL_SERVER_ERROR, "Error retrieving homepage", e.getMessage());
+        }
+    }
+}
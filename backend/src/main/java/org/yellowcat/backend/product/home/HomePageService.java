@@ -0,0 +1,120 @@
+package org.yellowcat.backend.product.home;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.yellowcat.backend.product.ProductService;
+import org.yellowcat.backend.product.dto.FeaturedProductDTO;
+import org.yellowcat.backend.product.dto.LatestProductDTO;
+import org.yellowcat.backend.product.dto.ProductListItemDTO;
+import org.yellowcat.backend.product.home.dto.HomePageResponse;
+import org.yellowcat.backend.product.referencedata.ReferenceDataRegistry;
+import org.yellowcat.backend.product.referencedata.ReferenceItem;
+import org.yellowcat.backend.product.referencedata.ReferenceType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Dựng dữ liệu trang chủ: các phần chạy song song trên executor riêng, giới hạn số luồng và hàng đợi
+ * - Mỗi phần có chung hạn chót tính từ lúc bắt đầu request, hết hạn thì hủy và trả phần đó rỗng
+ * - Thời gian phản hồi ≈ phần chậm nhất (tối đa bằng timeout), không phải tổng các phần
+ * - Executor đầy thì bỏ qua phần đó thay vì xếp hàng vô hạn
+ */
+@Service
+@Slf4j
+public class HomePageService {
+
+    private final ProductService productService;
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final ExecutorService executor;
+    private final long sectionTimeoutNanos;
+
+    public HomePageService(ProductService productService,
+                           ReferenceDataRegistry referenceDataRegistry,
+                           @Value("${home.executor.threads:6}") int threads,
+                           @Value("${home.executor.queue-capacity:60}") int queueCapacity,
+                           @Value("${home.section-timeout:PT2S}") Duration sectionTimeout) {
+        this.productService = productService;
+        this.referenceDataRegistry = referenceDataRegistry;
+        // Không đăng ký làm bean để không thay thế executor mặc định của Spring Boot
+        // Số luồng nhỏ hơn connection pool để trang chủ không chiếm hết kết nối database
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("home-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.sectionTimeoutNanos = sectionTimeout.toNanos();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public HomePageResponse getHomePage() {
+        long deadline = System.nanoTime() + sectionTimeoutNanos;
+
+        Future<List<LatestProductDTO>> latest = submit(productService::getLatest3Products);
+        Future<FeaturedProductDTO> featured = submit(productService::getTopRatedOrRandomProduct);
+        Future<List<ProductListItemDTO>> topSelling = submit(productService::getTop5BestSellingProducts);
+
+        // Danh mục và thương hiệu đọc từ near-cache trong bộ nhớ, chạy ngay trên luồng request
+        List<String> unavailable = new ArrayList<>();
+        List<ReferenceItem> categories = inline("categories", () -> activeItems(ReferenceType.CATEGORY), unavailable);
+        List<ReferenceItem> brands = inline("brands", () -> activeItems(ReferenceType.BRAND), unavailable);
+
+        return new HomePageResponse(
+                await("latest", latest, deadline, unavailable),
+                await("featured", featured, deadline, unavailable),
+                await("topSelling", topSelling, deadline, unavailable),
+                categories,
+                brands,
+                unavailable);
+    }
+
+    private <T> Future<T> submit(Supplier<T> section) {
+        try {
+            return executor.submit(section::get);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private <T> T await(String name, Future<T> future, long deadline, List<String> unavailable) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("Trang chủ: phần {} quá thời gian, trả về không có phần này", name);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Trang chủ: phần {} lỗi: {}", name, e.getCause().getMessage(), e.getCause());
+        }
+        unavailable.add(name);
+        return null;
+    }
+
+    private <T> T inline(String name, Supplier<T> section, List<String> unavailable) {
+        try {
+            return section.get();
+        } catch (RuntimeException e) {
+            log.warn("Trang chủ: phần {} lỗi: {}", name, e.getMessage(), e);
+            unavailable.add(name);
+            return null;
+        }
+    }
+
+    private List<ReferenceItem> activeItems(ReferenceType type) {
+        return referenceDataRegistry.all(type).stream()
+                .filter(item -> !Boolean.FALSE.equals(item.status()))
+                .sorted(Comparator.comparing(ReferenceItem::name, Comparator.nullsLast(String::compareToIgnoreCase)))
+                .toList();
+    }
+}
@@ -0,0 +1,20 @@
+package org.yellowcat.backend.product.home.dto;
+
+import org.yellowcat.backend.product.dto.FeaturedProductDTO;
+import org.yellowcat.backend.product.dto.LatestProductDTO;
+import org.yellowcat.backend.product.dto.ProductListItemDTO;
+import org.yellowcat.backend.product.referencedata.ReferenceItem;
+
+import java.util.List;
+
+/**
+ * Dữ liệu trang chủ trong một response
+ * Phần nào lỗi hoặc quá thời gian thì để null và có tên trong unavailableSections, các phần khác vẫn trả về
+ */
+public record HomePageResponse(List<LatestProductDTO> latest,
+                               FeaturedProductDTO featured,
+                               List<ProductListItemDTO> topSelling,
+                               List<ReferenceItem> categories,
+                               List<ReferenceItem> brands,
+                               List<String> unavailableSections) {
+}
@@ -10,6 +10,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.yellowcat.backend.common.money.Money;
 import org.yellowcat.backend.product.order.dto.OrderDetailProjection;
 import org.yellowcat.backend.product.order.dto.OrderDetailResponse;
 import org.yellowcat.backend.product.order.dto.OrderDetailWithItemsResponse;
@@ -24,6 +25,7 @@ import org.yellowcat.backend.product.orderItem.OrderItemRepository;
 import org.yellowcat.backend.product.payment.Payment;
 import org.yellowcat.backend.product.payment.PaymentRepository;
 import org.yellowcat.backend.product.promotionorder.PromotionProgram;
+import org.yellowcat.backend.product.promotionorder.PromotionProgramEvaluator;
 import org.yellowcat.backend.product.promotionorder.PromotionProgramRepository;
 import org.yellowcat.backend.product.promotionorder.UsedPromotion;
 import org.yellowcat.backend.product.promotionorder.UsedPromotionRepository;
@@ -47,6 +49,7 @@ public class OrderService {
     OrderMapper orderMapper;
     AppUserService appUserService;
     PromotionProgramRepository promotionProgramRepository;
+    PromotionProgramEvaluator promotionProgramEvaluator;
     UsedPromotionRepository usedPromotionRepository;
     AppliedPromotionRepository appliedPromotionRepository;
 
@@ -111,66 +114,39 @@ public class OrderService {
                 .orElseThrow(() -> new IllegalArgumentException("Order not found with id: " + request.getOrderId()));
 
         // 3. Tính subTotalAmount
-        BigDecimal subTotalAmount = orderItems.stream()
-                .map(OrderItem::getTotalPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        Money subTotalAmount = Money.ZERO;
+        for (OrderItem item : orderItems) {
+            subTotalAmount = subTotalAmount.plus(Money.of(item.getTotalPrice()));
+        }
 
-        BigDecimal shippingFee = order.getShippingFee() != null ? order.getShippingFee() : BigDecimal.ZERO;
-        BigDecimal discountAmount = BigDecimal.ZERO;
+        Money shippingFee = Money.of(order.getShippingFee());
+        Money discountAmount = Money.ZERO;
         LocalDateTime now = LocalDateTime.now();
 
         // 4. Áp dụng khuyến mãi tốt nhất nếu có
-        List<PromotionProgram> activePromotions = promotionProgramRepository.findByIsActiveTrue();
-        PromotionProgram bestPromotion = null;
-        BigDecimal maxDiscount = BigDecimal.ZERO;
-
-        for (PromotionProgram promo : activePromotions) {
-            if (now.isBefore(promo.getStartDate()) || now.isAfter(promo.getEndDate()))
-                continue;
-            if (subTotalAmount.compareTo(promo.getMinimumOrderValue()) < 0)
-                continue;
-            if (promo.getUsageLimitTotal() != null) {
-                int usedCount = usedPromotionRepository.countByPromotionProgram(promo);
-                if (usedCount >= promo.getUsageLimitTotal())
-                    continue;
-            }
-
-            BigDecimal discount;
-            if ("%".equals(promo.getDiscountType())) {
-                discount = subTotalAmount.multiply(promo.getDiscountValue().divide(BigDecimal.valueOf(100)));
-            } else {
-                discount = promo.getDiscountValue();
-            }
-
-            if (discount.compareTo(maxDiscount) > 0) {
-                maxDiscount = discount;
-                bestPromotion = promo;
-            }
-        }
+        // Kiểm tra xem đơn hàng đã có UsedPromotion nào chưa
+        boolean alreadyUsed = usedPromotionRepository.existsByOrder(order);
 
-        if (bestPromotion != null) {
-            discountAmount = maxDiscount;
+        // Chưa từng áp dụng thì trừ luôn một lượt của chương trình được chọn (chỉ 1 lần cho mỗi đơn)
+        Optional<PromotionProgramEvaluator.Selection> bestPromotion = alreadyUsed
+                ? promotionProgramEvaluator.findBest(subTotalAmount, now)
+                : promotionProgramEvaluator.reserveBest(subTotalAmount, now);
 
-            // Kiểm tra xem đơn hàng đã có UsedPromotion nào chưa
-            boolean alreadyUsed = usedPromotionRepository.existsByOrder(order);
+        if (bestPromotion.isPresent()) {
+            PromotionProgramEvaluator.Selection selection = bestPromotion.get();
+            discountAmount = selection.discount();
 
             if (!alreadyUsed) {
                 // Nếu chưa từng áp dụng -> tạo mới
                 UsedPromotion usedPromotion = UsedPromotion.builder()
                         .order(order)
-                        .promotionProgram(bestPromotion)
+                        .promotionProgram(promotionProgramRepository.getReferenceById(selection.promotionProgramId()))
                         .quantityUsed(1)
                         .build();
                 usedPromotionRepository.save(usedPromotion);
 
-                // Giảm usageLimitTotal chỉ 1 lần
-                if (bestPromotion.getUsageLimitTotal() != null) {
-                    bestPromotion.setUsageLimitTotal(bestPromotion.getUsageLimitTotal() - 1);
-                    promotionProgramRepository.save(bestPromotion);
-                }
-
                 System.out.println(
-                        "🎁 Áp dụng khuyến mãi: " + bestPromotion.getPromotionCode() + " → Giảm " + discountAmount);
+                        "🎁 Áp dụng khuyến mãi: " + selection.promotionCode() + " → Giảm " + discountAmount);
             } else {
                 System.out.println("⚠️ Đơn hàng đã áp dụng khuyến mãi trước đó, không cập nhật lại.");
             }
@@ -179,7 +155,7 @@ public class OrderService {
         }
 
         // 5. Tính finalAmount
-        BigDecimal finalAmount = subTotalAmount.add(shippingFee).subtract(discountAmount);
+        Money finalAmount = subTotalAmount.plus(shippingFee).minus(discountAmount);
 
         // 6. Cập nhật các thông tin cơ bản
         if (request.getPhoneNumber() != null) {
@@ -188,9 +164,9 @@ public class OrderService {
         if (request.getCustomerName() != null) {
             order.setCustomerName(request.getCustomerName());
         }
-        order.setSubTotalAmount(subTotalAmount);
-        order.setDiscountAmount(discountAmount);
-        order.setFinalAmount(finalAmount);
+        order.setSubTotalAmount(subTotalAmount.toBigDecimal());
+        order.setDiscountAmount(discountAmount.toBigDecimal());
+        order.setFinalAmount(finalAmount.toBigDecimal());
 
         // 7. Cập nhật hoặc thêm mới payments nếu có
         boolean hasNewPayments = false;
@@ -242,14 +218,16 @@ public class OrderService {
         if (hasNewPayments) {
             List<Payment> updatedPayments = paymentRepository.findByOrder_OrderId(order.getOrderId());
 
-            BigDecimal totalPaid = updatedPayments.stream()
-                    .filter(p -> "COMPLETED".equalsIgnoreCase(p.getPaymentStatus()))
-                    .map(Payment::getAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            Money totalPaid = Money.ZERO;
+            for (Payment payment : updatedPayments) {
+                if ("COMPLETED".equalsIgnoreCase(payment.getPaymentStatus())) {
+                    totalPaid = totalPaid.plus(Money.of(payment.getAmount()));
+                }
+            }
 
-            if (totalPaid.compareTo(finalAmount) >= 0) {
+            if (!totalPaid.isLessThan(finalAmount)) {
                 order.setOrderStatus("Paid");
-            } else if (totalPaid.compareTo(BigDecimal.ZERO) > 0) {
+            } else if (totalPaid.isPositive()) {
                 order.setOrderStatus("Partial");
             } else {
                 order.setOrderStatus("Pending");
@@ -261,7 +239,7 @@ public class OrderService {
             order.getPayments().clear();
             order.getPayments().addAll(updatedPayments);
 
-            logPaymentInfo(order, updatedPayments, totalPaid, finalAmount);
+            logPaymentInfo(order, updatedPayments, totalPaid.toBigDecimal(), finalAmount.toBigDecimal());
         } else {
             List<Payment> currentPayments = paymentRepository.findByOrder_OrderId(order.getOrderId());
             if (order.getPayments() == null) {
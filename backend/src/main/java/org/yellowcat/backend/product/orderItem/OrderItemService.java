@@ -8,6 +8,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.yellowcat.backend.common.money.Money;
 import org.yellowcat.backend.product.order.Order;
 import org.yellowcat.backend.product.order.OrderRepository;
 import org.yellowcat.backend.product.orderItem.dto.OrderItemCreatedRequest;
@@ -22,7 +23,6 @@ import org.yellowcat.backend.product.promotionapplied.AppliedPromotionRepository
 import org.yellowcat.backend.product.dto.VariantPromosDTO;
 import org.yellowcat.backend.product.dto.VariantPromoItemDTO;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 @Service
@@ -76,8 +76,8 @@ public class OrderItemService {
             // Cập nhật order item
             existingOrderItem.setQuantity(newQuantity);
             // Sử dụng giá sau giảm (salePrice nếu có) để tính tổng tiền
-            BigDecimal unitPrice = getEffectivePrice(productVariant);
-            existingOrderItem.setTotalPrice(unitPrice.multiply(BigDecimal.valueOf(newQuantity)));
+            Money unitPrice = getEffectivePrice(productVariant);
+            existingOrderItem.setTotalPrice(unitPrice.times(newQuantity).toBigDecimal());
             orderItemRepository.save(existingOrderItem);
         } else {
             // Thêm mới order item
@@ -95,9 +95,9 @@ public class OrderItemService {
             orderItem.setVariant(productVariant);
             orderItem.setQuantity(request.getQuantity());
             // Giá tại thời điểm mua = giá sau giảm (salePrice nếu có)
-            BigDecimal unitPrice = getEffectivePrice(productVariant);
-            orderItem.setPriceAtPurchase(unitPrice);
-            orderItem.setTotalPrice(unitPrice.multiply(BigDecimal.valueOf(request.getQuantity())));
+            Money unitPrice = getEffectivePrice(productVariant);
+            orderItem.setPriceAtPurchase(unitPrice.toBigDecimal());
+            orderItem.setTotalPrice(unitPrice.times(request.getQuantity()).toBigDecimal());
 
             // Snapshot promotion nếu có
             VariantPromosDTO promosDTO = productService.getVariantPromotions(productVariant.getVariantId());
@@ -139,8 +139,8 @@ public class OrderItemService {
 
         orderItem.setQuantity(request.getNewQuantity());
         // Cập nhật totalPrice dựa trên giá sau giảm (salePrice nếu có)
-        BigDecimal unitPrice = getEffectivePrice(variant);
-        orderItem.setTotalPrice(unitPrice.multiply(BigDecimal.valueOf(request.getNewQuantity())));
+        Money unitPrice = getEffectivePrice(variant);
+        orderItem.setTotalPrice(unitPrice.times(request.getNewQuantity()).toBigDecimal());
 
         productVariantRepository.save(variant);
         orderItemRepository.save(orderItem);
@@ -186,22 +186,23 @@ public class OrderItemService {
 
     void updateOrderAmount(Order order) {
         List<OrderItem> items = orderItemRepository.findByOrder_OrderId(order.getOrderId());
-        BigDecimal subTotal = items.stream()
-                .map(OrderItem::getTotalPrice)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        BigDecimal shippingFee = order.getShippingFee() != null ? order.getShippingFee() : BigDecimal.ZERO;
-        BigDecimal discount = order.getDiscountAmount() != null ? order.getDiscountAmount() : BigDecimal.ZERO;
-        BigDecimal finalAmount = subTotal.add(shippingFee).subtract(discount);
-
-        order.setSubTotalAmount(subTotal);
-        order.setFinalAmount(finalAmount);
+        Money subTotal = Money.ZERO;
+        for (OrderItem item : items) {
+            subTotal = subTotal.plus(Money.of(item.getTotalPrice()));
+        }
+        Money finalAmount = subTotal
+                .plus(Money.of(order.getShippingFee()))
+                .minus(Money.of(order.getDiscountAmount()));
+
+        order.setSubTotalAmount(subTotal.toBigDecimal());
+        order.setFinalAmount(finalAmount.toBigDecimal());
         orderRepository.save(order);
     }
 
     /**
      * Trả về giá hiệu lực của variant: ưu tiên salePrice nếu có, ngược lại dùng price gốc.
      */
-    private BigDecimal getEffectivePrice(ProductVariant variant) {
-        return variant.getSalePrice() != null ? variant.getSalePrice() : variant.getPrice();
+    private Money getEffectivePrice(ProductVariant variant) {
+        return Money.of(variant.getSalePrice() != null ? variant.getSalePrice() : variant.getPrice());
     }
 }
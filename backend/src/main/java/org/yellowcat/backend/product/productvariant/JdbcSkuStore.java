@@ -0,0 +1,46 @@
+package org.yellowcat.backend.product.productvariant;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+@Component
+@RequiredArgsConstructor
+class JdbcSkuStore implements SkuStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void lock(Collection<String> baseSkus) {
+        // Khóa theo thứ tự để hai giao dịch khóa cùng tập SKU không deadlock
+        jdbcTemplate.query("""
+                        SELECT pg_advisory_xact_lock(hashtext(b))
+                        FROM (SELECT DISTINCT b FROM unnest(CAST(? AS TEXT[])) AS t(b) ORDER BY b) AS ordered
+                        """,
+                rs -> {
+                }, (Object) baseSkus.toArray(new String[0]));
+    }
+
+    @Override
+    public Set<String> findExisting(Collection<String> candidates) {
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+        // So khớp bằng '=' để dùng unique index ux_product_variants_sku
+        return new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT sku FROM product_variants WHERE sku = ANY (CAST(? AS TEXT[]))",
+                String.class, (Object) candidates.toArray(new String[0])));
+    }
+
+    @Override
+    public void forEachSku(Consumer<String> consumer) {
+        jdbcTemplate.query("SELECT sku FROM product_variants", rs -> {
+            consumer.accept(rs.getString(1));
+        });
+    }
+}
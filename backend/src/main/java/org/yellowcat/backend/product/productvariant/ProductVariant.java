@@ -16,6 +16,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "product_variants")
+@EntityListeners(ProductVariantChangeListener.class)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
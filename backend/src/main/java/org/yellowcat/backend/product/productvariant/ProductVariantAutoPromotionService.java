@@ -3,13 +3,12 @@ package org.yellowcat.backend.product.productvariant;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.yellowcat.backend.product.promotion.Promotion;
-import org.yellowcat.backend.product.promotionproduct.PromotionProduct;
-import org.yellowcat.backend.product.promotionproduct.PromotionProductRepository;
+import org.yellowcat.backend.common.money.Money;
+import org.yellowcat.backend.product.promotionproduct.ActivePromotionIndex;
+import org.yellowcat.backend.product.promotionproduct.PromotionWindow;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.List;
 
 /**
  * Service để tự động áp dụng promotion vào ProductVariant
@@ -20,7 +19,7 @@ import java.util.List;
 @Slf4j
 public class ProductVariantAutoPromotionService {
 
-    private final PromotionProductRepository promotionProductRepository;
+    private final ActivePromotionIndex promotionIndex;
 
     /**
      * Tự động tính toán và áp dụng promotion tốt nhất cho ProductVariant
@@ -31,7 +30,7 @@ public class ProductVariantAutoPromotionService {
     public boolean autoApplyBestPromotion(ProductVariant variant) {
         try {
             // Tìm promotion đang active cho variant này
-            Promotion bestPromotion = findBestActivePromotion(variant.getVariantId());
+            PromotionWindow bestPromotion = promotionIndex.findBest(variant.getVariantId(), LocalDateTime.now());
             
             if (bestPromotion == null) {
                 // Không có promotion → reset salePrice về null
@@ -49,7 +48,7 @@ public class ProductVariantAutoPromotionService {
             // Chỉ update nếu salePrice thay đổi
             if (!newSalePrice.equals(variant.getSalePrice())) {
                 log.info("Auto-apply promotion '{}' cho variant {}: {} → {}", 
-                        bestPromotion.getPromotionName(),
+                        bestPromotion.promotionName(),
                         variant.getSku(),
                         variant.getPrice(),
                         newSalePrice);
@@ -76,7 +75,7 @@ public class ProductVariantAutoPromotionService {
     public void refreshPromotionForDisplay(ProductVariant variant) {
         try {
             // Tìm promotion đang active cho variant này
-            Promotion bestPromotion = findBestActivePromotion(variant.getVariantId());
+            PromotionWindow bestPromotion = promotionIndex.findBest(variant.getVariantId(), LocalDateTime.now());
             
             if (bestPromotion == null) {
                 // Không có promotion → set salePrice = null
@@ -87,7 +86,7 @@ public class ProductVariantAutoPromotionService {
                 BigDecimal newSalePrice = calculateDiscountedPrice(variant.getPrice(), bestPromotion);
                 variant.setSalePrice(newSalePrice);
                 log.debug("Variant {} có promotion '{}' - salePrice = {}", 
-                        variant.getSku(), bestPromotion.getPromotionName(), newSalePrice);
+                        variant.getSku(), bestPromotion.promotionName(), newSalePrice);
             }
             
         } catch (Exception e) {
@@ -99,73 +98,31 @@ public class ProductVariantAutoPromotionService {
     }
 
     /**
-     * Tìm promotion tốt nhất (giảm giá nhiều nhất) đang active cho variant
+     * Tính salePrice hiệu lực của variant tại thời điểm at (tra cứu trong index, không query)
+     *
+     * @return salePrice sau promotion, null nếu variant không có promotion hiệu lực
      */
-    private Promotion findBestActivePromotion(Integer variantId) {
-        LocalDateTime now = LocalDateTime.now();
-        
-        // Query để tìm promotion active cho variant này
-        List<PromotionProduct> activePromotions = promotionProductRepository
-                .findActivePromotionsByVariantId(variantId, now);
-        
-        if (activePromotions.isEmpty()) {
-            return null;
-        }
-
-        // Nếu có nhiều promotion, chọn cái giảm giá nhiều nhất
-        // (logic này có thể customize theo business rules)
-        return activePromotions.stream()
-                .map(PromotionProduct::getPromotion)
-                .max((p1, p2) -> {
-                    // So sánh dựa trên loại giảm giá và giá trị
-                    if ("percentage".equals(p1.getDiscountType()) && "percentage".equals(p2.getDiscountType())) {
-                        return p1.getDiscountValue().compareTo(p2.getDiscountValue());
-                    } else if ("fixed_amount".equals(p1.getDiscountType()) && "fixed_amount".equals(p2.getDiscountType())) {
-                        return p1.getDiscountValue().compareTo(p2.getDiscountValue());
-                    } else {
-                        // Mixed types - ưu tiên percentage cao hơn
-                        return "percentage".equals(p1.getDiscountType()) ? 1 : -1;
-                    }
-                })
-                .orElse(null);
+    public BigDecimal calculateSalePrice(Integer variantId, BigDecimal price, LocalDateTime at) {
+        PromotionWindow bestPromotion = promotionIndex.findBest(variantId, at);
+        return bestPromotion == null ? null : calculateDiscountedPrice(price, bestPromotion);
     }
 
     /**
-     * Tính toán giá sau khi áp dụng promotion
+     * Tính toán giá sau khi áp dụng promotion (Money: không qua double, làm tròn như SalePriceRecalculator)
      */
-    private BigDecimal calculateDiscountedPrice(BigDecimal originalPrice, Promotion promotion) {
-        if ("percentage".equalsIgnoreCase(promotion.getDiscountType())) {
-            double discount = promotion.getDiscountValue().doubleValue() / 100.0;
-            double newPrice = originalPrice.doubleValue() * (1.0 - discount);
-            return BigDecimal.valueOf(newPrice);
-            
-        } else if ("fixed_amount".equalsIgnoreCase(promotion.getDiscountType())) {
-            double newPrice = originalPrice.doubleValue() - promotion.getDiscountValue().doubleValue();
-            return BigDecimal.valueOf(Math.max(newPrice, 0)); // Không âm
-            
+    private BigDecimal calculateDiscountedPrice(BigDecimal originalPrice, PromotionWindow promotion) {
+        if ("percentage".equalsIgnoreCase(promotion.discountType())) {
+            return Money.of(originalPrice).lessPercent(Money.rateOf(promotion.discountValue())).toBigDecimal();
+
+        } else if ("fixed_amount".equalsIgnoreCase(promotion.discountType())) {
+            return Money.of(originalPrice).lessAmount(Money.of(promotion.discountValue())).toBigDecimal(); // Không âm
+
         } else {
             // Loại promotion khác (e.g., free_shipping) - không thay đổi giá
             return originalPrice;
         }
     }
 
-    /**
-     * Batch process để áp dụng promotion cho nhiều variants cùng lúc
-     * Hữu ích khi cần sync lại toàn bộ hệ thống
-     */
-    public int batchApplyPromotions(List<ProductVariant> variants) {
-        int updatedCount = 0;
-        
-        for (ProductVariant variant : variants) {
-            if (autoApplyBestPromotion(variant)) {
-                updatedCount++;
-            }
-        }
-        
-        log.info("Batch apply promotion: {}/{} variants được cập nhật", updatedCount, variants.size());
-        return updatedCount;
-    }
-
     /**
      * Tính toán min sale price cho một product từ tất cả variants của nó
      * Dùng để hiển thị giá thấp nhất trong danh sách sản phẩm
@@ -0,0 +1,29 @@
+package org.yellowcat.backend.product.productvariant;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.yellowcat.backend.product.ProductChangedEvent;
+
+/**
+ * Entity listener cho ProductVariant: mọi thay đổi qua JPA (giá, tồn kho khi đặt/hủy đơn, trả hàng...)
+ * đều phát ProductChangedEvent, không cần sửa từng service cập nhật tồn kho
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductVariantChangeListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onVariantChanged(ProductVariant variant) {
+        if (variant.getProduct() != null) {
+            eventPublisher.publishEvent(new ProductChangedEvent(variant.getProduct().getProductId()));
+        }
+    }
+}
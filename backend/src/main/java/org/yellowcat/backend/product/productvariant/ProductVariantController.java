@@ -3,17 +3,22 @@ package org.yellowcat.backend.product.productvariant;
 import io.swagger.v3.oas.annotations.Operation;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.yellowcat.backend.common.config_api.response.ApiResponse;
+import org.yellowcat.backend.common.config_api.response.ConditionalGet;
 import org.yellowcat.backend.common.config_api.response.ResponseEntityBuilder;
+import org.yellowcat.backend.product.CatalogValidators;
 import org.yellowcat.backend.product.productvariant.dto.ProductVariantDetailDTO;
 import org.yellowcat.backend.product.productvariant.dto.ProductVariantFilterDTO;
 import org.yellowcat.backend.product.productvariant.dto.ProductVariantListResponse;
 import org.yellowcat.backend.product.promotionproduct.dto.ProductVariantSelectionResponse;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.List;
 
 @RestController
@@ -21,6 +26,9 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ProductVariantController {
     private final ProductVariantService variantService;
+    private final CatalogValidators catalogValidators;
+
+    private static final CacheControl LIST_CACHE = CacheControl.maxAge(Duration.ofSeconds(30)).cachePublic().mustRevalidate();
 
     @GetMapping("/search-paged")
     public ResponseEntity<ApiResponse<Page<ProductVariantFilterDTO>>> searchPage(
@@ -67,11 +75,15 @@ public class ProductVariantController {
     @Operation(summary = "Get all product variants", description = "Returns a paginated list of product variant with detailed information")
     public ResponseEntity<?> getAllProductVariants(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            WebRequest request
     ) {
         try {
-            Page<ProductVariantListResponse> productPage = variantService.findAllProductVariant(page, size);
-            return ResponseEntityBuilder.success(productPage);
+            CatalogValidators.Validator validator = catalogValidators.forCatalog("variants-" + page + "-" + size);
+            return ConditionalGet.respond(request, validator.etag(), validator.lastModified(), LIST_CACHE, () -> {
+                Page<ProductVariantListResponse> productPage = variantService.findAllProductVariant(page, size);
+                return ResponseEntityBuilder.success(productPage);
+            });
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntityBuilder.error(HttpStatus.NOT_FOUND, "Error retrieving products", "Error retrieving products");
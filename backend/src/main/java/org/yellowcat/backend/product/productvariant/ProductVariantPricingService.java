@@ -0,0 +1,85 @@
+package org.yellowcat.backend.product.productvariant;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Tính giá sale hiệu lực theo lô cho nhiều variant cùng lúc
+ * Thay cho việc gọi refreshPromotionForDisplay từng variant (mỗi variant một query)
+ * Promotion được tra trong ActivePromotionIndex, chỉ còn tối đa 1 query lấy giá gốc
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductVariantPricingService {
+
+    private final ProductVariantRepository productVariantRepository;
+    private final ProductVariantAutoPromotionService autoPromotionService;
+
+    /**
+     * Tính giá sale hiệu lực cho các variant khi đã biết giá gốc
+     *
+     * @param priceByVariantId giá gốc theo variantId
+     * @return salePrice theo variantId, chỉ chứa các variant đang có promotion
+     */
+    public Map<Integer, BigDecimal> getEffectiveSalePrices(Map<Integer, BigDecimal> priceByVariantId) {
+        if (priceByVariantId.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<Integer, BigDecimal> salePrices = new HashMap<>();
+        priceByVariantId.forEach((variantId, price) -> {
+            if (price != null) {
+                BigDecimal salePrice = autoPromotionService.calculateSalePrice(variantId, price, now);
+                if (salePrice != null) {
+                    salePrices.put(variantId, salePrice);
+                }
+            }
+        });
+        return salePrices;
+    }
+
+    /**
+     * Tính giá sale hiệu lực cho các variant, tự load giá gốc từ database
+     */
+    public Map<Integer, BigDecimal> getEffectiveSalePricesByVariantIds(Collection<Integer> variantIds) {
+        if (variantIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Integer, BigDecimal> priceByVariantId = new HashMap<>();
+        for (Object[] row : productVariantRepository.findPricesByVariantIds(variantIds)) {
+            priceByVariantId.put((Integer) row[0], (BigDecimal) row[1]);
+        }
+        return getEffectiveSalePrices(priceByVariantId);
+    }
+
+    /**
+     * Tính min sale price cho từng product (dùng cho trang danh sách sản phẩm)
+     *
+     * @param productIds danh sách productId trên trang
+     * @return min salePrice theo productId, chỉ chứa product có ít nhất 1 variant đang có promotion
+     */
+    public Map<Integer, BigDecimal> getMinSalePricesByProductIds(Collection<Integer> productIds) {
+        if (productIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Integer, BigDecimal> priceByVariantId = new HashMap<>();
+        Map<Integer, Integer> productIdByVariantId = new HashMap<>();
+        for (Object[] row : productVariantRepository.findPricesByProductIds(productIds)) {
+            Integer variantId = (Integer) row[0];
+            productIdByVariantId.put(variantId, (Integer) row[1]);
+            priceByVariantId.put(variantId, (BigDecimal) row[2]);
+        }
+
+        Map<Integer, BigDecimal> minSalePrices = new HashMap<>();
+        getEffectiveSalePrices(priceByVariantId).forEach((variantId, salePrice) ->
+                minSalePrices.merge(productIdByVariantId.get(variantId), salePrice, BigDecimal::min));
+        return minSalePrices;
+    }
+}
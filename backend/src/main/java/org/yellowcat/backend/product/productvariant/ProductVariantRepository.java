@@ -12,6 +12,7 @@ import org.yellowcat.backend.product.productvariant.dto.ProductVariantListRespon
 import org.yellowcat.backend.product.promotionproduct.dto.ProductVariantSelectionResponse;
 import org.yellowcat.backend.product.size.Size;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -24,6 +25,12 @@ public interface ProductVariantRepository extends JpaRepository<ProductVariant,
     @Query("select p from ProductVariant p where p.product.productId = ?1")
     List<ProductVariant> findByProductId(Integer productId);
 
+    @Query("select p.variantId, p.product.productId, p.price from ProductVariant p where p.product.productId in :productIds")
+    List<Object[]> findPricesByProductIds(@Param("productIds") Collection<Integer> productIds);
+
+    @Query("select p.variantId, p.price from ProductVariant p where p.variantId in :variantIds")
+    List<Object[]> findPricesByVariantIds(@Param("variantIds") Collection<Integer> variantIds);
+
     @Query("select (count(p) > 0) from ProductVariant p where p.sku = ?1")
     Boolean existsBySku(String sku);
 
@@ -10,6 +10,7 @@ import org.yellowcat.backend.product.productvariant.dto.ProductVariantListRespon
 import org.yellowcat.backend.product.productvariant.mapper.ProductVariantMapper;
 import org.yellowcat.backend.product.productvariant.specification.ProductVariantSpecification;
 import org.yellowcat.backend.product.promotionproduct.dto.ProductVariantSelectionResponse;
+import org.yellowcat.backend.product.search.ProductSearchService;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -19,6 +20,12 @@ import java.util.List;
 public class ProductVariantService {
     private final ProductVariantRepository productVariantRepository;
     private final ProductVariantMapper productVariantMapper;
+    private final ProductSearchService productSearchService;
+
+    // Tìm theo tên qua chỉ mục full-text (không phân biệt dấu), null nếu không lọc theo tên
+    private ProductSearchService.KeywordMatch matchKeyword(String name) {
+        return name == null || name.isBlank() ? null : productSearchService.matchKeyword(name);
+    }
 
 
     @Transactional(readOnly = true)
@@ -36,7 +43,7 @@ public class ProductVariantService {
             int size
     ) {
         var spec = ProductVariantSpecification.filter(
-                name, categoryId, brandId, materialId,
+                matchKeyword(name), categoryId, brandId, materialId,
                 targetAudienceId, minPrice, maxPrice, colorId, sizeId
         );
 
@@ -58,7 +65,7 @@ public class ProductVariantService {
             Long sizeId
     ) {
         var spec = ProductVariantSpecification.filter(
-                name, categoryId, brandId, materialId,
+                matchKeyword(name), categoryId, brandId, materialId,
                 targetAudienceId, minPrice, maxPrice, colorId, sizeId
         );
         var entities = productVariantRepository.findAll(spec);
@@ -0,0 +1,170 @@
+package org.yellowcat.backend.product.productvariant;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.yellowcat.backend.product.ProductChangedEvent;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Tính lại sale_price đã lưu của các variant theo promotion hiệu lực tại một thời điểm, hoàn toàn bằng SQL
+ * - Chọn promotion tốt nhất mỗi variant bằng DISTINCT ON (cùng quy tắc với PromotionUtils.compareDiscount:
+ *   percentage trước fixed_amount, cùng loại thì giá trị lớn hơn)
+ * - Một câu UPDATE cho cả lô, chỉ ghi các dòng có giá đổi (IS DISTINCT FROM)
+ * - Tập lớn: chia theo khoảng variant_id, mỗi đoạn một transaction ngắn (recalculateAll)
+ */
+@Component
+@Slf4j
+public class SalePriceRecalculator {
+
+    // Tính giá như ProductVariantAutoPromotionService.calculateDiscountedPrice, làm tròn theo cột NUMERIC(12, 2)
+    private static final String RECALCULATE_SQL = """
+            WITH scope AS (SELECT v.variant_id, v.price
+                           FROM product_variants v
+                           WHERE %s),
+                 best AS (SELECT DISTINCT ON (pp.variant_id) pp.variant_id, p.discount_type, p.discount_value
+                          FROM promotion_products pp
+                                   JOIN promotions p ON p.promotion_id = pp.promotion_id
+                                   JOIN scope s ON s.variant_id = pp.variant_id
+                          WHERE p.is_active = TRUE
+                            AND ? BETWEEN p.start_date AND p.end_date
+                          ORDER BY pp.variant_id,
+                                   LOWER(p.discount_type) = 'percentage' DESC,
+                                   LOWER(p.discount_type) = 'fixed_amount' DESC,
+                                   p.discount_value DESC,
+                                   p.promotion_id),
+                 target AS (SELECT s.variant_id,
+                                   CASE
+                                       WHEN b.variant_id IS NULL THEN NULL
+                                       WHEN LOWER(b.discount_type) = 'percentage'
+                                           THEN ROUND(s.price * (1 - b.discount_value / 100), 2)
+                                       WHEN LOWER(b.discount_type) = 'fixed_amount'
+                                           THEN GREATEST(s.price - b.discount_value, 0)
+                                       ELSE s.price
+                                       END AS sale_price
+                            FROM scope s
+                                     LEFT JOIN best b ON b.variant_id = s.variant_id)
+            UPDATE product_variants v
+            SET sale_price = t.sale_price,
+                updated_at = CURRENT_TIMESTAMP
+            FROM target t
+            WHERE v.variant_id = t.variant_id
+              AND v.sale_price IS DISTINCT FROM t.sale_price
+            RETURNING v.product_id
+            """;
+
+    private static final String BY_IDS_SQL = RECALCULATE_SQL.formatted("v.variant_id = ANY(?)");
+    private static final String BY_RANGE_SQL = RECALCULATE_SQL.formatted("v.variant_id > ? AND v.variant_id <= ?");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate chunkTransaction;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int chunkSize;
+
+    public SalePriceRecalculator(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 ApplicationEventPublisher eventPublisher,
+                                 @Value("${promotion.recalculate.chunk-size:5000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Kết quả tính lại toàn bộ
+     *
+     * @param scanned số variant đã xét
+     * @param changed số variant đổi sale_price
+     * @param chunks  số đoạn (transaction) đã chạy
+     */
+    public record Result(int scanned, int changed, int chunks) {
+    }
+
+    /**
+     * Tính lại cho các variant chỉ định, chạy trong transaction của người gọi
+     * (bảng promotion_products / promotions đã được flush trước khi gọi)
+     *
+     * @return số variant đã đổi sale_price
+     */
+    public int recalculate(Collection<Integer> variantIds, LocalDateTime at) {
+        if (variantIds.isEmpty()) {
+            return 0;
+        }
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(variantIds));
+        int changed = 0;
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            Integer[] chunk = ids.subList(from, Math.min(from + chunkSize, ids.size())).toArray(Integer[]::new);
+            List<Integer> productIds = jdbcTemplate.query(BY_IDS_SQL,
+                    ps -> {
+                        ps.setArray(1, ps.getConnection().createArrayOf("integer", chunk));
+                        ps.setTimestamp(2, Timestamp.valueOf(at));
+                    },
+                    (rs, i) -> rs.getInt(1));
+            changed += productIds.size();
+            publishChanged(productIds);
+        }
+        log.debug("Tính lại sale_price: {}/{} variant đổi giá", changed, ids.size());
+        return changed;
+    }
+
+    /**
+     * Tính lại toàn bộ product_variants theo từng đoạn variant_id, mỗi đoạn commit riêng
+     * để không giữ một transaction dài khi số variant rất lớn
+     */
+    public Result recalculateAll(LocalDateTime at) {
+        int scanned = 0;
+        int changed = 0;
+        int chunks = 0;
+        int lastId = 0;
+        while (true) {
+            int after = lastId;
+            int[] chunkResult = chunkTransaction.execute(status -> {
+                // Cận trên của đoạn: variant_id thứ chunkSize sau after
+                int[] range = jdbcTemplate.queryForObject("""
+                                SELECT MAX(variant_id), COUNT(*)
+                                FROM (SELECT variant_id FROM product_variants
+                                      WHERE variant_id > ? ORDER BY variant_id LIMIT ?) s
+                                """,
+                        (rs, i) -> new int[]{rs.getInt(1), rs.getInt(2)}, after, chunkSize);
+                if (range == null || range[1] == 0) {
+                    return null;
+                }
+                int upper = range[0];
+                List<Integer> productIds = jdbcTemplate.query(BY_RANGE_SQL,
+                        ps -> {
+                            ps.setInt(1, after);
+                            ps.setInt(2, upper);
+                            ps.setTimestamp(3, Timestamp.valueOf(at));
+                        },
+                        (rs, i) -> rs.getInt(1));
+                publishChanged(productIds);
+                return new int[]{upper, range[1], productIds.size()};
+            });
+            if (chunkResult == null) {
+                break;
+            }
+            chunks++;
+            scanned += chunkResult[1];
+            changed += chunkResult[2];
+            lastId = chunkResult[0];
+        }
+        log.info("Tính lại sale_price toàn bộ: {} variant đổi giá, {} đoạn", changed, chunks);
+        return new Result(scanned, changed, chunks);
+    }
+
+    // Ghi bằng JDBC không qua ProductVariantChangeListener
+    private void publishChanged(List<Integer> productIds) {
+        productIds.stream().distinct()
+                .forEach(productId -> eventPublisher.publishEvent(new ProductChangedEvent(productId)));
+    }
+}
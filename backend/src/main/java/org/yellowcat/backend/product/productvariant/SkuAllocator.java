@@ -0,0 +1,198 @@
+package org.yellowcat.backend.product.productvariant;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Cấp phát SKU dạng P{productId}-C{colorId}-S{sizeId}, thêm hậu tố -01, -02... nếu trùng
+ * - Cấp cho nhiều variant một lần: một truy vấn khóa + một truy vấn kiểm tra cho cả lô
+ * - Bloom filter các SKU đã có: SKU gốc chắc chắn chưa tồn tại thì chỉ kiểm tra SKU gốc, không kiểm tra sẵn hậu tố
+ * - Khóa advisory theo SKU gốc đến hết transaction nên các lần cấp song song không trùng nhau;
+ *   unique index ux_product_variants_sku là lớp bảo vệ cuối
+ * Phải gọi trong transaction ghi variant
+ */
+@Component
+@Slf4j
+public class SkuAllocator {
+
+    // Số hậu tố kiểm tra mỗi lần truy vấn cho một SKU gốc
+    static final int PROBE_WINDOW = 10;
+
+    private final SkuStore skuStore;
+    private final int expectedSkus;
+    private volatile SkuBloomFilter bloomFilter;
+    // Filter đang được nạp lại, SKU cấp trong lúc nạp được ghi vào cả hai
+    private volatile SkuBloomFilter rebuilding;
+
+    public SkuAllocator(SkuStore skuStore, @Value("${sku.bloom.expected-insertions:200000}") int expectedSkus) {
+        this.skuStore = skuStore;
+        this.expectedSkus = expectedSkus;
+    }
+
+    public static String baseSku(Integer productId, Integer colorId, Integer sizeId) {
+        return String.format("P%d-C%d-S%d", productId, colorId, sizeId);
+    }
+
+    /**
+     * @param baseSkus SKU gốc của từng variant (có thể trùng nhau)
+     * @return SKU đã cấp, cùng thứ tự với baseSkus, không trùng nhau và không trùng SKU đã có
+     */
+    public List<String> allocate(List<String> baseSkus) {
+        if (baseSkus.isEmpty()) {
+            return List.of();
+        }
+        skuStore.lock(new TreeSet<>(baseSkus));
+        List<String> result = allocateLocked(baseSkus, Set.of());
+        for (String sku : result) {
+            remember(sku);
+        }
+        return result;
+    }
+
+    /**
+     * Giữ nguyên SKU mong muốn nếu còn trống (vd: SKU lịch sử khi rollback, có thể đã có hậu tố),
+     * nếu đã bị dùng hoặc null thì cấp mới từ SKU gốc tương ứng để không chồng hậu tố (P5-C1-S1-01-01)
+     *
+     * @param preferredSkus SKU mong muốn của từng variant, phần tử có thể null
+     * @param baseSkus      SKU gốc của từng variant, cùng thứ tự với preferredSkus
+     * @return SKU đã cấp, cùng thứ tự, không trùng nhau và không trùng SKU đã có
+     */
+    public List<String> allocatePreferred(List<String> preferredSkus, List<String> baseSkus) {
+        if (preferredSkus.isEmpty()) {
+            return List.of();
+        }
+        // Khóa cả SKU gốc của SKU mong muốn: lần cấp song song từ gốc đó có thể đang lấy đúng hậu tố này
+        Set<String> lockKeys = new TreeSet<>(baseSkus);
+        List<String> preferred = new ArrayList<>();
+        for (String sku : preferredSkus) {
+            if (sku != null) {
+                preferred.add(sku);
+                lockKeys.add(stripSuffix(sku));
+            }
+        }
+        skuStore.lock(lockKeys);
+
+        Set<String> taken = preferred.isEmpty() ? Set.of() : skuStore.findExisting(preferred);
+        String[] result = new String[preferredSkus.size()];
+        Set<String> kept = new HashSet<>();
+        List<Integer> fallbackIndexes = new ArrayList<>();
+        List<String> fallbackBases = new ArrayList<>();
+        for (int i = 0; i < preferredSkus.size(); i++) {
+            String sku = preferredSkus.get(i);
+            if (sku != null && !taken.contains(sku) && kept.add(sku)) {
+                result[i] = sku;
+            } else {
+                fallbackIndexes.add(i);
+                fallbackBases.add(baseSkus.get(i));
+            }
+        }
+        if (!fallbackBases.isEmpty()) {
+            List<String> allocated = allocateLocked(fallbackBases, kept);
+            for (int i = 0; i < allocated.size(); i++) {
+                result[fallbackIndexes.get(i)] = allocated.get(i);
+            }
+        }
+        for (String sku : result) {
+            remember(sku);
+        }
+        return Arrays.asList(result);
+    }
+
+    // Phải giữ khóa advisory của các SKU gốc; reserved: SKU đã cấp trong cùng lô
+    private List<String> allocateLocked(List<String> baseSkus, Set<String> reserved) {
+        // Luôn kiểm tra SKU gốc trong database (một truy vấn theo unique index): Bloom filter riêng từng instance
+        // nên không biết SKU do instance khác vừa tạo. Filter chỉ quyết định có kiểm tra sẵn các hậu tố hay không
+        SkuBloomFilter filter = bloomFilter;
+        Set<String> seen = new HashSet<>();
+        Map<String, Integer> probedUpTo = new HashMap<>();
+        List<String> candidates = new ArrayList<>();
+        for (String base : baseSkus) {
+            boolean repeated = !seen.add(base);
+            int from = probedUpTo.getOrDefault(base, 0);
+            int upTo = repeated || filter == null || filter.mightContain(base) ? PROBE_WINDOW : 1;
+            for (int suffix = from; suffix < upTo; suffix++) {
+                candidates.add(withSuffix(base, suffix));
+            }
+            probedUpTo.put(base, Math.max(from, upTo));
+        }
+        Set<String> taken = new HashSet<>(skuStore.findExisting(candidates));
+
+        List<String> result = new ArrayList<>(baseSkus.size());
+        Set<String> assigned = new HashSet<>(reserved);
+        for (String base : baseSkus) {
+            int suffix = 0;
+            String sku = base;
+            while (taken.contains(sku) || assigned.contains(sku)) {
+                suffix++;
+                if (suffix >= probedUpTo.get(base)) {
+                    // Hết phần đã kiểm tra, kiểm tra tiếp các hậu tố kế tiếp
+                    List<String> next = new ArrayList<>();
+                    addCandidates(next, base, suffix);
+                    taken.addAll(skuStore.findExisting(next));
+                    probedUpTo.put(base, suffix + PROBE_WINDOW);
+                }
+                sku = withSuffix(base, suffix);
+            }
+            assigned.add(sku);
+            result.add(sku);
+        }
+        return result;
+    }
+
+    /**
+     * Nạp lại Bloom filter từ database: lúc khởi động và định kỳ, để loại SKU đã xóa
+     * và thêm SKU do instance backend khác tạo
+     */
+    @Scheduled(fixedDelayString = "${sku.bloom.rebuild-ms:3600000}")
+    public void rebuildBloomFilter() {
+        SkuBloomFilter next = new SkuBloomFilter(expectedSkus, 0.01);
+        rebuilding = next;
+        try {
+            int[] count = {0};
+            skuStore.forEachSku(sku -> {
+                next.put(sku);
+                count[0]++;
+            });
+            bloomFilter = next;
+            log.debug("Nạp Bloom filter SKU: {} SKU", count[0]);
+            if (count[0] > expectedSkus) {
+                log.warn("Số SKU ({}) vượt sku.bloom.expected-insertions ({}), tỉ lệ dương tính giả sẽ tăng",
+                        count[0], expectedSkus);
+            }
+        } catch (RuntimeException e) {
+            log.error("Không nạp được Bloom filter SKU, mọi lần cấp sẽ kiểm tra database: {}", e.getMessage(), e);
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    private void remember(String sku) {
+        SkuBloomFilter current = bloomFilter;
+        if (current != null) {
+            current.put(sku);
+        }
+        SkuBloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(sku);
+        }
+    }
+
+    private static void addCandidates(List<String> candidates, String base, int fromSuffix) {
+        for (int suffix = fromSuffix; suffix < fromSuffix + PROBE_WINDOW; suffix++) {
+            candidates.add(withSuffix(base, suffix));
+        }
+    }
+
+    // P5-C1-S1-01 → P5-C1-S1
+    private static String stripSuffix(String sku) {
+        return sku.replaceFirst("^(P\\d+-C\\d+-S\\d+)-\\d{2,}$", "$1");
+    }
+
+    private static String withSuffix(String base, int suffix) {
+        return suffix == 0 ? base : base + "-" + String.format("%02d", suffix);
+    }
+}
@@ -0,0 +1,24 @@
+package org.yellowcat.backend.product.productvariant;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Truy cập SKU trong database cho SkuAllocator
+ */
+public interface SkuStore {
+
+    /**
+     * Khóa các SKU gốc đến hết transaction hiện tại (pg_advisory_xact_lock),
+     * hai lần cấp phát cùng SKU gốc chạy song song sẽ lần lượt, lần sau thấy SKU lần trước đã commit
+     */
+    void lock(Collection<String> baseSkus);
+
+    /**
+     * @return các SKU trong candidates đã tồn tại
+     */
+    Set<String> findExisting(Collection<String> candidates);
+
+    void forEachSku(Consumer<String> consumer);
+}
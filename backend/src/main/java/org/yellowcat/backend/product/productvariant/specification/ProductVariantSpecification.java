@@ -3,6 +3,8 @@ package org.yellowcat.backend.product.productvariant.specification;
 import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import org.springframework.data.jpa.domain.Specification;
 import org.yellowcat.backend.product.Product;
 import org.yellowcat.backend.product.brand.Brand;
@@ -10,6 +12,8 @@ import org.yellowcat.backend.product.category.Category;
 import org.yellowcat.backend.product.color.Color;
 import org.yellowcat.backend.product.material.Material;
 import org.yellowcat.backend.product.productvariant.ProductVariant;
+import org.yellowcat.backend.product.search.ProductSearchEntry;
+import org.yellowcat.backend.product.search.ProductSearchService;
 import org.yellowcat.backend.product.size.Size;
 import org.yellowcat.backend.product.targetaudience.TargetAudience;
 
@@ -18,8 +22,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class ProductVariantSpecification {
+    /**
+     * @param keywordMatch cách khớp từ khóa tìm kiếm (từ ProductSearchService), null nếu không tìm theo tên
+     */
     public static Specification<ProductVariant> filter(
-            String name,
+            ProductSearchService.KeywordMatch keywordMatch,
             Long categoryId,
             Long brandId,
             Long materialId,
@@ -43,11 +50,18 @@ public class ProductVariantSpecification {
             // Chỉ lấy sản phẩm active
             predicates.add(cb.isTrue(product.get("isActive")));
 
-            if (name != null && !name.isBlank()) {
-                predicates.add(cb.like(
-                        cb.lower(product.get("productName")),
-                        "%" + name.toLowerCase() + "%"
-                ));
+            if (keywordMatch != null) {
+                if (keywordMatch.matchesNothing()) {
+                    predicates.add(cb.disjunction());
+                } else {
+                    // Semi-join trên product_search để planner lọc qua index GIN rồi mới nối với variant
+                    Subquery<Integer> matched = query.subquery(Integer.class);
+                    Root<ProductSearchEntry> search = matched.from(ProductSearchEntry.class);
+                    matched.select(search.get("productId"))
+                            .where(cb.isTrue(cb.function(keywordMatch.sqlFunction(), Boolean.class,
+                                    search.get(keywordMatch.searchAttribute()), cb.literal(keywordMatch.query()))));
+                    predicates.add(product.get("productId").in(matched));
+                }
             }
             if (categoryId != null) {
                 predicates.add(cb.equal(category.get("id"), categoryId));
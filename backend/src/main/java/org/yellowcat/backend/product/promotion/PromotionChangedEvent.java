@@ -0,0 +1,10 @@
+package org.yellowcat.backend.product.promotion;
+
+/**
+ * Sự kiện phát ra khi một promotion (hoặc danh sách variant của nó) được tạo, sửa, xóa
+ * Các thành phần giữ dữ liệu promotion trong bộ nhớ lắng nghe sự kiện này sau khi transaction commit
+ *
+ * @param promotionId ID của promotion bị thay đổi
+ */
+public record PromotionChangedEvent(Integer promotionId) {
+}
@@ -19,12 +19,11 @@ import org.yellowcat.backend.common.config_api.response.ResponseEntityBuilder;
 import org.yellowcat.backend.product.promotion.dto.CreatePromotionDTO;
 import org.yellowcat.backend.product.promotion.dto.PromotionRequest;
 import org.yellowcat.backend.product.promotion.dto.PromotionResponse;
+import org.yellowcat.backend.product.promotionproduct.ActivePromotionIndex;
 import org.yellowcat.backend.product.promotionproduct.PromotionProductService;
-import org.yellowcat.backend.product.productvariant.ProductVariant;
-import org.yellowcat.backend.product.productvariant.ProductVariantRepository;
-import org.yellowcat.backend.product.productvariant.ProductVariantAutoPromotionService;
+import org.yellowcat.backend.product.productvariant.SalePriceRecalculator;
 
-import java.util.List;
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.UUID;
 
@@ -38,8 +37,8 @@ public class PromotionController {
     PromotionService promotionService;
     private final PromotionProductService promotionProductService;
     private final PromotionScheduler promotionScheduler;
-    private final ProductVariantRepository productVariantRepository;
-    private final ProductVariantAutoPromotionService autoPromotionService;
+    private final SalePriceRecalculator salePriceRecalculator;
+    private final ActivePromotionIndex activePromotionIndex;
 
 
     @GetMapping
@@ -143,17 +142,13 @@ public class PromotionController {
     @PreAuthorize("hasAnyAuthority('Admin_Web')")
     public ResponseEntity<?> syncAllPromotions() {
         try {
-            // Lấy tất cả variants và sync lại promotion
-            List<ProductVariant> allVariants = productVariantRepository.findAll();
-            int updatedCount = autoPromotionService.batchApplyPromotions(allVariants);
-            
-            // Lưu lại những variants đã được update
-            productVariantRepository.saveAll(allVariants);
+            // Tính lại bằng SQL theo từng đoạn variant, mỗi đoạn commit riêng
+            SalePriceRecalculator.Result result = salePriceRecalculator.recalculateAll(LocalDateTime.now());
             
             return ResponseEntityBuilder.success(Map.of(
                 "message", "✅ Đã sync promotion cho tất cả variants thành công!",
-                "totalVariants", allVariants.size(),
-                "updatedVariants", updatedCount,
+                "totalVariants", result.scanned(),
+                "updatedVariants", result.changed(),
                 "note", "Tất cả variants đã được áp dụng promotion đúng theo quy tắc hiện tại"
             ));
             
@@ -166,5 +161,22 @@ public class PromotionController {
         }
     }
 
-
+    @PostMapping("/admin/verify-promotion-index")
+    @PreAuthorize("hasAnyAuthority('Admin_Web')")
+    public ResponseEntity<?> verifyPromotionIndex() {
+        try {
+            boolean consistent = activePromotionIndex.verifyConsistency();
+            return ResponseEntityBuilder.success(Map.of(
+                "consistent", consistent,
+                "indexedVariants", activePromotionIndex.size(),
+                "note", consistent ? "Index khớp với database" : "Index lệch so với database, đã rebuild lại"
+            ));
+        } catch (Exception e) {
+            return ResponseEntityBuilder.error(
+                HttpStatus.INTERNAL_SERVER_ERROR,
+                "❌ Lỗi khi kiểm tra index promotion: " + e.getMessage(),
+                e.getMessage()
+            );
+        }
+    }
 }
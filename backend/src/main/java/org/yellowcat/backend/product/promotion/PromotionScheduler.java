@@ -1,17 +1,41 @@
 package org.yellowcat.backend.product.promotion;
 
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.yellowcat.backend.product.productvariant.SalePriceRecalculator;
+import org.yellowcat.backend.product.promotionproduct.ActivePromotionIndex;
 import org.yellowcat.backend.product.promotionproduct.PromotionProductRepository;
-import org.yellowcat.backend.product.productvariant.ProductVariant;
-import org.yellowcat.backend.product.productvariant.ProductVariantRepository;
 
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.List;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
 
+/**
+ * Xử lý đúng thời điểm các mốc bắt đầu / kết thúc promotion
+ * - Hàng đợi mốc lưu trong bảng promotion_boundaries (trigger trên promotions giữ đồng bộ, xem V9)
+ * - Một timer một lần hẹn tại mốc chưa xử lý sớm nhất; hẹn lại sau mỗi lần xử lý và khi promotion thay đổi
+ *   Timer chạy trên thread riêng: scheduler mặc định của Spring chỉ có 1 thread dùng chung cho mọi @Scheduled
+ *   (drain lịch sử, rebuild Bloom SKU, ...), job dài ở đó sẽ làm mốc bị xử lý trễ
+ * - Tại mốc: tắt promotion đã hết hạn, tính lại sale_price của mọi variant bị ảnh hưởng trong một lô
+ * - Khi khởi động xử lý bù các mốc đã qua lúc server tắt; poll định kỳ để nhận thay đổi từ instance khác
+ * Nhiều instance cùng chạy: FOR UPDATE SKIP LOCKED, mỗi mốc chỉ một instance xử lý
+ */
 @Component
 @RequiredArgsConstructor
 @Slf4j
@@ -19,82 +43,196 @@ public class PromotionScheduler {
 
     private final PromotionRepository promotionRepository;
     private final PromotionProductRepository promotionProductRepository;
-    private final ProductVariantRepository productVariantRepository;
+    private final ActivePromotionIndex promotionIndex;
+    private final SalePriceRecalculator salePriceRecalculator;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskScheduler boundaryTimer = createBoundaryTimer();
 
-    @Scheduled(cron = "0 0 0 * * *") // chạy mỗi ngày lúc 00:00
-    @Transactional
+    private ScheduledFuture<?> timer;
+    private LocalDateTime armedAt;
+
+    private record Boundary(Integer promotionId, String kind, LocalDateTime boundaryAt) {
+    }
+
+    private static ThreadPoolTaskScheduler createBoundaryTimer() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("promotion-boundary-");
+        scheduler.initialize();
+        return scheduler;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        boundaryTimer.shutdown();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        int processed = processDueBoundaries();
+        if (processed > 0) {
+            log.info("Xử lý bù {} mốc promotion đã qua trong lúc server tắt", processed);
+        }
+    }
+
+    // Chạy sau ActivePromotionIndex; xử lý ngoài luồng commit để không kéo dài request của admin
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPromotionChanged(PromotionChangedEvent event) {
+        boundaryTimer.schedule(this::processQuietly, Instant.now());
+    }
+
+    /**
+     * Dự phòng: nhận mốc mới do instance khác tạo và hẹn lại timer
+     */
+    @Scheduled(fixedDelayString = "${promotion.boundary.poll-ms:60000}",
+            initialDelayString = "${promotion.boundary.poll-ms:60000}")
+    public void poll() {
+        processQuietly();
+    }
+
+    /**
+     * Giữ cho API admin /admin/reset-expired: xử lý ngay các mốc đã đến hạn
+     */
     public void updateExpiredPromotions() {
+        processDueBoundaries();
+    }
+
+    /**
+     * Xử lý mọi mốc đã đến hạn rồi hẹn timer cho mốc kế tiếp
+     *
+     * @return số mốc đã xử lý
+     */
+    public synchronized int processDueBoundaries() {
         LocalDateTime now = LocalDateTime.now();
-        List<Promotion> expired = promotionRepository.findByEndDateBeforeAndIsActiveTrue(now);
+        Integer processed = transactionTemplate.execute(status -> processDue(now));
+        arm();
+        return processed == null ? 0 : processed;
+    }
 
+    private int processDue(LocalDateTime now) {
+        List<Boundary> due = jdbcTemplate.query("""
+                        SELECT promotion_id, kind, boundary_at
+                        FROM promotion_boundaries
+                        WHERE processed_at IS NULL AND boundary_at <= ?
+                        ORDER BY boundary_at
+                        FOR UPDATE SKIP LOCKED
+                        """,
+                (rs, i) -> new Boundary(rs.getInt("promotion_id"), rs.getString("kind"),
+                        rs.getTimestamp("boundary_at").toLocalDateTime()),
+                Timestamp.valueOf(now));
+        if (due.isEmpty()) {
+            log.debug("Không có mốc promotion nào đến hạn");
+            return 0;
+        }
+
+        Set<Integer> promotionIds = new LinkedHashSet<>();
+        due.forEach(b -> promotionIds.add(b.promotionId()));
+        // Index (dùng khi hiển thị giá) có thể chưa nhận thay đổi làm ra mốc này nếu thay đổi đến từ instance khác
+        promotionIds.forEach(promotionIndex::refreshPromotion);
+
+        List<Promotion> expired = promotionRepository.findByEndDateBeforeAndIsActiveTrue(now);
         if (!expired.isEmpty()) {
-            log.info("Tìm thấy {} promotion hết hạn cần xử lý", expired.size());
-            
-            // Set promotion thành inactive
             expired.forEach(p -> p.setIsActive(false));
-            promotionRepository.saveAll(expired);
-            
-            // 🔥 BỔ SUNG: Reset salePrice về null cho tất cả variants thuộc promotion hết hạn
-            int totalVariantsReset = 0;
-            for (Promotion promotion : expired) {
-                List<Integer> variantIds = promotionProductRepository.findVariantIdsByPromotionId(promotion.getId());
-                if (!variantIds.isEmpty()) {
-                    List<ProductVariant> variants = productVariantRepository.findAllById(variantIds);
-                    
-                    variants.forEach(variant -> {
-                        log.debug("Reset salePrice cho variant ID: {} (SKU: {})", 
-                                variant.getVariantId(), variant.getSku());
-                        variant.setSalePrice(null);
-                    });
-                    
-                    productVariantRepository.saveAll(variants);
-                    totalVariantsReset += variants.size();
-                    
-                    log.info("Đã reset salePrice cho {} variants của promotion: {} (ID: {})", 
-                            variants.size(), promotion.getPromotionName(), promotion.getId());
-                }
-            }
-            
-            log.info("✅ Hoàn thành: Đã cập nhật {} promotion hết hạn thành inactive và reset salePrice cho {} variants", 
-                    expired.size(), totalVariantsReset);
-        } else {
-            log.debug("Không có promotion nào hết hạn cần xử lý");
+            // Promotion đã hết hạn: trigger giữ nguyên processed_at vì thời gian không đổi (V15)
+            promotionRepository.saveAllAndFlush(expired);
+            expired.forEach(p -> eventPublisher.publishEvent(new PromotionChangedEvent(p.getId())));
+        }
+
+        Set<Integer> variantIds = new HashSet<>();
+        promotionIds.forEach(id -> variantIds.addAll(promotionProductRepository.findVariantIdsByPromotionId(id)));
+        int changed = salePriceRecalculator.recalculate(variantIds, now);
+
+        // So cả boundary_at: mốc bị dời trong lúc xử lý vẫn còn chờ
+        jdbcTemplate.batchUpdate("""
+                        UPDATE promotion_boundaries SET processed_at = ?
+                        WHERE promotion_id = ? AND kind = ? AND boundary_at = ?
+                        """,
+                due, due.size(), (ps, b) -> {
+                    ps.setTimestamp(1, Timestamp.valueOf(now));
+                    ps.setInt(2, b.promotionId());
+                    ps.setString(3, b.kind());
+                    ps.setTimestamp(4, Timestamp.valueOf(b.boundaryAt()));
+                });
+
+        log.info("Xử lý {} mốc promotion ({} promotion, {} tắt do hết hạn): {}/{} variant đổi sale_price",
+                due.size(), promotionIds.size(), expired.size(), changed, variantIds.size());
+        return due.size();
+    }
+
+    private void processQuietly() {
+        try {
+            processDueBoundaries();
+        } catch (Exception e) {
+            // Poll kế tiếp sẽ thử lại
+            log.error("Lỗi khi xử lý mốc promotion: {}", e.getMessage(), e);
+        }
+    }
+
+    private synchronized void arm() {
+        LocalDateTime next = transactionTemplate.execute(status -> jdbcTemplate.queryForObject(
+                "SELECT MIN(boundary_at) FROM promotion_boundaries WHERE processed_at IS NULL",
+                (rs, i) -> {
+                    Timestamp ts = rs.getTimestamp(1);
+                    return ts == null ? null : ts.toLocalDateTime();
+                }));
+        if (Objects.equals(next, armedAt) && timer != null && !timer.isDone()) {
+            return;
+        }
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        armedAt = next;
+        if (next != null) {
+            timer = boundaryTimer.schedule(this::processQuietly, next.atZone(ZoneId.systemDefault()).toInstant());
+            log.debug("Hẹn xử lý mốc promotion kế tiếp lúc {}", next);
         }
     }
 
     /**
-     * Method test thủ công để admin có thể kiểm tra logic reset promotion hết hạn
+     * Method test thủ công để admin có thể kiểm tra các mốc promotion đang chờ xử lý
      * Có thể được gọi thông qua API endpoint cho mục đích testing
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public String manualCheckExpiredPromotions() {
-        log.info("🔧 MANUAL TEST: Bắt đầu kiểm tra promotion hết hạn...");
-        
+        log.info("🔧 MANUAL TEST: Bắt đầu kiểm tra mốc promotion...");
+
         LocalDateTime now = LocalDateTime.now();
-        List<Promotion> expired = promotionRepository.findByEndDateBeforeAndIsActiveTrue(now);
-        
-        if (expired.isEmpty()) {
-            String message = "✅ Không có promotion nào hết hạn cần xử lý";
-            log.info(message);
-            return message;
-        }
-        
+        List<Boundary> pending = jdbcTemplate.query("""
+                        SELECT promotion_id, kind, boundary_at
+                        FROM promotion_boundaries
+                        WHERE processed_at IS NULL
+                        ORDER BY boundary_at
+                        """,
+                (rs, i) -> new Boundary(rs.getInt("promotion_id"), rs.getString("kind"),
+                        rs.getTimestamp("boundary_at").toLocalDateTime()));
+        List<Boundary> due = pending.stream().filter(b -> !b.boundaryAt().isAfter(now)).toList();
+
         StringBuilder result = new StringBuilder();
-        result.append(String.format("📋 Tìm thấy %d promotion hết hạn:\n", expired.size()));
-        
-        int totalVariantsReset = 0;
-        for (Promotion promotion : expired) {
-            List<Integer> variantIds = promotionProductRepository.findVariantIdsByPromotionId(promotion.getId());
-            result.append(String.format("- %s (ID: %d) - %d variants sẽ được reset\n", 
-                    promotion.getPromotionName(), promotion.getId(), variantIds.size()));
-            totalVariantsReset += variantIds.size();
+        if (due.isEmpty()) {
+            result.append("✅ Không có mốc promotion nào đến hạn cần xử lý\n");
+        } else {
+            result.append(String.format("📋 Tìm thấy %d mốc promotion đến hạn:\n", due.size()));
+            int totalVariants = 0;
+            for (Boundary boundary : due) {
+                int variants = promotionProductRepository.findVariantIdsByPromotionId(boundary.promotionId()).size();
+                result.append(String.format("- Promotion ID: %d - %s lúc %s - %d variants sẽ được tính lại\n",
+                        boundary.promotionId(), "S".equals(boundary.kind()) ? "bắt đầu" : "kết thúc",
+                        boundary.boundaryAt(), variants));
+                totalVariants += variants;
+            }
+            result.append(String.format("\n📊 Tổng cộng: %d variants sẽ được tính lại salePrice", totalVariants));
+            result.append("\n⚠️  Để thực thi, hãy chạy updateExpiredPromotions()\n");
         }
-        
-        result.append(String.format("\n📊 Tổng cộng: %d variants sẽ được reset salePrice", totalVariantsReset));
-        result.append("\n⚠️  Để thực thi, hãy chạy updateExpiredPromotions()");
-        
+        pending.stream().filter(b -> b.boundaryAt().isAfter(now)).findFirst()
+                .ifPresent(b -> result.append(String.format("⏰ Mốc kế tiếp: promotion ID %d lúc %s",
+                        b.promotionId(), b.boundaryAt())));
+
         String finalResult = result.toString();
         log.info("🔧 MANUAL TEST KẾT QUẢ:\n{}", finalResult);
         return finalResult;
     }
-}
\ No newline at end of file
+}
@@ -10,11 +10,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.yellowcat.backend.product.promotion.dto.PromotionRequest;
 import org.yellowcat.backend.product.promotion.dto.PromotionResponse;
 import org.yellowcat.backend.product.promotion.mapper.PromotionMapper;
+import org.yellowcat.backend.product.promotionproduct.PromotionConflictException;
+import org.yellowcat.backend.product.promotionproduct.PromotionProductRepository;
+import org.yellowcat.backend.product.promotionproduct.PromotionVariantAssigner;
+import org.yellowcat.backend.product.promotionproduct.dto.PromotionConflict;
 import org.yellowcat.backend.user.AppUser;
 import org.yellowcat.backend.user.AppUserRepository;
 
@@ -33,6 +38,9 @@ public class PromotionService {
     PromotionRepository promotionRepository;
     PromotionMapper promotionMapper;
     AppUserRepository appUserRepository;
+    ApplicationEventPublisher eventPublisher;
+    PromotionProductRepository promotionProductRepository;
+    PromotionVariantAssigner promotionVariantAssigner;
 
     public Page<Promotion> findWithBasicFilters(
             String keyword,
@@ -88,6 +96,7 @@ public class PromotionService {
         promotion.setPromotionCode(generatePromotionCode());
         promotion.setAppUser(appUser);
         promotionRepository.save(promotion);
+        eventPublisher.publishEvent(new PromotionChangedEvent(promotion.getId()));
         return promotionMapper.toPromotionResponse(promotion);
     }
 
@@ -100,8 +109,10 @@ public class PromotionService {
         if (nameExists && !promotion.getPromotionName().equalsIgnoreCase(request.getPromotionName())) {
             throw new RuntimeException("Tên khuyến mãi đã tồn tại");
         }
+        requireNoConflicts(promotion, request.getStartDate(), request.getEndDate());
         promotionMapper.updatePromotionFromRequest(promotion, request);
         promotionRepository.save(promotion);
+        eventPublisher.publishEvent(new PromotionChangedEvent(promotion.getId()));
         return promotionMapper.toPromotionResponse(promotion);
     }
 
@@ -110,9 +121,24 @@ public class PromotionService {
             throw new RuntimeException("Promotion not found");
         }
         promotionRepository.deleteById(id);
+        eventPublisher.publishEvent(new PromotionChangedEvent(id));
         return true;
     }
 
+    // Đổi thời gian: các variant đã gán không được trùng với promotion khác trong khoảng mới
+    // (báo đủ danh sách SKU như PromotionProductService thay vì lỗi exclusion constraint)
+    private void requireNoConflicts(Promotion promotion, LocalDateTime start, LocalDateTime end) {
+        if (start == null || end == null
+                || (start.equals(promotion.getStartDate()) && end.equals(promotion.getEndDate()))) {
+            return;
+        }
+        List<PromotionConflict> conflicts = promotionVariantAssigner.findConflicts(
+                promotionProductRepository.findVariantIdsByPromotionId(promotion.getId()), start, end, promotion.getId());
+        if (!conflicts.isEmpty()) {
+            throw new PromotionConflictException(conflicts);
+        }
+    }
+
     private String generatePromotionCode() {
         int randomNum = 10000 + new Random().nextInt(90000);
         return "KM" + randomNum;
@@ -24,6 +24,7 @@ public class PromotionOrderService {
     PromotionProgramRepository promotionProgramRepository;
     UsedPromotionRepository usedPromotionRepository;
     PromotionOrderMapper promotionOrderMapper;
+    PromotionProgramEvaluator promotionProgramEvaluator;
 
     //Find all promotion programs
     public Page<PromotionProgramDTO> findAllPromotionPrograms(int page, int size) {
@@ -49,6 +50,7 @@ public class PromotionOrderService {
         promotionProgram.setCreatedBy(user);
         promotionProgram.setUpdatedBy(user);
         promotionProgramRepository.save(promotionProgram);
+        promotionProgramEvaluator.markStale();
 
         return promotionOrderMapper.toDTO(promotionProgram);
     }
@@ -60,6 +62,7 @@ public class PromotionOrderService {
         promotionOrderMapper.updateEntityFromRequest(promotionProgram, request);
         promotionProgram.setUpdatedBy(user);
         promotionProgramRepository.save(promotionProgram);
+        promotionProgramEvaluator.markStale();
 
         return promotionOrderMapper.toDTO(promotionProgram);
     }
@@ -79,6 +82,7 @@ public class PromotionOrderService {
         else {
             promotionProgramRepository.delete(promotionProgram);
         }
+        promotionProgramEvaluator.markStale();
     }
 
     public void changeStatus(Integer promotionProgramId) {
@@ -90,6 +94,7 @@ public class PromotionOrderService {
         promotionProgram.setIsActive(!currentStatus);
 
         promotionProgramRepository.save(promotionProgram);
+        promotionProgramEvaluator.markStale();
     }
 
     String renderPromotionCode() {
@@ -0,0 +1,285 @@
+package org.yellowcat.backend.product.promotionorder;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.yellowcat.backend.common.money.Money;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chọn PromotionProgram (khuyến mãi theo đơn hàng) tốt nhất cho một đơn mà không query mỗi lần
+ * - Snapshot bất biến các chương trình đang diễn ra, còn lượt, sắp xếp theo minimum_order_value
+ *   kèm chỉ số chương trình giảm cố định / giảm % lớn nhất tính dồn theo ngưỡng → chọn bằng một lần tìm nhị phân
+ * - usage_limit_total là số lượt còn lại: mỗi chương trình có bộ đếm AtomicInteger trong bộ nhớ để loại nhanh
+ *   chương trình đã hết, còn giới hạn thật do UPDATE có điều kiện (usage_limit_total > 0) trong database đảm bảo
+ * - Load lại khi: qua mốc bắt đầu/kết thúc, chương trình hết lượt, admin thay đổi chương trình, định kỳ (thay đổi từ instance khác)
+ */
+@Component
+@Slf4j
+public class PromotionProgramEvaluator {
+
+    private final PromotionProgramRepository promotionProgramRepository;
+
+    // null cho tới lần load đầu tiên
+    private volatile Snapshot snapshot;
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+
+    public PromotionProgramEvaluator(PromotionProgramRepository promotionProgramRepository) {
+        this.promotionProgramRepository = promotionProgramRepository;
+    }
+
+    /**
+     * Chương trình được chọn và số tiền giảm cho đơn
+     */
+    public record Selection(Integer promotionProgramId, String promotionCode, Money discount) {
+    }
+
+    /**
+     * Chương trình giảm nhiều nhất cho đơn có tạm tính subtotal tại thời điểm now, không trừ lượt sử dụng
+     */
+    public Optional<Selection> findBest(Money subtotal, LocalDateTime now) {
+        Program best = current(now).best(subtotal);
+        return best == null ? Optional.empty() : Optional.of(best.select(subtotal));
+    }
+
+    /**
+     * Chọn chương trình tốt nhất và trừ một lượt sử dụng trong transaction hiện tại
+     * Nếu chương trình vừa bị đơn khác dùng hết lượt thì load lại và chọn chương trình tốt nhất tiếp theo
+     * Transaction rollback thì lượt đã trừ được trả lại (database tự hoàn tác, bộ đếm trong bộ nhớ cộng lại)
+     */
+    @Transactional
+    public Optional<Selection> reserveBest(Money subtotal, LocalDateTime now) {
+        while (true) {
+            Program best = current(now).best(subtotal);
+            if (best == null) {
+                return Optional.empty();
+            }
+            if (best.remaining() == null) {
+                return Optional.of(best.select(subtotal));
+            }
+            if (tryConsume(best)) {
+                return Optional.of(best.select(subtotal));
+            }
+            // Hết lượt: snapshot đã được đánh dấu cũ, vòng lặp sau load lại không còn chương trình này
+        }
+    }
+
+    /**
+     * Đánh dấu dữ liệu cũ; nếu đang trong transaction thì chỉ đánh dấu sau khi commit
+     * để lần load lại không đọc phải dữ liệu chưa commit
+     */
+    public void markStale() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stale.set(true);
+                }
+            });
+        } else {
+            stale.set(true);
+        }
+    }
+
+    // Đồng bộ số lượt còn lại / thay đổi chương trình từ instance backend khác
+    @Scheduled(fixedDelayString = "${promotion-program.refresh-ms:60000}",
+            initialDelayString = "${promotion-program.refresh-ms:60000}")
+    public void refresh() {
+        stale.set(true);
+    }
+
+    private boolean tryConsume(Program program) {
+        AtomicInteger remaining = program.remaining();
+        int left;
+        do {
+            left = remaining.get();
+            if (left <= 0) {
+                stale.set(true);
+                return false;
+            }
+        } while (!remaining.compareAndSet(left, left - 1));
+
+        if (promotionProgramRepository.consumeUsage(program.id()) == 0) {
+            // Instance khác đã dùng hết lượt trong database
+            remaining.set(0);
+            stale.set(true);
+            log.debug("PromotionProgram {} đã hết lượt sử dụng", program.code());
+            return false;
+        }
+        if (left == 1) {
+            // Lượt cuối: loại chương trình khỏi snapshot ở lần chọn kế tiếp
+            stale.set(true);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        remaining.incrementAndGet();
+                        stale.set(true);
+                    }
+                }
+            });
+        }
+        return true;
+    }
+
+    private Snapshot current(LocalDateTime now) {
+        Snapshot current = snapshot;
+        if (current == null || stale.get() || current.expired(now)) {
+            return reload(now);
+        }
+        return current;
+    }
+
+    private synchronized Snapshot reload(LocalDateTime now) {
+        boolean wasStale = stale.getAndSet(false);
+        if (snapshot != null && !wasStale && !snapshot.expired(now)) {
+            return snapshot;
+        }
+        try {
+            snapshot = Snapshot.build(promotionProgramRepository.findEvaluatorRows(now), now);
+            log.debug("Load PromotionProgram: {} chương trình áp dụng được", snapshot.programs.length);
+            return snapshot;
+        } catch (RuntimeException e) {
+            stale.set(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Một chương trình trong snapshot
+     *
+     * @param value     số tiền giảm (đơn vị nhỏ nhất) hoặc tỉ lệ giảm (phần trăm của phần trăm, xem Money.rateOf)
+     * @param remaining số lượt còn lại, null nếu không giới hạn
+     */
+    record Program(Integer id, String code, boolean percent, long value, long minimum,
+                   LocalDateTime endDate, AtomicInteger remaining) {
+
+        Money discount(Money subtotal) {
+            return percent ? subtotal.percentOf(value) : Money.ofMinor(value);
+        }
+
+        Selection select(Money subtotal) {
+            return new Selection(id, code, discount(subtotal));
+        }
+    }
+
+    static final class Snapshot {
+
+        // Sắp xếp tăng dần theo ngưỡng tối thiểu
+        final Program[] programs;
+        final long[] thresholds;
+        // bestFixed[i] / bestPercent[i]: chương trình giảm cố định / giảm % lớn nhất trong programs[0..i], -1 nếu không có
+        final int[] bestFixed;
+        final int[] bestPercent;
+        // Snapshot hết hiệu lực khi một chương trình kết thúc hoặc một chương trình mới bắt đầu
+        final LocalDateTime earliestEnd;
+        final LocalDateTime nextStart;
+
+        private Snapshot(Program[] programs, LocalDateTime earliestEnd, LocalDateTime nextStart) {
+            this.programs = programs;
+            this.earliestEnd = earliestEnd;
+            this.nextStart = nextStart;
+            this.thresholds = new long[programs.length];
+            this.bestFixed = new int[programs.length];
+            this.bestPercent = new int[programs.length];
+            int fixed = -1;
+            int percent = -1;
+            for (int i = 0; i < programs.length; i++) {
+                Program program = programs[i];
+                thresholds[i] = program.minimum();
+                if (program.percent()) {
+                    if (percent < 0 || program.value() > programs[percent].value()) {
+                        percent = i;
+                    }
+                } else if (fixed < 0 || program.value() > programs[fixed].value()) {
+                    fixed = i;
+                }
+                bestFixed[i] = fixed;
+                bestPercent[i] = percent;
+            }
+        }
+
+        static Snapshot build(List<Object[]> rows, LocalDateTime now) {
+            List<Program> programs = new ArrayList<>(rows.size());
+            LocalDateTime earliestEnd = null;
+            LocalDateTime nextStart = null;
+            for (Object[] row : rows) {
+                LocalDateTime startDate = ((Timestamp) row[5]).toLocalDateTime();
+                LocalDateTime endDate = ((Timestamp) row[6]).toLocalDateTime();
+                if (now.isAfter(endDate)) {
+                    continue;
+                }
+                if (now.isBefore(startDate)) {
+                    nextStart = nextStart == null || startDate.isBefore(nextStart) ? startDate : nextStart;
+                    continue;
+                }
+                Integer remaining = row[7] == null ? null : ((Number) row[7]).intValue();
+                if (remaining != null && remaining <= 0) {
+                    continue;
+                }
+                boolean percent = "%".equals(row[2]);
+                BigDecimal discountValue = (BigDecimal) row[3];
+                programs.add(new Program(
+                        ((Number) row[0]).intValue(),
+                        (String) row[1],
+                        percent,
+                        percent ? Money.rateOf(discountValue) : Money.of(discountValue).minor(),
+                        Money.of((BigDecimal) row[4]).minor(),
+                        endDate,
+                        remaining == null ? null : new AtomicInteger(remaining)));
+                earliestEnd = earliestEnd == null || endDate.isBefore(earliestEnd) ? endDate : earliestEnd;
+            }
+            programs.sort(Comparator.comparingLong(Program::minimum));
+            return new Snapshot(programs.toArray(new Program[0]), earliestEnd, nextStart);
+        }
+
+        boolean expired(LocalDateTime now) {
+            return (earliestEnd != null && now.isAfter(earliestEnd))
+                    || (nextStart != null && !now.isBefore(nextStart));
+        }
+
+        /**
+         * @return chương trình giảm nhiều nhất (số tiền giảm > 0) trong các chương trình có ngưỡng ≤ subtotal, null nếu không có
+         */
+        Program best(Money subtotal) {
+            int last = upperBound(subtotal.minor()) - 1;
+            if (last < 0) {
+                return null;
+            }
+            Program fixed = bestFixed[last] < 0 ? null : programs[bestFixed[last]];
+            Program percent = bestPercent[last] < 0 ? null : programs[bestPercent[last]];
+            Money fixedDiscount = fixed == null ? Money.ZERO : fixed.discount(subtotal);
+            Money percentDiscount = percent == null ? Money.ZERO : percent.discount(subtotal);
+            if (percentDiscount.isGreaterThan(fixedDiscount)) {
+                return percent;
+            }
+            return fixedDiscount.isPositive() ? fixed : null;
+        }
+
+        // Số chương trình có ngưỡng ≤ amount
+        private int upperBound(long amount) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (thresholds[mid] <= amount) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
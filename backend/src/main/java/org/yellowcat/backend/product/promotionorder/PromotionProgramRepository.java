@@ -1,11 +1,36 @@
 package org.yellowcat.backend.product.promotionorder;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface PromotionProgramRepository extends JpaRepository<PromotionProgram,Integer> {
     List<PromotionProgram> findByIsActiveTrue();
+
+    // Chương trình đang hoặc sắp diễn ra, dùng cho PromotionProgramEvaluator
+    // promotion_program_id, promotion_code, discount_type, discount_value, minimum_order_value,
+    // start_date, end_date, usage_limit_total (số lượt còn lại, NULL = không giới hạn)
+    @Query(value = """
+            SELECT promotion_program_id, promotion_code, discount_type, discount_value, minimum_order_value,
+                   start_date, end_date, usage_limit_total
+            FROM promotion_programs
+            WHERE is_active = TRUE AND end_date >= :now
+            """, nativeQuery = true)
+    List<Object[]> findEvaluatorRows(@Param("now") LocalDateTime now);
+
+    // Trừ một lượt sử dụng, chỉ thành công khi còn lượt (trả về 0 nếu đã hết)
+    // Các giao dịch đồng thời trên cùng dòng chờ nhau và kiểm tra lại điều kiện sau khi dòng được commit
+    @Modifying
+    @Query(value = """
+            UPDATE promotion_programs
+            SET usage_limit_total = usage_limit_total - 1
+            WHERE promotion_program_id = :promotionProgramId AND usage_limit_total > 0
+            """, nativeQuery = true)
+    int consumeUsage(@Param("promotionProgramId") Integer promotionProgramId);
 }
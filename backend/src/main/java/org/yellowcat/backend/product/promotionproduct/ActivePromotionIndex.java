@@ -0,0 +1,306 @@
+package org.yellowcat.backend.product.promotionproduct;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.yellowcat.backend.product.promotion.PromotionChangedEvent;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index trong bộ nhớ: variantId → các khoảng thời gian promotion (đang hoặc sắp diễn ra)
+ * Load khi khởi động, cập nhật theo PromotionChangedEvent sau khi transaction commit
+ * Tra cứu "promotion tốt nhất tại thời điểm T" không cần query và không cấp phát bộ nhớ
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ActivePromotionIndex {
+
+    private final PromotionProductRepository promotionProductRepository;
+    private final MeterRegistry meterRegistry;
+
+    // Snapshot bất biến, thay thế nguyên khối mỗi lần cập nhật (copy-on-write)
+    private volatile Map<Integer, PromotionWindow[]> windowsByVariant = Collections.emptyMap();
+    private volatile int windowCount = 0;
+    // Dùng cho ETag: hash nội dung snapshot (giống nhau giữa các instance nếu cùng dữ liệu)
+    // và các mốc bắt đầu/kết thúc đã sắp xếp để biết đã qua bao nhiêu mốc tại thời điểm T
+    private volatile long contentHash = 0;
+    private volatile LocalDateTime[] boundaries = new LocalDateTime[0];
+
+    private Timer rebuildTimer;
+    private Counter driftCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("promotion.index.variants", this, index -> index.windowsByVariant.size())
+                .description("Số variant có promotion trong index")
+                .register(meterRegistry);
+        Gauge.builder("promotion.index.windows", this, index -> index.windowCount)
+                .description("Số khoảng promotion trong index")
+                .register(meterRegistry);
+        rebuildTimer = Timer.builder("promotion.index.rebuild")
+                .description("Thời gian rebuild toàn bộ index promotion")
+                .register(meterRegistry);
+        driftCounter = Counter.builder("promotion.index.drift")
+                .description("Số lần index lệch so với database")
+                .register(meterRegistry);
+
+        try {
+            rebuild();
+        } catch (Exception e) {
+            // Không chặn khởi động, kiểm tra định kỳ sẽ rebuild lại
+            log.error("Không thể load index promotion khi khởi động: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Promotion tốt nhất đang hiệu lực cho variant tại thời điểm at
+     *
+     * @return null nếu variant không có promotion hiệu lực
+     */
+    public PromotionWindow findBest(Integer variantId, LocalDateTime at) {
+        PromotionWindow[] windows = windowsByVariant.get(variantId);
+        if (windows == null) {
+            return null;
+        }
+
+        PromotionWindow best = null;
+        for (PromotionWindow window : windows) {
+            if (window.isActiveAt(at) && (best == null || best.losesTo(window))) {
+                best = window;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Thời điểm gần nhất sau at mà giá sale của một trong các variant có thể thay đổi
+     * (promotion bắt đầu hoặc kết thúc), dùng để hết hạn cache đúng lúc
+     *
+     * @return null nếu không có mốc nào phía trước
+     */
+    public LocalDateTime nextBoundaryAfter(Collection<Integer> variantIds, LocalDateTime at) {
+        LocalDateTime next = null;
+        for (Integer variantId : variantIds) {
+            PromotionWindow[] windows = windowsByVariant.get(variantId);
+            if (windows == null) {
+                continue;
+            }
+            for (PromotionWindow window : windows) {
+                // endDate tính cả hai đầu, promotion chỉ hết hiệu lực ngay sau endDate
+                LocalDateTime end = window.endDate().plusNanos(1_000_000);
+                if (window.startDate().isAfter(at) && (next == null || window.startDate().isBefore(next))) {
+                    next = window.startDate();
+                }
+                if (end.isAfter(at) && (next == null || end.isBefore(next))) {
+                    next = end;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Phiên bản giá khuyến mãi tại thời điểm at: đổi khi promotion được sửa hoặc khi qua mốc bắt đầu/kết thúc,
+     * kể cả khi không có thao tác ghi nào
+     */
+    public String priceVersion(LocalDateTime at) {
+        return Long.toHexString(contentHash) + "." + boundariesPassed(at);
+    }
+
+    /**
+     * Mốc bắt đầu/kết thúc promotion gần nhất đã qua, suy ra từ dữ liệu nên giống nhau giữa các instance
+     * Sửa promotion làm đổi giá sale của variant → product_listing.changed_at (CatalogValidators lấy mốc mới hơn)
+     */
+    public Instant lastPriceChange(LocalDateTime at) {
+        int passed = boundariesPassed(at);
+        return passed == 0
+                ? Instant.EPOCH
+                : boundaries[passed - 1].atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    private int boundariesPassed(LocalDateTime at) {
+        LocalDateTime[] sorted = boundaries;
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].isAfter(at)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public int size() {
+        return windowsByVariant.size();
+    }
+
+    /**
+     * Load lại toàn bộ index từ database
+     */
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        List<Object[]> rows = promotionProductRepository.findIndexablePromotionWindows(LocalDateTime.now());
+        publish(toArrays(groupByVariant(rows)));
+        long elapsed = System.nanoTime() - start;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Rebuild index promotion: {} variants, {} windows trong {}ms",
+                windowsByVariant.size(), windowCount, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * Cập nhật các variant thuộc một promotion sau khi promotion được tạo/sửa/xóa
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE) // Cập nhật index trước khi các cache phụ thuộc bị xóa
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPromotionChanged(PromotionChangedEvent event) {
+        try {
+            refreshPromotion(event.promotionId());
+        } catch (Exception e) {
+            log.error("Lỗi khi cập nhật index cho promotion {}: {}", event.promotionId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Load lại các khoảng của một promotion (cũng dùng khi xử lý mốc promotion để không phụ thuộc event từ instance khác)
+     */
+    public synchronized void refreshPromotion(Integer promotionId) {
+        List<Object[]> rows = promotionProductRepository
+                .findIndexablePromotionWindowsByPromotionId(promotionId, LocalDateTime.now());
+
+        Map<Integer, List<PromotionWindow>> fresh = groupByVariant(rows);
+        Map<Integer, PromotionWindow[]> next = new HashMap<>(windowsByVariant);
+
+        // Bỏ các khoảng cũ của promotion này
+        for (Map.Entry<Integer, PromotionWindow[]> entry : windowsByVariant.entrySet()) {
+            PromotionWindow[] windows = entry.getValue();
+            if (containsPromotion(windows, promotionId)) {
+                PromotionWindow[] kept = Arrays.stream(windows)
+                        .filter(w -> !w.promotionId().equals(promotionId))
+                        .toArray(PromotionWindow[]::new);
+                if (kept.length == 0) {
+                    next.remove(entry.getKey());
+                } else {
+                    next.put(entry.getKey(), kept);
+                }
+            }
+        }
+
+        // Thêm các khoảng mới
+        fresh.forEach((variantId, windows) -> {
+            PromotionWindow[] current = next.getOrDefault(variantId, new PromotionWindow[0]);
+            PromotionWindow[] merged = Arrays.copyOf(current, current.length + windows.size());
+            for (int i = 0; i < windows.size(); i++) {
+                merged[current.length + i] = windows.get(i);
+            }
+            next.put(variantId, merged);
+        });
+
+        publish(next);
+        log.debug("Cập nhật index cho promotion {}: {} variants", promotionId, fresh.size());
+    }
+
+    /**
+     * So sánh index với database, rebuild nếu lệch
+     *
+     * @return true nếu index khớp với database
+     */
+    @Scheduled(fixedDelayString = "${promotion.index.consistency-check-ms:600000}",
+            initialDelayString = "${promotion.index.consistency-check-ms:600000}")
+    public synchronized boolean verifyConsistency() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Integer, List<PromotionWindow>> expected = groupByVariant(
+                promotionProductRepository.findIndexablePromotionWindows(now));
+
+        // Chỉ so các khoảng chưa kết thúc, khoảng đã hết hạn trong index không ảnh hưởng kết quả tra cứu
+        Map<Integer, Set<PromotionWindow>> actual = new HashMap<>();
+        windowsByVariant.forEach((variantId, windows) -> {
+            for (PromotionWindow window : windows) {
+                if (!window.endDate().isBefore(now)) {
+                    actual.computeIfAbsent(variantId, k -> new HashSet<>()).add(window);
+                }
+            }
+        });
+        Map<Integer, Set<PromotionWindow>> expectedSets = new HashMap<>();
+        expected.forEach((variantId, windows) -> expectedSets.put(variantId, new HashSet<>(windows)));
+        boolean consistent = actual.equals(expectedSets);
+
+        if (!consistent) {
+            driftCounter.increment();
+            log.warn("Index promotion lệch so với database, rebuild lại");
+        }
+        // Thay bằng dữ liệu vừa load (đồng thời dọn các khoảng đã hết hạn)
+        publish(toArrays(expected));
+        return consistent;
+    }
+
+    private void publish(Map<Integer, PromotionWindow[]> next) {
+        int count = 0;
+        long hash = 0;
+        List<LocalDateTime> points = new ArrayList<>();
+        for (Map.Entry<Integer, PromotionWindow[]> entry : next.entrySet()) {
+            for (PromotionWindow window : entry.getValue()) {
+                count++;
+                // Cộng dồn để không phụ thuộc thứ tự duyệt
+                hash += 31L * entry.getKey() + window.hashCode();
+                points.add(window.startDate());
+                points.add(window.endDate().plusNanos(1_000_000));
+            }
+        }
+        Collections.sort(points);
+
+        windowsByVariant = Collections.unmodifiableMap(next);
+        windowCount = count;
+        boundaries = points.toArray(new LocalDateTime[0]);
+        contentHash = hash;
+    }
+
+    private static boolean containsPromotion(PromotionWindow[] windows, Integer promotionId) {
+        for (PromotionWindow window : windows) {
+            if (window.promotionId().equals(promotionId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<Integer, List<PromotionWindow>> groupByVariant(List<Object[]> rows) {
+        Map<Integer, List<PromotionWindow>> grouped = new HashMap<>();
+        for (Object[] row : rows) {
+            PromotionWindow window = new PromotionWindow(
+                    (Integer) row[1],
+                    (String) row[2],
+                    (String) row[3],
+                    (BigDecimal) row[4],
+                    (LocalDateTime) row[5],
+                    (LocalDateTime) row[6]
+            );
+            grouped.computeIfAbsent((Integer) row[0], k -> new ArrayList<>()).add(window);
+        }
+        return grouped;
+    }
+
+    private static Map<Integer, PromotionWindow[]> toArrays(Map<Integer, List<PromotionWindow>> grouped) {
+        Map<Integer, PromotionWindow[]> result = new HashMap<>();
+        grouped.forEach((variantId, windows) -> result.put(variantId, windows.toArray(new PromotionWindow[0])));
+        return result;
+    }
+}
@@ -0,0 +1,22 @@
+package org.yellowcat.backend.product.promotionproduct;
+
+import lombok.Getter;
+import org.yellowcat.backend.product.promotionproduct.dto.PromotionConflict;
+
+import java.util.List;
+
+/**
+ * Có variant đã thuộc promotion khác trùng thời gian; chứa toàn bộ xung đột để báo cùng lúc
+ * Kế thừa IllegalArgumentException để các handler hiện có vẫn trả 400 với cùng thông báo
+ */
+@Getter
+public class PromotionConflictException extends IllegalArgumentException {
+
+    private final transient List<PromotionConflict> conflicts;
+
+    public PromotionConflictException(List<PromotionConflict> conflicts) {
+        super("Các SKU đã thuộc khuyến mãi khác trong khoảng thời gian này: "
+                + String.join(", ", conflicts.stream().map(PromotionConflict::sku).distinct().toList()));
+        this.conflicts = conflicts;
+    }
+}
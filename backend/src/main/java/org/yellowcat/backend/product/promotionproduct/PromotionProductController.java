@@ -1,5 +1,6 @@
 package org.yellowcat.backend.product.promotionproduct;
 
+import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.Valid;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
@@ -7,11 +8,15 @@ import lombok.experimental.FieldDefaults;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
 import org.yellowcat.backend.common.config_api.response.ResponseEntityBuilder;
 import org.yellowcat.backend.product.promotion.dto.CreatePromotionDTO;
+import org.yellowcat.backend.product.promotionproduct.dto.AssignVariantsRequest;
+import org.yellowcat.backend.product.promotionproduct.dto.PromotionAssignmentResponse;
+import org.yellowcat.backend.product.promotionproduct.dto.PromotionConflictCheckRequest;
 import org.yellowcat.backend.product.promotionproduct.dto.PromotionEditResponse;
 import org.yellowcat.backend.product.promotionproduct.dto.PromotionProductResponse;
 import org.yellowcat.backend.product.promotionproduct.dto.PromotionSummaryResponse;
@@ -96,6 +101,8 @@ public class PromotionProductController {
             UUID userId = UUID.fromString(jwt.getSubject());
             promotionProductService.createPromotionWithProducts(dto, userId);
             return ResponseEntityBuilder.success("Tạo đợt giảm giá thành công!");
+        } catch (PromotionConflictException e) {
+            return ResponseEntityBuilder.status(HttpStatus.BAD_REQUEST, e.getMessage(), e.getConflicts());
         } catch (IllegalArgumentException e) {
             return ResponseEntityBuilder.error(HttpStatus.BAD_REQUEST, e.getMessage(), e.getMessage());
         } catch (Exception e) {
@@ -103,6 +110,36 @@ public class PromotionProductController {
         }
     }
 
+    /**
+     * Gán thêm hàng loạt variant vào promotion; có xung đột thì trả 409 kèm toàn bộ danh sách xung đột
+     */
+    @PostMapping("/promotions/{promotionId}/variants")
+    @PreAuthorize("hasAnyAuthority('Admin_Web')")
+    public ResponseEntity<?> assignVariants(
+            @PathVariable Integer promotionId,
+            @Valid @RequestBody AssignVariantsRequest request
+    ) {
+        try {
+            PromotionAssignmentResponse response = promotionProductService.assignVariants(promotionId, request.variantIds());
+            return ResponseEntityBuilder.success("Gán sản phẩm vào đợt giảm giá thành công!", response);
+        } catch (PromotionConflictException e) {
+            return ResponseEntityBuilder.status(HttpStatus.CONFLICT, e.getMessage(), e.getConflicts());
+        } catch (EntityNotFoundException e) {
+            return ResponseEntityBuilder.error(HttpStatus.NOT_FOUND, e.getMessage(), e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntityBuilder.error(HttpStatus.BAD_REQUEST, "Lỗi khi gán sản phẩm: " + e.getMessage(), e.getMessage());
+        }
+    }
+
+    @PostMapping("/check-conflicts")
+    public ResponseEntity<?> checkConflicts(@RequestBody PromotionConflictCheckRequest request) {
+        try {
+            return ResponseEntityBuilder.success(promotionProductService.checkConflicts(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntityBuilder.badRequest(e.getMessage(), e.getMessage());
+        }
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<?> delete(
             @PathVariable Integer id,
@@ -340,48 +340,40 @@ public interface PromotionProductRepository extends JpaRepository<PromotionProdu
     @Query("SELECT pp.productVariant.variantId FROM PromotionProduct pp WHERE pp.promotion.id = :promotionId")
     List<Integer> findVariantIdsByPromotionId(@Param("promotionId") Integer promotionId);
 
-    // ====== NEW: Kiểm tra xung đột khuyến mãi theo khoảng thời gian ======
+    // ====== NEW: Tìm promotion active cho variant cụ thể ======
     @Query("""
-            SELECT v.sku
+            SELECT pp
             FROM PromotionProduct pp
             JOIN pp.promotion p
-            JOIN pp.productVariant v
-            WHERE v.variantId IN :variantIds
-              AND (:startDate <= p.endDate AND :endDate >= p.startDate)
+            WHERE pp.productVariant.variantId = :variantId
+              AND p.isActive = true
+              AND :now BETWEEN p.startDate AND p.endDate
         """)
-    List<String> findConflictingSkus(
-            @Param("variantIds") List<Integer> variantIds,
-            @Param("startDate") java.time.LocalDateTime startDate,
-            @Param("endDate") java.time.LocalDateTime endDate
+    List<PromotionProduct> findActivePromotionsByVariantId(
+            @Param("variantId") Integer variantId,
+            @Param("now") java.time.LocalDateTime now
     );
 
+    // ====== NEW: Dữ liệu cho ActivePromotionIndex (promotion đang/sắp diễn ra) ======
     @Query("""
-            SELECT v.sku
+            SELECT pp.productVariant.variantId, p.id, p.promotionName, p.discountType, p.discountValue, p.startDate, p.endDate
             FROM PromotionProduct pp
             JOIN pp.promotion p
-            JOIN pp.productVariant v
-            WHERE v.variantId IN :variantIds
-              AND (:startDate <= p.endDate AND :endDate >= p.startDate)
-              AND p.id <> :promotionId
+            WHERE p.isActive = true
+              AND p.endDate >= :now
         """)
-    List<String> findConflictingSkusExcludingPromotion(
-            @Param("variantIds") List<Integer> variantIds,
-            @Param("startDate") java.time.LocalDateTime startDate,
-            @Param("endDate") java.time.LocalDateTime endDate,
-            @Param("promotionId") Integer promotionId
-    );
+    List<Object[]> findIndexablePromotionWindows(@Param("now") java.time.LocalDateTime now);
 
-    // ====== NEW: Tìm promotion active cho variant cụ thể ======
     @Query("""
-            SELECT pp
+            SELECT pp.productVariant.variantId, p.id, p.promotionName, p.discountType, p.discountValue, p.startDate, p.endDate
             FROM PromotionProduct pp
             JOIN pp.promotion p
-            WHERE pp.productVariant.variantId = :variantId
+            WHERE p.id = :promotionId
               AND p.isActive = true
-              AND :now BETWEEN p.startDate AND p.endDate
+              AND p.endDate >= :now
         """)
-    List<PromotionProduct> findActivePromotionsByVariantId(
-            @Param("variantId") Integer variantId,
+    List<Object[]> findIndexablePromotionWindowsByPromotionId(
+            @Param("promotionId") Integer promotionId,
             @Param("now") java.time.LocalDateTime now
     );
 
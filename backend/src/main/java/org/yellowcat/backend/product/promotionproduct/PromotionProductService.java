@@ -5,25 +5,26 @@ import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.yellowcat.backend.product.productvariant.ProductVariant;
-import org.yellowcat.backend.product.productvariant.ProductVariantRepository;
+import org.yellowcat.backend.product.productvariant.SalePriceRecalculator;
 import org.yellowcat.backend.product.promotion.Promotion;
+import org.yellowcat.backend.product.promotion.PromotionChangedEvent;
 import org.yellowcat.backend.product.promotion.PromotionRepository;
 import org.yellowcat.backend.product.promotion.dto.CreatePromotionDTO;
 import org.yellowcat.backend.product.promotionproduct.dto.ProductVariantSelectionResponse;
+import org.yellowcat.backend.product.promotionproduct.dto.PromotionAssignmentResponse;
+import org.yellowcat.backend.product.promotionproduct.dto.PromotionConflict;
+import org.yellowcat.backend.product.promotionproduct.dto.PromotionConflictCheckRequest;
 import org.yellowcat.backend.product.promotionproduct.dto.PromotionEditResponse;
 import org.yellowcat.backend.product.promotionproduct.dto.PromotionProductResponse;
 import org.yellowcat.backend.product.promotionproduct.dto.PromotionSummaryResponse;
 import org.yellowcat.backend.user.AppUser;
 import org.yellowcat.backend.user.AppUserRepository;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Random;
-import java.util.UUID;
+import java.util.*;
 
 import static lombok.AccessLevel.PRIVATE;
 
@@ -34,8 +35,10 @@ public class PromotionProductService {
 
     PromotionProductRepository promotionProductRepository;
     PromotionRepository promotionRepository;
-    ProductVariantRepository productVariantRepository;
     AppUserRepository appUserRepository;
+    ApplicationEventPublisher eventPublisher;
+    SalePriceRecalculator salePriceRecalculator;
+    PromotionVariantAssigner promotionVariantAssigner;
 
     private String normalizeName(String name) {
         return name == null ? "" : name.trim().toLowerCase();
@@ -98,14 +101,7 @@ public class PromotionProductService {
     @Transactional
     public void createPromotionWithProducts(CreatePromotionDTO dto, UUID userId) {
         // ====== NEW VALIDATION: Không cho trùng khuyến mãi cùng thời gian ======
-        List<String> conflictingSkus = promotionProductRepository.findConflictingSkus(
-                dto.getVariantIds(),
-                dto.getStartDate(),
-                dto.getEndDate()
-        );
-        if (!conflictingSkus.isEmpty()) {
-            throw new IllegalArgumentException("Các SKU đã thuộc khuyến mãi khác trong khoảng thời gian này: " + String.join(", ", conflictingSkus));
-        }
+        requireNoConflicts(dto.getVariantIds(), dto.getStartDate(), dto.getEndDate(), null);
 
         if (promotionProductRepository.existsByPromotionNameIgnoreCase(dto.getPromotionName())) {
             throw new IllegalArgumentException("Tên đợt giảm giá đã tồn tại");
@@ -132,18 +128,12 @@ public class PromotionProductService {
         promotion.setIsActive(dto.getIsActive() != null ? dto.getIsActive() : true);
         promotion.setAppUser(user);
 
-        promotionRepository.save(promotion);
+        promotionRepository.saveAndFlush(promotion);
 
-        List<ProductVariant> variants = productVariantRepository.findAllById(dto.getVariantIds());
-        for (ProductVariant variant : variants) {
-            PromotionProduct pp = new PromotionProduct();
-            pp.setPromotion(promotion);
-            pp.setProductVariant(variant);
-            promotionProductRepository.save(pp);
-
-            applyDiscountToVariant(variant, dto);
-            productVariantRepository.save(variant);
-        }
+        // Gán cả lô bằng một câu INSERT, tính lại theo mọi promotion đang hiệu lực của các variant
+        promotionVariantAssigner.assign(promotion.getId(), dto.getVariantIds());
+        salePriceRecalculator.recalculate(dto.getVariantIds(), LocalDateTime.now());
+        eventPublisher.publishEvent(new PromotionChangedEvent(promotion.getId()));
     }
 
     @Transactional
@@ -162,23 +152,13 @@ public class PromotionProductService {
         }
 
         // ====== NEW VALIDATION: Kiểm tra xung đột với khuyến mãi khác ======
-        List<String> conflictingSkus = promotionProductRepository.findConflictingSkusExcludingPromotion(
-                dto.getVariantIds(),
-                dto.getStartDate(),
-                dto.getEndDate(),
-                promotion.getId()
-        );
-        if (!conflictingSkus.isEmpty()) {
-            throw new IllegalArgumentException("Các SKU đã thuộc khuyến mãi khác trong khoảng thời gian này: " + String.join(", ", conflictingSkus));
-        }
+        requireNoConflicts(dto.getVariantIds(), dto.getStartDate(), dto.getEndDate(), promotion.getId());
 
-        // Reset salePrice cũ của các sản phẩm liên quan đến đợt khuyến mãi này
+        // Các variant bỏ khỏi đợt khuyến mãi cũng cần tính lại salePrice
         List<Integer> oldVariantIds = promotionProductRepository.findVariantIdsByPromotionId(promotion.getId());
-        List<ProductVariant> oldVariants = productVariantRepository.findAllById(oldVariantIds);
-        for (ProductVariant oldVar : oldVariants) {
-            oldVar.setSalePrice(null);
-            productVariantRepository.save(oldVar);
-        }
+
+        // Xóa mapping cũ trước khi đổi thời gian, để mapping sắp bỏ không bị kiểm tra lại với khoảng mới
+        promotionProductRepository.deleteByPromotionId(promotion.getId());
 
         // Cập nhật thông tin promotion
         promotion.setPromotionName(dto.getPromotionName());
@@ -191,28 +171,59 @@ public class PromotionProductService {
         // --- Bắt đầu sửa đổi logic: Cập nhật trạng thái isActive ---
         boolean newIsActive = dto.getIsActive() != null ? dto.getIsActive() : promotion.getIsActive();
         promotion.setIsActive(newIsActive);
-        promotionRepository.save(promotion);
+        promotionRepository.saveAndFlush(promotion);
 
-        // Xóa mapping cũ
-        promotionProductRepository.deleteByPromotionId(promotion.getId());
+        promotionVariantAssigner.assign(promotion.getId(), dto.getVariantIds());
+        // --- Kết thúc sửa đổi logic ---
 
-        List<ProductVariant> newVariants = productVariantRepository.findAllById(dto.getVariantIds());
-        for (ProductVariant variant : newVariants) {
-            PromotionProduct pp = new PromotionProduct();
-            pp.setPromotion(promotion);
-            pp.setProductVariant(variant);
-            promotionProductRepository.save(pp);
-
-            // Chỉ áp dụng giảm giá nếu chương trình đang hoạt động
-            if (newIsActive) {
-                applyDiscountToVariant(variant, dto);
-            } else {
-                // Nếu không hoạt động, đặt salePrice về null (đã làm ở trên nhưng làm lại cho chắc chắn)
-                variant.setSalePrice(null);
-            }
-            productVariantRepository.save(variant);
+        // Tính lại variant cũ và mới (promotion không hoạt động thì không được chọn)
+        Set<Integer> affectedVariantIds = new HashSet<>(oldVariantIds);
+        affectedVariantIds.addAll(dto.getVariantIds());
+        salePriceRecalculator.recalculate(affectedVariantIds, LocalDateTime.now());
+        eventPublisher.publishEvent(new PromotionChangedEvent(promotion.getId()));
+    }
+
+    /**
+     * Gán thêm hàng loạt variant vào promotion đã có
+     * Xung đột được kiểm tra một lần cho cả lô và báo đầy đủ; có xung đột thì không gán variant nào
+     */
+    @Transactional
+    public PromotionAssignmentResponse assignVariants(Integer promotionId, List<Integer> variantIds) {
+        Promotion promotion = promotionRepository.findById(promotionId)
+                .orElseThrow(() -> new EntityNotFoundException("Không tìm thấy đợt giảm giá với ID: " + promotionId));
+        Set<Integer> ids = new LinkedHashSet<>(variantIds);
+        requireNoConflicts(ids, promotion.getStartDate(), promotion.getEndDate(), promotionId);
+
+        int assigned = promotionVariantAssigner.assign(promotionId, ids);
+        int repriced = salePriceRecalculator.recalculate(ids, LocalDateTime.now());
+        if (assigned > 0) {
+            eventPublisher.publishEvent(new PromotionChangedEvent(promotionId));
+        }
+        return new PromotionAssignmentResponse(promotionId, ids.size(), assigned, repriced);
+    }
+
+    /**
+     * Kiểm tra trước các xung đột (dùng cho form tạo/sửa đợt giảm giá)
+     */
+    public List<PromotionConflict> checkConflicts(PromotionConflictCheckRequest request) {
+        if (request.getVariantIds() == null || request.getStartDate() == null || request.getEndDate() == null) {
+            throw new IllegalArgumentException("Thiếu danh sách variant hoặc thời gian khuyến mãi");
+        }
+        Integer excludePromotionId = request.getPromotionProductId() == null ? null
+                : promotionProductRepository.findById(request.getPromotionProductId())
+                .map(pp -> pp.getPromotion().getId())
+                .orElse(null);
+        return promotionVariantAssigner.findConflicts(
+                request.getVariantIds(), request.getStartDate(), request.getEndDate(), excludePromotionId);
+    }
+
+    private void requireNoConflicts(Collection<Integer> variantIds, LocalDateTime start, LocalDateTime end,
+                                    Integer excludePromotionId) {
+        List<PromotionConflict> conflicts = promotionVariantAssigner.findConflicts(
+                variantIds, start, end, excludePromotionId);
+        if (!conflicts.isEmpty()) {
+            throw new PromotionConflictException(conflicts);
         }
-        // --- Kết thúc sửa đổi logic ---
     }
 
     @Transactional
@@ -230,43 +241,15 @@ public class PromotionProductService {
             throw new RuntimeException("Bạn không có quyền xóa đợt giảm giá này");
         }
 
-        // Cần đảm bảo rằng danh sách promotionProducts trong đối tượng promotion đã được load
-        // Để có thể hoàn tác giá, ta có thể lấy danh sách này trực tiếp từ promotion.getPromotionProducts()
-        List<PromotionProduct> promotionProducts = promotion.getPromotionProducts();
-
-        // Hoàn tác giá khuyến mãi trước khi xóa Promotion
-        for (PromotionProduct promotionProduct : promotionProducts) {
-            ProductVariant variant = promotionProduct.getProductVariant();
-            variant.setSalePrice(null);
-            productVariantRepository.save(variant);
-        }
+        List<Integer> variantIds = promotionProductRepository.findVariantIdsByPromotionId(promotion.getId());
 
         // Xóa đối tượng Promotion cha. Hibernate sẽ tự động xóa tất cả PromotionProduct con.
         promotionRepository.delete(promotion);
-    }
-
-    // ✅ ÁP GIẢM GIÁ
-    private void applyDiscountToVariant(ProductVariant variant, CreatePromotionDTO dto) {
-        LocalDateTime now = LocalDateTime.now();
 
-        // Nếu khuyến mãi chưa bắt đầu hoặc đã kết thúc → không áp dụng, salePrice = 0
-        if ((dto.getStartDate() != null && dto.getStartDate().isAfter(now)) ||
-                (dto.getEndDate() != null && dto.getEndDate().isBefore(now))) {
-            variant.setSalePrice(null);
-            return;
-        }
-
-        // Áp dụng khuyến mãi nếu còn hiệu lực
-        if ("percentage".equalsIgnoreCase(dto.getDiscountType())) {
-            double discount = dto.getDiscountValue().doubleValue() / 100.0;
-            double newPrice = variant.getPrice().doubleValue() * (1.0 - discount);
-            variant.setSalePrice(BigDecimal.valueOf(newPrice));
-        } else if ("fixed_amount".equalsIgnoreCase(dto.getDiscountType())) {
-            double newPrice = variant.getPrice().doubleValue() - dto.getDiscountValue().doubleValue();
-            variant.setSalePrice(BigDecimal.valueOf(Math.max(newPrice, 0)));
-        } else if ("free_shipping".equalsIgnoreCase(dto.getDiscountType())) {
-            // Miễn phí vận chuyển – không thay đổi giá
-        }
+        // Hoàn tác giá: tính lại theo các promotion còn lại của variant
+        promotionRepository.flush();
+        salePriceRecalculator.recalculate(variantIds, LocalDateTime.now());
+        eventPublisher.publishEvent(new PromotionChangedEvent(promotion.getId()));
     }
 
     // ✅ TẠO CODE
@@ -1,46 +1,38 @@
 package org.yellowcat.backend.product.promotionproduct;
 
+import org.yellowcat.backend.common.money.Money;
 import org.yellowcat.backend.product.promotion.Promotion;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 
 public class PromotionUtils {
 
     public static BigDecimal calculateDiscountedPrice(BigDecimal originalPrice, Promotion promotion) {
         if (originalPrice == null || promotion == null) return originalPrice;
 
-        BigDecimal discountedPrice = originalPrice;
+        Money price = Money.of(originalPrice);
 
-        // Áp dụng kiểu giảm giá
-        switch (promotion.getDiscountType().toUpperCase()) {
-            case "PERCENT" -> {
-                BigDecimal percent = promotion.getDiscountValue()
-                        .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                discountedPrice = originalPrice.subtract(originalPrice.multiply(percent));
-            }
-            case "FIXED_AMOUNT" -> {
-                discountedPrice = originalPrice.subtract(promotion.getDiscountValue());
-            }
-            default -> {
-                return originalPrice; // Kiểu giảm không hợp lệ → giữ nguyên
-            }
-        }
+        // Áp dụng kiểu giảm giá (không cho giá trị âm)
+        Money discountedPrice = switch (promotion.getDiscountType().toUpperCase()) {
+            case "PERCENT" -> price.lessPercent(Money.rateOf(promotion.getDiscountValue()));
+            case "FIXED_AMOUNT" -> price.lessAmount(Money.of(promotion.getDiscountValue()));
+            default -> null; // Kiểu giảm không hợp lệ → giữ nguyên
+        };
+        return discountedPrice == null ? originalPrice : discountedPrice.toBigDecimal();
+    }
 
-        // Không cho giá trị âm
-        if (discountedPrice.compareTo(BigDecimal.ZERO) < 0) {
-            discountedPrice = BigDecimal.ZERO;
+    /**
+     * So sánh mức giảm của 2 promotion (dương nếu promotion 1 tốt hơn)
+     * Cùng loại thì so theo giá trị, khác loại thì ưu tiên percentage
+     */
+    public static int compareDiscount(String type1, BigDecimal value1, String type2, BigDecimal value2) {
+        if ("percentage".equals(type1) && "percentage".equals(type2)) {
+            return value1.compareTo(value2);
+        } else if ("fixed_amount".equals(type1) && "fixed_amount".equals(type2)) {
+            return value1.compareTo(value2);
+        } else {
+            // Mixed types - ưu tiên percentage cao hơn
+            return "percentage".equals(type1) ? 1 : -1;
         }
-
-//        // Giới hạn giảm tối đa nếu có
-//        BigDecimal maxDiscount = promotion.getMaxDiscountAmount();
-//        if (maxDiscount != null) {
-//            BigDecimal actualDiscount = originalPrice.subtract(discountedPrice);
-//            if (actualDiscount.compareTo(maxDiscount) > 0) {
-//                discountedPrice = originalPrice.subtract(maxDiscount);
-//            }
-//        }
-
-        return discountedPrice.setScale(2, RoundingMode.HALF_UP);
     }
 }
@@ -0,0 +1,85 @@
+package org.yellowcat.backend.product.promotionproduct;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.yellowcat.backend.product.promotionproduct.dto.PromotionConflict;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Gán hàng loạt variant vào promotion
+ * - Tìm xung đột cho cả lô trong một query qua index GiST (variant_id, promotion_window)
+ *   của exclusion constraint excl_promotion_products_variant_window
+ * - Chèn cả lô bằng một câu INSERT ... SELECT unnest, constraint vẫn chặn trường hợp ghi đồng thời
+ */
+@Component
+@RequiredArgsConstructor
+public class PromotionVariantAssigner {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param excludePromotionId promotion đang sửa (bỏ qua chính nó), null khi tạo mới
+     * @return mọi cặp (variant, promotion khác) có thời gian trùng với [start, end]
+     */
+    public List<PromotionConflict> findConflicts(Collection<Integer> variantIds, LocalDateTime start,
+                                                 LocalDateTime end, Integer excludePromotionId) {
+        if (variantIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query("""
+                        SELECT pp.variant_id, v.sku, p.promotion_id, p.promotion_name, p.start_date, p.end_date
+                        FROM promotion_products pp
+                                 JOIN promotions p ON p.promotion_id = pp.promotion_id
+                                 JOIN product_variants v ON v.variant_id = pp.variant_id
+                        WHERE pp.variant_id = ANY(?)
+                          AND pp.promotion_window && TSRANGE(?, ?, '[]')
+                          AND pp.promotion_id <> ?
+                        ORDER BY v.sku, p.start_date
+                        """,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("integer", variantIds.toArray()));
+                    ps.setTimestamp(2, Timestamp.valueOf(start));
+                    ps.setTimestamp(3, Timestamp.valueOf(end));
+                    ps.setInt(4, excludePromotionId == null ? 0 : excludePromotionId);
+                },
+                (rs, i) -> new PromotionConflict(
+                        rs.getInt("variant_id"),
+                        rs.getString("sku"),
+                        rs.getInt("promotion_id"),
+                        rs.getString("promotion_name"),
+                        rs.getTimestamp("start_date").toLocalDateTime(),
+                        rs.getTimestamp("end_date").toLocalDateTime()));
+    }
+
+    /**
+     * Chèn các variant chưa thuộc promotion (variant không tồn tại bị bỏ qua)
+     * Promotion phải đã được flush xuống database
+     *
+     * @return số dòng promotion_products đã thêm
+     */
+    public int assign(Integer promotionId, Collection<Integer> variantIds) {
+        if (variantIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update("""
+                        INSERT INTO promotion_products (promotion_id, variant_id)
+                        SELECT ?, v.variant_id
+                        FROM product_variants v
+                        WHERE v.variant_id = ANY(?)
+                          AND NOT EXISTS (SELECT 1
+                                          FROM promotion_products pp
+                                          WHERE pp.promotion_id = ?
+                                            AND pp.variant_id = v.variant_id)
+                        """,
+                ps -> {
+                    ps.setInt(1, promotionId);
+                    ps.setArray(2, ps.getConnection().createArrayOf("integer", variantIds.toArray()));
+                    ps.setInt(3, promotionId);
+                });
+    }
+}
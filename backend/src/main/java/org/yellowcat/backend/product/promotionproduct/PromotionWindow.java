@@ -0,0 +1,28 @@
+package org.yellowcat.backend.product.promotionproduct;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Khoảng thời gian hiệu lực của một promotion áp dụng cho variant
+ * Bất biến, dùng trong ActivePromotionIndex
+ */
+public record PromotionWindow(
+        Integer promotionId,
+        String promotionName,
+        String discountType,
+        BigDecimal discountValue,
+        LocalDateTime startDate,
+        LocalDateTime endDate
+) {
+    public boolean isActiveAt(LocalDateTime at) {
+        return !at.isBefore(startDate) && !at.isAfter(endDate);
+    }
+
+    /**
+     * true nếu promotion kia giảm nhiều hơn (cùng quy tắc với selectBestPromotion)
+     */
+    public boolean losesTo(PromotionWindow other) {
+        return PromotionUtils.compareDiscount(discountType, discountValue, other.discountType, other.discountValue) < 0;
+    }
+}
@@ -0,0 +1,8 @@
+package org.yellowcat.backend.product.promotionproduct.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public record AssignVariantsRequest(@NotEmpty List<Integer> variantIds) {
+}
@@ -0,0 +1,9 @@
+package org.yellowcat.backend.product.promotionproduct.dto;
+
+/**
+ * @param requested số variant (không trùng) trong yêu cầu
+ * @param assigned  số variant được gán mới (bỏ qua variant đã thuộc promotion hoặc không tồn tại)
+ * @param repriced  số variant đổi salePrice sau khi gán
+ */
+public record PromotionAssignmentResponse(Integer promotionId, int requested, int assigned, int repriced) {
+}
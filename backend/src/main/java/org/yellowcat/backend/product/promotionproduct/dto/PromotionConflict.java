@@ -0,0 +1,16 @@
+package org.yellowcat.backend.product.promotionproduct.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Một variant đã thuộc promotion khác có thời gian trùng với khoảng cần gán
+ */
+public record PromotionConflict(
+        Integer variantId,
+        String sku,
+        Integer promotionId,
+        String promotionName,
+        LocalDateTime startDate,
+        LocalDateTime endDate
+) {
+}
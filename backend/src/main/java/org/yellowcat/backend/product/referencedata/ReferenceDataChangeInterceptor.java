@@ -0,0 +1,28 @@
+package org.yellowcat.backend.product.referencedata;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Nghe các thông điệp mà BrandService, CategoryService... gửi lên broker (/topic/brands, /topic/categories...)
+ * để đánh dấu dữ liệu tương ứng trong ReferenceDataRegistry là cũ, không cần sửa từng service
+ */
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataChangeInterceptor implements ChannelInterceptor {
+
+    private final ReferenceDataRegistry referenceDataRegistry;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        ReferenceType type = ReferenceType.fromDestination(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        if (type != null) {
+            referenceDataRegistry.markStale(type);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,11 @@
+package org.yellowcat.backend.product.referencedata;
+
+/**
+ * Sự kiện phát ra khi ReferenceDataRegistry đánh dấu một loại dữ liệu tham chiếu là cũ
+ * (service trên instance này đã commit thay đổi, hoặc dấu vân tay bảng đổi do instance khác)
+ * Các cache chứa tên brand, category... đã lắp ráp lắng nghe để xóa entry
+ *
+ * @param type loại dữ liệu tham chiếu bị thay đổi
+ */
+public record ReferenceDataChangedEvent(ReferenceType type) {
+}
@@ -0,0 +1,193 @@
+package org.yellowcat.backend.product.referencedata;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.yellowcat.backend.product.brand.BrandRepository;
+import org.yellowcat.backend.product.category.CategoryRepository;
+import org.yellowcat.backend.product.color.ColorRepository;
+import org.yellowcat.backend.product.material.MaterialRepository;
+import org.yellowcat.backend.product.size.SizeRepository;
+import org.yellowcat.backend.product.targetaudience.TargetAudienceRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Near-cache cho dữ liệu tham chiếu của catalog: id → ReferenceItem bất biến
+ * - Load toàn bộ khi khởi động (các bảng rất nhỏ)
+ * - Đánh dấu cũ khi service publish thay đổi lên /topic/brands, /topic/categories... (xem ReferenceDataChangeInterceptor),
+ *   load lại ở lần đọc kế tiếp
+ * - Định kỳ so dấu vân tay nội dung bảng để đồng bộ với thay đổi từ instance backend khác
+ * - Mỗi lần đánh dấu cũ phát ReferenceDataChangedEvent cho các cache phụ thuộc (ProductDetailCache)
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReferenceDataRegistry {
+
+    private final BrandRepository brandRepository;
+    private final CategoryRepository categoryRepository;
+    private final ColorRepository colorRepository;
+    private final SizeRepository sizeRepository;
+    private final MaterialRepository materialRepository;
+    private final TargetAudienceRepository targetAudienceRepository;
+    private final ReferenceDataRepository referenceDataRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Map<ReferenceType, Map<Integer, ReferenceItem>> snapshots = new ConcurrentHashMap<>();
+    private final Map<ReferenceType, AtomicBoolean> stale = new EnumMap<>(ReferenceType.class);
+    private final Map<ReferenceType, String> fingerprints = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (ReferenceType type : ReferenceType.values()) {
+            stale.put(type, new AtomicBoolean(true));
+        }
+        try {
+            // Lấy dấu vân tay trước khi load: thay đổi xen giữa chỉ gây thêm một lần load lại ở lần kiểm tra đầu,
+            // còn lấy ở lần kiểm tra đầu thì thay đổi trong khoảng đó không bao giờ được phát hiện
+            for (Object[] row : referenceDataRepository.findFingerprints()) {
+                fingerprints.put(ReferenceType.valueOf((String) row[0]), (String) row[1]);
+            }
+            for (ReferenceType type : ReferenceType.values()) {
+                reload(type);
+            }
+        } catch (Exception e) {
+            // Không chặn khởi động, sẽ load ở lần đọc đầu tiên
+            log.error("Không thể load dữ liệu tham chiếu khi khởi động: {}", e.getMessage(), e);
+        }
+    }
+
+    public Optional<ReferenceItem> find(ReferenceType type, Integer id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(snapshot(type).get(id));
+    }
+
+    public ReferenceItem require(ReferenceType type, Integer id) {
+        return find(type, id).orElseThrow(() -> new RuntimeException(type + " not found #" + id));
+    }
+
+    public boolean exists(ReferenceType type, Integer id) {
+        return find(type, id).isPresent();
+    }
+
+    /**
+     * @return tên theo id, null nếu không tồn tại
+     */
+    public String name(ReferenceType type, Integer id) {
+        return find(type, id).map(ReferenceItem::name).orElse(null);
+    }
+
+    /**
+     * Map id → tên cho các id cần dùng (thay cho findAllById + toMap)
+     */
+    public Map<Integer, String> names(ReferenceType type, Collection<Integer> ids) {
+        Map<Integer, ReferenceItem> items = snapshot(type);
+        Map<Integer, String> result = new HashMap<>();
+        for (Integer id : ids) {
+            ReferenceItem item = id == null ? null : items.get(id);
+            if (item != null) {
+                result.put(id, item.name());
+            }
+        }
+        return result;
+    }
+
+    public Collection<ReferenceItem> all(ReferenceType type) {
+        return snapshot(type).values();
+    }
+
+    /**
+     * Đánh dấu dữ liệu cũ; nếu đang trong transaction thì chỉ đánh dấu sau khi commit
+     * để lần load lại không đọc phải dữ liệu chưa commit
+     */
+    public void markStale(ReferenceType type) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(type);
+                }
+            });
+        } else {
+            invalidate(type);
+        }
+    }
+
+    /**
+     * So dấu vân tay nội dung bảng với lần load trước, đánh dấu cũ các bảng đã đổi
+     * (thay đổi từ instance khác không đi qua broker WebSocket của instance này)
+     */
+    @Scheduled(fixedDelayString = "${reference-data.consistency-check-ms:30000}",
+            initialDelayString = "${reference-data.consistency-check-ms:30000}")
+    public void checkForRemoteChanges() {
+        for (Object[] row : referenceDataRepository.findFingerprints()) {
+            ReferenceType type = ReferenceType.valueOf((String) row[0]);
+            String fingerprint = (String) row[1];
+            // previous == null khi khởi động không lấy được dấu vân tay: bảng vẫn đang bị đánh dấu cũ từ init
+            String previous = fingerprints.put(type, fingerprint);
+            if (previous != null && !previous.equals(fingerprint)) {
+                log.info("Dữ liệu tham chiếu {} thay đổi từ nơi khác, load lại", type);
+                invalidate(type);
+            }
+        }
+    }
+
+    // Đánh dấu cũ trước khi phát sự kiện để listener load lại (qua registry) thấy dữ liệu mới
+    private void invalidate(ReferenceType type) {
+        stale.get(type).set(true);
+        eventPublisher.publishEvent(new ReferenceDataChangedEvent(type));
+    }
+
+    private Map<Integer, ReferenceItem> snapshot(ReferenceType type) {
+        if (stale.get(type).get()) {
+            reload(type);
+        }
+        return snapshots.getOrDefault(type, Collections.emptyMap());
+    }
+
+    private synchronized void reload(ReferenceType type) {
+        AtomicBoolean flag = stale.get(type);
+        if (!flag.getAndSet(false)) {
+            return;
+        }
+        try {
+            snapshots.put(type, Collections.unmodifiableMap(load(type)));
+            log.debug("Load dữ liệu tham chiếu {}: {} bản ghi", type, snapshots.get(type).size());
+        } catch (RuntimeException e) {
+            flag.set(true);
+            throw e;
+        }
+    }
+
+    private Map<Integer, ReferenceItem> load(ReferenceType type) {
+        List<ReferenceItem> items = switch (type) {
+            case BRAND -> brandRepository.findAll().stream()
+                    .map(b -> new ReferenceItem(b.getId(), b.getBrandName(), b.getLogoPublicId(), b.getStatus()))
+                    .toList();
+            case CATEGORY -> categoryRepository.findAll().stream()
+                    .map(c -> new ReferenceItem(c.getId(), c.getName(), null, c.getStatus()))
+                    .toList();
+            case COLOR -> colorRepository.findAll().stream()
+                    .map(c -> new ReferenceItem(c.getId(), c.getName(), null, c.getStatus()))
+                    .toList();
+            case SIZE -> sizeRepository.findAll().stream()
+                    .map(s -> new ReferenceItem(s.getId(), s.getName(), null, s.getStatus()))
+                    .toList();
+            case MATERIAL -> materialRepository.findAll().stream()
+                    .map(m -> new ReferenceItem(m.getId(), m.getName(), null, m.getStatus()))
+                    .toList();
+            case TARGET_AUDIENCE -> targetAudienceRepository.findAll().stream()
+                    .map(t -> new ReferenceItem(t.getId(), t.getName(), null, t.getStatus()))
+                    .toList();
+        };
+        return items.stream().collect(Collectors.toMap(ReferenceItem::id, item -> item));
+    }
+}
@@ -0,0 +1,29 @@
+package org.yellowcat.backend.product.referencedata;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.yellowcat.backend.product.brand.Brand;
+
+import java.util.List;
+
+public interface ReferenceDataRepository extends Repository<Brand, Integer> {
+
+    /**
+     * Dấu vân tay nội dung từng bảng tham chiếu: [type, md5]
+     * Các bảng rất nhỏ nên băm toàn bộ dòng vẫn rẻ, phát hiện được mọi thay đổi kể cả từ instance khác
+     */
+    @Query(nativeQuery = true, value = """
+            SELECT 'BRAND', md5(COALESCE(string_agg(CAST(t AS TEXT), ',' ORDER BY t.brand_id), '')) FROM brands t
+            UNION ALL
+            SELECT 'CATEGORY', md5(COALESCE(string_agg(CAST(t AS TEXT), ',' ORDER BY t.category_id), '')) FROM categories t
+            UNION ALL
+            SELECT 'COLOR', md5(COALESCE(string_agg(CAST(t AS TEXT), ',' ORDER BY t.color_id), '')) FROM colors t
+            UNION ALL
+            SELECT 'SIZE', md5(COALESCE(string_agg(CAST(t AS TEXT), ',' ORDER BY t.size_id), '')) FROM sizes t
+            UNION ALL
+            SELECT 'MATERIAL', md5(COALESCE(string_agg(CAST(t AS TEXT), ',' ORDER BY t.material_id), '')) FROM materials t
+            UNION ALL
+            SELECT 'TARGET_AUDIENCE', md5(COALESCE(string_agg(CAST(t AS TEXT), ',' ORDER BY t.target_audience_id), '')) FROM target_audiences t
+            """)
+    List<Object[]> findFingerprints();
+}
@@ -0,0 +1,9 @@
+package org.yellowcat.backend.product.referencedata;
+
+/**
+ * Bản ghi tham chiếu bất biến (brand, category, color, size, material, target audience)
+ *
+ * @param logoPublicId chỉ có với brand
+ */
+public record ReferenceItem(Integer id, String name, String logoPublicId, Boolean status) {
+}
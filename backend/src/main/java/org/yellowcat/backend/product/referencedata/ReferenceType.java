@@ -0,0 +1,38 @@
+package org.yellowcat.backend.product.referencedata;
+
+/**
+ * Các loại dữ liệu tham chiếu của catalog và topic WebSocket mà service tương ứng publish khi thay đổi
+ */
+public enum ReferenceType {
+    BRAND("/topic/brands"),
+    CATEGORY("/topic/categories"),
+    COLOR("/topic/colors"),
+    SIZE("/topic/sizes"),
+    MATERIAL("/topic/materials"),
+    TARGET_AUDIENCE("/topic/target_audiences");
+
+    private final String topic;
+
+    ReferenceType(String topic) {
+        this.topic = topic;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return null nếu destination không phải topic của dữ liệu tham chiếu
+     */
+    public static ReferenceType fromDestination(String destination) {
+        if (destination == null) {
+            return null;
+        }
+        for (ReferenceType type : values()) {
+            if (type.topic.equals(destination)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
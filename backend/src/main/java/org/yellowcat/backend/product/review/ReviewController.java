@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
@@ -43,6 +44,13 @@ public class ReviewController {
         return ResponseEntity.ok(stats);
     }
 
+    @PostMapping("/rating-summary/rebuild")
+    @PreAuthorize("hasAnyAuthority('Admin_Web')")
+    public ResponseEntity<?> rebuildRatingSummary() {
+        int fixed = reviewService.rebuildRatingSummary();
+        return ResponseEntityBuilder.success("Rebuilt rating summary, " + fixed + " products corrected", fixed);
+    }
+
     @PostMapping
     public ResponseEntity<?> createReview(
             @Valid @RequestBody CreateReviewDTO createReviewDTO,
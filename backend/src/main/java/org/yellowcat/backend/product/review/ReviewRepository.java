@@ -18,14 +18,17 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     @Query("SELECT COUNT(r) FROM Review r WHERE r.productId = :productId")
     long countReviewsByProductId(Integer productId);
 
-    @Query("SELECT COALESCE(AVG(r.rating), 0), " +
-            "COALESCE(SUM(CASE WHEN r.rating = 5 THEN 1 ELSE 0 END), 0), " +
-            "COALESCE(SUM(CASE WHEN r.rating = 4 THEN 1 ELSE 0 END), 0), " +
-            "COALESCE(SUM(CASE WHEN r.rating = 3 THEN 1 ELSE 0 END), 0), " +
-            "COALESCE(SUM(CASE WHEN r.rating = 2 THEN 1 ELSE 0 END), 0), " +
-            "COALESCE(SUM(CASE WHEN r.rating = 1 THEN 1 ELSE 0 END), 0) " +
-            "FROM Review r WHERE r.productId = :productId")
-    List<Object[]> getReviewStatsCountsByProductId(Integer productId);
+    // [review_count, rating_sum, star_5, star_4, star_3, star_2, star_1] từ bảng tổng hợp (cập nhật bằng trigger)
+    @Query(nativeQuery = true, value = """
+            SELECT review_count, rating_sum, star_5, star_4, star_3, star_2, star_1
+            FROM product_rating_summary
+            WHERE product_id = :productId
+            """)
+    List<Object[]> findRatingSummaryByProductId(@Param("productId") Integer productId);
+
+    // Tính lại bảng tổng hợp đánh giá từ reviews, trả về số sản phẩm bị lệch đã được sửa
+    @Query(nativeQuery = true, value = "SELECT rebuild_product_rating_summary()")
+    int rebuildRatingSummary();
 
     @Query("SELECT COUNT(r) > 0 FROM Review r WHERE r.productId = :productId AND r.appUserId = :appUserId")
     boolean existsByProductIdAndAppUserId(@Param("productId") Integer productId, @Param("appUserId") Integer appUserId);
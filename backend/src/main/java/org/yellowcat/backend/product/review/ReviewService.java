@@ -15,4 +15,5 @@ public interface ReviewService {
     boolean hasUserReviewedProduct(Integer appUserId, Integer productId);
     Review getUserReview(Integer appUserId, Integer productId);
     Map<Integer, Review> getUserReviewsForProducts(Integer appUserId, List<Integer> productIds);
+    int rebuildRatingSummary();
 }
@@ -1,10 +1,12 @@
 package org.yellowcat.backend.product.review;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.yellowcat.backend.online_selling.oder_online.OderOnlineRepository;
+import org.yellowcat.backend.product.ProductChangedEvent;
 import org.yellowcat.backend.product.order.Order;
 import org.yellowcat.backend.product.orderItem.OrderItem;
 import org.yellowcat.backend.product.orderItem.OrderItemRepository;
@@ -26,21 +28,23 @@ public class ReviewServiceImpl implements ReviewService {
     private final OderOnlineRepository orderRepository;
     private final AppUserRepository appUserRepository;
     private final OrderItemRepository orderItemRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public PaginatedReviewResponse findByProduct(Integer productId, int page, int limit) {
         var pageRequest = PageRequest.of(page, limit);
         var reviews = reviewRepository.findAllReviewByProductId(productId, pageRequest);
-        long totalReviews = reviewRepository.countReviewsByProductId(productId);
+        List<Object[]> summary = reviewRepository.findRatingSummaryByProductId(productId);
+        long totalReviews = summary.isEmpty() ? 0 : ((Number) summary.get(0)[0]).longValue();
         int totalPages = (int) Math.ceil((double) totalReviews / limit);
         return new PaginatedReviewResponse(reviews, totalPages, page, totalReviews, limit);
     }
 
     @Override
     public ReviewStatsDTO getReviewStatsByProductId(Integer productId) {
-        List<Object[]> result = reviewRepository.getReviewStatsCountsByProductId(productId);
+        List<Object[]> result = reviewRepository.findRatingSummaryByProductId(productId);
 
-        if (result.isEmpty()) {
+        if (result.isEmpty() || ((Number) result.get(0)[0]).intValue() == 0) {
             return new ReviewStatsDTO(0.0, 0, Arrays.asList(
                     new ReviewStatsDTO.StarDistributionItem(5, 0),
                     new ReviewStatsDTO.StarDistributionItem(4, 0),
@@ -51,14 +55,13 @@ public class ReviewServiceImpl implements ReviewService {
         }
 
         Object[] row = result.get(0);
-        double averageRating = ((Number) row[0]).doubleValue();
-        int star5 = ((Number) row[1]).intValue();
-        int star4 = ((Number) row[2]).intValue();
-        int star3 = ((Number) row[3]).intValue();
-        int star2 = ((Number) row[4]).intValue();
-        int star1 = ((Number) row[5]).intValue();
-
-        int totalReviews = star5 + star4 + star3 + star2 + star1;
+        int totalReviews = ((Number) row[0]).intValue();
+        double averageRating = ((Number) row[1]).doubleValue() / totalReviews;
+        int star5 = ((Number) row[2]).intValue();
+        int star4 = ((Number) row[3]).intValue();
+        int star3 = ((Number) row[4]).intValue();
+        int star2 = ((Number) row[5]).intValue();
+        int star1 = ((Number) row[6]).intValue();
 
         List<ReviewStatsDTO.StarDistributionItem> distribution = new ArrayList<>();
         distribution.add(new ReviewStatsDTO.StarDistributionItem(5, star5));
@@ -92,7 +95,10 @@ public class ReviewServiceImpl implements ReviewService {
         review.setComment(createReviewDTO.getComment());
         review.setReviewDate(Instant.now());
 
-        return reviewRepository.save(review);
+        Review saved = reviewRepository.save(review);
+        // Điểm đánh giá là một phần dữ liệu hiển thị của sản phẩm
+        eventPublisher.publishEvent(new ProductChangedEvent(review.getProductId()));
+        return saved;
     }
 
     @Override
@@ -156,6 +162,17 @@ public class ReviewServiceImpl implements ReviewService {
     }
 
 
+    /**
+     * Tính lại bảng tổng hợp đánh giá (product_rating_summary) từ bảng reviews
+     * Bình thường trigger đã cập nhật tăng dần, chỉ dùng khi nghi ngờ số liệu bị lệch
+     */
+    @Override
+    @Transactional
+    public int rebuildRatingSummary() {
+        return reviewRepository.rebuildRatingSummary();
+    }
+
+
     //================= ONLINE ----------------------
 
 //    public List<Integer> checkrevieweByOrder(Integer orderId) {
@@ -197,7 +214,9 @@ public class ReviewServiceImpl implements ReviewService {
         review.setReviewDate(Instant.now());
         review.setOrderId(orderId);
 
-        return reviewRepository.save(review);
+        Review saved = reviewRepository.save(review);
+        eventPublisher.publishEvent(new ProductChangedEvent(review.getProductId()));
+        return saved;
     }
 
     public List<Map<String, Object>> getListReviewByOrder(Integer orderId){
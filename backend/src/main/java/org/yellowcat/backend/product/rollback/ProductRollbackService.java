@@ -0,0 +1,311 @@
+package org.yellowcat.backend.product.rollback;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.yellowcat.backend.common.config_api.exception.ConflictException;
+import org.yellowcat.backend.common.config_api.exception.ResourceNotFoundException;
+import org.yellowcat.backend.product.*;
+import org.yellowcat.backend.product.brand.BrandRepository;
+import org.yellowcat.backend.product.category.CategoryRepository;
+import org.yellowcat.backend.product.dto.ProductMapper;
+import org.yellowcat.backend.product.material.MaterialRepository;
+import org.yellowcat.backend.product.productvariant.SkuAllocator;
+import org.yellowcat.backend.product.referencedata.ReferenceDataRegistry;
+import org.yellowcat.backend.product.referencedata.ReferenceType;
+import org.yellowcat.backend.product.rollback.dto.FieldChange;
+import org.yellowcat.backend.product.rollback.dto.ProductRollbackPreviewDTO;
+import org.yellowcat.backend.product.rollback.dto.VariantRollbackDiff;
+import org.yellowcat.backend.product.targetaudience.TargetAudienceRepository;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Rollback sản phẩm về một nhóm lịch sử (history_group_id)
+ * - Lập kế hoạch: 1 truy vấn lịch sử sản phẩm, 1 lịch sử variant, 1 sản phẩm hiện tại, 1 variant hiện tại;
+ *   dữ liệu tham chiếu kiểm tra qua ReferenceDataRegistry (không truy vấn)
+ * - So sánh với trạng thái hiện tại thành diff từng trường, xem trước được mà không ghi gì (dry-run)
+ * - Áp dụng: sản phẩm qua JPA, variant bằng một batch DELETE / UPDATE / INSERT
+ * Ngữ nghĩa giữ như ProductService.rollback trước đây: 'D' tạo lại sản phẩm và toàn bộ variant (id mới),
+ * 'U' khôi phục trường sản phẩm, xóa variant không có trong nhóm, khôi phục / tạo lại variant trong nhóm
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductRollbackService {
+
+    private final ProductHistoryRepository productHistoryRepository;
+    private final ProductVariantHistoryRepository productVariantHistoryRepository;
+    private final ProductRepository productRepository;
+    private final CategoryRepository categoryRepository;
+    private final BrandRepository brandRepository;
+    private final MaterialRepository materialRepository;
+    private final TargetAudienceRepository targetAudienceRepository;
+    private final ProductMapper productMapper;
+    private final ReferenceDataRegistry referenceDataRegistry;
+    private final ProductRollbackStore rollbackStore;
+    private final SkuAllocator skuAllocator;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Transactional(readOnly = true)
+    public ProductRollbackPreviewDTO preview(Integer historyId) {
+        return plan(historyId).toDto(false);
+    }
+
+    @Transactional
+    public ProductRollbackPreviewDTO apply(Integer historyId) {
+        Plan plan = plan(historyId);
+        if (!plan.problems.isEmpty()) {
+            throw new ConflictException("Không thể rollback: " + String.join("; ", plan.problems));
+        }
+
+        ProductsHistory ph = plan.history;
+        Product product = plan.product != null ? plan.product : productMapper.productHistoryToProduct(ph);
+        if (plan.productAction != RollbackAction.UNCHANGED) {
+            if (plan.product != null) {
+                productMapper.updateProductHistoryToProduct(product, ph);
+            }
+            product.setCategory(categoryRepository.getReferenceById(ph.getCategoryId()));
+            product.setBrand(brandRepository.getReferenceById(ph.getBrandId()));
+            product.setMaterial(materialRepository.getReferenceById(ph.getMaterialId()));
+            product.setTargetAudience(targetAudienceRepository.getReferenceById(ph.getTargetAudienceId()));
+            // IDENTITY: INSERT chạy ngay, có product_id cho variant
+            product = productRepository.save(product);
+        }
+        Integer productId = product.getProductId();
+
+        List<Integer> deletes = new ArrayList<>();
+        List<VariantStep> skuChanges = new ArrayList<>();
+        for (VariantStep step : plan.variants) {
+            if (step.action == RollbackAction.DELETE) {
+                deletes.add(step.current.variantId());
+            } else if (step.action == RollbackAction.CREATE
+                    || (step.action == RollbackAction.UPDATE
+                    && !Objects.equals(step.current.sku(), step.target.sku()))) {
+                skuChanges.add(step);
+            }
+        }
+        // Xóa trước để SKU của variant bị xóa được dùng lại; SKU cũ đã bị variant khác lấy thì cấp lại từ SKU gốc
+        rollbackStore.deleteVariants(deletes);
+        List<String> skus = skuAllocator.allocatePreferred(
+                skuChanges.stream().map(s -> s.target.sku()).toList(),
+                skuChanges.stream()
+                        .map(s -> SkuAllocator.baseSku(productId, s.target.colorId(), s.target.sizeId()))
+                        .toList());
+        for (int i = 0; i < skuChanges.size(); i++) {
+            VariantStep step = skuChanges.get(i);
+            step.target = step.target.withSku(skus.get(i));
+        }
+
+        List<VariantState> updates = new ArrayList<>();
+        List<VariantState> creates = new ArrayList<>();
+        for (VariantStep step : plan.variants) {
+            if (step.action == RollbackAction.UPDATE) {
+                updates.add(step.target);
+            } else if (step.action == RollbackAction.CREATE) {
+                creates.add(step.target);
+            }
+        }
+        rollbackStore.updateVariants(updates);
+        rollbackStore.insertVariants(productId, creates);
+
+        eventPublisher.publishEvent(new ProductChangedEvent(productId));
+        if (!productId.equals(ph.getProductId())) {
+            eventPublisher.publishEvent(new ProductChangedEvent(ph.getProductId()));
+        }
+        plan.resultProductId = productId;
+        return plan.toDto(true);
+    }
+
+    private Plan plan(Integer historyId) {
+        ProductsHistory ph = productHistoryRepository.findById(historyId)
+                .orElseThrow(() -> new ResourceNotFoundException("History not found #" + historyId));
+        char op = ph.getOperation();
+        if (op != 'D' && op != 'U') {
+            throw new IllegalArgumentException("Unsupported operation: " + ph.getOperation());
+        }
+        List<ProductVariantsHistory> variantHistory =
+                productVariantHistoryRepository.findByHistoryGroupId(ph.getHistoryGroupId());
+
+        Plan plan = new Plan(ph);
+        requireReference(plan, ReferenceType.CATEGORY, ph.getCategoryId());
+        requireReference(plan, ReferenceType.BRAND, ph.getBrandId());
+        requireReference(plan, ReferenceType.MATERIAL, ph.getMaterialId());
+        requireReference(plan, ReferenceType.TARGET_AUDIENCE, ph.getTargetAudienceId());
+
+        Map<Integer, VariantState> current = new LinkedHashMap<>();
+        if (op == 'D') {
+            plan.productAction = RollbackAction.CREATE;
+            plan.productChanges = productChanges(null, ph);
+        } else {
+            plan.product = productRepository.findById(ph.getProductId()).orElse(null);
+            if (plan.product == null) {
+                plan.problems.add("Active product not found #" + ph.getProductId());
+                plan.productChanges = List.of();
+                plan.productAction = RollbackAction.UNCHANGED;
+            } else {
+                plan.productChanges = productChanges(plan.product, ph);
+                plan.productAction = plan.productChanges.isEmpty() ? RollbackAction.UNCHANGED : RollbackAction.UPDATE;
+                rollbackStore.findVariants(ph.getProductId()).forEach(v -> current.put(v.variantId(), v));
+            }
+        }
+
+        Set<Integer> inGroup = new HashSet<>();
+        for (ProductVariantsHistory vh : variantHistory) {
+            inGroup.add(vh.getVariantId());
+        }
+        // Variant hiện có không nằm trong nhóm lịch sử sẽ bị xóa
+        for (VariantState cur : current.values()) {
+            if (!inGroup.contains(cur.variantId())) {
+                plan.variants.add(new VariantStep(RollbackAction.DELETE, cur, null, List.of()));
+            }
+        }
+        for (ProductVariantsHistory vh : variantHistory) {
+            requireReference(plan, ReferenceType.COLOR, vh.getColorId());
+            requireReference(plan, ReferenceType.SIZE, vh.getSizeId());
+            VariantState cur = current.get(vh.getVariantId());
+            VariantState target = targetState(vh, cur == null ? null : cur.variantId());
+            List<FieldChange> changes = variantChanges(cur, target);
+            RollbackAction action = cur == null ? RollbackAction.CREATE
+                    : changes.isEmpty() ? RollbackAction.UNCHANGED : RollbackAction.UPDATE;
+            plan.variants.add(new VariantStep(action, cur, target, changes));
+        }
+        return plan;
+    }
+
+    private void requireReference(Plan plan, ReferenceType type, Integer id) {
+        if (!referenceDataRegistry.exists(type, id)) {
+            String problem = type + " not found #" + id;
+            if (!plan.problems.contains(problem)) {
+                plan.problems.add(problem);
+            }
+        }
+    }
+
+    private static VariantState targetState(ProductVariantsHistory vh, Integer variantId) {
+        return new VariantState(variantId, vh.getSku(), vh.getColorId(), vh.getSizeId(), vh.getPrice(),
+                vh.getSalePrice(), vh.getQuantityInStock(), vh.getSold(), vh.getImageUrl(),
+                // Lịch sử lưu weight dạng float: đổi qua chuỗi để 0.3f thành 0.3 chứ không phải 0.30000001192
+                vh.getWeight() == null ? null : Double.valueOf(vh.getWeight().toString()));
+    }
+
+    // Các trường ProductMapper.updateProductHistoryToProduct ghi đè, tham chiếu hiển thị theo tên
+    private List<FieldChange> productChanges(Product current, ProductsHistory ph) {
+        List<FieldChange> changes = new ArrayList<>();
+        diff(changes, "productName", current == null ? null : current.getProductName(), ph.getProductName());
+        diff(changes, "description", current == null ? null : current.getDescription(), ph.getDescription());
+        diffReference(changes, "category", ReferenceType.CATEGORY,
+                current == null || current.getCategory() == null ? null : current.getCategory().getId(),
+                ph.getCategoryId());
+        diffReference(changes, "brand", ReferenceType.BRAND,
+                current == null || current.getBrand() == null ? null : current.getBrand().getId(),
+                ph.getBrandId());
+        diffReference(changes, "material", ReferenceType.MATERIAL,
+                current == null || current.getMaterial() == null ? null : current.getMaterial().getId(),
+                ph.getMaterialId());
+        diffReference(changes, "targetAudience", ReferenceType.TARGET_AUDIENCE,
+                current == null || current.getTargetAudience() == null ? null : current.getTargetAudience().getId(),
+                ph.getTargetAudienceId());
+        diff(changes, "isFeatured", current == null ? null : current.getIsFeatured(), ph.getIsFeatured());
+        diff(changes, "purchases", current == null ? null : current.getPurchases(), ph.getPurchases());
+        diff(changes, "isActive", current == null ? null : current.getIsActive(), ph.getIsActive());
+        diff(changes, "thumbnail", current == null ? null : current.getThumbnail(), ph.getThumbnail());
+        return changes;
+    }
+
+    private List<FieldChange> variantChanges(VariantState current, VariantState target) {
+        List<FieldChange> changes = new ArrayList<>();
+        diff(changes, "sku", current == null ? null : current.sku(), target.sku());
+        diffReference(changes, "color", ReferenceType.COLOR, current == null ? null : current.colorId(),
+                target.colorId());
+        diffReference(changes, "size", ReferenceType.SIZE, current == null ? null : current.sizeId(),
+                target.sizeId());
+        diff(changes, "price", current == null ? null : current.price(), target.price());
+        diff(changes, "salePrice", current == null ? null : current.salePrice(), target.salePrice());
+        diff(changes, "quantityInStock", current == null ? null : current.quantityInStock(),
+                target.quantityInStock());
+        diff(changes, "sold", current == null ? null : current.sold(), target.sold());
+        diff(changes, "imageUrl", current == null ? null : current.imageUrl(), target.imageUrl());
+        diff(changes, "weight", current == null ? null : current.weight(), target.weight());
+        return changes;
+    }
+
+    private static void diff(List<FieldChange> changes, String field, Object current, Object target) {
+        boolean same = current instanceof BigDecimal a && target instanceof BigDecimal b
+                ? a.compareTo(b) == 0
+                : Objects.equals(current, target);
+        if (!same) {
+            changes.add(new FieldChange(field, current, target));
+        }
+    }
+
+    private void diffReference(List<FieldChange> changes, String field, ReferenceType type,
+                               Integer currentId, Integer targetId) {
+        if (!Objects.equals(currentId, targetId)) {
+            changes.add(new FieldChange(field,
+                    currentId == null ? null : referenceDataRegistry.name(type, currentId),
+                    targetId == null ? null : referenceDataRegistry.name(type, targetId)));
+        }
+    }
+
+    private static final class VariantStep {
+        final RollbackAction action;
+        final VariantState current;
+        VariantState target;
+        final List<FieldChange> changes;
+
+        VariantStep(RollbackAction action, VariantState current, VariantState target, List<FieldChange> changes) {
+            this.action = action;
+            this.current = current;
+            this.target = target;
+            this.changes = changes;
+        }
+    }
+
+    private static final class Plan {
+        final ProductsHistory history;
+        final List<VariantStep> variants = new ArrayList<>();
+        final List<String> problems = new ArrayList<>();
+        Product product;
+        RollbackAction productAction;
+        List<FieldChange> productChanges;
+        Integer resultProductId;
+
+        Plan(ProductsHistory history) {
+            this.history = history;
+        }
+
+        ProductRollbackPreviewDTO toDto(boolean applied) {
+            List<VariantRollbackDiff> diffs = new ArrayList<>(variants.size());
+            int created = 0;
+            int updated = 0;
+            int deleted = 0;
+            for (VariantStep step : variants) {
+                switch (step.action) {
+                    case CREATE -> created++;
+                    case UPDATE -> updated++;
+                    case DELETE -> deleted++;
+                    default -> {
+                    }
+                }
+                VariantState shown = step.action == RollbackAction.DELETE ? step.current : step.target;
+                diffs.add(new VariantRollbackDiff(shown.variantId(), shown.sku(), step.action, step.changes));
+            }
+            return new ProductRollbackPreviewDTO(
+                    history.getHistoryId(),
+                    history.getHistoryGroupId(),
+                    resultProductId != null ? resultProductId : history.getProductId(),
+                    history.getOperation(),
+                    productAction,
+                    productChanges,
+                    diffs,
+                    created,
+                    updated,
+                    deleted,
+                    problems,
+                    problems.isEmpty(),
+                    applied);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.yellowcat.backend.product.rollback;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Đọc / ghi product_variants cho rollback bằng JDBC
+ * Đọc trạng thái hiện tại một lần cho cả sản phẩm, ghi thay đổi bằng batch (không qua persistence context)
+ */
+@Component
+@RequiredArgsConstructor
+class ProductRollbackStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    List<VariantState> findVariants(Integer productId) {
+        return jdbcTemplate.query("""
+                        SELECT variant_id, sku, color_id, size_id, price, sale_price, quantity_in_stock, sold,
+                               image_url, weight
+                        FROM product_variants
+                        WHERE product_id = ?
+                        ORDER BY variant_id
+                        """,
+                (rs, i) -> new VariantState(
+                        rs.getInt("variant_id"),
+                        rs.getString("sku"),
+                        (Integer) rs.getObject("color_id"),
+                        (Integer) rs.getObject("size_id"),
+                        rs.getBigDecimal("price"),
+                        rs.getBigDecimal("sale_price"),
+                        (Integer) rs.getObject("quantity_in_stock"),
+                        (Integer) rs.getObject("sold"),
+                        rs.getString("image_url"),
+                        rs.getObject("weight") == null ? null : rs.getDouble("weight")),
+                productId);
+    }
+
+    int deleteVariants(List<Integer> variantIds) {
+        if (variantIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update("DELETE FROM product_variants WHERE variant_id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("integer", variantIds.toArray())));
+    }
+
+    void updateVariants(List<VariantState> variants) {
+        if (variants.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("""
+                        UPDATE product_variants
+                        SET sku = ?, color_id = ?, size_id = ?, price = ?, sale_price = ?,
+                            quantity_in_stock = ?, sold = ?, image_url = ?, weight = ?, updated_at = CURRENT_TIMESTAMP
+                        WHERE variant_id = ?
+                        """,
+                variants, variants.size(), (ps, v) -> {
+                    bindState(ps, 1, v);
+                    ps.setInt(10, v.variantId());
+                });
+    }
+
+    void insertVariants(Integer productId, List<VariantState> variants) {
+        if (variants.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("""
+                        INSERT INTO product_variants (product_id, sku, color_id, size_id, price, sale_price,
+                                                      quantity_in_stock, sold, image_url, weight, cost_price,
+                                                      created_at, updated_at)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
+                        """,
+                variants, variants.size(), (ps, v) -> {
+                    ps.setInt(1, productId);
+                    bindState(ps, 2, v);
+                });
+    }
+
+    // sku .. weight bắt đầu từ vị trí first
+    private static void bindState(PreparedStatement ps, int first, VariantState v) throws SQLException {
+        ps.setString(first, v.sku());
+        ps.setObject(first + 1, v.colorId(), Types.INTEGER);
+        ps.setObject(first + 2, v.sizeId(), Types.INTEGER);
+        ps.setBigDecimal(first + 3, v.price());
+        ps.setBigDecimal(first + 4, v.salePrice());
+        ps.setObject(first + 5, v.quantityInStock() == null ? 0 : v.quantityInStock(), Types.INTEGER);
+        ps.setObject(first + 6, v.sold() == null ? 0 : v.sold(), Types.INTEGER);
+        ps.setString(first + 7, v.imageUrl());
+        ps.setObject(first + 8, v.weight(), Types.DOUBLE);
+    }
+}
@@ -0,0 +1,11 @@
+package org.yellowcat.backend.product.rollback;
+
+/**
+ * Thao tác sẽ thực hiện với một sản phẩm / variant khi rollback
+ */
+public enum RollbackAction {
+    CREATE,
+    UPDATE,
+    DELETE,
+    UNCHANGED
+}
@@ -0,0 +1,28 @@
+package org.yellowcat.backend.product.rollback;
+
+import java.math.BigDecimal;
+
+/**
+ * Các cột của product_variants mà rollback khôi phục (cùng tập trường với ProductMapper.updateProductVariantHistoryToProductVariant)
+ */
+record VariantState(
+        Integer variantId,
+        String sku,
+        Integer colorId,
+        Integer sizeId,
+        BigDecimal price,
+        BigDecimal salePrice,
+        Integer quantityInStock,
+        Integer sold,
+        String imageUrl,
+        Double weight) {
+
+    VariantState withVariantId(Integer id) {
+        return new VariantState(id, sku, colorId, sizeId, price, salePrice, quantityInStock, sold, imageUrl, weight);
+    }
+
+    VariantState withSku(String newSku) {
+        return new VariantState(variantId, newSku, colorId, sizeId, price, salePrice, quantityInStock, sold, imageUrl,
+                weight);
+    }
+}
@@ -0,0 +1,7 @@
+package org.yellowcat.backend.product.rollback.dto;
+
+/**
+ * Một trường sẽ đổi khi rollback: giá trị hiện tại → giá trị trong lịch sử
+ */
+public record FieldChange(String field, Object current, Object target) {
+}
@@ -0,0 +1,27 @@
+package org.yellowcat.backend.product.rollback.dto;
+
+import org.yellowcat.backend.product.rollback.RollbackAction;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Kết quả so sánh một nhóm lịch sử với trạng thái hiện tại (dry-run) hoặc những gì đã áp dụng
+ *
+ * @param problems lý do không rollback được (dữ liệu tham chiếu đã bị xóa, sản phẩm không còn...), rỗng nếu áp dụng được
+ */
+public record ProductRollbackPreviewDTO(
+        Integer historyId,
+        UUID historyGroupId,
+        Integer productId,
+        Character operation,
+        RollbackAction productAction,
+        List<FieldChange> productChanges,
+        List<VariantRollbackDiff> variants,
+        int variantsCreated,
+        int variantsUpdated,
+        int variantsDeleted,
+        List<String> problems,
+        boolean applicable,
+        boolean applied) {
+}
@@ -0,0 +1,12 @@
+package org.yellowcat.backend.product.rollback.dto;
+
+import org.yellowcat.backend.product.rollback.RollbackAction;
+
+import java.util.List;
+
+/**
+ * @param variantId null với variant sẽ được tạo mới
+ * @param sku       SKU sau rollback (SKU hiện tại với DELETE)
+ */
+public record VariantRollbackDiff(Integer variantId, String sku, RollbackAction action, List<FieldChange> changes) {
+}
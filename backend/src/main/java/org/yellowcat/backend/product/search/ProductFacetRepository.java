@@ -0,0 +1,113 @@
+package org.yellowcat.backend.product.search;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+import org.yellowcat.backend.product.Product;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Tìm kiếm có facet trong một câu truy vấn duy nhất
+ * Mỗi facet được đếm với tất cả bộ lọc đang chọn trừ bộ lọc của chính nó
+ */
+public interface ProductFacetRepository extends Repository<Product, Integer> {
+
+    /**
+     * Trả về đúng 1 dòng: [total, items (JSON), facets (JSON)]
+     * Khoảng giá (price_bucket) phải khớp với ProductFacetService.PRICE_BOUNDARIES
+     */
+    @Query(nativeQuery = true, value = """
+            WITH base AS (
+                SELECT p.product_id,
+                       p.brand_id,
+                       p.category_id,
+                       pv.color_id,
+                       pv.size_id,
+                       width_bucket(pv.price, CAST(ARRAY[500000, 1000000, 2000000, 5000000] AS NUMERIC[])) AS price_bucket,
+                       (CAST(:brandId AS INT) IS NULL OR p.brand_id = CAST(:brandId AS INT)) AS m_brand,
+                       (CAST(:categoryId AS INT) IS NULL OR p.category_id = CAST(:categoryId AS INT)) AS m_category,
+                       (CAST(:colorId AS INT) IS NULL OR pv.color_id = CAST(:colorId AS INT)) AS m_color,
+                       (CAST(:sizeId AS INT) IS NULL OR pv.size_id = CAST(:sizeId AS INT)) AS m_size,
+                       ((CAST(:minPrice AS NUMERIC) IS NULL OR pv.price >= CAST(:minPrice AS NUMERIC))
+                           AND (CAST(:maxPrice AS NUMERIC) IS NULL OR pv.price <= CAST(:maxPrice AS NUMERIC))) AS m_price
+                FROM product_variants pv
+                JOIN products p ON p.product_id = pv.product_id
+                WHERE p.is_active = true
+                  AND (CAST(:materialId AS INT) IS NULL OR p.material_id = CAST(:materialId AS INT))
+                  AND (CAST(:targetAudienceId AS INT) IS NULL OR p.target_audience_id = CAST(:targetAudienceId AS INT))
+                  AND (CAST(:tsQuery AS TEXT) IS NULL OR EXISTS (
+                        SELECT 1 FROM product_search ps
+                        WHERE ps.product_id = p.product_id
+                          AND ps.search_vector @@ to_tsquery('simple', f_unaccent(CAST(:tsQuery AS TEXT)))))
+            ),
+            matched AS (
+                SELECT DISTINCT product_id
+                FROM base
+                WHERE m_brand AND m_category AND m_color AND m_size AND m_price
+            ),
+            page AS (
+                SELECT product_id FROM matched ORDER BY product_id LIMIT :limit OFFSET :offset
+            ),
+            facets AS (
+                SELECT 'brand' AS facet, brand_id AS value, COUNT(DISTINCT product_id) AS cnt
+                FROM base WHERE brand_id IS NOT NULL AND m_category AND m_color AND m_size AND m_price
+                GROUP BY brand_id
+                UNION ALL
+                SELECT 'category', category_id, COUNT(DISTINCT product_id)
+                FROM base WHERE category_id IS NOT NULL AND m_brand AND m_color AND m_size AND m_price
+                GROUP BY category_id
+                UNION ALL
+                SELECT 'color', color_id, COUNT(DISTINCT product_id)
+                FROM base WHERE color_id IS NOT NULL AND m_brand AND m_category AND m_size AND m_price
+                GROUP BY color_id
+                UNION ALL
+                SELECT 'size', size_id, COUNT(DISTINCT product_id)
+                FROM base WHERE size_id IS NOT NULL AND m_brand AND m_category AND m_color AND m_price
+                GROUP BY size_id
+                UNION ALL
+                SELECT 'price', price_bucket, COUNT(DISTINCT product_id)
+                FROM base WHERE m_brand AND m_category AND m_color AND m_size
+                GROUP BY price_bucket
+            )
+            SELECT
+                (SELECT COUNT(*) FROM matched) AS total,
+                (SELECT CAST(COALESCE(json_agg(json_build_object(
+                            'productId', pl.product_id,
+                            'productName', pl.product_name,
+                            'purchases', pl.purchases,
+                            'categoryName', pl.category_name,
+                            'brandName', pl.brand_name,
+                            'logoPublicId', pl.logo_public_id,
+                            'minPrice', pl.min_price,
+                            'minSalePrice', pl.min_sale_price,
+                            'totalStock', pl.total_stock,
+                            'thumbnail', pl.thumbnail,
+                            'sizesStr', pl.sizes_str,
+                            'colorsStr', pl.colors_str) ORDER BY pg.product_id), '[]') AS TEXT)
+                 FROM page pg
+                 JOIN product_listing pl ON pl.product_id = pg.product_id) AS items,
+                (SELECT CAST(COALESCE(json_agg(json_build_object(
+                            'facet', f.facet,
+                            'value', f.value,
+                            'label', COALESCE(b.brand_name, c.category_name, co.color_name, s.size_name),
+                            'count', f.cnt) ORDER BY f.facet, f.cnt DESC, f.value), '[]') AS TEXT)
+                 FROM facets f
+                 LEFT JOIN brands b ON f.facet = 'brand' AND b.brand_id = f.value
+                 LEFT JOIN categories c ON f.facet = 'category' AND c.category_id = f.value
+                 LEFT JOIN colors co ON f.facet = 'color' AND co.color_id = f.value
+                 LEFT JOIN sizes s ON f.facet = 'size' AND s.size_id = f.value) AS facets
+            """)
+    List<Object[]> searchWithFacets(@Param("tsQuery") String tsQuery,
+                                    @Param("categoryId") Integer categoryId,
+                                    @Param("brandId") Integer brandId,
+                                    @Param("materialId") Integer materialId,
+                                    @Param("targetAudienceId") Integer targetAudienceId,
+                                    @Param("colorId") Integer colorId,
+                                    @Param("sizeId") Integer sizeId,
+                                    @Param("minPrice") BigDecimal minPrice,
+                                    @Param("maxPrice") BigDecimal maxPrice,
+                                    @Param("limit") int limit,
+                                    @Param("offset") int offset);
+}
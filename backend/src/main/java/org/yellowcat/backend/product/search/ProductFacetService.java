@@ -0,0 +1,87 @@
+package org.yellowcat.backend.product.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.yellowcat.backend.product.dto.ProductListItemDTO;
+import org.yellowcat.backend.product.search.dto.FacetCount;
+import org.yellowcat.backend.product.search.dto.FacetedSearchResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tìm kiếm có facet: trang kết quả + số lượng theo thương hiệu, danh mục, màu, size, khoảng giá
+ * Tất cả trong một lần gọi database (xem ProductFacetRepository)
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductFacetService {
+
+    // Mốc khoảng giá, phải khớp với mảng trong width_bucket của ProductFacetRepository
+    static final BigDecimal[] PRICE_BOUNDARIES = {
+            BigDecimal.valueOf(500_000),
+            BigDecimal.valueOf(1_000_000),
+            BigDecimal.valueOf(2_000_000),
+            BigDecimal.valueOf(5_000_000)
+    };
+
+    // Giới hạn số sản phẩm mỗi trang (giống các endpoint phân trang khác)
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final ProductFacetRepository productFacetRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public FacetedSearchResult search(String keyword, Integer categoryId, Integer brandId, Integer materialId,
+                                      Integer targetAudienceId, Integer colorId, Integer sizeId,
+                                      BigDecimal minPrice, BigDecimal maxPrice, int page, int size) {
+        size = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        // OFFSET không âm và không tràn int
+        page = Math.max(0, Math.min(page, Integer.MAX_VALUE / size));
+        String tsQuery = ProductSearchService.toPrefixTsQuery(keyword);
+        List<Object[]> rows = productFacetRepository.searchWithFacets(tsQuery, categoryId, brandId, materialId,
+                targetAudienceId, colorId, sizeId, minPrice, maxPrice, size, page * size);
+        Object[] row = rows.get(0);
+
+        long total = ((Number) row[0]).longValue();
+        List<ProductListItemDTO> items = readJson((String) row[1], new TypeReference<List<ProductListItemDTO>>() {
+        });
+        List<FacetCount> facetCounts = readJson((String) row[2], new TypeReference<List<FacetCount>>() {
+        });
+
+        Map<String, List<FacetCount>> facets = new LinkedHashMap<>();
+        for (String facet : List.of("brand", "category", "color", "size", "price")) {
+            facets.put(facet, new ArrayList<>());
+        }
+        for (FacetCount count : facetCounts) {
+            FacetCount facetCount = "price".equals(count.facet()) ? withPriceRange(count) : count;
+            facets.computeIfAbsent(facetCount.facet(), k -> new ArrayList<>()).add(facetCount);
+        }
+
+        return new FacetedSearchResult(items, total, page, size, facets);
+    }
+
+    // Bucket i của width_bucket: [PRICE_BOUNDARIES[i-1], PRICE_BOUNDARIES[i])
+    private static FacetCount withPriceRange(FacetCount count) {
+        int bucket = count.value();
+        BigDecimal from = bucket == 0 ? BigDecimal.ZERO : PRICE_BOUNDARIES[bucket - 1];
+        BigDecimal to = bucket < PRICE_BOUNDARIES.length ? PRICE_BOUNDARIES[bucket] : null;
+        String label = to == null ? from.toPlainString() + "+" : from.toPlainString() + "-" + to.toPlainString();
+        return new FacetCount(count.facet(), bucket, label, count.count(), from, to);
+    }
+
+    private <T> T readJson(String json, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Không đọc được kết quả tìm kiếm facet: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.yellowcat.backend.product.search;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Dòng của bảng product_search (V4), chỉ dùng làm gốc subquery trong Criteria
+ * (ProductVariantSpecification lọc product_id IN (SELECT product_id FROM product_search WHERE ...))
+ * Bảng do trigger ghi, không đọc / ghi qua entity này
+ */
+@Entity
+@Immutable
+@Table(name = "product_search")
+public class ProductSearchEntry {
+    @Id
+    @Column(name = "product_id")
+    private Integer productId;
+
+    @Column(name = "search_name")
+    private String searchName;
+
+    // TSVECTOR: chỉ truyền vào hàm SQL, không đọc giá trị
+    @Column(name = "search_vector", insertable = false, updatable = false)
+    private String searchVector;
+
+    protected ProductSearchEntry() {
+    }
+}
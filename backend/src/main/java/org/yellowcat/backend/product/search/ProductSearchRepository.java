@@ -0,0 +1,61 @@
+package org.yellowcat.backend.product.search;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+import org.yellowcat.backend.product.Product;
+
+import java.util.List;
+
+/**
+ * Truy vấn trên bảng product_search (tsvector + trigram, đã bỏ dấu tiếng Việt)
+ * Bảng được trigger cập nhật khi sản phẩm, thương hiệu, danh mục, chất liệu thay đổi
+ */
+public interface ProductSearchRepository extends Repository<Product, Integer> {
+
+    // Full-text: [product_id, rank]
+    @Query(nativeQuery = true, value = """
+            SELECT ps.product_id, ts_rank(ps.search_vector, to_tsquery('simple', f_unaccent(:tsQuery))) AS rank
+            FROM product_search ps
+            JOIN products p ON p.product_id = ps.product_id
+            WHERE p.is_active = true
+              AND ps.search_vector @@ to_tsquery('simple', f_unaccent(:tsQuery))
+            ORDER BY rank DESC, ps.product_id
+            LIMIT :limit OFFSET :offset
+            """)
+    List<Object[]> searchFullText(@Param("tsQuery") String tsQuery,
+                                  @Param("limit") int limit,
+                                  @Param("offset") int offset);
+
+    @Query(nativeQuery = true, value = """
+            SELECT COUNT(*)
+            FROM product_search ps
+            JOIN products p ON p.product_id = ps.product_id
+            WHERE p.is_active = true
+              AND ps.search_vector @@ to_tsquery('simple', f_unaccent(:tsQuery))
+            """)
+    long countFullText(@Param("tsQuery") String tsQuery);
+
+    // Dự phòng khi gõ sai chính tả: so khớp trigram trên tên đã bỏ dấu, [product_id, similarity]
+    @Query(nativeQuery = true, value = """
+            SELECT ps.product_id, word_similarity(f_unaccent(:term), ps.search_name) AS rank
+            FROM product_search ps
+            JOIN products p ON p.product_id = ps.product_id
+            WHERE p.is_active = true
+              AND f_unaccent(:term) <% ps.search_name
+            ORDER BY rank DESC, ps.product_id
+            LIMIT :limit OFFSET :offset
+            """)
+    List<Object[]> searchFuzzy(@Param("term") String term,
+                               @Param("limit") int limit,
+                               @Param("offset") int offset);
+
+    @Query(nativeQuery = true, value = """
+            SELECT COUNT(*)
+            FROM product_search ps
+            JOIN products p ON p.product_id = ps.product_id
+            WHERE p.is_active = true
+              AND f_unaccent(:term) <% ps.search_name
+            """)
+    long countFuzzy(@Param("term") String term);
+}
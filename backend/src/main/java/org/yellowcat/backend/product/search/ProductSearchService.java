@@ -0,0 +1,123 @@
+package org.yellowcat.backend.product.search;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Tìm kiếm sản phẩm theo từ khóa, không phân biệt dấu ("giay the thao" khớp "Giày thể thao")
+ * Ưu tiên full-text có xếp hạng, nếu không có kết quả thì dùng trigram để chịu lỗi chính tả
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSearchService {
+
+    private final ProductSearchRepository productSearchRepository;
+
+    /**
+     * Kết quả tìm kiếm: productId theo thứ tự xếp hạng
+     *
+     * @param fuzzy true nếu kết quả đến từ so khớp trigram (không có kết quả full-text)
+     */
+    public record SearchHits(List<Integer> productIds, long total, boolean fuzzy) {
+        static SearchHits empty() {
+            return new SearchHits(Collections.emptyList(), 0, false);
+        }
+    }
+
+    /**
+     * Bộ lọc từ khóa cho truy vấn khác (tìm kiếm variant), áp dụng bằng hàm SQL trong chính truy vấn đó
+     * nên không giới hạn số sản phẩm khớp
+     *
+     * @param fuzzy true nếu dùng trigram (không có kết quả full-text)
+     * @param query tsquery dạng tiền tố hoặc từ khóa gốc (trigram), null nếu không sản phẩm nào khớp
+     */
+    public record KeywordMatch(boolean fuzzy, String query) {
+        static final KeywordMatch NONE = new KeywordMatch(false, null);
+
+        public boolean matchesNothing() {
+            return query == null;
+        }
+
+        // Tên hàm SQL (V17) nhận (cột của product_search, query)
+        public String sqlFunction() {
+            return fuzzy ? "f_search_name_match" : "f_search_vector_match";
+        }
+
+        // Thuộc tính ProductSearchEntry truyền vào sqlFunction()
+        public String searchAttribute() {
+            return fuzzy ? "searchName" : "searchVector";
+        }
+    }
+
+    public SearchHits search(String keyword, int limit, int offset) {
+        String tsQuery = toPrefixTsQuery(keyword);
+        if (tsQuery == null) {
+            return SearchHits.empty();
+        }
+
+        long total = productSearchRepository.countFullText(tsQuery);
+        if (total > 0) {
+            return new SearchHits(ids(productSearchRepository.searchFullText(tsQuery, limit, offset)), total, false);
+        }
+
+        String term = keyword.trim();
+        total = productSearchRepository.countFuzzy(term);
+        if (total > 0) {
+            log.debug("Không có kết quả full-text cho '{}', dùng trigram ({} kết quả)", term, total);
+            return new SearchHits(ids(productSearchRepository.searchFuzzy(term, limit, offset)), total, true);
+        }
+        return SearchHits.empty();
+    }
+
+    /**
+     * Chọn cách khớp từ khóa giống search(): full-text nếu có kết quả, nếu không thì trigram
+     */
+    public KeywordMatch matchKeyword(String keyword) {
+        String tsQuery = toPrefixTsQuery(keyword);
+        if (tsQuery == null) {
+            return KeywordMatch.NONE;
+        }
+        if (productSearchRepository.countFullText(tsQuery) > 0) {
+            return new KeywordMatch(false, tsQuery);
+        }
+        String term = keyword.trim();
+        if (productSearchRepository.countFuzzy(term) > 0) {
+            return new KeywordMatch(true, term);
+        }
+        return KeywordMatch.NONE;
+    }
+
+    /**
+     * Chuyển từ khóa người dùng thành tsquery dạng tiền tố: "giay the" → "giay:* & the:*"
+     * Loại bỏ ký tự đặc biệt để không lỗi cú pháp to_tsquery
+     *
+     * @return null nếu từ khóa không có từ nào hợp lệ
+     */
+    public static String toPrefixTsQuery(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        StringJoiner joiner = new StringJoiner(" & ");
+        for (String token : keyword.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                joiner.add(token + ":*");
+            }
+        }
+        return joiner.length() == 0 ? null : joiner.toString();
+    }
+
+    private static List<Integer> ids(List<Object[]> rows) {
+        List<Integer> ids = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add(((Number) row[0]).intValue());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,17 @@
+package org.yellowcat.backend.product.search.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Số sản phẩm ứng với một giá trị facet (thương hiệu, danh mục, màu, size, khoảng giá)
+ * minPrice/maxPrice chỉ có với facet "price", maxPrice null là khoảng cuối
+ */
+public record FacetCount(
+        String facet,
+        Integer value,
+        String label,
+        long count,
+        BigDecimal minPrice,
+        BigDecimal maxPrice
+) {
+}
@@ -0,0 +1,15 @@
+package org.yellowcat.backend.product.search.dto;
+
+import org.yellowcat.backend.product.dto.ProductListItemDTO;
+
+import java.util.List;
+import java.util.Map;
+
+public record FacetedSearchResult(
+        List<ProductListItemDTO> content,
+        long totalItems,
+        int page,
+        int size,
+        Map<String, List<FacetCount>> facets
+) {
+}
@@ -6,6 +6,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.yellowcat.backend.product.order.Order;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -17,7 +18,7 @@ public interface ProfitRepository extends JpaRepository<Order, Integer> {
                 WHERE (o.orderStatus = 'Delivered' OR o.orderStatus = 'Paid' OR o.orderStatus = 'Completed')
                   AND o.createdAt BETWEEN :start AND :end
             """)
-    Double findRevenue(
+    BigDecimal findRevenue(
             @Param("start") LocalDateTime start,
             @Param("end") LocalDateTime end
     );
@@ -30,7 +31,7 @@ public interface ProfitRepository extends JpaRepository<Order, Integer> {
                 WHERE (o.orderStatus = 'Delivered' OR o.orderStatus = 'Paid' OR o.orderStatus = 'Completed')
                   AND o.createdAt BETWEEN :start AND :end
             """)
-    Double findCostOfGoods(
+    BigDecimal findCostOfGoods(
             @Param("start") LocalDateTime start,
             @Param("end") LocalDateTime end
     );
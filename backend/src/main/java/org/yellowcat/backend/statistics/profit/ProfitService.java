@@ -4,10 +4,10 @@ import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.stereotype.Service;
+import org.yellowcat.backend.common.money.Money;
 import org.yellowcat.backend.statistics.profit.dto.*;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
@@ -25,28 +25,28 @@ public class ProfitService {
         LocalDateTime start = end.minus(1, toChronosUnit(range));
 
         // ---- Kỳ hiện tại ----
-        double revenue = Optional.ofNullable(profitRepository.findRevenue(start, end)).orElse(0.0);
-        double costOfGoods = Optional.ofNullable(profitRepository.findCostOfGoods(start, end)).orElse(0.0);
-        double netProfit = revenue - costOfGoods;
+        Money revenue = Money.of(profitRepository.findRevenue(start, end));
+        Money costOfGoods = Money.of(profitRepository.findCostOfGoods(start, end));
+        Money netProfit = revenue.minus(costOfGoods);
 
         // ---- Kỳ trước ----
         LocalDateTime prevEnd = start;
         LocalDateTime prevStart = prevEnd.minus(1, toChronosUnit(range));
 
-        double prevRevenue = Optional.ofNullable(profitRepository.findRevenue(prevStart, prevEnd)).orElse(0.0);
-        double prevCostOfGoods = Optional.ofNullable(profitRepository.findCostOfGoods(prevStart, prevEnd)).orElse(0.0);
-        double prevNetProfit = prevRevenue - prevCostOfGoods;
+        Money prevRevenue = Money.of(profitRepository.findRevenue(prevStart, prevEnd));
+        Money prevCostOfGoods = Money.of(profitRepository.findCostOfGoods(prevStart, prevEnd));
+        Money prevNetProfit = prevRevenue.minus(prevCostOfGoods);
 
         // ---- Tính growth ----
-        double revenueGrowth = (prevRevenue > 0) ? round(((revenue - prevRevenue) / prevRevenue) * 100) : 0;
-        double profitGrowth = (prevNetProfit > 0) ? round(((netProfit - prevNetProfit) / prevNetProfit) * 100) : 0;
+        double revenueGrowth = prevRevenue.isPositive() ? revenue.minus(prevRevenue).percentageOf(prevRevenue) : 0;
+        double profitGrowth = prevNetProfit.isPositive() ? netProfit.minus(prevNetProfit).percentageOf(prevNetProfit) : 0;
         double growthRate = revenueGrowth;
 
         return ProfitSummaryResponse.builder()
-                .revenue(revenue)
-                .costOfGoods(costOfGoods)
-                .netProfit(netProfit)
-                .profitMargin(revenue > 0 ? round((netProfit / revenue) * 100) : 0)
+                .revenue(revenue.toDouble())
+                .costOfGoods(costOfGoods.toDouble())
+                .netProfit(netProfit.toDouble())
+                .profitMargin(revenue.isPositive() ? netProfit.percentageOf(revenue) : 0)
                 .growthRate(growthRate)
                 .revenueGrowth(revenueGrowth)
                 .profitGrowth(profitGrowth)
@@ -70,15 +70,15 @@ public class ProfitService {
                     labels.add(row[0].toString());
 
                     // revenue
-                    double revenue = row[1] != null ? ((Number) row[1]).doubleValue() : 0.0;
-                    revenues.add(revenue);
+                    Money revenue = money(row[1]);
+                    revenues.add(revenue.toDouble());
 
                     // cost of goods
-                    double costOfGoods = row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
+                    Money costOfGoods = money(row[2]);
 
                     // net profit
-                    double gross = revenue - costOfGoods;
-                    netProfits.add(gross);
+                    Money gross = revenue.minus(costOfGoods);
+                    netProfits.add(gross.toDouble());
                 }
             }
             case "weekly" -> {
@@ -87,15 +87,15 @@ public class ProfitService {
                     labels.add("Tuần " + row[0]);
 
                     // revenue
-                    double revenue = row[1] != null ? ((Number) row[1]).doubleValue() : 0.0;
-                    revenues.add(revenue);
+                    Money revenue = money(row[1]);
+                    revenues.add(revenue.toDouble());
 
                     // cost of goods
-                    double costOfGoods = row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
+                    Money costOfGoods = money(row[2]);
 
                     // net profit
-                    double gross = revenue - costOfGoods;
-                    netProfits.add(gross);
+                    Money gross = revenue.minus(costOfGoods);
+                    netProfits.add(gross.toDouble());
                 }
             }
             case "monthly" -> {
@@ -103,15 +103,15 @@ public class ProfitService {
                 for (Object[] row : results) {
                     labels.add("T" + row[1]);
                     // revenue
-                    double revenue = row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
-                    revenues.add(revenue);
+                    Money revenue = money(row[2]);
+                    revenues.add(revenue.toDouble());
 
                     // cost of goods
-                    double costOfGoods = row[3] != null ? ((Number) row[3]).doubleValue() : 0.0;
+                    Money costOfGoods = money(row[3]);
 
                     // net profit
-                    double gross = revenue - costOfGoods;
-                    netProfits.add(gross);
+                    Money gross = revenue.minus(costOfGoods);
+                    netProfits.add(gross.toDouble());
                 }
             }
             case "yearly" -> {
@@ -119,15 +119,15 @@ public class ProfitService {
                 for (Object[] row : results) {
                     labels.add(row[0].toString());
                     // revenue
-                    double revenue = row[1] != null ? ((Number) row[1]).doubleValue() : 0.0;
-                    revenues.add(revenue);
+                    Money revenue = money(row[1]);
+                    revenues.add(revenue.toDouble());
 
                     // cost of goods
-                    double costOfGoods = row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
+                    Money costOfGoods = money(row[2]);
 
                     // net profit
-                    double gross = revenue - costOfGoods;
-                    netProfits.add(gross);
+                    Money gross = revenue.minus(costOfGoods);
+                    netProfits.add(gross.toDouble());
                 }
             }
             default -> throw new IllegalArgumentException("Invalid type: " + period);
@@ -158,13 +158,13 @@ public class ProfitService {
                     // label: ngày / tuần / tháng / năm
                     labels.add(row[0].toString());
                     // Doanh thu
-                    double revenue = row[1] != null ? ((Number) row[1]).doubleValue() : 0.0;
+                    Money revenue = money(row[1]);
                     // Giá vốn
-                    double costOfGoods = row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
+                    Money costOfGoods = money(row[2]);
                     // Net Profit
-                    double netProfit = revenue - costOfGoods;
+                    Money netProfit = revenue.minus(costOfGoods);
                     // Margins
-                    double netMargin = revenue > 0 ? round((netProfit / revenue) * 100) : 0;
+                    double netMargin = revenue.isPositive() ? netProfit.percentageOf(revenue) : 0;
 
                     netMargins.add(netMargin);
                 }
@@ -174,13 +174,13 @@ public class ProfitService {
                 for (Object[] row : results) {
                     labels.add("Tuần " + row[0]);
                     // Doanh thu
-                    double revenue = row[1] != null ? ((Number) row[1]).doubleValue() : 0.0;
+                    Money revenue = money(row[1]);
                     // Giá vốn
-                    double costOfGoods = row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
+                    Money costOfGoods = money(row[2]);
                     // Net Profit
-                    double netProfit = revenue - costOfGoods;
+                    Money netProfit = revenue.minus(costOfGoods);
                     // Margins
-                    double netMargin = revenue > 0 ? round((netProfit / revenue) * 100) : 0;
+                    double netMargin = revenue.isPositive() ? netProfit.percentageOf(revenue) : 0;
 
                     netMargins.add(netMargin);
                 }
@@ -190,13 +190,13 @@ public class ProfitService {
                 for (Object[] row : results) {
                     labels.add("T" + row[1]);
                     // Doanh thu
-                    double revenue = row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
+                    Money revenue = money(row[2]);
                     // Giá vốn
-                    double costOfGoods = row[3] != null ? ((Number) row[3]).doubleValue() : 0.0;
+                    Money costOfGoods = money(row[3]);
                     // Net Profit
-                    double netProfit = revenue - costOfGoods;
+                    Money netProfit = revenue.minus(costOfGoods);
                     // Margins
-                    double netMargin = revenue > 0 ? round((netProfit / revenue) * 100) : 0;
+                    double netMargin = revenue.isPositive() ? netProfit.percentageOf(revenue) : 0;
 
                     netMargins.add(netMargin);
                 }
@@ -206,13 +206,13 @@ public class ProfitService {
                 for (Object[] row : results) {
                     labels.add(row[0].toString());
                     // Doanh thu
-                    double revenue = row[1] != null ? ((Number) row[1]).doubleValue() : 0.0;
+                    Money revenue = money(row[1]);
                     // Giá vốn
-                    double costOfGoods = row[2] != null ? ((Number) row[2]).doubleValue() : 0.0;
+                    Money costOfGoods = money(row[2]);
                     // Net Profit
-                    double netProfit = revenue - costOfGoods;
+                    Money netProfit = revenue.minus(costOfGoods);
                     // Margins
-                    double netMargin = revenue > 0 ? round((netProfit / revenue) * 100) : 0;
+                    double netMargin = revenue.isPositive() ? netProfit.percentageOf(revenue) : 0;
 
                     netMargins.add(netMargin);
                 }
@@ -239,9 +239,11 @@ public class ProfitService {
         };
     }
 
-    private double round(double num) {
-        return BigDecimal.valueOf(num)
-                .setScale(2, RoundingMode.HALF_UP)
-                .doubleValue();
+    // SUM trong query trả về BigDecimal; các kiểu số khác đổi qua chuỗi để không mất chính xác
+    private Money money(Object value) {
+        if (value == null) {
+            return Money.ZERO;
+        }
+        return value instanceof BigDecimal amount ? Money.of(amount) : Money.of(new BigDecimal(value.toString()));
     }
 }
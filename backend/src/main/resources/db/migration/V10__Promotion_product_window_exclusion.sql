@@ -0,0 +1,69 @@
+-- Chặn một variant thuộc hai promotion có thời gian trùng nhau bằng exclusion constraint
+-- thay cho trigger check_promotion_product_overlap (mỗi dòng insert một lần COUNT join)
+-- - promotion_window: khoảng [start_date, end_date] của promotion, chép xuống từng dòng promotion_products
+--   (trigger giữ đồng bộ khi thêm dòng hoặc đổi thời gian promotion)
+-- - Index GiST của constraint cũng dùng để tìm xung đột cho cả lô variant trong một query
+--   (PromotionVariantAssigner.findConflicts)
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
+DROP TRIGGER IF EXISTS trg_check_promotion_overlap ON promotion_products;
+DROP FUNCTION IF EXISTS check_promotion_product_overlap();
+
+ALTER TABLE promotion_products
+    ADD COLUMN promotion_window TSRANGE;
+
+UPDATE promotion_products pp
+SET promotion_window = TSRANGE(p.start_date, p.end_date, '[]')
+FROM promotions p
+WHERE p.promotion_id = pp.promotion_id;
+
+-- Dòng trùng (cùng promotion, cùng variant) tự trùng khoảng với chính nó
+DELETE
+FROM promotion_products a
+    USING promotion_products b
+WHERE a.promotion_id = b.promotion_id
+  AND a.variant_id = b.variant_id
+  AND a.promotion_product_id > b.promotion_product_id;
+
+ALTER TABLE promotion_products
+    ALTER COLUMN promotion_window SET NOT NULL;
+
+CREATE OR REPLACE FUNCTION trg_promotion_product_window()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    SELECT TSRANGE(p.start_date, p.end_date, '[]')
+    INTO NEW.promotion_window
+    FROM promotions p
+    WHERE p.promotion_id = NEW.promotion_id;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER before_write_promotion_product_window
+    BEFORE INSERT OR UPDATE OF promotion_id, promotion_window
+    ON promotion_products
+    FOR EACH ROW
+EXECUTE FUNCTION trg_promotion_product_window();
+
+CREATE OR REPLACE FUNCTION trg_promotion_window_sync()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    UPDATE promotion_products
+    SET promotion_window = TSRANGE(NEW.start_date, NEW.end_date, '[]')
+    WHERE promotion_id = NEW.promotion_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER after_update_promotion_window
+    AFTER UPDATE OF start_date, end_date
+    ON promotions
+    FOR EACH ROW
+    WHEN (OLD.start_date IS DISTINCT FROM NEW.start_date OR OLD.end_date IS DISTINCT FROM NEW.end_date)
+EXECUTE FUNCTION trg_promotion_window_sync();
+
+ALTER TABLE promotion_products
+    ADD CONSTRAINT excl_promotion_products_variant_window
+        EXCLUDE USING gist (variant_id WITH =, promotion_window WITH &&);
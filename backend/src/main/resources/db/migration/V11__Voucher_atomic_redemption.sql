@@ -0,0 +1,34 @@
+-- Đổi voucher bằng UPDATE có điều kiện thay cho đọc - tăng - ghi trong Java (xem VoucherRedeemer)
+
+-- Số lượt đang được giữ chỗ bởi các checkout chưa hoàn tất
+ALTER TABLE voucher1
+    ADD COLUMN reserved_count INT NOT NULL DEFAULT 0;
+
+UPDATE voucher1 SET usage_count = 0 WHERE usage_count IS NULL;
+ALTER TABLE voucher1
+    ALTER COLUMN usage_count SET NOT NULL;
+
+-- Giới hạn max_usage do UPDATE có điều kiện đảm bảo, không đặt CHECK usage_count <= max_usage
+-- vì dữ liệu cũ đã bị dùng vượt (do race trước đây) và admin được phép hạ max_usage
+ALTER TABLE voucher1
+    ADD CONSTRAINT chk_voucher1_reserved_count CHECK (reserved_count >= 0);
+
+-- Mỗi user dùng một voucher tối đa một lần: UNIQUE (voucher_id, user_id) đã có từ V1, thêm giới hạn số lượt
+UPDATE voucher_user SET usage_count = 0 WHERE usage_count IS NULL;
+ALTER TABLE voucher_user
+    ALTER COLUMN usage_count SET NOT NULL;
+ALTER TABLE voucher_user
+    ADD CONSTRAINT chk_voucher_user_single_use CHECK (usage_count <= 1) NOT VALID;
+
+-- Giữ chỗ ngắn hạn cho checkout đang diễn ra
+CREATE TABLE voucher_reservation
+(
+    token      UUID PRIMARY KEY,
+    voucher_id INT       NOT NULL REFERENCES voucher1 (id) ON DELETE CASCADE,
+    user_id    INT,
+    expires_at TIMESTAMP NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Dọn giữ chỗ hết hạn
+CREATE INDEX idx_voucher_reservation_expires ON voucher_reservation (expires_at);
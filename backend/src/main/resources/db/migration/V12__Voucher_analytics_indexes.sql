@@ -0,0 +1,4 @@
+-- Thống kê voucher gom nhóm trên voucher_redemption theo voucher rồi cộng lợi nhuận theo đơn (xem VoucherAnalytics)
+CREATE INDEX IF NOT EXISTS idx_voucher_redemption_voucher ON voucher_redemption (voucher_id, order_id);
+
+CREATE INDEX IF NOT EXISTS idx_order_items_order ON order_items (order_id);
@@ -0,0 +1,24 @@
+-- Điều kiện khớp từ khóa cho truy vấn variant (ProductVariantSpecification), thay cho danh sách productId bị giới hạn
+-- Hàm SQL một câu lệnh được planner inline, mỗi sản phẩm chỉ tra khóa chính product_search
+CREATE OR REPLACE FUNCTION f_product_text_match(p_product_id INT, p_ts_query TEXT)
+    RETURNS BOOLEAN AS
+$$
+SELECT EXISTS (SELECT 1
+               FROM product_search ps
+               WHERE ps.product_id = p_product_id
+                 AND ps.search_vector @@ to_tsquery('simple', f_unaccent(p_ts_query)))
+$$
+    LANGUAGE sql STABLE
+                 PARALLEL SAFE;
+
+-- Dự phòng trigram khi full-text không có kết quả (giống ProductSearchService.search)
+CREATE OR REPLACE FUNCTION f_product_fuzzy_match(p_product_id INT, p_term TEXT)
+    RETURNS BOOLEAN AS
+$$
+SELECT EXISTS (SELECT 1
+               FROM product_search ps
+               WHERE ps.product_id = p_product_id
+                 AND f_unaccent(p_term) <% ps.search_name)
+$$
+    LANGUAGE sql STABLE
+                 PARALLEL SAFE;
@@ -0,0 +1,43 @@
+-- Partition DEFAULT cho lịch sử sản phẩm / variant: bảo trì partition chạy trễ hoặc bị tắt thì ghi sản phẩm vẫn thành công
+-- (changed_at ngoài các tháng đã tạo trước rơi vào DEFAULT thay vì lỗi "no partition of relation found for row")
+CREATE TABLE IF NOT EXISTS products_history_default PARTITION OF products_history DEFAULT;
+CREATE TABLE IF NOT EXISTS product_variants_history_default PARTITION OF product_variants_history DEFAULT;
+
+-- Tạo partition tháng còn thiếu trong khoảng [p_from, p_to] cho cả hai bảng, trả về số partition đã tạo
+-- Dòng của tháng đó đang nằm trong DEFAULT được chuyển sang partition mới (PostgreSQL không cho tạo partition
+-- khi DEFAULT còn dòng thuộc khoảng của nó)
+CREATE OR REPLACE FUNCTION ensure_product_history_partitions(p_from DATE, p_to DATE)
+    RETURNS INT AS
+$$
+DECLARE
+    v_month   DATE := date_trunc('month', p_from);
+    v_next    DATE;
+    v_parent  TEXT;
+    v_name    TEXT;
+    v_created INT  := 0;
+BEGIN
+    -- Nhiều instance cùng chạy bảo trì không tạo trùng
+    PERFORM pg_advisory_xact_lock(hashtext('product_history_partitions'));
+    WHILE v_month <= p_to
+        LOOP
+            v_next := (v_month + INTERVAL '1 month')::DATE;
+            FOREACH v_parent IN ARRAY ARRAY ['products_history', 'product_variants_history']
+                LOOP
+                    v_name := v_parent || '_p' || to_char(v_month, 'YYYYMM');
+                    IF to_regclass(v_name) IS NULL THEN
+                        EXECUTE format('CREATE TEMP TABLE product_history_moved ON COMMIT DROP AS '
+                                           || 'WITH moved AS (DELETE FROM %I WHERE changed_at >= %L AND changed_at < %L '
+                                           || 'RETURNING *) SELECT * FROM moved',
+                                       v_parent || '_default', v_month, v_next);
+                        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                                       v_name, v_parent, v_month, v_next);
+                        EXECUTE format('INSERT INTO %I SELECT * FROM product_history_moved', v_parent);
+                        DROP TABLE product_history_moved;
+                        v_created := v_created + 1;
+                    END IF;
+                END LOOP;
+            v_month := v_next;
+        END LOOP;
+    RETURN v_created;
+END;
+$$ LANGUAGE plpgsql;
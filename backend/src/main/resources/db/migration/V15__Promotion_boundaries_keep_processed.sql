@@ -0,0 +1,25 @@
+-- Chỉ đưa mốc về trạng thái chờ khi mốc thực sự đổi
+-- Trước đây mọi lần UPDATE (kể cả PromotionScheduler tắt promotion đã hết hạn) đặt processed_at = NULL cho cả hai mốc,
+-- lần poll sau xử lý lại và tính lại giá sale không cần thiết
+-- Bật/tắt promotion chưa kết thúc (không đổi thời gian) vẫn xử lý lại để giá sale theo trạng thái mới
+CREATE OR REPLACE FUNCTION trg_promotion_boundaries()
+    RETURNS TRIGGER AS
+$$
+DECLARE
+    v_toggled BOOLEAN := FALSE;
+BEGIN
+    IF TG_OP = 'UPDATE' THEN
+        v_toggled := OLD.is_active IS DISTINCT FROM NEW.is_active AND NEW.end_date >= LOCALTIMESTAMP;
+    END IF;
+
+    INSERT INTO promotion_boundaries AS b (promotion_id, kind, boundary_at)
+    VALUES (NEW.promotion_id, 'S', NEW.start_date),
+           (NEW.promotion_id, 'E', NEW.end_date + INTERVAL '1 millisecond')
+    ON CONFLICT (promotion_id, kind) DO UPDATE
+        SET boundary_at  = EXCLUDED.boundary_at,
+            processed_at = NULL
+        WHERE b.boundary_at IS DISTINCT FROM EXCLUDED.boundary_at
+           OR v_toggled;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,18 @@
+-- Mỗi user giữ tối đa một lượt trên một voucher (xem VoucherRedeemer.reserve)
+-- Giữ chỗ trùng đã có (cùng voucher, cùng user): giữ dòng hết hạn muộn nhất, trả lượt của các dòng còn lại
+WITH dropped AS (
+    DELETE FROM voucher_reservation r
+        USING voucher_reservation k
+        WHERE k.voucher_id = r.voucher_id
+            AND k.user_id = r.user_id
+            AND (k.expires_at, k.token) > (r.expires_at, r.token)
+        RETURNING r.voucher_id, r.token),
+     returned AS (SELECT voucher_id, COUNT(DISTINCT token) AS holds
+                  FROM dropped
+                  GROUP BY voucher_id)
+UPDATE voucher1 v
+SET reserved_count = GREATEST(v.reserved_count - r.holds, 0)
+FROM returned r
+WHERE v.id = r.voucher_id;
+
+CREATE UNIQUE INDEX uq_voucher_reservation_voucher_user ON voucher_reservation (voucher_id, user_id);
@@ -0,0 +1,24 @@
+-- Điều kiện từ khóa của truy vấn variant viết thành semi-join trên product_search
+-- (product_id IN (SELECT product_id FROM product_search WHERE ...), xem ProductVariantSpecification)
+-- thay cho hàm tra khóa chính product_search theo từng dòng variant của V13
+-- Hàm SQL một biểu thức được planner inline thành toán tử gốc trên cột, nên dùng được index GIN của V4:
+-- search_vector @@ ... (idx_product_search_vector), ... <% search_name (idx_product_search_name_trgm)
+CREATE OR REPLACE FUNCTION f_search_vector_match(p_search_vector TSVECTOR, p_ts_query TEXT)
+    RETURNS BOOLEAN AS
+$$
+SELECT p_search_vector @@ to_tsquery('simple', f_unaccent(p_ts_query))
+$$
+    LANGUAGE sql IMMUTABLE
+                 PARALLEL SAFE;
+
+-- <% phụ thuộc pg_trgm.word_similarity_threshold nên chỉ STABLE
+CREATE OR REPLACE FUNCTION f_search_name_match(p_search_name TEXT, p_term TEXT)
+    RETURNS BOOLEAN AS
+$$
+SELECT f_unaccent(p_term) <% p_search_name
+$$
+    LANGUAGE sql STABLE
+                 PARALLEL SAFE;
+
+DROP FUNCTION IF EXISTS f_product_text_match(INT, TEXT);
+DROP FUNCTION IF EXISTS f_product_fuzzy_match(INT, TEXT);
@@ -0,0 +1,236 @@
+-- Read model cho danh sách sản phẩm: mỗi sản phẩm một dòng, đã tính sẵn giá/tồn kho/size/màu
+-- Thay cho các subquery tương quan trên product_variants và STRING_AGG chạy ở mỗi request
+CREATE TABLE product_listing
+(
+    product_id     INT PRIMARY KEY,
+    product_name   VARCHAR(255) NOT NULL,
+    purchases      INT,
+    category_name  VARCHAR(255),
+    brand_name     VARCHAR(255),
+    logo_public_id VARCHAR(255),
+    min_price      NUMERIC(12, 2),
+    min_sale_price NUMERIC(12, 2),
+    total_stock    BIGINT,
+    variant_count  INT       NOT NULL DEFAULT 0,
+    thumbnail      VARCHAR(255),
+    sizes_str      TEXT,
+    colors_str     TEXT,
+    is_active      BOOLEAN,
+    updated_at     TIMESTAMP,
+    FOREIGN KEY (product_id) REFERENCES products (product_id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_product_listing_active_purchases ON product_listing (is_active, purchases DESC);
+CREATE INDEX idx_product_listing_active_stock ON product_listing (is_active, total_stock);
+CREATE INDEX idx_product_listing_active_id ON product_listing (product_id) WHERE is_active = true;
+
+-- Tính lại các dòng read model cho danh sách sản phẩm
+CREATE OR REPLACE FUNCTION refresh_product_listing(p_product_ids INT[])
+    RETURNS VOID AS
+$$
+BEGIN
+    IF p_product_ids IS NULL OR cardinality(p_product_ids) = 0 THEN
+        RETURN;
+    END IF;
+
+    INSERT INTO product_listing (product_id, product_name, purchases, category_name, brand_name, logo_public_id,
+                                 min_price, min_sale_price, total_stock, variant_count, thumbnail,
+                                 sizes_str, colors_str, is_active, updated_at)
+    SELECT p.product_id,
+           p.product_name,
+           p.purchases,
+           c.category_name,
+           b.brand_name,
+           b.logo_public_id,
+           agg.min_price,
+           agg.min_sale_price,
+           agg.total_stock,
+           agg.variant_count,
+           p.thumbnail,
+           agg.sizes_str,
+           agg.colors_str,
+           p.is_active,
+           p.updated_at
+    FROM products p
+             LEFT JOIN categories c ON p.category_id = c.category_id
+             LEFT JOIN brands b ON p.brand_id = b.brand_id
+             LEFT JOIN LATERAL (
+        SELECT MIN(pv.price)                                                       AS min_price,
+               MIN(pv.sale_price) FILTER (WHERE pv.sale_price > 0.00)              AS min_sale_price,
+               SUM(pv.quantity_in_stock)                                           AS total_stock,
+               COUNT(pv.variant_id)                                                AS variant_count,
+               STRING_AGG(DISTINCT s.size_name, ',')                               AS sizes_str,
+               STRING_AGG(DISTINCT co.color_name, ',')                             AS colors_str
+        FROM product_variants pv
+                 LEFT JOIN sizes s ON pv.size_id = s.size_id
+                 LEFT JOIN colors co ON pv.color_id = co.color_id
+        WHERE pv.product_id = p.product_id
+        ) agg ON TRUE
+    WHERE p.product_id = ANY (p_product_ids)
+    ON CONFLICT (product_id) DO UPDATE
+        SET product_name   = EXCLUDED.product_name,
+            purchases      = EXCLUDED.purchases,
+            category_name  = EXCLUDED.category_name,
+            brand_name     = EXCLUDED.brand_name,
+            logo_public_id = EXCLUDED.logo_public_id,
+            min_price      = EXCLUDED.min_price,
+            min_sale_price = EXCLUDED.min_sale_price,
+            total_stock    = EXCLUDED.total_stock,
+            variant_count  = EXCLUDED.variant_count,
+            thumbnail      = EXCLUDED.thumbnail,
+            sizes_str      = EXCLUDED.sizes_str,
+            colors_str     = EXCLUDED.colors_str,
+            is_active      = EXCLUDED.is_active,
+            updated_at     = EXCLUDED.updated_at;
+END;
+$$
+    LANGUAGE plpgsql;
+
+-- 1. Sản phẩm thay đổi
+CREATE OR REPLACE FUNCTION trg_product_listing_products()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY [NEW.product_id]);
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_change_product_listing
+    AFTER INSERT OR UPDATE OF product_name, purchases, category_id, brand_id, thumbnail, is_active, updated_at
+    ON products
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_listing_products();
+
+-- 2. Biến thể thay đổi (giá, giá sale do promotion, tồn kho, màu, size): xử lý theo câu lệnh
+CREATE OR REPLACE FUNCTION trg_product_listing_variants_insert()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY(SELECT DISTINCT product_id FROM new_rows));
+    RETURN NULL;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION trg_product_listing_variants_update()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY(
+            SELECT DISTINCT pid
+            FROM old_rows o
+                     JOIN new_rows n ON n.variant_id = o.variant_id
+                     CROSS JOIN LATERAL (VALUES (o.product_id), (n.product_id)) ids(pid)
+            WHERE o.price IS DISTINCT FROM n.price
+               OR o.sale_price IS DISTINCT FROM n.sale_price
+               OR o.quantity_in_stock IS DISTINCT FROM n.quantity_in_stock
+               OR o.color_id IS DISTINCT FROM n.color_id
+               OR o.size_id IS DISTINCT FROM n.size_id
+               OR o.product_id IS DISTINCT FROM n.product_id));
+    RETURN NULL;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION trg_product_listing_variants_delete()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY(SELECT DISTINCT product_id FROM old_rows));
+    RETURN NULL;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_insert_variant_product_listing
+    AFTER INSERT
+    ON product_variants
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION trg_product_listing_variants_insert();
+
+CREATE TRIGGER after_update_variant_product_listing
+    AFTER UPDATE
+    ON product_variants
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION trg_product_listing_variants_update();
+
+CREATE TRIGGER after_delete_variant_product_listing
+    AFTER DELETE
+    ON product_variants
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION trg_product_listing_variants_delete();
+
+-- 3. Dữ liệu tham chiếu đổi tên (thương hiệu, danh mục, màu, size)
+CREATE OR REPLACE FUNCTION trg_product_listing_brands()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY(SELECT product_id FROM products WHERE brand_id = NEW.brand_id));
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_update_brand_product_listing
+    AFTER UPDATE OF brand_name, logo_public_id
+    ON brands
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_listing_brands();
+
+CREATE OR REPLACE FUNCTION trg_product_listing_categories()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY(SELECT product_id FROM products WHERE category_id = NEW.category_id));
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_update_category_product_listing
+    AFTER UPDATE OF category_name
+    ON categories
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_listing_categories();
+
+CREATE OR REPLACE FUNCTION trg_product_listing_colors()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY(
+            SELECT DISTINCT product_id FROM product_variants WHERE color_id = NEW.color_id));
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_update_color_product_listing
+    AFTER UPDATE OF color_name
+    ON colors
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_listing_colors();
+
+CREATE OR REPLACE FUNCTION trg_product_listing_sizes()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY(
+            SELECT DISTINCT product_id FROM product_variants WHERE size_id = NEW.size_id));
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_update_size_product_listing
+    AFTER UPDATE OF size_name
+    ON sizes
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_listing_sizes();
+
+-- 4. Khởi tạo dữ liệu cho các sản phẩm hiện có
+SELECT refresh_product_listing(ARRAY(SELECT product_id FROM products));
@@ -0,0 +1,14 @@
+-- Phân trang keyset theo (updated_at, product_id): updated_at phải luôn có giá trị
+UPDATE products
+SET updated_at = COALESCE(created_at, CURRENT_TIMESTAMP)
+WHERE updated_at IS NULL;
+
+ALTER TABLE products
+    ALTER COLUMN updated_at SET NOT NULL;
+
+-- Trang quản lý: đọc trực tiếp từ products
+CREATE INDEX idx_products_updated_at_id ON products (updated_at DESC, product_id DESC);
+
+-- Trang danh sách: đọc từ read model product_listing
+CREATE INDEX idx_product_listing_active_updated_at_id ON product_listing (updated_at DESC, product_id DESC)
+    WHERE is_active = true;
@@ -0,0 +1,121 @@
+-- Tìm kiếm sản phẩm tiếng Việt: bỏ dấu (unaccent) + full-text (tsvector) + trigram cho lỗi chính tả
+CREATE EXTENSION IF NOT EXISTS unaccent;
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- unaccent() chỉ là STABLE nên không dùng được trong index, bọc lại thành IMMUTABLE
+CREATE OR REPLACE FUNCTION f_unaccent(TEXT)
+    RETURNS TEXT AS
+$$
+SELECT lower(public.unaccent('public.unaccent', COALESCE($1, '')))
+$$
+    LANGUAGE sql IMMUTABLE
+                 PARALLEL SAFE;
+
+-- Mỗi sản phẩm một dòng: tên đã bỏ dấu (cho trigram) và tsvector có trọng số
+-- A: tên sản phẩm, B: thương hiệu + danh mục, C: chất liệu, D: mô tả
+CREATE TABLE product_search
+(
+    product_id    INT PRIMARY KEY,
+    search_name   TEXT     NOT NULL,
+    search_vector TSVECTOR NOT NULL,
+    FOREIGN KEY (product_id) REFERENCES products (product_id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_product_search_vector ON product_search USING GIN (search_vector);
+CREATE INDEX idx_product_search_name_trgm ON product_search USING GIN (search_name gin_trgm_ops);
+
+CREATE OR REPLACE FUNCTION refresh_product_search(p_product_ids INT[])
+    RETURNS VOID AS
+$$
+BEGIN
+    IF p_product_ids IS NULL OR cardinality(p_product_ids) = 0 THEN
+        RETURN;
+    END IF;
+
+    INSERT INTO product_search (product_id, search_name, search_vector)
+    SELECT p.product_id,
+           f_unaccent(p.product_name),
+           setweight(to_tsvector('simple', f_unaccent(p.product_name)), 'A') ||
+           setweight(to_tsvector('simple', f_unaccent(concat_ws(' ', b.brand_name, c.category_name))), 'B') ||
+           setweight(to_tsvector('simple', f_unaccent(m.material_name)), 'C') ||
+           setweight(to_tsvector('simple', f_unaccent(p.description)), 'D')
+    FROM products p
+             LEFT JOIN brands b ON p.brand_id = b.brand_id
+             LEFT JOIN categories c ON p.category_id = c.category_id
+             LEFT JOIN materials m ON p.material_id = m.material_id
+    WHERE p.product_id = ANY (p_product_ids)
+    ON CONFLICT (product_id) DO UPDATE
+        SET search_name   = EXCLUDED.search_name,
+            search_vector = EXCLUDED.search_vector;
+END;
+$$
+    LANGUAGE plpgsql;
+
+-- 1. Sản phẩm thay đổi
+CREATE OR REPLACE FUNCTION trg_product_search_products()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_search(ARRAY [NEW.product_id]);
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_change_product_search
+    AFTER INSERT OR UPDATE OF product_name, description, brand_id, category_id, material_id
+    ON products
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_search_products();
+
+-- 2. Dữ liệu tham chiếu đổi tên
+CREATE OR REPLACE FUNCTION trg_product_search_brands()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_search(ARRAY(SELECT product_id FROM products WHERE brand_id = NEW.brand_id));
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_update_brand_product_search
+    AFTER UPDATE OF brand_name
+    ON brands
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_search_brands();
+
+CREATE OR REPLACE FUNCTION trg_product_search_categories()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_search(ARRAY(SELECT product_id FROM products WHERE category_id = NEW.category_id));
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_update_category_product_search
+    AFTER UPDATE OF category_name
+    ON categories
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_search_categories();
+
+CREATE OR REPLACE FUNCTION trg_product_search_materials()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_search(ARRAY(SELECT product_id FROM products WHERE material_id = NEW.material_id));
+    RETURN NEW;
+END;
+$$
+    LANGUAGE plpgsql;
+
+CREATE TRIGGER after_update_material_product_search
+    AFTER UPDATE OF material_name
+    ON materials
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_search_materials();
+
+-- 3. Khởi tạo dữ liệu cho các sản phẩm hiện có
+SELECT refresh_product_search(ARRAY(SELECT product_id FROM products));
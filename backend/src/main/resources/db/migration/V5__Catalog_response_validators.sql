@@ -0,0 +1,109 @@
+-- Validator cho conditional GET (ETag / Last-Modified) của các endpoint catalog công khai
+-- Mỗi lần dòng product_listing được tính lại: version lấy số mới từ sequence (tăng đơn điệu), changed_at = thời điểm thay đổi
+CREATE SEQUENCE product_listing_version_seq;
+
+ALTER TABLE product_listing
+    ADD COLUMN version    BIGINT    NOT NULL DEFAULT nextval('product_listing_version_seq'),
+    ADD COLUMN changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+CREATE INDEX idx_product_listing_version ON product_listing (version);
+
+CREATE OR REPLACE FUNCTION refresh_product_listing(p_product_ids INT[])
+    RETURNS VOID AS
+$$
+BEGIN
+    IF p_product_ids IS NULL OR cardinality(p_product_ids) = 0 THEN
+        RETURN;
+    END IF;
+
+    INSERT INTO product_listing (product_id, product_name, purchases, category_name, brand_name, logo_public_id,
+                                 min_price, min_sale_price, total_stock, variant_count, thumbnail,
+                                 sizes_str, colors_str, is_active, updated_at, version, changed_at)
+    SELECT p.product_id,
+           p.product_name,
+           p.purchases,
+           c.category_name,
+           b.brand_name,
+           b.logo_public_id,
+           agg.min_price,
+           agg.min_sale_price,
+           agg.total_stock,
+           agg.variant_count,
+           p.thumbnail,
+           agg.sizes_str,
+           agg.colors_str,
+           p.is_active,
+           p.updated_at,
+           nextval('product_listing_version_seq'),
+           clock_timestamp()
+    FROM products p
+             LEFT JOIN categories c ON p.category_id = c.category_id
+             LEFT JOIN brands b ON p.brand_id = b.brand_id
+             LEFT JOIN LATERAL (
+        SELECT MIN(pv.price)                                                       AS min_price,
+               MIN(pv.sale_price) FILTER (WHERE pv.sale_price > 0.00)              AS min_sale_price,
+               SUM(pv.quantity_in_stock)                                           AS total_stock,
+               COUNT(pv.variant_id)                                                AS variant_count,
+               STRING_AGG(DISTINCT s.size_name, ',')                               AS sizes_str,
+               STRING_AGG(DISTINCT co.color_name, ',')                             AS colors_str
+        FROM product_variants pv
+                 LEFT JOIN sizes s ON pv.size_id = s.size_id
+                 LEFT JOIN colors co ON pv.color_id = co.color_id
+        WHERE pv.product_id = p.product_id
+        ) agg ON TRUE
+    WHERE p.product_id = ANY (p_product_ids)
+    ON CONFLICT (product_id) DO UPDATE
+        SET product_name   = EXCLUDED.product_name,
+            purchases      = EXCLUDED.purchases,
+            category_name  = EXCLUDED.category_name,
+            brand_name     = EXCLUDED.brand_name,
+            logo_public_id = EXCLUDED.logo_public_id,
+            min_price      = EXCLUDED.min_price,
+            min_sale_price = EXCLUDED.min_sale_price,
+            total_stock    = EXCLUDED.total_stock,
+            variant_count  = EXCLUDED.variant_count,
+            thumbnail      = EXCLUDED.thumbnail,
+            sizes_str      = EXCLUDED.sizes_str,
+            colors_str     = EXCLUDED.colors_str,
+            is_active      = EXCLUDED.is_active,
+            updated_at     = EXCLUDED.updated_at,
+            version        = EXCLUDED.version,
+            changed_at     = EXCLUDED.changed_at;
+END;
+$$
+    LANGUAGE plpgsql;
+
+-- Chi tiết sản phẩm còn hiển thị sku, sold, ảnh, cân nặng, giá vốn: thay đổi các cột này cũng phải đổi version
+CREATE OR REPLACE FUNCTION trg_product_listing_variants_update()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    PERFORM refresh_product_listing(ARRAY(
+            SELECT DISTINCT pid
+            FROM old_rows o
+                     JOIN new_rows n ON n.variant_id = o.variant_id
+                     CROSS JOIN LATERAL (VALUES (o.product_id), (n.product_id)) ids(pid)
+            WHERE o.price IS DISTINCT FROM n.price
+               OR o.sale_price IS DISTINCT FROM n.sale_price
+               OR o.quantity_in_stock IS DISTINCT FROM n.quantity_in_stock
+               OR o.color_id IS DISTINCT FROM n.color_id
+               OR o.size_id IS DISTINCT FROM n.size_id
+               OR o.product_id IS DISTINCT FROM n.product_id
+               OR o.sku IS DISTINCT FROM n.sku
+               OR o.sold IS DISTINCT FROM n.sold
+               OR o.image_url IS DISTINCT FROM n.image_url
+               OR o.weight IS DISTINCT FROM n.weight
+               OR o.cost_price IS DISTINCT FROM n.cost_price));
+    RETURN NULL;
+END;
+$$
+    LANGUAGE plpgsql;
+
+-- Thông tin thương hiệu hiển thị ở trang chi tiết
+DROP TRIGGER after_update_brand_product_listing ON brands;
+
+CREATE TRIGGER after_update_brand_product_listing
+    AFTER UPDATE OF brand_name, logo_public_id, brand_info
+    ON brands
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_listing_brands();
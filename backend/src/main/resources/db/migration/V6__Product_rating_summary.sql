@@ -0,0 +1,128 @@
+-- Tổng hợp đánh giá theo sản phẩm: số lượng theo từng sao, tổng điểm, điểm trung bình
+-- Cập nhật tăng dần bằng trigger trên reviews, thay cho AVG/COUNT trên toàn bảng reviews ở mỗi request
+CREATE TABLE product_rating_summary
+(
+    product_id     INT PRIMARY KEY,
+    review_count   INT       NOT NULL DEFAULT 0,
+    rating_sum     BIGINT    NOT NULL DEFAULT 0,
+    star_1         INT       NOT NULL DEFAULT 0,
+    star_2         INT       NOT NULL DEFAULT 0,
+    star_3         INT       NOT NULL DEFAULT 0,
+    star_4         INT       NOT NULL DEFAULT 0,
+    star_5         INT       NOT NULL DEFAULT 0,
+    average_rating NUMERIC(3, 2) GENERATED ALWAYS AS (
+        CASE WHEN review_count > 0 THEN ROUND(CAST(rating_sum AS NUMERIC) / review_count, 2) ELSE 0 END) STORED,
+    updated_at     TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (product_id) REFERENCES products (product_id) ON DELETE CASCADE
+);
+
+-- Sản phẩm nổi bật: điểm cao nhất, nhiều đánh giá nhất
+CREATE INDEX idx_product_rating_summary_rank ON product_rating_summary (average_rating DESC, review_count DESC);
+
+-- Cộng/trừ một đánh giá vào bảng tổng hợp (p_sign = 1 khi thêm, -1 khi xóa)
+CREATE OR REPLACE FUNCTION apply_product_rating(p_product_id INT, p_rating INT, p_sign INT)
+    RETURNS VOID AS
+$$
+BEGIN
+    INSERT INTO product_rating_summary AS s (product_id, review_count, rating_sum, star_1, star_2, star_3, star_4, star_5)
+    VALUES (p_product_id,
+            p_sign,
+            p_sign * p_rating,
+            CASE WHEN p_rating = 1 THEN p_sign ELSE 0 END,
+            CASE WHEN p_rating = 2 THEN p_sign ELSE 0 END,
+            CASE WHEN p_rating = 3 THEN p_sign ELSE 0 END,
+            CASE WHEN p_rating = 4 THEN p_sign ELSE 0 END,
+            CASE WHEN p_rating = 5 THEN p_sign ELSE 0 END)
+    ON CONFLICT (product_id) DO UPDATE
+        SET review_count = s.review_count + EXCLUDED.review_count,
+            rating_sum   = s.rating_sum + EXCLUDED.rating_sum,
+            star_1       = s.star_1 + EXCLUDED.star_1,
+            star_2       = s.star_2 + EXCLUDED.star_2,
+            star_3       = s.star_3 + EXCLUDED.star_3,
+            star_4       = s.star_4 + EXCLUDED.star_4,
+            star_5       = s.star_5 + EXCLUDED.star_5,
+            updated_at   = CURRENT_TIMESTAMP;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION trg_product_rating_summary()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM apply_product_rating(OLD.product_id, OLD.rating, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM apply_product_rating(NEW.product_id, NEW.rating, 1);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER after_change_review_rating_summary
+    AFTER INSERT OR DELETE OR UPDATE OF rating, product_id
+    ON reviews
+    FOR EACH ROW
+EXECUTE FUNCTION trg_product_rating_summary();
+
+-- Tính lại toàn bộ từ bảng reviews, sửa các dòng bị lệch
+-- Trả về số sản phẩm đã được sửa
+CREATE OR REPLACE FUNCTION rebuild_product_rating_summary()
+    RETURNS INT AS
+$$
+DECLARE
+    v_fixed   INT;
+    v_zeroed  INT;
+BEGIN
+    -- Chặn ghi reviews trong lúc tính lại để trigger không cộng vào số liệu sắp bị ghi đè
+    LOCK TABLE reviews IN SHARE MODE;
+
+    WITH actual AS (SELECT r.product_id,
+                           COUNT(*)                                   AS review_count,
+                           SUM(r.rating)                              AS rating_sum,
+                           COUNT(*) FILTER (WHERE r.rating = 1)       AS star_1,
+                           COUNT(*) FILTER (WHERE r.rating = 2)       AS star_2,
+                           COUNT(*) FILTER (WHERE r.rating = 3)       AS star_3,
+                           COUNT(*) FILTER (WHERE r.rating = 4)       AS star_4,
+                           COUNT(*) FILTER (WHERE r.rating = 5)       AS star_5
+                    FROM reviews r
+                    GROUP BY r.product_id)
+    INSERT
+    INTO product_rating_summary AS s (product_id, review_count, rating_sum, star_1, star_2, star_3, star_4, star_5)
+    SELECT product_id, review_count, rating_sum, star_1, star_2, star_3, star_4, star_5
+    FROM actual
+    ON CONFLICT (product_id) DO UPDATE
+        SET review_count = EXCLUDED.review_count,
+            rating_sum   = EXCLUDED.rating_sum,
+            star_1       = EXCLUDED.star_1,
+            star_2       = EXCLUDED.star_2,
+            star_3       = EXCLUDED.star_3,
+            star_4       = EXCLUDED.star_4,
+            star_5       = EXCLUDED.star_5,
+            updated_at   = CURRENT_TIMESTAMP
+    WHERE (s.review_count, s.rating_sum, s.star_1, s.star_2, s.star_3, s.star_4, s.star_5)
+              IS DISTINCT FROM
+          (EXCLUDED.review_count, EXCLUDED.rating_sum, EXCLUDED.star_1, EXCLUDED.star_2, EXCLUDED.star_3,
+           EXCLUDED.star_4, EXCLUDED.star_5);
+    GET DIAGNOSTICS v_fixed = ROW_COUNT;
+
+    UPDATE product_rating_summary s
+    SET review_count = 0,
+        rating_sum   = 0,
+        star_1       = 0,
+        star_2       = 0,
+        star_3       = 0,
+        star_4       = 0,
+        star_5       = 0,
+        updated_at   = CURRENT_TIMESTAMP
+    WHERE (s.review_count, s.rating_sum, s.star_1, s.star_2, s.star_3, s.star_4, s.star_5)
+              IS DISTINCT FROM (0, 0, 0, 0, 0, 0, 0)
+      AND NOT EXISTS (SELECT 1 FROM reviews r WHERE r.product_id = s.product_id);
+    GET DIAGNOSTICS v_zeroed = ROW_COUNT;
+
+    RETURN v_fixed + v_zeroed;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Khởi tạo dữ liệu
+SELECT rebuild_product_rating_summary();
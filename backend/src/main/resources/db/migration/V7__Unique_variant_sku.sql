@@ -0,0 +1,11 @@
+-- SKU biến thể phải duy nhất: cấp phát SKU (SkuAllocator) dựa vào unique index này làm lớp bảo vệ cuối
+-- Dữ liệu cũ có thể đã trùng do kiểm tra-rồi-ghi không đồng bộ: giữ SKU cho variant tạo trước,
+-- các variant sau được thêm hậu tố -V{variant_id}
+UPDATE product_variants pv
+SET sku = LEFT(pv.sku, 50 - LENGTH('-V' || pv.variant_id)) || '-V' || pv.variant_id
+FROM (SELECT variant_id, ROW_NUMBER() OVER (PARTITION BY sku ORDER BY variant_id) AS rn
+      FROM product_variants) d
+WHERE d.variant_id = pv.variant_id
+  AND d.rn > 1;
+
+CREATE UNIQUE INDEX ux_product_variants_sku ON product_variants (sku);
@@ -0,0 +1,164 @@
+-- Lịch sử sản phẩm / variant chia partition theo tháng của changed_at
+-- - Duyệt lịch sử theo (changed_at, history_id) chỉ chạm các partition gần nhất
+-- - Hết hạn lưu trữ thì tách cả partition (archive_product_history_partitions) thay vì DELETE từng dòng
+-- Khóa chính phải chứa cột partition nên đổi thành (history_id, changed_at); history_id vẫn lấy từ sequence cũ
+
+CREATE SCHEMA IF NOT EXISTS product_history_archive;
+
+-- ==================== products_history ====================
+ALTER TABLE products_history RENAME TO products_history_legacy;
+ALTER TABLE products_history_legacy RENAME CONSTRAINT products_history_pkey TO products_history_legacy_pkey;
+ALTER SEQUENCE products_history_history_id_seq OWNED BY NONE;
+
+CREATE TABLE products_history
+(
+    history_id         INT       NOT NULL DEFAULT nextval('products_history_history_id_seq'),
+    history_group_id   UUID      NOT NULL DEFAULT gen_random_uuid(),
+    product_id         INT       NOT NULL,
+    product_name       VARCHAR(255),
+    description        TEXT,
+    category_id        INT,
+    brand_id           INT,
+    material_id        INT,
+    target_audience_id INT,
+    is_featured        BOOLEAN,
+    purchases          INT,
+    is_active          BOOLEAN,
+    thumbnail          VARCHAR(255),
+    created_at         TIMESTAMP,
+    updated_at         TIMESTAMP,
+    operation          CHAR(1)   NOT NULL, -- 'U' = UPDATE, 'D' = DELETE
+    changed_at         TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    changed_by         INT,
+    PRIMARY KEY (history_id, changed_at),
+    FOREIGN KEY (changed_by) REFERENCES app_users (app_user_id) ON DELETE CASCADE
+) PARTITION BY RANGE (changed_at);
+
+-- ==================== product_variants_history ====================
+ALTER TABLE product_variants_history RENAME TO product_variants_history_legacy;
+ALTER TABLE product_variants_history_legacy
+    RENAME CONSTRAINT product_variants_history_pkey TO product_variants_history_legacy_pkey;
+ALTER SEQUENCE product_variants_history_history_id_seq OWNED BY NONE;
+
+CREATE TABLE product_variants_history
+(
+    history_id        INT       NOT NULL DEFAULT nextval('product_variants_history_history_id_seq'),
+    history_group_id  UUID      NOT NULL,
+    variant_id        INT       NOT NULL,
+    product_id        INT,
+    sku               VARCHAR(50),
+    color_id          INT,
+    size_id           INT,
+    price             NUMERIC(12, 2),
+    sale_price        NUMERIC(12, 2),
+    quantity_in_stock INT,
+    sold              INT,
+    image_url         VARCHAR(255),
+    weight            FLOAT,
+    created_at        TIMESTAMP,
+    updated_at        TIMESTAMP,
+    operation         CHAR(1)   NOT NULL, -- 'U' = UPDATE, 'D' = DELETE
+    changed_at        TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    changed_by        INT,
+    PRIMARY KEY (history_id, changed_at),
+    FOREIGN KEY (changed_by) REFERENCES app_users (app_user_id) ON DELETE CASCADE
+) PARTITION BY RANGE (changed_at);
+
+-- Keyset (changed_at DESC, history_id DESC) cho trang lịch sử sản phẩm
+CREATE INDEX idx_products_history_changed ON products_history (changed_at, history_id);
+-- Lịch sử variant theo nhóm thay đổi (rollback, trang chi tiết)
+CREATE INDEX idx_product_variants_history_group ON product_variants_history (history_group_id, changed_at, history_id);
+
+-- ==================== Quản lý partition ====================
+
+-- Tạo partition tháng còn thiếu trong khoảng [p_from, p_to] cho cả hai bảng, trả về số partition đã tạo
+CREATE OR REPLACE FUNCTION ensure_product_history_partitions(p_from DATE, p_to DATE)
+    RETURNS INT AS
+$$
+DECLARE
+    v_month   DATE := date_trunc('month', p_from);
+    v_parent  TEXT;
+    v_name    TEXT;
+    v_created INT  := 0;
+BEGIN
+    -- Nhiều instance cùng chạy bảo trì không tạo trùng
+    PERFORM pg_advisory_xact_lock(hashtext('product_history_partitions'));
+    WHILE v_month <= p_to
+        LOOP
+            FOREACH v_parent IN ARRAY ARRAY ['products_history', 'product_variants_history']
+                LOOP
+                    v_name := v_parent || '_p' || to_char(v_month, 'YYYYMM');
+                    IF to_regclass(v_name) IS NULL THEN
+                        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                                       v_name, v_parent, v_month, (v_month + INTERVAL '1 month')::DATE);
+                        v_created := v_created + 1;
+                    END IF;
+                END LOOP;
+            v_month := (v_month + INTERVAL '1 month')::DATE;
+        END LOOP;
+    RETURN v_created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Tách các partition có toàn bộ dữ liệu trước p_before
+-- p_drop = false: chuyển sang schema product_history_archive (vẫn truy vấn / pg_dump được), true: xóa hẳn
+-- Trả về số partition đã xử lý
+CREATE OR REPLACE FUNCTION archive_product_history_partitions(p_before DATE, p_drop BOOLEAN)
+    RETURNS INT AS
+$$
+DECLARE
+    r          RECORD;
+    v_archived INT := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('product_history_partitions'));
+    FOR r IN SELECT child.relname AS name, parent.relname AS parent
+             FROM pg_inherits i
+                      JOIN pg_class child ON child.oid = i.inhrelid
+                      JOIN pg_class parent ON parent.oid = i.inhparent
+             WHERE parent.relname IN ('products_history', 'product_variants_history')
+               AND child.relname ~ '_p[0-9]{6}$'
+               AND (to_date(right(child.relname, 6), 'YYYYMM') + INTERVAL '1 month') <= p_before
+        LOOP
+            EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', r.parent, r.name);
+            IF p_drop THEN
+                EXECUTE format('DROP TABLE %I', r.name);
+            ELSE
+                EXECUTE format('ALTER TABLE %I SET SCHEMA product_history_archive', r.name);
+            END IF;
+            v_archived := v_archived + 1;
+        END LOOP;
+    RETURN v_archived;
+END;
+$$ LANGUAGE plpgsql;
+
+-- ==================== Chuyển dữ liệu cũ ====================
+SELECT ensure_product_history_partitions(
+               LEAST(
+                       COALESCE((SELECT MIN(changed_at) FROM products_history_legacy), CURRENT_DATE),
+                       COALESCE((SELECT MIN(changed_at) FROM product_variants_history_legacy), CURRENT_DATE))::DATE,
+               (CURRENT_DATE + INTERVAL '3 months')::DATE);
+
+INSERT INTO products_history (history_id, history_group_id, product_id, product_name, description, category_id,
+                              brand_id, material_id, target_audience_id, is_featured, purchases, is_active,
+                              thumbnail, created_at, updated_at, operation, changed_at, changed_by)
+SELECT history_id, history_group_id, product_id, product_name, description, category_id,
+       brand_id, material_id, target_audience_id, is_featured, purchases, is_active,
+       thumbnail, created_at, updated_at, operation, changed_at, changed_by
+FROM products_history_legacy;
+
+INSERT INTO product_variants_history (history_id, history_group_id, variant_id, product_id, sku, color_id, size_id,
+                                      price, sale_price, quantity_in_stock, sold, image_url, weight, created_at,
+                                      updated_at, operation, changed_at, changed_by)
+SELECT history_id, history_group_id, variant_id, product_id, sku, color_id, size_id,
+       price, sale_price, quantity_in_stock, sold, image_url, weight, created_at,
+       updated_at, operation, changed_at, changed_by
+FROM product_variants_history_legacy;
+
+DROP TABLE products_history_legacy;
+DROP TABLE product_variants_history_legacy;
+
+ALTER SEQUENCE products_history_history_id_seq OWNED BY products_history.history_id;
+ALTER SEQUENCE product_variants_history_history_id_seq OWNED BY product_variants_history.history_id;
+
+ANALYZE products_history;
+ANALYZE product_variants_history;
@@ -0,0 +1,37 @@
+-- Chạy trước V10 (exclusion constraint excl_promotion_products_variant_window)
+-- Dữ liệu cũ có thể đã trùng (trigger cũ không kiểm tra khi sửa thời gian promotion): dừng migration và liệt kê
+-- các cặp trùng để xử lý tay, thay vì để ADD CONSTRAINT báo lỗi chung chung hoặc tự xóa mapping của admin
+-- Khoảng thời gian tính như V10: TSRANGE(start_date, end_date, '[]') của promotion
+DO
+$$
+DECLARE
+    v_total   BIGINT;
+    v_details TEXT;
+BEGIN
+    SELECT MAX(t.total), string_agg(t.line, E'\n' ORDER BY t.variant_id, t.promotion_a, t.promotion_b)
+    INTO v_total, v_details
+    FROM (SELECT a.variant_id,
+                 a.promotion_id                                            AS promotion_a,
+                 b.promotion_id                                            AS promotion_b,
+                 COUNT(*) OVER ()                                          AS total,
+                 format('variant %s: promotion %s %s và promotion %s %s',
+                        a.variant_id,
+                        a.promotion_id, TSRANGE(pa.start_date, pa.end_date, '[]'),
+                        b.promotion_id, TSRANGE(pb.start_date, pb.end_date, '[]')) AS line
+          FROM promotion_products a
+                   JOIN promotion_products b
+                        ON b.variant_id = a.variant_id
+                            AND b.promotion_id > a.promotion_id
+                   JOIN promotions pa ON pa.promotion_id = a.promotion_id
+                   JOIN promotions pb ON pb.promotion_id = b.promotion_id
+          WHERE TSRANGE(pa.start_date, pa.end_date, '[]') && TSRANGE(pb.start_date, pb.end_date, '[]')
+          ORDER BY a.variant_id, a.promotion_id, b.promotion_id
+          LIMIT 50) t;
+
+    IF v_total > 0 THEN
+        RAISE EXCEPTION 'Có % cặp promotion_products trùng thời gian trên cùng variant, không thể tạo excl_promotion_products_variant_window', v_total
+            USING DETAIL = v_details,
+                HINT = 'Sửa thời gian promotion hoặc bỏ variant khỏi một trong hai promotion rồi chạy lại migration (chỉ liệt kê tối đa 50 cặp)';
+    END IF;
+END;
+$$;
@@ -0,0 +1,54 @@
+-- Hàng đợi mốc promotion (bắt đầu / kết thúc) lưu trong database cho PromotionScheduler
+-- - Trigger trên promotions giữ bảng này đồng bộ: đổi thời gian hoặc bật/tắt promotion thì mốc được xử lý lại
+-- - processed_at NULL = chưa xử lý; mốc đã qua mà chưa xử lý (server tắt đúng lúc) được xử lý khi khởi động
+-- Mốc kết thúc = end_date + 1ms vì end_date tính cả hai đầu (giống ActivePromotionIndex)
+CREATE TABLE promotion_boundaries
+(
+    promotion_id INT       NOT NULL,
+    kind         CHAR(1)   NOT NULL, -- 'S' = bắt đầu, 'E' = kết thúc
+    boundary_at  TIMESTAMP NOT NULL,
+    processed_at TIMESTAMP,
+    PRIMARY KEY (promotion_id, kind),
+    FOREIGN KEY (promotion_id) REFERENCES promotions (promotion_id) ON DELETE CASCADE
+);
+
+CREATE INDEX idx_promotion_boundaries_pending ON promotion_boundaries (boundary_at) WHERE processed_at IS NULL;
+
+CREATE OR REPLACE FUNCTION trg_promotion_boundaries()
+    RETURNS TRIGGER AS
+$$
+BEGIN
+    INSERT INTO promotion_boundaries AS b (promotion_id, kind, boundary_at)
+    VALUES (NEW.promotion_id, 'S', NEW.start_date),
+           (NEW.promotion_id, 'E', NEW.end_date + INTERVAL '1 millisecond')
+    ON CONFLICT (promotion_id, kind) DO UPDATE
+        SET boundary_at  = EXCLUDED.boundary_at,
+            processed_at = NULL;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER after_insert_promotion_boundaries
+    AFTER INSERT
+    ON promotions
+    FOR EACH ROW
+EXECUTE FUNCTION trg_promotion_boundaries();
+
+CREATE TRIGGER after_update_promotion_boundaries
+    AFTER UPDATE OF start_date, end_date, is_active
+    ON promotions
+    FOR EACH ROW
+    WHEN (OLD.start_date IS DISTINCT FROM NEW.start_date
+        OR OLD.end_date IS DISTINCT FROM NEW.end_date
+        OR OLD.is_active IS DISTINCT FROM NEW.is_active)
+EXECUTE FUNCTION trg_promotion_boundaries();
+
+-- Khởi tạo: mốc của các promotion còn liên quan đến giá hiện tại chờ xử lý, lần khởi động đầu tiên tính lại
+-- giá sale một lần cho các variant đó; promotion đã kết thúc từ lâu coi như đã xử lý
+INSERT INTO promotion_boundaries (promotion_id, kind, boundary_at, processed_at)
+SELECT p.promotion_id,
+       k.kind,
+       CASE k.kind WHEN 'S' THEN p.start_date ELSE p.end_date + INTERVAL '1 millisecond' END,
+       CASE WHEN p.end_date < CURRENT_TIMESTAMP - INTERVAL '7 days' THEN CURRENT_TIMESTAMP END
+FROM promotions p
+         CROSS JOIN (VALUES ('S'), ('E')) AS k(kind);
@@ -0,0 +1,75 @@
+package org.yellowcat.backend.money;
+
+import org.junit.jupiter.api.Test;
+import org.yellowcat.backend.common.money.Money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyTest {
+
+    @Test
+    void testBigDecimalRoundTrip() {
+        assertThat(Money.of(new BigDecimal("199000.50")).minor()).isEqualTo(19_900_050L);
+        assertThat(Money.of(new BigDecimal("1.005")).toBigDecimal()).isEqualByComparingTo("1.01");
+        assertThat(Money.of((BigDecimal) null)).isEqualTo(Money.ZERO);
+        assertThat(Money.ofMinor(123).toBigDecimal()).isEqualTo(new BigDecimal("1.23"));
+    }
+
+    @Test
+    void testLessPercentMatchesSqlRounding() {
+        // ROUND(price * (1 - v / 100), 2) của SalePriceRecalculator
+        BigDecimal[] prices = {new BigDecimal("199999.99"), new BigDecimal("0.05"), new BigDecimal("123456.78")};
+        BigDecimal[] rates = {new BigDecimal("12.50"), new BigDecimal("33.33"), new BigDecimal("50.00")};
+        for (BigDecimal price : prices) {
+            for (BigDecimal rate : rates) {
+                BigDecimal expected = price.multiply(BigDecimal.ONE.subtract(rate.divide(BigDecimal.valueOf(100))))
+                        .setScale(2, RoundingMode.HALF_UP);
+                assertThat(Money.of(price).lessPercent(Money.rateOf(rate)).toBigDecimal())
+                        .isEqualByComparingTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void testPercentOfUsesExactRate() {
+        // Cách cũ làm tròn 12.5% thành 0.13 trước khi nhân
+        Money discount = Money.of(new BigDecimal("100000")).percentOf(Money.rateOf(new BigDecimal("12.5")));
+        assertThat(discount.toBigDecimal()).isEqualByComparingTo("12500");
+    }
+
+    @Test
+    void testDiscountsNeverNegative() {
+        Money price = Money.of(new BigDecimal("50000"));
+        assertThat(price.lessAmount(Money.of(new BigDecimal("80000")))).isEqualTo(Money.ZERO);
+        assertThat(price.lessPercent(Money.rateOf(new BigDecimal("150")))).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void testCapsAndTotals() {
+        Money subtotal = Money.of(new BigDecimal("350000")).times(3);
+        Money discount = subtotal.percentOf(Money.rateOf(new BigDecimal("20"))).min(Money.of(new BigDecimal("100000")));
+
+        assertThat(discount.toBigDecimal()).isEqualByComparingTo("100000");
+        assertThat(subtotal.minus(discount).plus(Money.of(new BigDecimal("30000"))).toBigDecimal())
+                .isEqualByComparingTo("980000");
+    }
+
+    @Test
+    void testPercentageOf() {
+        Money revenue = Money.of(new BigDecimal("3000000"));
+        Money profit = Money.of(new BigDecimal("1000000"));
+        assertThat(profit.percentageOf(revenue)).isEqualTo(33.33);
+        assertThat(Money.ZERO.minus(profit).percentageOf(revenue)).isEqualTo(-33.33);
+        assertThat(profit.percentageOf(Money.ZERO)).isZero();
+    }
+
+    @Test
+    void testOverflowFails() {
+        assertThatThrownBy(() -> Money.ofMinor(Long.MAX_VALUE).plus(Money.ofMinor(1)))
+                .isInstanceOf(ArithmeticException.class);
+    }
+}
@@ -0,0 +1,174 @@
+package org.yellowcat.backend.productvariant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yellowcat.backend.product.productvariant.SkuAllocator;
+import org.yellowcat.backend.product.productvariant.SkuStore;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SkuAllocatorTest {
+
+    private InMemorySkuStore store;
+    private SkuAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemorySkuStore();
+        allocator = new SkuAllocator(store, 1000);
+    }
+
+    @Test
+    void testAllocateBaseSkuWhenFree() {
+        allocator.rebuildBloomFilter();
+
+        List<String> skus = allocator.allocate(List.of("P1-C1-S1", "P1-C1-S2"));
+        store.commit(skus);
+
+        assertThat(skus).containsExactly("P1-C1-S1", "P1-C1-S2");
+        // Bloom filter đã nạp và SKU gốc chưa tồn tại: một truy vấn chỉ kiểm tra SKU gốc
+        assertThat(store.probeQueries.get()).isEqualTo(1);
+        assertThat(store.probedCandidates).containsExactlyInAnyOrder("P1-C1-S1", "P1-C1-S2");
+    }
+
+    @Test
+    void testSkuCreatedByAnotherInstanceAfterFilterLoad() {
+        allocator.rebuildBloomFilter();
+        // Instance khác tạo SKU sau khi filter được nạp: filter báo "chưa có" nhưng database đã có
+        store.committed.add("P3-C1-S1");
+
+        List<String> skus = allocator.allocate(List.of("P3-C1-S1"));
+
+        assertThat(skus).containsExactly("P3-C1-S1-01");
+    }
+
+    @Test
+    void testAllocateSuffixWhenTaken() {
+        store.committed.addAll(List.of("P1-C1-S1", "P1-C1-S1-01"));
+        allocator.rebuildBloomFilter();
+
+        List<String> skus = allocator.allocate(List.of("P1-C1-S1", "P1-C1-S1", "P1-C2-S1"));
+
+        assertThat(skus).containsExactly("P1-C1-S1-02", "P1-C1-S1-03", "P1-C2-S1");
+        // Một truy vấn cho cả lô
+        assertThat(store.probeQueries.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testAllocateBeyondFirstProbeWindow() {
+        store.committed.add("P2-C1-S1");
+        for (int i = 1; i < 15; i++) {
+            store.committed.add(String.format("P2-C1-S1-%02d", i));
+        }
+
+        List<String> skus = allocator.allocate(List.of("P2-C1-S1"));
+
+        assertThat(skus).containsExactly("P2-C1-S1-15");
+    }
+
+    @Test
+    void testPreferredSkuKeptWhenFreeOtherwiseReallocatedFromBase() {
+        allocator.rebuildBloomFilter();
+        store.committed.addAll(List.of("P5-C1-S1", "P5-C2-S1-01"));
+
+        // SKU lịch sử: P5-C1-S1-01 còn trống → giữ nguyên; P5-C2-S1-01 đã bị dùng → cấp lại từ gốc, không thành -01-01
+        List<String> skus = allocator.allocatePreferred(
+                Arrays.asList("P5-C1-S1-01", "P5-C2-S1-01", null),
+                List.of("P5-C1-S1", "P5-C2-S1", "P5-C3-S1"));
+
+        assertThat(skus).containsExactly("P5-C1-S1-01", "P5-C2-S1", "P5-C3-S1");
+    }
+
+    @Test
+    void testConcurrentCreatesNeverReceiveSameSku() throws Exception {
+        allocator.rebuildBloomFilter();
+        int threads = 16;
+        int rounds = 5;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<String>>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<String> allocated = new ArrayList<>();
+                for (int r = 0; r < rounds; r++) {
+                    // Mỗi "transaction" cấp SKU cho 2 variant trùng gốc với các luồng khác rồi commit
+                    List<String> skus = allocator.allocate(List.of("P9-C1-S1", "P9-C2-S1"));
+                    store.commit(skus);
+                    allocated.addAll(skus);
+                }
+                return allocated;
+            }));
+        }
+        start.countDown();
+
+        List<String> all = new ArrayList<>();
+        for (Future<List<String>> future : futures) {
+            all.addAll(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertThat(all).hasSize(threads * rounds * 2);
+        assertThat(new HashSet<>(all)).hasSize(all.size());
+        assertThat(store.duplicateInserts.get()).isZero();
+    }
+
+    /**
+     * Giả lập database: khóa theo SKU gốc giữ đến khi commit, commit báo trùng nếu vi phạm unique index
+     */
+    static class InMemorySkuStore implements SkuStore {
+
+        final Set<String> committed = ConcurrentHashMap.newKeySet();
+        final AtomicInteger probeQueries = new AtomicInteger();
+        final AtomicInteger duplicateInserts = new AtomicInteger();
+        final List<String> probedCandidates = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+        private final ThreadLocal<List<ReentrantLock>> held = ThreadLocal.withInitial(ArrayList::new);
+
+        @Override
+        public void lock(Collection<String> baseSkus) {
+            for (String base : new TreeSet<>(baseSkus)) {
+                ReentrantLock lock = locks.computeIfAbsent(base, k -> new ReentrantLock());
+                lock.lock();
+                held.get().add(lock);
+            }
+        }
+
+        @Override
+        public Set<String> findExisting(Collection<String> candidates) {
+            probeQueries.incrementAndGet();
+            probedCandidates.addAll(candidates);
+            Set<String> existing = new HashSet<>();
+            for (String candidate : candidates) {
+                if (committed.contains(candidate)) {
+                    existing.add(candidate);
+                }
+            }
+            return existing;
+        }
+
+        @Override
+        public void forEachSku(Consumer<String> consumer) {
+            committed.forEach(consumer);
+        }
+
+        void commit(List<String> skus) {
+            for (String sku : skus) {
+                if (!committed.add(sku)) {
+                    duplicateInserts.incrementAndGet();
+                }
+            }
+            List<ReentrantLock> locksHeld = held.get();
+            Collections.reverse(locksHeld);
+            locksHeld.forEach(ReentrantLock::unlock);
+            locksHeld.clear();
+        }
+    }
+}
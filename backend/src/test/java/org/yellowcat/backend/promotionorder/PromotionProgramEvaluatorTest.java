@@ -0,0 +1,155 @@
+package org.yellowcat.backend.promotionorder;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yellowcat.backend.common.money.Money;
+import org.yellowcat.backend.product.promotionorder.PromotionProgramEvaluator;
+import org.yellowcat.backend.product.promotionorder.PromotionProgramRepository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class PromotionProgramEvaluatorTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    private PromotionProgramRepository repository;
+    private PromotionProgramEvaluator evaluator;
+    // Giả lập bảng promotion_programs: id → dòng, số lượt còn lại cập nhật như UPDATE có điều kiện
+    private final Map<Integer, Object[]> table = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> remaining = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(PromotionProgramRepository.class);
+        when(repository.findEvaluatorRows(any())).thenAnswer(invocation -> {
+            List<Object[]> rows = new ArrayList<>();
+            table.forEach((id, row) -> {
+                Object[] copy = row.clone();
+                AtomicInteger left = remaining.get(id);
+                copy[7] = left == null ? null : left.get();
+                rows.add(copy);
+            });
+            return rows;
+        });
+        when(repository.consumeUsage(anyInt())).thenAnswer(invocation -> {
+            AtomicInteger left = remaining.get(invocation.<Integer>getArgument(0));
+            return left.getAndUpdate(v -> v > 0 ? v - 1 : v) > 0 ? 1 : 0;
+        });
+        evaluator = new PromotionProgramEvaluator(repository);
+    }
+
+    private void program(int id, String type, String value, String minimum, Integer limit,
+                         LocalDateTime start, LocalDateTime end) {
+        table.put(id, new Object[]{id, "KM" + id, type, new BigDecimal(value), new BigDecimal(minimum),
+                Timestamp.valueOf(start), Timestamp.valueOf(end), null});
+        if (limit != null) {
+            remaining.put(id, new AtomicInteger(limit));
+        }
+    }
+
+    private void program(int id, String type, String value, String minimum, Integer limit) {
+        program(id, type, value, minimum, limit, NOW.minusDays(1), NOW.plusDays(1));
+    }
+
+    @Test
+    void testPicksLargestDiscountAmongReachedThresholds() {
+        program(1, "VNĐ", "50000", "200000", null);
+        program(2, "%", "10", "500000", null);
+        program(3, "VNĐ", "200000", "2000000", null);
+
+        // Chỉ đạt ngưỡng chương trình 1
+        assertThat(evaluator.findBest(Money.of(new BigDecimal("300000")), NOW))
+                .get().extracting(PromotionProgramEvaluator.Selection::promotionProgramId).isEqualTo(1);
+        // 10% của 600.000 = 60.000 > 50.000
+        PromotionProgramEvaluator.Selection selection = evaluator.findBest(Money.of(new BigDecimal("600000")), NOW).get();
+        assertThat(selection.promotionProgramId()).isEqualTo(2);
+        assertThat(selection.discount()).isEqualTo(Money.of(new BigDecimal("60000")));
+        // 10% của 2.500.000 = 250.000 > 200.000
+        assertThat(evaluator.findBest(Money.of(new BigDecimal("2500000")), NOW))
+                .get().extracting(PromotionProgramEvaluator.Selection::promotionProgramId).isEqualTo(2);
+        // Dưới mọi ngưỡng
+        assertThat(evaluator.findBest(Money.of(new BigDecimal("100000")), NOW)).isEmpty();
+    }
+
+    @Test
+    void testSkipsProgramsOutsideWindowAndReloadsAtBoundary() {
+        program(1, "VNĐ", "50000", "0", null);
+        program(2, "VNĐ", "90000", "0", null, NOW.plusHours(1), NOW.plusDays(1));
+
+        assertThat(evaluator.findBest(Money.of(new BigDecimal("100000")), NOW))
+                .get().extracting(PromotionProgramEvaluator.Selection::promotionProgramId).isEqualTo(1);
+        assertThat(evaluator.findBest(Money.of(new BigDecimal("100000")), NOW.plusHours(1)))
+                .get().extracting(PromotionProgramEvaluator.Selection::promotionProgramId).isEqualTo(2);
+        // Cùng snapshot cho tới mốc tiếp theo: chỉ load 2 lần
+        evaluator.findBest(Money.of(new BigDecimal("100000")), NOW.plusHours(2));
+        verify(repository, times(2)).findEvaluatorRows(any());
+    }
+
+    @Test
+    void testExhaustedProgramFallsBackToNextBest() {
+        program(1, "VNĐ", "90000", "0", 1);
+        program(2, "VNĐ", "50000", "0", null);
+
+        Money subtotal = Money.of(new BigDecimal("100000"));
+        assertThat(evaluator.reserveBest(subtotal, NOW))
+                .get().extracting(PromotionProgramEvaluator.Selection::promotionProgramId).isEqualTo(1);
+        assertThat(evaluator.reserveBest(subtotal, NOW))
+                .get().extracting(PromotionProgramEvaluator.Selection::promotionProgramId).isEqualTo(2);
+        assertThat(remaining.get(1).get()).isZero();
+    }
+
+    @Test
+    void testUsageLimitHoldsUnderConcurrentCheckouts() throws Exception {
+        int limit = 25;
+        int checkouts = 400;
+        program(1, "%", "20", "0", limit);
+        program(2, "VNĐ", "1000", "0", null);
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < checkouts; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                return evaluator.reserveBest(Money.of(new BigDecimal("500000")), NOW)
+                        .map(PromotionProgramEvaluator.Selection::promotionProgramId)
+                        .orElse(null);
+            }));
+        }
+        start.countDown();
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (Future<Integer> result : results) {
+            counts.merge(result.get(10, TimeUnit.SECONDS), 1, Integer::sum);
+        }
+        pool.shutdown();
+
+        // Đúng bằng số lượt cho phép, phần còn lại chuyển sang chương trình không giới hạn
+        assertThat(counts.get(1)).isEqualTo(limit);
+        assertThat(counts.get(2)).isEqualTo(checkouts - limit);
+        assertThat(remaining.get(1).get()).isZero();
+    }
+
+    @Test
+    void testDatabaseLimitWinsOverLocalCounter() {
+        program(1, "VNĐ", "90000", "0", 5);
+        program(2, "VNĐ", "50000", "0", null);
+        Money subtotal = Money.of(new BigDecimal("100000"));
+        evaluator.findBest(subtotal, NOW);
+
+        // Instance khác dùng hết lượt sau khi snapshot được load
+        remaining.get(1).set(0);
+
+        assertThat(evaluator.reserveBest(subtotal, NOW))
+                .get().extracting(PromotionProgramEvaluator.Selection::promotionProgramId).isEqualTo(2);
+    }
+}
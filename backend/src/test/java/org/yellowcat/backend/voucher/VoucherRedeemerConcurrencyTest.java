@@ -0,0 +1,257 @@
+package org.yellowcat.backend.voucher;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.yellowcat.backend.online_selling.voucher.VoucherRedeemer;
+import org.yellowcat.backend.online_selling.voucher.VoucherRedeemer.Outcome;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress test đổi voucher song song trên database thật (H2 chế độ PostgreSQL, khóa theo dòng)
+ * Mỗi lượt đổi chạy trong transaction riêng giống applyVoucher, bị từ chối thì rollback
+ */
+class VoucherRedeemerConcurrencyTest {
+
+    private static final int THREADS = 32;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private TransactionTemplate transactionTemplate;
+    private VoucherRedeemer redeemer;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:voucher_" + UUID.randomUUID()
+                + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=30000");
+        dataSource.setMaximumPoolSize(THREADS);
+        dataSource.setAutoCommit(false);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        redeemer = new VoucherRedeemer(jdbcTemplate, transactionManager, Duration.ofMinutes(10));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("""
+                    CREATE TABLE voucher1
+                    (
+                        id             INT PRIMARY KEY,
+                        max_usage      INT,
+                        usage_count    INT     NOT NULL DEFAULT 0,
+                        reserved_count INT     NOT NULL DEFAULT 0 CHECK (reserved_count >= 0),
+                        is_active      BOOLEAN NOT NULL DEFAULT TRUE
+                    )
+                    """);
+            jdbcTemplate.execute("""
+                    CREATE TABLE voucher_user
+                    (
+                        id          INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                        voucher_id  INT,
+                        user_id     INT,
+                        usage_count INT NOT NULL DEFAULT 0 CHECK (usage_count <= 1),
+                        UNIQUE (voucher_id, user_id)
+                    )
+                    """);
+            jdbcTemplate.execute("""
+                    CREATE TABLE voucher_reservation
+                    (
+                        token      UUID PRIMARY KEY,
+                        voucher_id INT       NOT NULL,
+                        user_id    INT,
+                        expires_at TIMESTAMP NOT NULL,
+                        created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                    )
+                    """);
+            jdbcTemplate.execute("CREATE UNIQUE INDEX uq_voucher_reservation_voucher_user"
+                    + " ON voucher_reservation (voucher_id, user_id)");
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    private void voucher(int id, Integer maxUsage) {
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.update("INSERT INTO voucher1 (id, max_usage) VALUES (?, ?)", id, maxUsage));
+    }
+
+    private <T> T column(int voucherId, String column, Class<T> type) {
+        return transactionTemplate.execute(status ->
+                jdbcTemplate.queryForObject("SELECT " + column + " FROM voucher1 WHERE id = ?", type, voucherId));
+    }
+
+    private int column(int voucherId, String column) {
+        return column(voucherId, column, Integer.class);
+    }
+
+    // Giống applyVoucher: lỗi thì rollback toàn bộ
+    private Outcome redeemInTransaction(int voucherId, Integer userId, UUID token) {
+        return transactionTemplate.execute(status -> {
+            Outcome outcome = redeemer.redeem(voucherId, userId, token);
+            if (outcome != Outcome.REDEEMED) {
+                status.setRollbackOnly();
+            }
+            return outcome;
+        });
+    }
+
+    /**
+     * Chạy song song requests lượt, trả về số lượt theo kết quả (lỗi database tính là "ERROR")
+     */
+    private Map<String, Integer> runConcurrently(int requests, IntFunction<Outcome> request) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            int index = i;
+            results.add(pool.submit(() -> {
+                start.await();
+                try {
+                    return request.apply(index).name();
+                } catch (RuntimeException e) {
+                    return "ERROR";
+                }
+            }));
+        }
+        start.countDown();
+        Map<String, Integer> counts = new HashMap<>();
+        for (Future<String> result : results) {
+            counts.merge(result.get(60, TimeUnit.SECONDS), 1, Integer::sum);
+        }
+        pool.shutdown();
+        return counts;
+    }
+
+    @Test
+    void testNoOverRedemptionUnderParallelCheckouts() throws Exception {
+        voucher(1, 100);
+
+        Map<String, Integer> counts = runConcurrently(500, i -> redeemInTransaction(1, 1000 + i, null));
+
+        assertThat(counts.get("REDEEMED")).isEqualTo(100);
+        assertThat(counts.get("EXHAUSTED")).isEqualTo(400);
+        assertThat(counts).doesNotContainKey("ERROR");
+        assertThat(column(1, "usage_count")).isEqualTo(100);
+        // Hết lượt thì tự ngưng hoạt động
+        assertThat(column(1, "is_active", Boolean.class)).isFalse();
+        // Lượt theo user của các đơn bị từ chối đã rollback
+        Integer userUsages = transactionTemplate.execute(status ->
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM voucher_user", Integer.class));
+        assertThat(userUsages).isEqualTo(100);
+    }
+
+    @Test
+    void testSameUserRedeemsOnlyOnce() throws Exception {
+        voucher(1, null);
+
+        Map<String, Integer> counts = runConcurrently(200, i -> redeemInTransaction(1, 7, null));
+
+        assertThat(counts.get("REDEEMED")).isEqualTo(1);
+        assertThat(column(1, "usage_count")).isEqualTo(1);
+    }
+
+    @Test
+    void testReservationsHoldUsesForCheckoutsInProgress() throws Exception {
+        voucher(1, 50);
+        List<VoucherRedeemer.Reservation> reservations = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            reservations.add(redeemer.reserve(1, 2000 + i).reservation());
+        }
+        assertThat(column(1, "reserved_count")).isEqualTo(30);
+
+        // Người không giữ chỗ chỉ tranh được phần còn lại
+        Map<String, Integer> counts = runConcurrently(300, i -> redeemInTransaction(1, 1000 + i, null));
+        assertThat(counts.get("REDEEMED")).isEqualTo(20);
+        assertThat(redeemer.reserve(1, 3000).outcome()).isEqualTo(Outcome.EXHAUSTED);
+
+        // Các checkout đã giữ chỗ đều dùng được lượt của mình
+        Map<String, Integer> reserved = runConcurrently(30, i ->
+                redeemInTransaction(1, 2000 + i, reservations.get(i).token()));
+        assertThat(reserved.get("REDEEMED")).isEqualTo(30);
+        assertThat(column(1, "usage_count")).isEqualTo(50);
+        assertThat(column(1, "reserved_count")).isZero();
+    }
+
+    @Test
+    void testReleasedAndExpiredReservationsReturnUses() throws Exception {
+        voucher(1, 10);
+        VoucherRedeemer expiring = new VoucherRedeemer(jdbcTemplate, transactionManager, Duration.ZERO);
+        for (int i = 0; i < 6; i++) {
+            expiring.reserve(1, 2000 + i);
+        }
+        VoucherRedeemer.Reservation cancelled = redeemer.reserve(1, 3000).reservation();
+        assertThat(column(1, "reserved_count")).isEqualTo(7);
+
+        // Release và dọn dẹp chạy song song không trả lại hai lần
+        Map<String, Integer> releases = runConcurrently(20, i -> {
+            if (i % 2 == 0) {
+                redeemer.release(cancelled.token(), 3000);
+            } else {
+                redeemer.releaseExpiredReservations();
+            }
+            return Outcome.REDEEMED;
+        });
+        assertThat(releases).doesNotContainKey("ERROR");
+        assertThat(column(1, "reserved_count")).isZero();
+
+        Map<String, Integer> counts = runConcurrently(100, i -> redeemInTransaction(1, 1000 + i, null));
+        assertThat(counts.get("REDEEMED")).isEqualTo(10);
+    }
+
+    @Test
+    void testOneLiveReservationPerUser() throws Exception {
+        voucher(1, 10);
+
+        // Checkout gửi lại nhiều lần song song vẫn chỉ giữ một lượt
+        Set<UUID> tokens = ConcurrentHashMap.newKeySet();
+        Map<String, Integer> counts = runConcurrently(50, i -> {
+            VoucherRedeemer.ReservationResult result = redeemer.reserve(1, 7);
+            tokens.add(result.reservation().token());
+            return result.outcome();
+        });
+        assertThat(counts.get("REDEEMED")).isEqualTo(50);
+        assertThat(tokens).hasSize(1);
+        assertThat(column(1, "reserved_count")).isEqualTo(1);
+
+        // Giữ chỗ hết hạn chưa được dọn: trả lượt cũ rồi giữ lại
+        VoucherRedeemer expiring = new VoucherRedeemer(jdbcTemplate, transactionManager, Duration.ZERO);
+        expiring.reserve(1, 8);
+        VoucherRedeemer.Reservation renewed = redeemer.reserve(1, 8).reservation();
+        assertThat(renewed.expiresAt()).isAfter(LocalDateTime.now());
+        assertThat(column(1, "reserved_count")).isEqualTo(2);
+    }
+
+    @Test
+    void testReservationBoundToUser() {
+        voucher(1, 5);
+        assertThat(redeemInTransaction(1, 7, null)).isEqualTo(Outcome.REDEEMED);
+
+        // User đã dùng voucher không giữ chỗ được
+        assertThat(redeemer.reserve(1, 7).outcome()).isEqualTo(Outcome.ALREADY_USED);
+        assertThat(column(1, "reserved_count")).isZero();
+
+        // Token của user khác không dùng / trả được lượt đang giữ
+        VoucherRedeemer.Reservation reservation = redeemer.reserve(1, 8).reservation();
+        assertThat(redeemer.release(reservation.token(), 9)).isFalse();
+        assertThat(redeemInTransaction(1, 9, reservation.token())).isEqualTo(Outcome.REDEEMED);
+        assertThat(column(1, "reserved_count")).isEqualTo(1);
+        assertThat(redeemInTransaction(1, 8, reservation.token())).isEqualTo(Outcome.REDEEMED);
+        assertThat(column(1, "reserved_count")).isZero();
+        assertThat(column(1, "usage_count")).isEqualTo(3);
+    }
+}